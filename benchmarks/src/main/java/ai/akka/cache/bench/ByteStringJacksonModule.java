@@ -0,0 +1,37 @@
+package ai.akka.cache.bench;
+
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Lets the Jackson baselines in {@link SerializationBenchmark} carry {@link ByteString} values.
+ *
+ * Values are written as Jackson binary: base64 text in JSON and a native byte string in CBOR,
+ * which is the best either format can do for raw bytes.
+ */
+public class ByteStringJacksonModule extends SimpleModule {
+
+    public ByteStringJacksonModule() {
+        super("ByteStringJacksonModule");
+        addSerializer(ByteString.class, new StdSerializer<ByteString>(ByteString.class) {
+            @Override
+            public void serialize(ByteString value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+                gen.writeBinary(value.toArrayUnsafe());
+            }
+        });
+        addDeserializer(ByteString.class, new StdDeserializer<ByteString>(ByteString.class) {
+            @Override
+            public ByteString deserialize(JsonParser p, DeserializationContext ctx) throws IOException {
+                return ByteString.fromArrayUnsafe(p.getBinaryValue());
+            }
+        });
+    }
+}
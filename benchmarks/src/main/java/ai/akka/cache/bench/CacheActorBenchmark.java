@@ -0,0 +1,132 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.util.ByteString;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Get / Put handling cost of one {@link CacheActor}, with the mailbox but without the network.
+ *
+ * BehaviorTestKit cannot run the actor, whose constructor needs the node's extensions (memory
+ * budget, near cache, snapshots), so each trial spawns it in a plain local ActorSystem instead.
+ * An invocation sends a batch of requests and waits for every reply; the reported time is per
+ * request, and includes the hop back to the replying actor.
+ *
+ * The cache's own loggers are raised to WARN, so that a node started at DEBUG does not measure
+ * its request logging here; {@link LoggingBenchmark} measures that.
+ *
+ * Usage: java -jar target/benchmarks.jar CacheActorBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheActorBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final int KEYS = 4096;
+
+    @Param({"32", "1024"})
+    public int valueBytes;
+
+    private ActorSystem<Void> system;
+    private ActorRef<CacheActor.Command> cache;
+    private ActorRef<CacheActor.Response> replyTo;
+    private volatile CountDownLatch replies;
+
+    private CacheActor.Command[] gets;
+    private CacheActor.Command[] misses;
+    private CacheActor.Command[] puts;
+    private int next;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        ((Logger) LoggerFactory.getLogger("ai.akka.cache")).setLevel(Level.WARN);
+        system = ActorSystem.create(Behaviors.empty(), "CacheActorBenchmark", ConfigFactory.parseString(
+                "akka.actor.provider = local\n" +
+                "akka.loglevel = WARNING\n"
+        ).withFallback(ConfigFactory.load()));
+        cache = system.systemActorOf(CacheActor.create(), "cache", Props.empty());
+        replyTo = system.systemActorOf(countReplies(), "replyTo", Props.empty());
+
+        ByteString value = ByteString.fromString("v".repeat(valueBytes));
+        gets = new CacheActor.Command[KEYS];
+        misses = new CacheActor.Command[KEYS];
+        puts = new CacheActor.Command[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            gets[i] = new CacheActor.Get("user:" + i, replyTo);
+            misses[i] = new CacheActor.Get("absent:" + i, replyTo);
+            puts[i] = new CacheActor.Put("user:" + i, value, replyTo);
+        }
+        // Every key present, so that gets hit and puts overwrite
+        sendAll(puts, KEYS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void put() throws InterruptedException {
+        sendAll(puts, BATCH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void getHit() throws InterruptedException {
+        sendAll(gets, BATCH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void getMiss() throws InterruptedException {
+        sendAll(misses, BATCH);
+    }
+
+    private void sendAll(CacheActor.Command[] messages, int count) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(count);
+        replies = latch;
+        for (int i = 0; i < count; i++) {
+            cache.tell(messages[next]);
+            next = (next + 1) & (KEYS - 1);
+        }
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Missing replies: " + latch.getCount());
+        }
+    }
+
+    private Behavior<CacheActor.Response> countReplies() {
+        return Behaviors.receiveMessage(response -> {
+            replies.countDown();
+            return Behaviors.same();
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import ai.akka.cache.CacheClient;
+import ai.akka.cache.CacheRoutes;
+import ai.akka.cache.CacheSettings;
+import ai.akka.cache.DistributedCacheApplication;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.typed.ClusterShardingSettings;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.MediaRanges;
+import akka.http.javadsl.model.headers.Accept;
+import akka.japi.function.Function;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request handling cost of {@link CacheRoutes}: routing, (un)marshalling and the sharded round
+ * trip to the bucket entity, on a one-node cluster and without an HTTP connection.
+ *
+ * Requests go straight into the sealed route's handler function, which is what the route
+ * testkit does too, without pulling JUnit into this module. Each call is one sequential
+ * request, so the score is per-request latency rather than throughput.
+ *
+ * Usage: java -jar target/benchmarks.jar CacheRoutesBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheRoutesBenchmark {
+
+    private static final int KEYS = 4096;
+
+    @Param({"32", "1024"})
+    public int valueBytes;
+
+    private ActorSystem<Void> system;
+    private Function<HttpRequest, CompletionStage<HttpResponse>> handler;
+
+    private HttpRequest[] jsonGets;
+    private HttpRequest[] binaryGets;
+    private HttpRequest[] jsonPuts;
+    private HttpRequest[] binaryPuts;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        // At the shipped DEBUG level every request would write log lines
+        ((Logger) LoggerFactory.getLogger("ai.akka.cache")).setLevel(Level.WARN);
+        system = ActorSystem.create(Behaviors.empty(), "CacheRoutesBenchmark", ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n" +
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.cluster.seed-nodes = []\n" +
+                "akka.loglevel = WARNING\n"
+        ).withFallback(ConfigFactory.load()));
+        Cluster cluster = Cluster.get(system);
+        cluster.manager().tell(Join.create(cluster.selfMember().address()));
+        while (cluster.selfMember().status() != MemberStatus.up()) {
+            Thread.sleep(50);
+        }
+
+        CacheSettings settings = CacheSettings.create(system.settings().config());
+        DistributedCacheApplication.CacheMessageExtractor extractor =
+                new DistributedCacheApplication.CacheMessageExtractor(settings);
+        ClusterSharding sharding = ClusterSharding.get(system);
+        sharding.init(Entity.of(DistributedCacheApplication.CACHE_ENTITY_KEY,
+                        entityContext -> CacheActor.create(entityContext, settings))
+                .withMessageExtractor(extractor)
+                .withSettings(ClusterShardingSettings.create(system).withNoPassivationStrategy()));
+        CacheRoutes routes = new CacheRoutes(new CacheClient(sharding, extractor, settings, system), system);
+        handler = routes.routes().seal().handler(system);
+
+        String value = "v".repeat(valueBytes);
+        String json = "{\"value\":\"" + value + "\"}";
+        jsonGets = new HttpRequest[KEYS];
+        binaryGets = new HttpRequest[KEYS];
+        jsonPuts = new HttpRequest[KEYS];
+        binaryPuts = new HttpRequest[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            String uri = "/cache/user:" + i;
+            jsonGets[i] = HttpRequest.GET(uri);
+            binaryGets[i] = HttpRequest.GET(uri).addHeader(Accept.create(MediaRanges.create(
+                    ContentTypes.APPLICATION_OCTET_STREAM.mediaType())));
+            jsonPuts[i] = HttpRequest.PUT(uri).withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, json));
+            binaryPuts[i] = HttpRequest.PUT(uri).withEntity(
+                    HttpEntities.create(ContentTypes.APPLICATION_OCTET_STREAM, value.getBytes()));
+        }
+        // Starts every bucket and stores every key, so that gets hit
+        for (HttpRequest put : binaryPuts) {
+            call(put);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public HttpResponse getJson() throws Exception {
+        return call(jsonGets[nextIndex()]);
+    }
+
+    @Benchmark
+    public HttpResponse getOctetStream() throws Exception {
+        return call(binaryGets[nextIndex()]);
+    }
+
+    @Benchmark
+    public HttpResponse putJson() throws Exception {
+        return call(jsonPuts[nextIndex()]);
+    }
+
+    @Benchmark
+    public HttpResponse putOctetStream() throws Exception {
+        return call(binaryPuts[nextIndex()]);
+    }
+
+    private HttpResponse call(HttpRequest request) throws Exception {
+        HttpResponse response = handler.apply(request).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        if (!response.status().isSuccess()) {
+            throw new IllegalStateException(request.getUri() + " failed: " + response.status());
+        }
+        return response;
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = (i + 1) & (KEYS - 1);
+        return i;
+    }
+}
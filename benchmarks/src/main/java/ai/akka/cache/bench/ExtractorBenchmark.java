@@ -0,0 +1,88 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import ai.akka.cache.CacheSettings;
+import ai.akka.cache.DistributedCacheApplication;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing cost of {@link DistributedCacheApplication.CacheMessageExtractor}: the entity and shard
+ * id that sharding computes for every message a region receives.
+ *
+ * Messages cycle through a fixed set of distinct keys so that the results do not depend on a
+ * single cached String hash.
+ *
+ * Usage: java -jar target/benchmarks.jar ExtractorBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractorBenchmark {
+
+    private static final int KEYS = 4096;
+
+    // Replication needs bucket mode, so the two settings are varied together
+    @Param({"per-key", "bucket", "bucket-3-replicas"})
+    public String layout;
+
+    private DistributedCacheApplication.CacheMessageExtractor extractor;
+    private CacheActor.Command[] messages;
+    private String[] entityIds;
+    private int lastReplica;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        boolean perKey = layout.equals("per-key");
+        CacheSettings settings = CacheSettings.create(ConfigFactory.parseString(
+                "cache.sharding.entity-mode = " + (perKey ? "per-key" : "bucket") + "\n" +
+                "cache.replication-factor = " + (layout.equals("bucket-3-replicas") ? 3 : 1) + "\n"
+        ).withFallback(ConfigFactory.load()));
+        lastReplica = settings.replicationFactor - 1;
+        extractor = new DistributedCacheApplication.CacheMessageExtractor(settings);
+        messages = new CacheActor.Command[KEYS];
+        entityIds = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            messages[i] = new CacheActor.Get("user:" + i, null);
+            entityIds[i] = extractor.entityId(messages[i]);
+        }
+    }
+
+    @Benchmark
+    public String entityId() {
+        return extractor.entityId(messages[nextIndex()]);
+    }
+
+    @Benchmark
+    public String shardId() {
+        return extractor.shardId(entityIds[nextIndex()]);
+    }
+
+    @Benchmark
+    public String entityIdForLastReplica() {
+        return extractor.entityIdForKey(((CacheActor.Get) messages[nextIndex()]).key, lastReplica);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = (i + 1) & (KEYS - 1);
+        return i;
+    }
+}
@@ -0,0 +1,128 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import ai.akka.cache.CacheSettings;
+import ai.akka.cache.DistributedCacheApplication;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import akka.util.ByteString;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap footprint of the two entity layouts on a single-node cluster.
+ *
+ * For each mode it boots a fresh ActorSystem with the real sharding setup, writes the same
+ * keys through ClusterSharding and reports the retained heap per key after a full GC.
+ *
+ * Usage: FootprintComparison [keys] [value-bytes]   (run with a fixed heap, e.g. -Xms4g -Xmx4g)
+ */
+public class FootprintComparison {
+
+    private static final Duration ASK_TIMEOUT = Duration.ofSeconds(30);
+    private static final int WINDOW = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int valueBytes = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+
+        System.out.printf("Writing %,d keys with %d-byte values per mode%n%n", keys, valueBytes);
+        long perKey = measure("per-key", keys, valueBytes);
+        long bucket = measure("bucket", keys, valueBytes);
+
+        System.out.println();
+        System.out.printf("%-10s %14s %12s%n", "mode", "retained", "bytes/key");
+        System.out.printf("%-10s %,14d %,12d%n", "per-key", perKey, perKey / keys);
+        System.out.printf("%-10s %,14d %,12d%n", "bucket", bucket, bucket / keys);
+        System.out.printf("%nBucket layout uses %.1fx less heap%n", (double) perKey / Math.max(1, bucket));
+    }
+
+    private static long measure(String mode, int keys, int valueBytes) throws Exception {
+        Config config = ConfigFactory.parseString(
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.cluster.seed-nodes = []\n" +
+                "akka.loglevel = WARNING\n" +
+                "cache.sharding.entity-mode = \"" + mode + "\"\n" +
+                "cache.eviction.max-memory = 0\n"
+        ).withFallback(ConfigFactory.load());
+
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "FootprintSystem", config);
+        try {
+            Cluster cluster = Cluster.get(system);
+            cluster.manager().tell(Join.create(cluster.selfMember().address()));
+            while (cluster.selfMember().status() != MemberStatus.up()) {
+                Thread.sleep(50);
+            }
+
+            CacheSettings settings = CacheSettings.create(system.settings().config());
+            DistributedCacheApplication.CacheMessageExtractor extractor =
+                    new DistributedCacheApplication.CacheMessageExtractor(settings);
+            ClusterSharding sharding = ClusterSharding.get(system);
+            sharding.init(Entity.of(DistributedCacheApplication.CACHE_ENTITY_KEY,
+                            entityContext -> CacheActor.create(entityContext, settings))
+                    .withMessageExtractor(extractor));
+
+            // Warm up sharding itself so only per-key state shows up in the delta
+            put(sharding, extractor, "warmup", ByteString.fromString("x"));
+            long baseline = usedHeapAfterGc();
+
+            String value = "v".repeat(valueBytes);
+            long start = System.nanoTime();
+            List<CompletionStage<CacheActor.Response>> window = new ArrayList<>(WINDOW);
+            for (int i = 0; i < keys; i++) {
+                // A fresh byte array per key, so the payload itself is part of what is measured
+                window.add(put(sharding, extractor, "key-" + i, ByteString.fromString(value)));
+                if (window.size() == WINDOW) {
+                    awaitAll(window);
+                }
+            }
+            awaitAll(window);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            long retained = usedHeapAfterGc() - baseline;
+            System.out.printf("[%s] loaded in %,d ms, retained %,d bytes (%,d bytes/key)%n",
+                    mode, elapsedMs, retained, retained / keys);
+            return retained;
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static CompletionStage<CacheActor.Response> put(ClusterSharding sharding,
+                                                            DistributedCacheApplication.CacheMessageExtractor extractor,
+                                                            String key, ByteString value) {
+        return sharding.entityRefFor(DistributedCacheApplication.CACHE_ENTITY_KEY, extractor.entityIdForKey(key))
+                .ask(replyTo -> new CacheActor.Put(key, value, replyTo), ASK_TIMEOUT);
+    }
+
+    private static void awaitAll(List<CompletionStage<CacheActor.Response>> window) throws Exception {
+        CompletableFuture.allOf(window.stream()
+                .map(CompletionStage::toCompletableFuture)
+                .toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        window.clear();
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,306 @@
+package ai.akka.cache.bench;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import com.typesafe.config.ConfigFactory;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP load test against a local multi-node cluster.
+ *
+ * Starts {@code nodes} cache nodes as separate JVMs running {@code DistributedCacheApplication} on
+ * loopback (Akka ports 2551..., HTTP ports 8080...), fills them with every key through
+ * {@code /cache/_mput}, then drives GET / PUT {@code /cache/{key}} on every node at once with a
+ * read/write mix and Zipf-distributed keys. After a warmup it reports throughput and HdrHistogram
+ * latency percentiles per node, and stops the nodes again.
+ *
+ * The load is a closed loop, as in Gatling's closed workload model: each connection sends its
+ * next request when the previous one has completed. When the cluster falls behind, requests
+ * wait in the client rather than being counted late, so high percentiles under overload read
+ * lower than an open-loop generator would report. A read that misses (404) counts as a success.
+ *
+ * Node output goes to {@code logs/loadtest-node<n>.log}. The nodes need the cache classes on
+ * the classpath of this JVM, so run it from the shaded jar rather than through exec:java.
+ *
+ * Usage: LoadTest [nodes] [seconds] [read-percent] [zipf-theta] [keys] [connections-per-node] [value-bytes]
+ */
+public class LoadTest {
+
+    private static final int BASE_AKKA_PORT = 2551;
+    private static final int BASE_HTTP_PORT = 8080;
+    private static final int WARMUP_SECONDS = 10;
+    private static final int PRELOAD_BATCH = 500;
+    private static final int PRELOAD_ATTEMPTS = 10;
+    private static final String NODE_HEAP = "-Xmx512m";
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int readPercent = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+        double theta = args.length > 3 ? Double.parseDouble(args[3]) : 0.99;
+        int keys = args.length > 4 ? Integer.parseInt(args[4]) : 100_000;
+        int connections = args.length > 5 ? Integer.parseInt(args[5]) : 32;
+        int valueBytes = args.length > 6 ? Integer.parseInt(args[6]) : 100;
+
+        List<Process> processes = startNodes(nodes);
+        Thread stopNodes = new Thread(() -> stopNodes(processes));
+        Runtime.getRuntime().addShutdownHook(stopNodes);
+
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "LoadTest", ConfigFactory.parseString(
+                "akka.actor.provider = local\n" +
+                "akka.loglevel = WARNING\n" +
+                "akka.http.host-connection-pool.max-connections = " + connections + "\n" +
+                "akka.http.host-connection-pool.max-open-requests = " + Integer.highestOneBit(connections * 2 - 1) * 2 + "\n"
+        ).withFallback(ConfigFactory.load()));
+        try {
+            Http http = Http.get(system);
+            for (int node = 0; node < nodes; node++) {
+                awaitHealthy(http, system, processes.get(node), BASE_HTTP_PORT + node);
+            }
+            String value = "v".repeat(valueBytes);
+            long start = System.nanoTime();
+            preload(http, system, nodes, keys, value);
+            System.out.printf("Loaded %,d keys in %.1f s%n", keys, (System.nanoTime() - start) / 1e9);
+
+            ZipfianGenerator keyChooser = new ZipfianGenerator(keys, theta);
+            Load warmup = new Load(http, system, keyChooser, readPercent, value);
+            warmup.run(nodes, connections, WARMUP_SECONDS);
+            Load load = new Load(http, system, keyChooser, readPercent, value);
+            load.run(nodes, connections, seconds);
+
+            System.out.printf("%n%d nodes, %d s, %d connections per node, %d%% reads, %,d keys (zipf %.2f), %d-byte values%n",
+                    nodes, seconds, connections, readPercent, keys, theta, valueBytes);
+            System.out.printf("%nLatency in microseconds%n");
+            System.out.printf("%-6s %10s | %7s %7s %7s %7s | %7s %7s %7s %7s | %8s %6s%n", "node", "ops/s",
+                    "get p50", "p99", "p99.9", "max", "put p50", "p99", "p99.9", "max", "misses", "errors");
+            Histogram allReads = new Histogram(3);
+            Histogram allWrites = new Histogram(3);
+            long allMisses = 0;
+            long allErrors = 0;
+            for (int node = 0; node < nodes; node++) {
+                Histogram reads = load.reads[node];
+                Histogram writes = load.writes[node];
+                print(String.valueOf(node + 1), reads, writes, load.misses[node].sum(), load.errors[node].sum(), seconds);
+                allReads.add(reads);
+                allWrites.add(writes);
+                allMisses += load.misses[node].sum();
+                allErrors += load.errors[node].sum();
+            }
+            print("all", allReads, allWrites, allMisses, allErrors, seconds);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+            stopNodes(processes);
+            Runtime.getRuntime().removeShutdownHook(stopNodes);
+        }
+    }
+
+    private static List<Process> startNodes(int nodes) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        File logs = new File("logs");
+        logs.mkdirs();
+        List<Process> processes = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            ProcessBuilder builder = new ProcessBuilder(java, NODE_HEAP,
+                    "-Dcluster.mode=true",
+                    "-Dakka.cluster.seed-nodes.0=akka://ClusterSystem@127.0.0.1:" + BASE_AKKA_PORT,
+                    // Per-request logging would be measured instead of the cache
+                    "-Dcache.log.level=WARN",
+                    // The nodes all stop together; there is nobody to hand buckets off to
+                    "-Dcache.handoff.transfer=off",
+                    "-cp", classpath,
+                    "ai.akka.cache.DistributedCacheApplication",
+                    String.valueOf(BASE_AKKA_PORT + node), String.valueOf(BASE_HTTP_PORT + node));
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(logs, "loadtest-node" + (node + 1) + ".log"));
+            processes.add(builder.start());
+        }
+        return processes;
+    }
+
+    private static void stopNodes(List<Process> processes) {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void awaitHealthy(Http http, ActorSystem<Void> system, Process process, int port) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Node on HTTP port " + port + " exited, see logs/");
+            }
+            try {
+                HttpResponse response = http.singleRequest(HttpRequest.GET(uri(port, "/admin/health")))
+                        .toCompletableFuture().get(5, TimeUnit.SECONDS);
+                response.discardEntityBytes(system);
+                if (response.status().isSuccess()) {
+                    return;
+                }
+            } catch (Exception e) {
+                // Not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Node on HTTP port " + port + " did not become healthy");
+    }
+
+    // Writes every key once, in _mput batches spread over the nodes. Batches are retried: right
+    // after startup the shards are still being allocated and the first writes may time out.
+    private static void preload(Http http, ActorSystem<Void> system, int nodes, int keys, String value)
+            throws Exception {
+        List<HttpRequest> batches = new ArrayList<>();
+        for (int from = 0; from < keys; from += PRELOAD_BATCH) {
+            StringBuilder json = new StringBuilder("{\"entries\":[");
+            for (int i = from; i < Math.min(keys, from + PRELOAD_BATCH); i++) {
+                json.append(i == from ? "" : ",").append("{\"key\":\"key-").append(i)
+                        .append("\",\"value\":\"").append(value).append("\"}");
+            }
+            json.append("]}");
+            batches.add(HttpRequest.POST(uri(BASE_HTTP_PORT + batches.size() % nodes, "/cache/_mput"))
+                    .withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, json.toString())));
+        }
+        for (int attempt = 1; !batches.isEmpty(); attempt++) {
+            if (attempt > PRELOAD_ATTEMPTS) {
+                throw new IllegalStateException("Preload failed: " + batches.size() + " batches not stored");
+            }
+            if (attempt > 1) {
+                Thread.sleep(1000);
+            }
+            List<HttpRequest> failed = new ArrayList<>();
+            for (int from = 0; from < batches.size(); from += nodes * 4) {
+                List<HttpRequest> window = batches.subList(from, Math.min(batches.size(), from + nodes * 4));
+                List<CompletableFuture<HttpResponse>> pending = new ArrayList<>();
+                for (HttpRequest request : window) {
+                    pending.add(http.singleRequest(request).toCompletableFuture());
+                }
+                for (int i = 0; i < window.size(); i++) {
+                    HttpResponse response = pending.get(i).get(60, TimeUnit.SECONDS);
+                    response.discardEntityBytes(system);
+                    if (!response.status().isSuccess()) {
+                        failed.add(window.get(i));
+                    }
+                }
+            }
+            batches = failed;
+        }
+    }
+
+    private static String uri(int port, String path) {
+        return "http://127.0.0.1:" + port + path;
+    }
+
+    private static void print(String node, Histogram reads, Histogram writes, long misses, long errors, int seconds) {
+        System.out.printf("%-6s %,10.0f | %7d %7d %7d %7d | %7d %7d %7d %7d | %,8d %,6d%n", node,
+                (reads.getTotalCount() + writes.getTotalCount()) / (double) seconds,
+                reads.getValueAtPercentile(50), reads.getValueAtPercentile(99),
+                reads.getValueAtPercentile(99.9), reads.getMaxValue(),
+                writes.getValueAtPercentile(50), writes.getValueAtPercentile(99),
+                writes.getValueAtPercentile(99.9), writes.getMaxValue(), misses, errors);
+    }
+
+    /** One timed phase: per node, a fixed number of connections each looping request after request. */
+    private static final class Load {
+        private final Http http;
+        private final ActorSystem<Void> system;
+        private final ZipfianGenerator keyChooser;
+        private final int readPercent;
+        private final String json;
+
+        Histogram[] reads;
+        Histogram[] writes;
+        LongAdder[] misses;
+        LongAdder[] errors;
+
+        Load(Http http, ActorSystem<Void> system, ZipfianGenerator keyChooser, int readPercent, String value) {
+            this.http = http;
+            this.system = system;
+            this.keyChooser = keyChooser;
+            this.readPercent = readPercent;
+            this.json = "{\"value\":\"" + value + "\"}";
+        }
+
+        void run(int nodes, int connections, int seconds) throws Exception {
+            Recorder[] readRecorders = new Recorder[nodes];
+            Recorder[] writeRecorders = new Recorder[nodes];
+            misses = new LongAdder[nodes];
+            errors = new LongAdder[nodes];
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            List<CompletableFuture<Void>> loops = new ArrayList<>();
+            for (int node = 0; node < nodes; node++) {
+                readRecorders[node] = new Recorder(3);
+                writeRecorders[node] = new Recorder(3);
+                misses[node] = new LongAdder();
+                errors[node] = new LongAdder();
+                for (int c = 0; c < connections; c++) {
+                    CompletableFuture<Void> done = new CompletableFuture<>();
+                    loop(node, readRecorders[node], writeRecorders[node], deadline, done);
+                    loops.add(done);
+                }
+            }
+            CompletableFuture.allOf(loops.toArray(new CompletableFuture[0])).get(seconds + 60L, TimeUnit.SECONDS);
+            reads = new Histogram[nodes];
+            writes = new Histogram[nodes];
+            for (int node = 0; node < nodes; node++) {
+                reads[node] = readRecorders[node].getIntervalHistogram();
+                writes[node] = writeRecorders[node].getIntervalHistogram();
+            }
+        }
+
+        private void loop(int node, Recorder reads, Recorder writes, long deadline, CompletableFuture<Void> done) {
+            if (System.nanoTime() >= deadline) {
+                done.complete(null);
+                return;
+            }
+            String uri = uri(BASE_HTTP_PORT + node, "/cache/key-" + keyChooser.next());
+            boolean read = ThreadLocalRandom.current().nextInt(100) < readPercent;
+            HttpRequest request = read
+                    ? HttpRequest.GET(uri)
+                    : HttpRequest.PUT(uri).withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, json));
+            long start = System.nanoTime();
+            CompletionStage<HttpResponse> response = http.singleRequest(request)
+                    .thenCompose(r -> r.entity().toStrict(10_000, system).thenApply(strict -> r));
+            // Async, so that a response completed in place does not grow the stack
+            response.whenCompleteAsync((r, failure) -> {
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                if (failure != null || !(r.status().isSuccess() || r.status().equals(StatusCodes.NOT_FOUND))) {
+                    errors[node].increment();
+                } else {
+                    (read ? reads : writes).recordValue(micros);
+                    if (r.status().equals(StatusCodes.NOT_FOUND)) {
+                        misses[node].increment();
+                    }
+                }
+                loop(node, reads, writes, deadline, done);
+            }, system.executionContext());
+        }
+    }
+}
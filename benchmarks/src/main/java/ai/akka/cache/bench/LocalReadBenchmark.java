@@ -0,0 +1,119 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import ai.akka.cache.CacheClient;
+import ai.akka.cache.CacheSettings;
+import ai.akka.cache.Consistency;
+import ai.akka.cache.DistributedCacheApplication;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.typed.ClusterShardingSettings;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import akka.util.ByteString;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single-key ONE read that hits, through {@link CacheClient}, on a one-node cluster
+ * where every bucket is local: with {@code cache.local-reads} off it asks the bucket entity
+ * through the shard region, with it on it reads the bucket's store directly.
+ *
+ * The near cache and read coalescing are off, so neither answers for the store. Each call is one
+ * sequential read, so the score is per-read latency.
+ *
+ * Usage: java -jar target/benchmarks.jar LocalReadBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalReadBenchmark {
+
+    private static final int KEYS = 4096;
+
+    @Param({"off", "on"})
+    public String localReads;
+
+    @Param({"32", "1024"})
+    public int valueBytes;
+
+    private ActorSystem<Void> system;
+    private CacheClient client;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        ((Logger) LoggerFactory.getLogger("ai.akka.cache")).setLevel(Level.WARN);
+        system = ActorSystem.create(Behaviors.empty(), "LocalReadBenchmark", ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n" +
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.cluster.seed-nodes = []\n" +
+                "akka.loglevel = WARNING\n" +
+                "cache.local-reads = " + localReads + "\n" +
+                "cache.coalesce-reads = off\n" +
+                "cache.near-cache.enabled = off\n"
+        ).withFallback(ConfigFactory.load()));
+        Cluster cluster = Cluster.get(system);
+        cluster.manager().tell(Join.create(cluster.selfMember().address()));
+        while (cluster.selfMember().status() != MemberStatus.up()) {
+            Thread.sleep(50);
+        }
+
+        CacheSettings settings = CacheSettings.create(system.settings().config());
+        DistributedCacheApplication.CacheMessageExtractor extractor =
+                new DistributedCacheApplication.CacheMessageExtractor(settings);
+        ClusterSharding sharding = ClusterSharding.get(system);
+        sharding.init(Entity.of(DistributedCacheApplication.CACHE_ENTITY_KEY,
+                        entityContext -> CacheActor.create(entityContext, settings))
+                .withMessageExtractor(extractor)
+                .withSettings(ClusterShardingSettings.create(system).withNoPassivationStrategy()));
+        client = new CacheClient(sharding, extractor, settings, system);
+
+        ByteString value = ByteString.fromString("v".repeat(valueBytes));
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "user:" + i;
+            // Starts every bucket and stores every key, so that reads hit
+            client.put(keys[i], value, 0L, Consistency.ALL).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public CacheActor.Response get() throws Exception {
+        int i = next;
+        next = (i + 1) & (KEYS - 1);
+        CacheActor.Response res = client.get(keys[i], Consistency.ONE).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        if (!(res instanceof CacheActor.Found)) {
+            throw new IllegalStateException(keys[i] + " missed: " + res);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,157 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.util.ByteString;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put throughput of one {@link CacheActor} under the logging setups a node can run with:
+ *
+ * <ul>
+ *   <li>{@code info}: the shipped level; a PUT logs nothing.</li>
+ *   <li>{@code debug-sync}: DEBUG written straight to a file appender on the actor's thread.</li>
+ *   <li>{@code debug-async}: DEBUG through an AsyncAppender in front of the same file appender,
+ *       set up like the one in logback.xml (never blocks, drops DEBUG and INFO when 80% full).</li>
+ * </ul>
+ *
+ * The cache's loggers are detached from the console for the trial and write to a temporary file,
+ * so that the terminal's speed does not decide the result.
+ *
+ * Usage: java -jar target/benchmarks.jar LoggingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final int KEYS = 4096;
+
+    @Param({"info", "debug-sync", "debug-async"})
+    public String mode;
+
+    private Path logFile;
+    private Appender<ILoggingEvent> appender;
+    private ActorSystem<Void> system;
+    private ActorRef<CacheActor.Command> cache;
+    private volatile CountDownLatch replies;
+
+    private CacheActor.Command[] puts;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        logFile = Files.createTempFile("logging-benchmark", ".log");
+        appender = appender(logFile, mode.equals("debug-async"));
+        Logger cacheLogger = (Logger) LoggerFactory.getLogger("ai.akka.cache");
+        cacheLogger.detachAndStopAllAppenders();
+        cacheLogger.addAppender(appender);
+        cacheLogger.setAdditive(false);
+        cacheLogger.setLevel(mode.equals("info") ? Level.INFO : Level.DEBUG);
+
+        system = ActorSystem.create(Behaviors.empty(), "LoggingBenchmark", ConfigFactory.parseString(
+                "akka.actor.provider = local\n" +
+                "akka.loglevel = WARNING\n"
+        ).withFallback(ConfigFactory.load()));
+        cache = system.systemActorOf(CacheActor.create(), "cache", Props.empty());
+        ActorRef<CacheActor.Response> replyTo = system.systemActorOf(countReplies(), "replyTo", Props.empty());
+
+        ByteString value = ByteString.fromString("v".repeat(256));
+        puts = new CacheActor.Command[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            puts[i] = new CacheActor.Put("user:" + i, value, replyTo);
+        }
+        sendAll(KEYS);
+    }
+
+    private static Appender<ILoggingEvent> appender(Path file, boolean async) {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+        encoder.start();
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(context);
+        fileAppender.setFile(file.toString());
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+        if (!async) {
+            return fileAppender;
+        }
+        AsyncAppender asyncAppender = new AsyncAppender();
+        asyncAppender.setContext(context);
+        asyncAppender.setQueueSize(8192);
+        asyncAppender.setNeverBlock(true);
+        asyncAppender.addAppender(fileAppender);
+        asyncAppender.start();
+        return asyncAppender;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        system.terminate();
+        appender.stop();
+        Files.deleteIfExists(logFile);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void put() throws InterruptedException {
+        sendAll(BATCH);
+    }
+
+    private void sendAll(int count) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(count);
+        replies = latch;
+        for (int i = 0; i < count; i++) {
+            cache.tell(puts[next]);
+            next = (next + 1) & (KEYS - 1);
+        }
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Missing replies: " + latch.getCount());
+        }
+    }
+
+    private Behavior<CacheActor.Response> countReplies() {
+        return Behaviors.receiveMessage(response -> {
+            replies.countDown();
+            return Behaviors.same();
+        });
+    }
+}
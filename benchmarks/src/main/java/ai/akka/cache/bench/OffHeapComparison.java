@@ -0,0 +1,185 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheStore;
+import ai.akka.cache.EvictionPolicy;
+import ai.akka.cache.OffHeapArena;
+import akka.util.ByteString;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap footprint and GC pauses of bucket stores keeping their values on the heap versus in an
+ * {@link OffHeapArena}.
+ *
+ * For each mode it fills 1024 {@link CacheStore}s, as many as a node's default buckets, with the
+ * same keys and values, reports the retained heap after a full GC and the direct memory taken,
+ * then overwrites random keys with fresh values for the given number of seconds while reading
+ * others, and reports the collections and pauses that churn caused. The stores are driven
+ * directly, without actors, so only the storage differs between the runs.
+ *
+ * Usage: OffHeapComparison [keys] [value-bytes] [seconds]
+ *        (run with a fixed heap and enough direct memory, e.g. -Xms8g -Xmx8g -XX:MaxDirectMemorySize=8g -XX:+UseG1GC)
+ */
+public class OffHeapComparison {
+
+    private static final int BUCKETS = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int valueBytes = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        System.out.printf("%,d keys with %d-byte values, %ds of churn per mode%n%n", keys, valueBytes, seconds);
+        Result onHeap = measure("on-heap", null, keys, valueBytes, seconds);
+        long maxBytes = (long) keys * (valueBytes + 256) + (64L << 20);
+        Result offHeap = measure("off-heap", new OffHeapArena(true, maxBytes, 1 << 20, 256), keys, valueBytes, seconds);
+
+        System.out.println();
+        System.out.printf("%-9s %14s %14s %10s %12s %12s %12s%n",
+                "mode", "retained heap", "direct", "GCs", "GC time ms", "max pause", "full GC ms");
+        onHeap.print();
+        offHeap.print();
+    }
+
+    private static Result measure(String mode, OffHeapArena arena, int keys, int valueBytes, int seconds) {
+        CacheStore[] stores = new CacheStore[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            stores[b] = new CacheStore(keys / BUCKETS + 1, EvictionPolicy.Kind.W_TINYLFU, 1000, arena);
+        }
+        long baseline = retainedHeap();
+        for (int i = 0; i < keys; i++) {
+            String key = "key:" + i;
+            store(stores, key).put(key, randomValue(valueBytes));
+        }
+        long fullGcStart = System.nanoTime();
+        long retained = retainedHeap() - baseline;
+        long fullGcMillis = (System.nanoTime() - fullGcStart) / 1_000_000 / 3;
+        System.out.printf("%s: %,d bytes retained (%,d/key)%n", mode, retained, retained / keys);
+
+        PauseRecorder pauses = new PauseRecorder();
+        long collectionsBefore = collections();
+        long gcMillisBefore = collectionMillis();
+        long reads = 0;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1000; i++) {
+                String key = "key:" + random.nextInt(keys);
+                if (i % 4 == 0) {
+                    store(stores, key).put(key, randomValue(valueBytes));
+                } else if (store(stores, key).get(key) != null) {
+                    reads++;
+                }
+            }
+        }
+        pauses.close();
+        Result result = new Result(mode, retained, arena == null ? 0L : arena.reservedBytes(),
+                collections() - collectionsBefore, collectionMillis() - gcMillisBefore, pauses.max.get(), fullGcMillis);
+        System.out.printf("%s: %,d reads during churn%n", mode, reads);
+        for (CacheStore store : stores) {
+            store.clear();
+        }
+        return result;
+    }
+
+    private static CacheStore store(CacheStore[] stores, String key) {
+        return stores[(key.hashCode() & 0x7fffffff) % BUCKETS];
+    }
+
+    private static ByteString randomValue(int bytes) {
+        byte[] value = new byte[bytes];
+        ThreadLocalRandom.current().nextBytes(value);
+        return ByteString.fromArrayUnsafe(value);
+    }
+
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    // Longest single collection reported while open
+    private static final class PauseRecorder {
+        final AtomicLong max = new AtomicLong();
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+        private final NotificationListener listener = (notification, handback) -> {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                max.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+            }
+        };
+
+        PauseRecorder() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter) {
+                    ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+                    emitters.add((NotificationEmitter) gc);
+                }
+            }
+        }
+
+        void close() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(listener);
+                } catch (Exception ignored) {
+                    // Already gone
+                }
+            }
+        }
+    }
+
+    private static final class Result {
+        final String mode;
+        final long retained;
+        final long direct;
+        final long collections;
+        final long gcMillis;
+        final long maxPauseMillis;
+        final long fullGcMillis;
+
+        Result(String mode, long retained, long direct, long collections, long gcMillis, long maxPauseMillis,
+               long fullGcMillis) {
+            this.mode = mode;
+            this.retained = retained;
+            this.direct = direct;
+            this.collections = collections;
+            this.gcMillis = gcMillis;
+            this.maxPauseMillis = maxPauseMillis;
+            this.fullGcMillis = fullGcMillis;
+        }
+
+        void print() {
+            System.out.printf("%-9s %,14d %,14d %,10d %,12d %10d ms %9d ms%n",
+                    mode, retained, direct, collections, gcMillis, maxPauseMillis, fullGcMillis);
+        }
+    }
+}
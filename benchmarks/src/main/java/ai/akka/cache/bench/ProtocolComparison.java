@@ -0,0 +1,342 @@
+package ai.akka.cache.bench;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GET latency and throughput of one cache node through its three client protocols: the JSON route
+ * over HTTP/1.1, the same route over HTTP/2 (h2c, one multiplexed connection), and the memcached
+ * text protocol, one command per round trip and pipelined.
+ *
+ * Starts a single node as a separate JVM running {@code DistributedCacheApplication} with
+ * {@code cache.text-protocol} on (Akka port 2551, HTTP 8080, text 11211), stores every key through
+ * the text protocol, then runs each mode for the given number of seconds after a warmup: a closed
+ * loop per connection, uniformly random keys, every read a hit. A pipelined round trip sends
+ * {@code depth} gets before reading the answers and records its latency once per get. The node's
+ * output goes to {@code logs/protocols-node.log}; run from the shaded jar, like LoadTest.
+ *
+ * Usage: ProtocolComparison [seconds] [connections] [pipeline-depth] [keys] [value-bytes]
+ */
+public class ProtocolComparison {
+
+    private static final int AKKA_PORT = 2551;
+    private static final int HTTP_PORT = 8080;
+    private static final int TEXT_PORT = 11211;
+    private static final int WARMUP_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int keys = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        int valueBytes = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        Process node = startNode();
+        Thread stopNode = new Thread(node::destroy);
+        Runtime.getRuntime().addShutdownHook(stopNode);
+        try {
+            awaitText(node);
+            preload(keys, valueBytes);
+
+            HttpClient http1 = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpClient http2 = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+            List<Mode> modes = List.of(
+                    new Mode("http/1.1 json", connections, () -> new HttpGets(http1, keys)),
+                    new Mode("http/2 json", connections, () -> new HttpGets(http2, keys)),
+                    new Mode("text", connections, () -> new TextGets(keys, 1)),
+                    new Mode("text x" + depth, connections, () -> new TextGets(keys, depth)));
+            for (Mode mode : modes) {
+                mode.run(WARMUP_SECONDS);
+                mode.run(seconds);
+                System.out.printf("%s done%n", mode.name);
+            }
+
+            System.out.printf("%n1 node, %d s per mode, %d connections, %,d keys, %d-byte values%n",
+                    seconds, connections, keys, valueBytes);
+            System.out.printf("%nLatency in microseconds%n");
+            System.out.printf("%-15s %12s | %7s %7s %7s %7s | %6s%n",
+                    "mode", "gets/s", "p50", "p99", "p99.9", "max", "errors");
+            for (Mode mode : modes) {
+                Histogram latency = mode.latency;
+                System.out.printf("%-15s %,12.0f | %7d %7d %7d %7d | %,6d%n", mode.name,
+                        latency.getTotalCount() / (double) seconds, latency.getValueAtPercentile(50),
+                        latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9),
+                        latency.getMaxValue(), mode.errors.sum());
+            }
+        } finally {
+            node.destroy();
+            node.waitFor(60, TimeUnit.SECONDS);
+            Runtime.getRuntime().removeShutdownHook(stopNode);
+        }
+    }
+
+    private static Process startNode() throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        File logs = new File("logs");
+        logs.mkdirs();
+        ProcessBuilder builder = new ProcessBuilder(java, "-Xmx1g",
+                "-Dcluster.mode=true",
+                "-Dakka.cluster.seed-nodes.0=akka://ClusterSystem@127.0.0.1:" + AKKA_PORT,
+                "-Dcache.log.level=WARN",
+                "-Dcache.handoff.transfer=off",
+                "-Dcache.text-protocol.enabled=on",
+                "-cp", System.getProperty("java.class.path"),
+                "ai.akka.cache.DistributedCacheApplication",
+                String.valueOf(AKKA_PORT), String.valueOf(HTTP_PORT), String.valueOf(TEXT_PORT));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(logs, "protocols-node.log"));
+        return builder.start();
+    }
+
+    private static void awaitText(Process node) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (true) {
+            if (!node.isAlive()) {
+                throw new IllegalStateException("Node exited with " + node.exitValue() + ", see logs/protocols-node.log");
+            }
+            try (TextConnection connection = new TextConnection()) {
+                connection.send("version\r\n");
+                connection.readLine();
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Node did not open its text port", e);
+                }
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    // Pipelined sets, retried while the node's shards are still starting
+    private static void preload(int keys, int valueBytes) throws Exception {
+        String value = "v".repeat(valueBytes);
+        try (TextConnection connection = new TextConnection()) {
+            for (int from = 0; from < keys; from += 100) {
+                int to = Math.min(keys, from + 100);
+                for (int attempt = 1; ; attempt++) {
+                    StringBuilder sets = new StringBuilder();
+                    for (int i = from; i < to; i++) {
+                        sets.append("set key-").append(i).append(" 0 0 ").append(valueBytes).append("\r\n")
+                                .append(value).append("\r\n");
+                    }
+                    connection.send(sets.toString());
+                    boolean stored = true;
+                    for (int i = from; i < to; i++) {
+                        stored &= connection.readLine().equals("STORED");
+                    }
+                    if (stored) {
+                        break;
+                    }
+                    if (attempt == 10) {
+                        throw new IllegalStateException("Preload failed at key-" + from);
+                    }
+                    Thread.sleep(1000);
+                }
+            }
+        }
+    }
+
+    private interface Gets extends AutoCloseable {
+        // Performs one round trip of gets and returns how many hit
+        int roundTrip() throws Exception;
+
+        int size();
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    private interface GetsFactory {
+        Gets open() throws IOException;
+    }
+
+    private static final class HttpGets implements Gets {
+        private final HttpClient client;
+        private final int keys;
+
+        HttpGets(HttpClient client, int keys) {
+            this.client = client;
+            this.keys = keys;
+        }
+
+        @Override
+        public int roundTrip() throws Exception {
+            URI uri = URI.create("http://127.0.0.1:" + HTTP_PORT + "/cache/key-" + ThreadLocalRandom.current().nextInt(keys));
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(10)).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            return response.statusCode() == 200 ? 1 : 0;
+        }
+
+        @Override
+        public int size() {
+            return 1;
+        }
+    }
+
+    private static final class TextGets implements Gets {
+        private final TextConnection connection;
+        private final int keys;
+        private final int depth;
+
+        TextGets(int keys, int depth) throws IOException {
+            this.connection = new TextConnection();
+            this.keys = keys;
+            this.depth = depth;
+        }
+
+        @Override
+        public int roundTrip() throws IOException {
+            StringBuilder gets = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                gets.append("get key-").append(ThreadLocalRandom.current().nextInt(keys)).append("\r\n");
+            }
+            connection.send(gets.toString());
+            int hits = 0;
+            for (int i = 0; i < depth; i++) {
+                String line = connection.readLine();
+                if (line.startsWith("VALUE ")) {
+                    connection.skip(Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1)) + 2);
+                    line = connection.readLine();
+                    hits++;
+                }
+                if (!line.equals("END")) {
+                    throw new IOException("Unexpected answer: " + line);
+                }
+            }
+            return hits;
+        }
+
+        @Override
+        public int size() {
+            return depth;
+        }
+
+        @Override
+        public void close() throws IOException {
+            connection.close();
+        }
+    }
+
+    private static final class TextConnection implements AutoCloseable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        TextConnection() throws IOException {
+            socket = new Socket("127.0.0.1", TEXT_PORT);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+            out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        }
+
+        void send(String commands) throws IOException {
+            out.write(commands.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new EOFException("Connection closed");
+                }
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return line.toString(StandardCharsets.UTF_8);
+        }
+
+        void skip(int bytes) throws IOException {
+            while (bytes > 0) {
+                long skipped = in.skip(bytes);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException("Connection closed");
+                    }
+                    skipped = 1;
+                }
+                bytes -= skipped;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /** One protocol, driven by `connections` threads each looping round trip after round trip. */
+    private static final class Mode {
+        final String name;
+        final int connections;
+        final GetsFactory factory;
+        Histogram latency;
+        LongAdder errors;
+
+        Mode(String name, int connections, GetsFactory factory) {
+            this.name = name;
+            this.connections = connections;
+            this.factory = factory;
+        }
+
+        void run(int seconds) throws Exception {
+            Recorder recorder = new Recorder(3);
+            LongAdder failures = new LongAdder();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < connections; c++) {
+                Thread thread = new Thread(() -> {
+                    try (Gets gets = factory.open()) {
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            int hits;
+                            try {
+                                hits = gets.roundTrip();
+                            } catch (IOException e) {
+                                failures.increment();
+                                return;
+                            }
+                            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                            recorder.recordValueWithCount(micros, hits);
+                            failures.add(gets.size() - hits);
+                        }
+                    } catch (Exception e) {
+                        failures.increment();
+                    }
+                }, "protocol-" + c);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            latency = recorder.getIntervalHistogram();
+            errors = failures;
+        }
+    }
+}
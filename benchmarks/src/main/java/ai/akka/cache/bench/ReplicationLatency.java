@@ -0,0 +1,155 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import ai.akka.cache.CacheClient;
+import ai.akka.cache.CacheSettings;
+import ai.akka.cache.Consistency;
+import ai.akka.cache.DistributedCacheApplication;
+import ai.akka.cache.ReplicaAllocationStrategy;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.typed.Cluster;
+import akka.util.ByteString;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put and get latency at each consistency level on a three-node cluster in one JVM.
+ *
+ * Boots three ActorSystems on loopback with replication-factor 3 and the replica allocation
+ * strategy, then runs sequential requests from the first node so every number is one
+ * round trip. Loopback hides network cost, so the table shows the extra waiting that QUORUM
+ * and ALL add on top of ONE, not real cross-host latency.
+ *
+ * Usage: ReplicationLatency [requests-per-level] [value-bytes]
+ */
+public class ReplicationLatency {
+
+    private static final int NODES = 3;
+    private static final int BASE_PORT = 25571;
+    private static final int KEYS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int valueBytes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        // The entities log every request, which would otherwise dominate the timings
+        ((Logger) LoggerFactory.getLogger("ai.akka.cache")).setLevel(Level.WARN);
+
+        List<ActorSystem<Void>> nodes = new ArrayList<>();
+        try {
+            for (int i = 0; i < NODES; i++) {
+                nodes.add(startNode(BASE_PORT + i));
+            }
+            awaitMembersUp(nodes.get(0));
+
+            ActorSystem<Void> system = nodes.get(0);
+            CacheSettings settings = CacheSettings.create(system.settings().config());
+            CacheClient client = new CacheClient(ClusterSharding.get(system),
+                    new DistributedCacheApplication.CacheMessageExtractor(settings), settings, system);
+            ByteString value = ByteString.fromString("v".repeat(valueBytes));
+
+            // Starts every bucket's replicas and lets the allocation strategy settle
+            for (int i = 0; i < KEYS; i++) {
+                client.put("key-" + i, value, 0, Consistency.ALL).toCompletableFuture().get(30, TimeUnit.SECONDS);
+            }
+            for (Consistency consistency : Consistency.values()) {
+                run(client, consistency, value, requests / 4);
+            }
+
+            System.out.printf("%d nodes, %d replicas, %,d requests per level, %d-byte values (microseconds)%n%n",
+                    NODES, settings.replicationFactor, requests, valueBytes);
+            System.out.printf("%-8s %-4s %8s %8s %8s %8s%n", "level", "op", "p50", "p90", "p99", "max");
+            for (Consistency consistency : Consistency.values()) {
+                long[][] latencies = run(client, consistency, value, requests);
+                print(consistency, "put", latencies[0]);
+                print(consistency, "get", latencies[1]);
+            }
+            System.out.printf("%nRead repairs: %,d%n", client.readRepairs());
+        } finally {
+            for (ActorSystem<Void> node : nodes) {
+                node.terminate();
+            }
+            for (ActorSystem<Void> node : nodes) {
+                node.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static ActorSystem<Void> startNode(int port) {
+        Config config = ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n" +
+                "akka.remote.artery.canonical.port = " + port + "\n" +
+                "akka.cluster.seed-nodes = [\"akka://ReplicationSystem@127.0.0.1:" + BASE_PORT + "\"]\n" +
+                "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n" +
+                "akka.loglevel = WARNING\n" +
+                "cache.replication-factor = " + NODES + "\n"
+        ).withFallback(ConfigFactory.load());
+
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "ReplicationSystem", config);
+        CacheSettings settings = CacheSettings.create(system.settings().config());
+        ClusterSharding.get(system).init(Entity.of(DistributedCacheApplication.CACHE_ENTITY_KEY,
+                        entityContext -> CacheActor.create(entityContext, settings))
+                .withMessageExtractor(new DistributedCacheApplication.CacheMessageExtractor(settings))
+                .withAllocationStrategy(new ReplicaAllocationStrategy(
+                        settings.rebalanceAbsoluteLimit, settings.rebalanceRelativeLimit)));
+        return system;
+    }
+
+    private static void awaitMembersUp(ActorSystem<Void> system) throws InterruptedException {
+        Cluster cluster = Cluster.get(system);
+        while (true) {
+            int up = 0;
+            for (Member member : cluster.state().getMembers()) {
+                if (member.status() == MemberStatus.up()) {
+                    up++;
+                }
+            }
+            if (up == NODES) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    // Sequential puts, then sequential gets of the same keys; nanosecond latencies per request
+    private static long[][] run(CacheClient client, Consistency consistency, ByteString value, int requests)
+            throws Exception {
+        long[] puts = new long[requests];
+        long[] gets = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            client.put("key-" + (i % KEYS), value, 0, consistency).toCompletableFuture().get(30, TimeUnit.SECONDS);
+            puts[i] = System.nanoTime() - start;
+        }
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            client.get("key-" + (i % KEYS), consistency).toCompletableFuture().get(30, TimeUnit.SECONDS);
+            gets[i] = System.nanoTime() - start;
+        }
+        return new long[][]{puts, gets};
+    }
+
+    private static void print(Consistency consistency, String op, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-8s %-4s %8d %8d %8d %8d%n", consistency, op,
+                micros(latencies, 0.50), micros(latencies, 0.90), micros(latencies, 0.99),
+                TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length - 1]));
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1);
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+    }
+}
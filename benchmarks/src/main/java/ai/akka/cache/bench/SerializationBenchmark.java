@@ -0,0 +1,199 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheActor;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import akka.util.ByteString;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize / deserialize cost of the cache protocol under each candidate serializer.
+ *
+ * Each trial boots an ActorSystem whose cache protocol bindings point at the serializer under
+ * test and goes through the Serialization extension, so the numbers include exactly what
+ * Artery pays per message. Run {@link #main} for the bytes-on-wire table.
+ *
+ * Usage: java -jar target/benchmarks.jar SerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final String[] SERIALIZERS = {"cache", "java", "jackson-json", "jackson-cbor"};
+
+    @Param({"cache", "java", "jackson-json", "jackson-cbor"})
+    public String serializer;
+
+    @Param({"32", "1024"})
+    public int valueBytes;
+
+    private ActorSystem<Void> system;
+    private Serialization serialization;
+
+    private Message get;
+    private Message put;
+    private Message found;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        system = ActorSystem.create(Behaviors.empty(), "SerializationBenchmark", config(serializer));
+        serialization = SerializationExtension.get(Adapter.toClassic(system));
+
+        ActorRef<CacheActor.Response> replyTo =
+                system.systemActorOf(Behaviors.<CacheActor.Response>ignore(), "replyTo", Props.empty());
+        ByteString value = ByteString.fromString("v".repeat(valueBytes));
+        get = new Message(serialization, new CacheActor.Get("user:12345", replyTo));
+        put = new Message(serialization, new CacheActor.Put("user:12345", value, 60_000, replyTo));
+        found = new Message(serialization, new CacheActor.Found(value));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public byte[] serializeGet() {
+        return serialization.serialize(get.message).get();
+    }
+
+    @Benchmark
+    public Object deserializeGet() {
+        return get.deserialize(serialization);
+    }
+
+    @Benchmark
+    public byte[] serializePut() {
+        return serialization.serialize(put.message).get();
+    }
+
+    @Benchmark
+    public Object deserializePut() {
+        return put.deserialize(serialization);
+    }
+
+    @Benchmark
+    public byte[] serializeFound() {
+        return serialization.serialize(found.message).get();
+    }
+
+    @Benchmark
+    public Object deserializeFound() {
+        return found.deserialize(serialization);
+    }
+
+    /**
+     * Prints the serialized size of every protocol message under each serializer.
+     *
+     * Usage: SerializationBenchmark [value-bytes]
+     */
+    public static void main(String[] args) {
+        int valueBytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        ByteString value = ByteString.fromString("v".repeat(valueBytes));
+        int[][] sizes = new int[6][SERIALIZERS.length];
+        String[] names = new String[6];
+
+        for (int s = 0; s < SERIALIZERS.length; s++) {
+            ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "SerializationBenchmark", config(SERIALIZERS[s]));
+            try {
+                Serialization serialization = SerializationExtension.get(Adapter.toClassic(system));
+                ActorRef<CacheActor.Response> replyTo =
+                        system.systemActorOf(Behaviors.<CacheActor.Response>ignore(), "replyTo", Props.empty());
+                Object[] messages = {
+                        new CacheActor.Get("user:12345", replyTo),
+                        new CacheActor.Put("user:12345", value, 60_000, replyTo),
+                        new CacheActor.Delete("user:12345", replyTo),
+                        new CacheActor.Found(value),
+                        new CacheActor.NotFound(),
+                        new CacheActor.Done()
+                };
+                for (int m = 0; m < messages.length; m++) {
+                    names[m] = messages[m].getClass().getSimpleName();
+                    sizes[m][s] = new Message(serialization, messages[m]).bytes.length;
+                }
+            } finally {
+                system.terminate();
+                system.getWhenTerminated().toCompletableFuture().join();
+            }
+        }
+
+        System.out.printf("Bytes on wire (%d-byte values, manifest excluded)%n%n", valueBytes);
+        System.out.printf("%-10s", "message");
+        for (String name : SERIALIZERS) {
+            System.out.printf(" %13s", name);
+        }
+        System.out.println();
+        for (int m = 0; m < names.length; m++) {
+            System.out.printf("%-10s", names[m]);
+            for (int s = 0; s < SERIALIZERS.length; s++) {
+                System.out.printf(" %,13d", sizes[m][s]);
+            }
+            System.out.println();
+        }
+    }
+
+    private static Config config(String serializer) {
+        // Remote addressing gives ActorRefs their real wire form; no cluster is needed.
+        // Java serialization and Jackson are enabled here only so they can be measured.
+        return ConfigFactory.parseString(
+                "akka.actor.provider = remote\n" +
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.remote.warn-about-direct-use = off\n" +
+                "akka.loglevel = WARNING\n" +
+                "akka.actor.allow-java-serialization = on\n" +
+                "akka.actor.warn-about-java-serializer-usage = off\n" +
+                "akka.serialization.jackson.jackson-modules += \"ai.akka.cache.bench.ByteStringJacksonModule\"\n" +
+                "akka.actor.serialization-bindings {\n" +
+                "  \"ai.akka.cache.CacheActor$Command\" = " + serializer + "\n" +
+                "  \"ai.akka.cache.CacheActor$Response\" = " + serializer + "\n" +
+                "}\n"
+        ).withFallback(ConfigFactory.load()).resolve();
+    }
+
+    /** A message with its serializer id, manifest and wire form, captured once per trial. */
+    private static final class Message {
+        final Object message;
+        final int serializerId;
+        final String manifest;
+        final byte[] bytes;
+
+        Message(Serialization serialization, Object message) {
+            Serializer serializer = serialization.findSerializerFor(message);
+            this.message = message;
+            this.serializerId = serializer.identifier();
+            this.manifest = Serializers.manifestFor(serializer, message);
+            this.bytes = serialization.serialize(message).get();
+        }
+
+        Object deserialize(Serialization serialization) {
+            return serialization.deserialize(bytes, serializerId, manifest).get();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ai.akka.cache.bench;
+
+import ai.akka.cache.CacheSnapshots;
+import ai.akka.cache.CacheStore;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.util.ByteString;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write and load throughput of warm-restart snapshots.
+ *
+ * Fills bucket stores the way a node would hold them, writes every bucket's snapshot file and
+ * loads them back into empty stores, reporting keys per second for both directions. The files
+ * go to a temporary directory, so the numbers include the page cache but not a cold disk.
+ *
+ * Usage: SnapshotThroughput [keys] [value-bytes] [buckets]
+ */
+public class SnapshotThroughput {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int valueBytes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int buckets = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+        Path dir = Files.createTempDirectory("cache-snapshots");
+        Config config = ConfigFactory.parseString(
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.cluster.seed-nodes = []\n" +
+                "akka.loglevel = WARNING\n" +
+                "cache.snapshot.enabled = on\n" +
+                "cache.snapshot.dir = \"" + dir.toString().replace("\\", "/") + "\"\n"
+        ).withFallback(ConfigFactory.load());
+
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "SnapshotSystem", config);
+        try {
+            CacheSnapshots snapshots = CacheSnapshots.get(system);
+            CacheStore[] stores = new CacheStore[buckets];
+            for (int b = 0; b < buckets; b++) {
+                stores[b] = new CacheStore();
+            }
+            for (int i = 0; i < keys; i++) {
+                byte[] value = new byte[valueBytes];
+                value[0] = (byte) i;
+                stores[i % buckets].put("key-" + i, ByteString.fromArrayUnsafe(value));
+            }
+
+            System.out.printf("%,d keys with %d-byte values in %,d buckets, %d rounds%n%n",
+                    keys, valueBytes, buckets, ROUNDS);
+            System.out.printf("%-6s %10s %14s %10s%n", "round", "op", "keys/s", "MB/s");
+            long bytes = (long) keys * (valueBytes + 10);
+            for (int round = 1; round <= ROUNDS; round++) {
+                long now = System.currentTimeMillis();
+                long start = System.nanoTime();
+                for (int b = 0; b < buckets; b++) {
+                    snapshots.write(String.valueOf(b), stores[b], now);
+                }
+                print(round, "write", keys, bytes, System.nanoTime() - start);
+
+                CacheStore[] loaded = new CacheStore[buckets];
+                int total = 0;
+                start = System.nanoTime();
+                for (int b = 0; b < buckets; b++) {
+                    loaded[b] = new CacheStore();
+                    total += snapshots.load(String.valueOf(b), loaded[b], now);
+                }
+                print(round, "load", total, bytes, System.nanoTime() - start);
+            }
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+            // Loading deletes the files, which leaves the two directories
+            Files.deleteIfExists(CacheSnapshots.get(system).dir());
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void print(int round, String op, int keys, long bytes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-6d %10s %,14.0f %10.1f%n", round, op, keys / seconds, bytes / seconds / (1 << 20));
+    }
+}
@@ -0,0 +1,58 @@
+package ai.akka.cache.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf-distributed ranks in {@code [0, items)}: rank 0 is the most popular, and the popularity of
+ * rank {@code i} falls off as {@code 1 / (i + 1)^theta}.
+ *
+ * Uses the constant-time method of Gray et al., "Quickly Generating Billion-Record Synthetic
+ * Databases" (SIGMOD 1994), as YCSB does; only the constructor is linear in {@code items}.
+ * {@code theta = 0} gives a uniform distribution. Safe for concurrent use.
+ */
+public final class ZipfianGenerator {
+
+    private final long items;
+    private final double theta;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+
+    public ZipfianGenerator(long items, double theta) {
+        if (items < 1) {
+            throw new IllegalArgumentException("items must be > 0");
+        }
+        if (theta < 0 || theta == 1.0) {
+            throw new IllegalArgumentException("theta must be >= 0 and != 1");
+        }
+        this.items = items;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetan = zeta(items, theta);
+        double zeta2 = zeta(2, theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+    }
+
+    public long next() {
+        if (theta == 0 || items == 1) {
+            return ThreadLocalRandom.current().nextLong(items);
+        }
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1.0 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,137 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load shedding for the asks this node sends to cache entities.
+ *
+ * With {@code cache.admission.enabled}, every ask {@link CacheClient} sends takes a slot of the
+ * node's {@link ConcurrencyLimit} and one of the target shard's, and gives both back with its
+ * latency when it is answered or times out. An ask that finds either limit reached is not sent
+ * and fails at once with an {@link OverloadedException}, which the routes answer with
+ * 503 and {@code Retry-After}. The limits adapt to the latency the entities answer with: when
+ * mailboxes start to queue, they shrink until what is admitted is answered quickly again, so
+ * admitted requests keep a bounded latency during a spike while the excess is turned away in
+ * microseconds instead of waiting out its timeout. A hot shard is throttled on its own without
+ * holding back the others.
+ */
+public final class AdmissionControl implements Extension {
+
+    public static final ExtensionId<AdmissionControl> ID = new ExtensionId<AdmissionControl>() {
+        @Override
+        public AdmissionControl createExtension(ActorSystem<?> system) {
+            return new AdmissionControl(CacheSettings.create(system.settings().config()));
+        }
+    };
+
+    public static AdmissionControl get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private final boolean enabled;
+    private final CacheSettings settings;
+    private final ConcurrencyLimit node;
+    private final Map<String, ConcurrencyLimit> shards = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    private AdmissionControl(CacheSettings settings) {
+        this.enabled = settings.admissionEnabled;
+        this.settings = settings;
+        this.node = newLimit(settings.admissionNodeInitialLimit, settings.admissionNodeMinLimit,
+                settings.admissionNodeMaxLimit);
+    }
+
+    private ConcurrencyLimit newLimit(int initial, int min, int max) {
+        return new ConcurrencyLimit(initial, min, max, settings.admissionBackoff, settings.admissionLatencyTolerance,
+                settings.admissionMinLatency.toNanos());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a slot of the node's limit and the shard's; returns the shard's limit, to hand back to
+     * {@link #release}, or null if either is full and the ask must not be sent.
+     */
+    ConcurrencyLimit acquire(String shardId) {
+        ConcurrencyLimit shard = shards.get(shardId);
+        if (shard == null) {
+            shard = shards.computeIfAbsent(shardId, id -> newLimit(settings.admissionShardInitialLimit,
+                    settings.admissionShardMinLimit, settings.admissionShardMaxLimit));
+        }
+        if (!node.tryAcquire()) {
+            rejected.increment();
+            return null;
+        }
+        if (!shard.tryAcquire()) {
+            node.release();
+            rejected.increment();
+            return null;
+        }
+        return shard;
+    }
+
+    /**
+     * Returns the slots of an ask sent at {@code startNanos}; {@code failure} is null if it was answered.
+     */
+    void release(ConcurrencyLimit shard, long startNanos, Throwable failure) {
+        long latency = System.nanoTime() - startNanos;
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        boolean timedOut = failure instanceof TimeoutException;
+        node.release(latency, timedOut);
+        shard.release(latency, timedOut);
+    }
+
+    /**
+     * True if the node's limit has a free slot, for requests that fan out into many asks and are
+     * better refused whole than half answered.
+     */
+    public boolean hasCapacity() {
+        return !enabled || node.inFlight() < node.limit();
+    }
+
+    /**
+     * Suggested wait before retrying a refused request.
+     */
+    public Duration retryAfter() {
+        return settings.admissionRetryAfter;
+    }
+
+    public int nodeLimit() {
+        return node.limit();
+    }
+
+    public int inFlight() {
+        return node.inFlight();
+    }
+
+    /**
+     * Asks not sent because a limit was reached.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * The lowest limit among the shards this node has asked, or the node's if none.
+     */
+    public int minShardLimit() {
+        int min = node.limit();
+        for (ConcurrencyLimit shard : shards.values()) {
+            min = Math.min(min, shard.limit());
+        }
+        return min;
+    }
+}
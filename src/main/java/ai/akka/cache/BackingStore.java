@@ -0,0 +1,190 @@
+package ai.akka.cache;
+
+import akka.Done;
+import akka.actor.CoordinatedShutdown;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.util.ByteString;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The node's {@link CacheLoader} and {@link CacheWriter}, if configured, used by the cache
+ * entities for read-through and write-behind.
+ *
+ * Writes queued for the writer are kept in a map of unflushed values, the last one per key, until
+ * {@link WriteBehind} has written them; a load of a key with an unflushed value answers with that
+ * value instead of asking the loader, so a key deleted or rewritten here is not loaded back from
+ * the origin before the write reached it. The queue is drained during coordinated shutdown.
+ */
+public final class BackingStore implements Extension {
+
+    public static final ExtensionId<BackingStore> ID = new ExtensionId<BackingStore>() {
+        @Override
+        public BackingStore createExtension(ActorSystem<?> system) {
+            return new BackingStore(system, CacheSettings.create(system.settings().config()));
+        }
+    };
+
+    public static BackingStore get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(5);
+
+    private final CacheLoader loader;
+    private final CacheWriter writer;
+    private final long loadTimeoutMillis;
+    // Origin values are as written; the cache and the write-behind queue hold them as stored
+    private final ValueCompression compression;
+    // Null without a writer
+    private final ActorRef<WriteBehind.Command> writeBehind;
+    private final Map<String, Optional<ByteString>> unflushed = new ConcurrentHashMap<>();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder coalescedWrites = new LongAdder();
+    private final LongAdder flushedWrites = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    private BackingStore(ActorSystem<?> system, CacheSettings settings) {
+        this.loader = settings.readThroughLoader.isEmpty()
+                ? null : create(settings.readThroughLoader, CacheLoader.class, system, null);
+        this.writer = settings.writeBehindWriter.isEmpty()
+                ? null : create(settings.writeBehindWriter, CacheWriter.class, system, loader);
+        this.loadTimeoutMillis = settings.readThroughTimeout.toMillis();
+        this.compression = ValueCompression.get(system);
+        if (writer != null) {
+            this.writeBehind = system.systemActorOf(WriteBehind.create(this, writer,
+                    settings.writeBehindFlushInterval, settings.writeBehindBatchSize), "writeBehind", Props.empty());
+            CoordinatedShutdown.get(system).addTask(CoordinatedShutdown.PhaseBeforeActorSystemTerminate(),
+                    "cache-write-behind-drain", () -> AskPattern.<WriteBehind.Command, Done>ask(
+                            writeBehind, WriteBehind.Drain::new, DRAIN_TIMEOUT, system.scheduler()));
+        } else {
+            this.writeBehind = null;
+        }
+    }
+
+    // Instantiates the configured class, reusing `shared` if it already is one
+    private static <T> T create(String className, Class<T> type, ActorSystem<?> system, Object shared) {
+        if (shared != null && shared.getClass().getName().equals(className) && type.isInstance(shared)) {
+            return type.cast(shared);
+        }
+        try {
+            Class<? extends T> implementation = Class.forName(className).asSubclass(type);
+            try {
+                return implementation.getConstructor(ActorSystem.class).newInstance(system);
+            } catch (NoSuchMethodException e) {
+                return implementation.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Cannot create " + type.getSimpleName() + " '" + className + "'", e);
+        }
+    }
+
+    public boolean hasLoader() {
+        return loader != null;
+    }
+
+    public boolean hasWriter() {
+        return writer != null;
+    }
+
+    /**
+     * Loads a key the cache does not hold, failing after {@code cache.read-through.timeout}.
+     */
+    CompletionStage<Optional<ByteString>> load(String key) {
+        Optional<ByteString> pending = unflushed.get(key);
+        if (pending != null) {
+            return CompletableFuture.completedFuture(pending);
+        }
+        loads.increment();
+        CompletableFuture<Optional<ByteString>> loaded;
+        try {
+            loaded = loader.load(key).toCompletableFuture();
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        return loaded.orTimeout(loadTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((value, failure) -> {
+                    if (failure != null) {
+                        loadFailures.increment();
+                    }
+                })
+                .thenApply(value -> value.map(compression::encode));
+    }
+
+    /**
+     * Queues a write of the key for the writer; a null value deletes it.
+     */
+    void write(String key, ByteString value) {
+        writes.increment();
+        if (unflushed.put(key, Optional.ofNullable(value)) != null) {
+            coalescedWrites.increment();
+        }
+        writeBehind.tell(new WriteBehind.Dirty(key));
+    }
+
+    // The value queued for the key, empty for a delete, or null if nothing is queued
+    Optional<ByteString> unflushed(String key) {
+        return unflushed.get(key);
+    }
+
+    // The value as written, for the writer, from the form it is queued in
+    ByteString decode(ByteString stored) {
+        return compression.decode(stored);
+    }
+
+    void recordFlushed(Map<String, Optional<ByteString>> batch) {
+        // Keys written again since the batch was cut keep their newer value queued
+        batch.forEach(unflushed::remove);
+        flushedWrites.add(batch.size());
+    }
+
+    void recordFlushFailed() {
+        failedFlushes.increment();
+    }
+
+    public long loads() {
+        return loads.sum();
+    }
+
+    public long loadFailures() {
+        return loadFailures.sum();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * Writes that replaced an earlier write of the same key still waiting for the writer.
+     */
+    public long coalescedWrites() {
+        return coalescedWrites.sum();
+    }
+
+    public long flushedWrites() {
+        return flushedWrites.sum();
+    }
+
+    public long failedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    public int pendingWrites() {
+        return unflushed.size();
+    }
+}
@@ -0,0 +1,105 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.util.ByteString;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Short-lived child of the entity that received a batch. It collects the replies of the sibling
+ * entities the batch was fanned out to, merges them with the receiving entity's own result and
+ * sends a single reply back to the caller.
+ *
+ * Merged MultiGet replies stay under {@code cache.max-message-size}: sibling hits that no longer
+ * fit are passed back to the caller as deferred keys. If a sibling does not answer within the
+ * bulk timeout the aggregator gives up silently; the caller's own ask times out and treats the
+ * batch as failed.
+ */
+final class BatchAggregator extends AbstractBehavior<CacheActor.Response> {
+
+    private enum Timeout implements CacheActor.Response {
+        INSTANCE
+    }
+
+    static Behavior<CacheActor.Response> create(CacheActor.Response own, int pending,
+                                                ActorRef<CacheActor.Response> replyTo, Duration timeout,
+                                                long maxMessageBytes) {
+        return Behaviors.setup(ctx -> Behaviors.withTimers(timers -> {
+            timers.startSingleTimer(Timeout.INSTANCE, timeout);
+            return new BatchAggregator(ctx, own, pending, replyTo, maxMessageBytes);
+        }));
+    }
+
+    private final ActorRef<CacheActor.Response> replyTo;
+    private final long maxMessageBytes;
+    // Null when aggregating MultiPut acknowledgements
+    private final List<String> keys;
+    private final List<ByteString> values;
+    private final List<String> deferred;
+    private long replyBytes;
+    private int pending;
+
+    private BatchAggregator(ActorContext<CacheActor.Response> ctx, CacheActor.Response own, int pending,
+                            ActorRef<CacheActor.Response> replyTo, long maxMessageBytes) {
+        super(ctx);
+        this.replyTo = replyTo;
+        this.pending = pending;
+        this.maxMessageBytes = maxMessageBytes;
+        if (own instanceof CacheActor.MultiFound) {
+            this.keys = new ArrayList<>();
+            this.values = new ArrayList<>();
+            this.deferred = new ArrayList<>();
+            merge((CacheActor.MultiFound) own);
+        } else {
+            this.keys = null;
+            this.values = null;
+            this.deferred = null;
+        }
+    }
+
+    @Override
+    public Receive<CacheActor.Response> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Timeout.class, timeout -> onTimeout())
+                .onMessage(CacheActor.Response.class, this::onReply)
+                .build();
+    }
+
+    private Behavior<CacheActor.Response> onReply(CacheActor.Response reply) {
+        if (keys != null && reply instanceof CacheActor.MultiFound) {
+            merge((CacheActor.MultiFound) reply);
+        }
+        if (--pending > 0) {
+            return this;
+        }
+        replyTo.tell(keys != null ? new CacheActor.MultiFound(keys, values, deferred) : new CacheActor.Done());
+        return Behaviors.stopped();
+    }
+
+    private void merge(CacheActor.MultiFound found) {
+        for (int i = 0; i < found.keys.size(); i++) {
+            ByteString value = found.values.get(i);
+            // Always keep at least one value so every round trip makes progress
+            if (!values.isEmpty() && replyBytes + value.size() > maxMessageBytes) {
+                deferred.add(found.keys.get(i));
+            } else {
+                keys.add(found.keys.get(i));
+                values.add(value);
+                replyBytes += value.size();
+            }
+        }
+        deferred.addAll(found.deferred);
+    }
+
+    private Behavior<CacheActor.Response> onTimeout() {
+        getContext().getLog().debug("Batch timed out waiting for {} sibling replies", pending);
+        return Behaviors.stopped();
+    }
+}
@@ -1,17 +1,42 @@
 package ai.akka.cache;
 
+import akka.actor.CoordinatedShutdown;
+import akka.actor.NoSerializationVerificationNeeded;
 import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
 import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.AskPattern;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.EntityRef;
+import akka.cluster.typed.Cluster;
+import akka.japi.Pair;
+import akka.stream.SourceRef;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 public class CacheActor extends AbstractBehavior<CacheActor.Command> {
 
@@ -37,35 +62,272 @@ public class CacheActor extends AbstractBehavior<CacheActor.Command> {
 
     public static final class Put implements Command {
         public final String key;
-        public final String value;
+        public final ByteString value;
+        public final long ttlMillis; // 0 = never expires
+        public final long version; // last write wins between replicas; 0 = unversioned, always applied
         public final ActorRef<Response> replyTo;
 
+        public Put(String key, ByteString value, ActorRef<Response> replyTo) {
+            this(key, value, 0L, replyTo);
+        }
+
+        public Put(String key, ByteString value, long ttlMillis, ActorRef<Response> replyTo) {
+            this(key, value, ttlMillis, 0L, replyTo);
+        }
+
         @JsonCreator
-        public Put(@JsonProperty("key") String key, @JsonProperty("value") String value, @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+        public Put(@JsonProperty("key") String key, @JsonProperty("value") ByteString value,
+                   @JsonProperty("ttlMillis") long ttlMillis, @JsonProperty("version") long version,
+                   @JsonProperty("replyTo") ActorRef<Response> replyTo) {
             this.key = key;
             this.value = value;
+            this.ttlMillis = ttlMillis;
+            this.version = version;
             this.replyTo = replyTo;
         }
 
         @Override
         public String toString() {
-            return "Put{" + "key='" + key + '\'' + ", value='" + value + '\'' + '}';
+            return "Put{" + "key='" + key + '\'' + ", value=" + value.size() + " bytes, ttlMillis=" + ttlMillis
+                    + ", version=" + version + '}';
         }
     }
 
     public static final class Delete implements Command {
         public final String key;
+        public final long version; // 0 = unversioned: removes the key without leaving a tombstone
+        public final ActorRef<Response> replyTo;
+
+        public Delete(String key, ActorRef<Response> replyTo) {
+            this(key, 0L, replyTo);
+        }
+
+        @JsonCreator
+        public Delete(@JsonProperty("key") String key, @JsonProperty("version") long version,
+                      @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.key = key;
+            this.version = version;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "Delete{" + "key='" + key + '\'' + ", version=" + version + '}';
+        }
+    }
+
+    // Atomic operations, executed by the entity holding the key's first replica, which CacheClient
+    // then copies the outcome of to the other replicas. `version` is the version to write; the
+    // entity raises it above the stored one if that is newer, so the outcome wins on every replica
+
+    // Stores the value only if the key holds none; answered with Written, or Conflict
+    public static final class PutIfAbsent implements Command {
+        public final String key;
+        public final ByteString value;
+        public final long ttlMillis; // 0 = never expires
+        public final long version;
+        public final ActorRef<Response> replyTo;
+
+        @JsonCreator
+        public PutIfAbsent(@JsonProperty("key") String key, @JsonProperty("value") ByteString value,
+                           @JsonProperty("ttlMillis") long ttlMillis, @JsonProperty("version") long version,
+                           @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.key = key;
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+            this.version = version;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "PutIfAbsent{" + "key='" + key + '\'' + ", value=" + value.size() + " bytes, ttlMillis=" + ttlMillis
+                    + ", version=" + version + '}';
+        }
+    }
+
+    // Stores the value only if the key holds a value at expectedVersion; Written, or Conflict
+    public static final class CompareAndSet implements Command {
+        public final String key;
+        public final ByteString value;
+        public final long ttlMillis; // 0 = never expires
+        public final long expectedVersion;
+        public final long version;
+        public final ActorRef<Response> replyTo;
+
+        @JsonCreator
+        public CompareAndSet(@JsonProperty("key") String key, @JsonProperty("value") ByteString value,
+                             @JsonProperty("ttlMillis") long ttlMillis,
+                             @JsonProperty("expectedVersion") long expectedVersion,
+                             @JsonProperty("version") long version,
+                             @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.key = key;
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+            this.expectedVersion = expectedVersion;
+            this.version = version;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "CompareAndSet{" + "key='" + key + '\'' + ", value=" + value.size() + " bytes, ttlMillis=" + ttlMillis
+                    + ", expectedVersion=" + expectedVersion + ", version=" + version + '}';
+        }
+    }
+
+    // Adds delta to the key's value, a decimal integer, starting from 0 if the key is absent; the
+    // TTL only applies to a key it creates. Written with the sum, or Conflict if the value is not
+    // an integer or the sum would overflow
+    public static final class IncrementBy implements Command {
+        public final String key;
+        public final long delta;
+        public final long ttlMillis; // 0 = never expires
+        public final long version;
+        public final ActorRef<Response> replyTo;
+
+        @JsonCreator
+        public IncrementBy(@JsonProperty("key") String key, @JsonProperty("delta") long delta,
+                           @JsonProperty("ttlMillis") long ttlMillis, @JsonProperty("version") long version,
+                           @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.key = key;
+            this.delta = delta;
+            this.ttlMillis = ttlMillis;
+            this.version = version;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "IncrementBy{" + "key='" + key + '\'' + ", delta=" + delta + ", ttlMillis=" + ttlMillis
+                    + ", version=" + version + '}';
+        }
+    }
+
+    // Removes the key and answers with the value it held: Taken, or NotFound
+    public static final class GetAndDelete implements Command {
+        public final String key;
+        public final long version; // as in Delete
         public final ActorRef<Response> replyTo;
 
         @JsonCreator
-        public Delete(@JsonProperty("key") String key, @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+        public GetAndDelete(@JsonProperty("key") String key, @JsonProperty("version") long version,
+                            @JsonProperty("replyTo") ActorRef<Response> replyTo) {
             this.key = key;
+            this.version = version;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "GetAndDelete{" + "key='" + key + '\'' + ", version=" + version + '}';
+        }
+    }
+
+    // Batch read: the receiving entity serves its own keys and fans the rest out to the
+    // entities owning them, so a whole shard's worth of keys costs one remote round trip
+    public static final class MultiGet implements Command {
+        public final List<String> keys;
+        public final ActorRef<Response> replyTo;
+
+        @JsonCreator
+        public MultiGet(@JsonProperty("keys") List<String> keys, @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.keys = keys;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "MultiGet{" + "keys=" + keys.size() + '}';
+        }
+    }
+
+    // Batch write, fanned out like MultiGet; answered with Done once every entry is stored
+    public static final class MultiPut implements Command {
+        public final List<Entry> entries;
+        public final ActorRef<Response> replyTo;
+
+        @JsonCreator
+        public MultiPut(@JsonProperty("entries") List<Entry> entries, @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.entries = entries;
             this.replyTo = replyTo;
         }
 
         @Override
         public String toString() {
-            return "Delete{" + "key='" + key + '\'' + '}';
+            return "MultiPut{" + "entries=" + entries.size() + '}';
+        }
+    }
+
+    // Prefix scan, one page per message: up to `limit` of the entity's live entries whose keys
+    // start with `prefix` and sort after `after` ("" for the first page), in key order
+    public static final class Scan implements Command {
+        public final String prefix;
+        public final String after;
+        public final int limit;
+        public final ActorRef<Response> replyTo;
+
+        @JsonCreator
+        public Scan(@JsonProperty("prefix") String prefix, @JsonProperty("after") String after,
+                    @JsonProperty("limit") int limit, @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.prefix = prefix;
+            this.after = after;
+            this.limit = limit;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "Scan{" + "prefix='" + prefix + '\'' + ", after='" + after + '\'' + ", limit=" + limit + '}';
+        }
+    }
+
+    // Removes every key of the entity that starts with `prefix`; answered with PrefixDeleted
+    public static final class DeletePrefix implements Command {
+        public final String prefix;
+        public final long version; // as in Delete
+        public final ActorRef<Response> replyTo;
+
+        @JsonCreator
+        public DeletePrefix(@JsonProperty("prefix") String prefix, @JsonProperty("version") long version,
+                            @JsonProperty("replyTo") ActorRef<Response> replyTo) {
+            this.prefix = prefix;
+            this.version = version;
+            this.replyTo = replyTo;
+        }
+
+        @Override
+        public String toString() {
+            return "DeletePrefix{" + "prefix='" + prefix + '\'' + ", version=" + version + '}';
+        }
+    }
+
+    public static final class Entry implements Serializable {
+        public final String key;
+        public final ByteString value;
+        public final long ttlMillis; // 0 = never expires
+        public final long version; // as in Put
+
+        public Entry(String key, ByteString value, long ttlMillis) {
+            this(key, value, ttlMillis, 0L);
+        }
+
+        @JsonCreator
+        public Entry(@JsonProperty("key") String key, @JsonProperty("value") ByteString value,
+                     @JsonProperty("ttlMillis") long ttlMillis, @JsonProperty("version") long version) {
+            this.key = key;
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+            this.version = version;
+        }
+
+        public Entry withVersion(long version) {
+            return new Entry(key, value, ttlMillis, version);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + "key='" + key + '\'' + ", ttlMillis=" + ttlMillis + '}';
         }
     }
 
@@ -74,27 +336,149 @@ public class CacheActor extends AbstractBehavior<CacheActor.Command> {
     }
 
     public static final class Found implements Response {
-        public final String value;
+        public final ByteString value;
+        public final long expiresAtMillis; // epoch millis, 0 = never expires
+        public final long version; // of the write that stored the value, 0 = unversioned
+
+        public Found(ByteString value) {
+            this(value, 0L, 0L);
+        }
 
         @JsonCreator
-        public Found(@JsonProperty("value") String value) {
+        public Found(@JsonProperty("value") ByteString value, @JsonProperty("expiresAtMillis") long expiresAtMillis,
+                     @JsonProperty("version") long version) {
             this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+            this.version = version;
         }
 
         @Override
         public String toString() {
-            return "Found{" + "value='" + value + '\'' + '}';
+            return "Found{" + "value=" + value.size() + " bytes" + '}';
         }
     }
 
-    public static final class NotFound implements Response {
+    // Reply to MultiGet: only the keys that were found, values aligned by index. Keys whose values
+    // did not fit under cache.max-message-size are returned as deferred for the caller to re-ask.
+    public static final class MultiFound implements Response {
+        public final List<String> keys;
+        public final List<ByteString> values;
+        public final List<String> deferred;
+
         @JsonCreator
+        public MultiFound(@JsonProperty("keys") List<String> keys, @JsonProperty("values") List<ByteString> values,
+                          @JsonProperty("deferred") List<String> deferred) {
+            this.keys = keys;
+            this.values = values;
+            this.deferred = deferred;
+        }
+
+        @Override
+        public String toString() {
+            return "MultiFound{" + "keys=" + keys.size() + ", deferred=" + deferred.size() + '}';
+        }
+    }
+
+    // Reply to a successful PutIfAbsent, CompareAndSet or IncrementBy: the entry as now stored
+    public static final class Written implements Response {
+        public final ByteString value;
+        public final long expiresAtMillis; // epoch millis, 0 = never expires
+        public final long version;
+
+        @JsonCreator
+        public Written(@JsonProperty("value") ByteString value, @JsonProperty("expiresAtMillis") long expiresAtMillis,
+                       @JsonProperty("version") long version) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+            this.version = version;
+        }
+
+        @Override
+        public String toString() {
+            return "Written{" + "value=" + value.size() + " bytes, version=" + version + '}';
+        }
+    }
+
+    // Reply to a successful GetAndDelete: the value removed, and the version of the delete
+    public static final class Taken implements Response {
+        public final ByteString value;
+        public final long version;
+
+        @JsonCreator
+        public Taken(@JsonProperty("value") ByteString value, @JsonProperty("version") long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        @Override
+        public String toString() {
+            return "Taken{" + "value=" + value.size() + " bytes, version=" + version + '}';
+        }
+    }
+
+    // An atomic operation's condition did not hold; version is the key's current one, 0 if absent
+    public static final class Conflict implements Response {
+        public final long version;
+
+        @JsonCreator
+        public Conflict(@JsonProperty("version") long version) {
+            this.version = version;
+        }
+
+        @Override
+        public String toString() {
+            return "Conflict{" + "version=" + version + '}';
+        }
+    }
+
+    // Reply to Scan; each entry's ttlMillis is what was left of its TTL. The next page starts after
+    // the last entry's key, and there is none if `more` is false
+    public static final class ScanPage implements Response {
+        public final List<Entry> entries;
+        public final boolean more;
+
+        @JsonCreator
+        public ScanPage(@JsonProperty("entries") List<Entry> entries, @JsonProperty("more") boolean more) {
+            this.entries = entries;
+            this.more = more;
+        }
+
+        @Override
+        public String toString() {
+            return "ScanPage{" + "entries=" + entries.size() + ", more=" + more + '}';
+        }
+    }
+
+    // Reply to DeletePrefix: how many keys the entity removed
+    public static final class PrefixDeleted implements Response {
+        public final int keys;
+
+        @JsonCreator
+        public PrefixDeleted(@JsonProperty("keys") int keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public String toString() {
+            return "PrefixDeleted{" + "keys=" + keys + '}';
+        }
+    }
+
+    public static final class NotFound implements Response {
+        public final long version; // of the delete that left a tombstone, 0 = never stored
+
         public NotFound() {
+            this(0L);
+        }
+
+        @JsonCreator
+        public NotFound(@JsonProperty("version") long version) {
+            this.version = version;
         }
 
         @Override
         public String toString() {
-            return "NotFound{}";
+            return version == 0 ? "NotFound{}" : "NotFound{" + "version=" + version + '}';
         }
     }
 
@@ -109,31 +493,208 @@ public class CacheActor extends AbstractBehavior<CacheActor.Command> {
         }
     }
 
+    // Reply to Put: the version written, for the client's next conditional write. A replica that
+    // already held a newer version dropped the write, and a conditional write at it then conflicts
+    public static final class Stored implements Response {
+        public final long version;
+
+        @JsonCreator
+        public Stored(@JsonProperty("version") long version) {
+            this.version = version;
+        }
+
+        @Override
+        public String toString() {
+            return "Stored{" + "version=" + version + '}';
+        }
+    }
+
+    // Reply to Delete: whether the key held a live value that the delete removed
+    public static final class Removed implements Response {
+        public final boolean removed;
+
+        @JsonCreator
+        public Removed(@JsonProperty("removed") boolean removed) {
+            this.removed = removed;
+        }
+
+        @Override
+        public String toString() {
+            return "Removed{" + "removed=" + removed + '}';
+        }
+    }
+
+    // Internal: drives the store's timing wheel while it holds expiring entries
+    private enum ExpireTick implements Command {
+        INSTANCE
+    }
+
+    // Internal: the cache loader answered for a key; value is null if the load failed
+    private static final class Loaded implements Command, NoSerializationVerificationNeeded {
+        final String key;
+        final Optional<ByteString> value;
+        final Throwable failure;
+
+        Loaded(String key, Optional<ByteString> value, Throwable failure) {
+            this.key = key;
+            this.value = value;
+            this.failure = failure;
+        }
+    }
+
+    // Sent by a bucket that sharding stopped to move it, to the bucket's next owner: the stopped
+    // bucket's entries, to be pulled chunk by chunk
+    public static final class TransferOffer implements Command {
+        public final SourceRef<TransferChunk> chunks;
+
+        @JsonCreator
+        public TransferOffer(@JsonProperty("chunks") SourceRef<TransferChunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public String toString() {
+            return "TransferOffer{}";
+        }
+    }
+
+    // Element of a TransferOffer's stream; each entry's ttlMillis is what was left of its TTL when sent
+    public static final class TransferChunk implements Command {
+        public final List<Entry> entries;
+
+        @JsonCreator
+        public TransferChunk(@JsonProperty("entries") List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public String toString() {
+            return "TransferChunk{" + "entries=" + entries.size() + '}';
+        }
+    }
+
+    // Internal: a pulled chunk, applied between the entity's other messages
+    private static final class ApplyChunk implements Command, NoSerializationVerificationNeeded {
+        final TransferChunk chunk;
+        final ActorRef<Response> replyTo;
+
+        ApplyChunk(TransferChunk chunk, ActorRef<Response> replyTo) {
+            this.chunk = chunk;
+            this.replyTo = replyTo;
+        }
+    }
+
+    // Internal: an incoming transfer ended; failure is null if every chunk was applied
+    private static final class TransferFinished implements Command, NoSerializationVerificationNeeded {
+        final Throwable failure;
+
+        TransferFinished(Throwable failure) {
+            this.failure = failure;
+        }
+    }
+
+    // Internal: the entity's transfer window is over
+    private enum CloseTransferWindow implements Command {
+        INSTANCE
+    }
+
+    // Stop message for sharding handoff (rebalance or node shutdown); never leaves the node
+    public enum Shutdown implements Command, NoSerializationVerificationNeeded {
+        INSTANCE
+    }
+
     // Factory - FIXED: Accept EntityContext for proper sharding
     public static Behavior<Command> create() {
-        return Behaviors.setup(CacheActor::new);
+        return Behaviors.setup(ctx -> Behaviors.withTimers(timers -> new CacheActor(ctx, timers, "unknown",
+                CacheSettings.create(ctx.getSystem().settings().config()), null)));
     }
 
     // Alternative factory for entity context (better for sharding)
-    public static Behavior<Command> create(akka.cluster.sharding.typed.javadsl.EntityContext<Command> entityContext) {
-        return Behaviors.setup(ctx -> new CacheActor(ctx, entityContext.getEntityId()));
+    public static Behavior<Command> create(akka.cluster.sharding.typed.javadsl.EntityContext<Command> entityContext,
+                                           CacheSettings settings) {
+        return Behaviors.setup(ctx -> Behaviors.withTimers(timers ->
+                new CacheActor(ctx, timers, entityContext.getEntityId(), settings,
+                        new DistributedCacheApplication.CacheMessageExtractor(settings))));
     }
 
-    // State - FIXED: This actor now stores value for a single key (entity ID)
+    // State - one compact store per entity: a whole bucket of keys in bucket mode,
+    // a single key in per-key mode
     private final String entityId;
-    private String value; // Single value storage per entity
-    private final Map<String, String> fallbackMap = new HashMap<>(); // Fallback for compatibility
-
-    private CacheActor(ActorContext<Command> ctx) {
-        super(ctx);
-        this.entityId = "unknown"; // Fallback
-        getContext().getLog().info("CacheActor started for entity: {}", entityId);
-    }
+    private final CacheStore store;
+    private final MemoryBudget budget;
+    private final NearCache nearCache;
+    private final CacheSnapshots snapshots;
+    private final CacheMetrics metrics;
+    private final LocalStores localStores;
+    private final ValueCompression compression;
+    private final TimerScheduler<Command> timers;
+    private final Duration expiryTickInterval;
+    // One timer per key would defeat the purpose, so per-key entities only expire lazily
+    private final boolean activeExpiry;
+    // Routes the foreign keys of a batch to their entities; null when not running sharded
+    private final DistributedCacheApplication.CacheMessageExtractor extractor;
+    // Which replica of its bucket this entity holds; batches fan out to the same replica of other buckets
+    private final int replica;
+    private final long tombstoneTtlMillis;
+    private final Duration bulkTimeout;
+    private final long maxMessageBytes;
+    private final HandoffTransfers transfers;
+    private final BackingStore backingStore;
+    private final boolean readThrough;
+    private final long loadedTtlMillis;
+    private final boolean writeBehind;
+    // Gets waiting for the loader, by key
+    private final Map<String, List<ActorRef<Response>>> loading = new HashMap<>();
+    private final boolean transferOnHandoff;
+    private final int transferChunkSize;
+    // Keys written or deleted here while a transfer may still bring older copies of them; null
+    // once the transfer window has closed and no transfer is running
+    private Set<String> touched;
+    private int incomingTransfers;
+    // Set once the store has been handed to an outgoing transfer, which then owns it
+    private boolean transferring;
 
-    private CacheActor(ActorContext<Command> ctx, String entityId) {
+    private CacheActor(ActorContext<Command> ctx, TimerScheduler<Command> timers, String entityId,
+                       CacheSettings settings, DistributedCacheApplication.CacheMessageExtractor extractor) {
         super(ctx);
         this.entityId = entityId;
-        getContext().getLog().info("CacheActor started for entity: {}", entityId);
+        this.timers = timers;
+        this.expiryTickInterval = settings.expiryTickInterval;
+        this.activeExpiry = settings.entityMode == CacheSettings.EntityMode.BUCKET;
+        this.store = new CacheStore(2, settings.evictionPolicy, expiryTickInterval.toMillis(),
+                OffHeapArena.get(ctx.getSystem()));
+        this.budget = MemoryBudget.get(ctx.getSystem());
+        this.nearCache = NearCache.get(ctx.getSystem());
+        this.extractor = extractor;
+        this.replica = extractor != null ? extractor.replicaOf(entityId) : 0;
+        this.tombstoneTtlMillis = settings.tombstoneTtl.toMillis();
+        this.bulkTimeout = settings.bulkTimeout;
+        this.maxMessageBytes = settings.maxMessageBytes;
+        this.snapshots = CacheSnapshots.get(ctx.getSystem());
+        this.metrics = CacheMetrics.get(ctx.getSystem());
+        this.localStores = LocalStores.get(ctx.getSystem());
+        this.compression = ValueCompression.get(ctx.getSystem());
+        this.transfers = HandoffTransfers.get(ctx.getSystem());
+        this.backingStore = BackingStore.get(ctx.getSystem());
+        // Only the first replica talks to the origin, so the loader sees each miss, and the writer
+        // each write, once; ONE reads fall through to it and the others read it with their quorum
+        this.readThrough = backingStore.hasLoader() && replica == 0;
+        this.loadedTtlMillis = settings.readThroughTtl.toMillis();
+        this.writeBehind = backingStore.hasWriter() && replica == 0;
+        this.transferOnHandoff = settings.handoffTransfer && activeExpiry && extractor != null;
+        this.transferChunkSize = settings.handoffChunkSize;
+        getContext().getLog().debug("CacheActor started for entity: {}", entityId);
+        if (transferOnHandoff) {
+            // A bucket that just moved here may be offered its previous owner's entries shortly
+            touched = new HashSet<>();
+            timers.startSingleTimer(CloseTransferWindow.INSTANCE, settings.handoffTransferWindow);
+        }
+        if (snapshots.isEnabled() && extractor != null) {
+            loadSnapshot();
+        }
+        if (extractor != null) {
+            localStores.register(entityId, store);
+        }
     }
 
     @Override
@@ -142,84 +703,633 @@ public class CacheActor extends AbstractBehavior<CacheActor.Command> {
                 .onMessage(Get.class, this::onGet)
                 .onMessage(Put.class, this::onPut)
                 .onMessage(Delete.class, this::onDelete)
+                .onMessage(MultiGet.class, this::onMultiGet)
+                .onMessage(MultiPut.class, this::onMultiPut)
+                .onMessage(PutIfAbsent.class, this::onPutIfAbsent)
+                .onMessage(CompareAndSet.class, this::onCompareAndSet)
+                .onMessage(IncrementBy.class, this::onIncrementBy)
+                .onMessage(GetAndDelete.class, this::onGetAndDelete)
+                .onMessage(Scan.class, this::onScan)
+                .onMessage(DeletePrefix.class, this::onDeletePrefix)
+                .onMessage(ExpireTick.class, tick -> onExpireTick())
+                .onMessage(Loaded.class, this::onLoaded)
+                .onMessage(TransferOffer.class, this::onTransferOffer)
+                .onMessage(ApplyChunk.class, this::onApplyChunk)
+                .onMessage(TransferFinished.class, this::onTransferFinished)
+                .onMessage(CloseTransferWindow.class, close -> onCloseTransferWindow())
+                .onMessage(Shutdown.class, shutdown -> onShutdown())
+                .onSignal(PostStop.class, signal -> onPostStop())
                 .build();
     }
 
     private Behavior<Command> onGet(Get msg) {
-        getContext().getLog().debug("GET operation for key: {} (entity: {})", msg.key, entityId);
-
-        // FIXED: Check if this entity is responsible for this key
-        if (msg.key.equals(entityId)) {
-            // This entity stores this key's value
-            if (value != null) {
-                getContext().getLog().debug("Found value for key '{}': {}", msg.key, value);
-                msg.replyTo.tell(new Found(value));
-            } else {
-                getContext().getLog().debug("Key '{}' not found in entity {}", msg.key, entityId);
-                msg.replyTo.tell(new NotFound());
-            }
+        ByteString value = liveValue(msg.key, System.currentTimeMillis());
+        metrics.recordLookup(value != null);
+        if (value != null) {
+            getContext().getLog().debug("GET '{}' hit in entity {}", msg.key, entityId);
+            // The expiry lets near caches on other nodes drop their copy on time; the version
+            // lets a replicated read pick the newest of several replies
+            msg.replyTo.tell(new Found(value, store.expiresAt(msg.key), store.version(msg.key)));
+        } else if (readThrough && store.version(msg.key) == 0) {
+            // Not a tombstone: a key deleted here must not come back from the origin
+            load(msg.key, msg.replyTo);
         } else {
-            // Fallback: check in map for compatibility
-            if (fallbackMap.containsKey(msg.key)) {
-                String mapValue = fallbackMap.get(msg.key);
-                getContext().getLog().debug("Found value for key '{}' in fallback map: {}", msg.key, mapValue);
-                msg.replyTo.tell(new Found(mapValue));
-            } else {
-                getContext().getLog().debug("Key '{}' not found in entity {} or fallback map", msg.key, entityId);
-                msg.replyTo.tell(new NotFound());
+            getContext().getLog().debug("GET '{}' missed in entity {}", msg.key, entityId);
+            // A tombstone's version tells a replicated read that the key was deleted, not never written
+            msg.replyTo.tell(new NotFound(store.version(msg.key)));
+        }
+        return this;
+    }
+
+    // Asks the loader once for all the Gets that miss the key until it answers
+    private void load(String key, ActorRef<Response> replyTo) {
+        List<ActorRef<Response>> waiting = loading.get(key);
+        if (waiting != null) {
+            waiting.add(replyTo);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(replyTo);
+        loading.put(key, waiting);
+        getContext().pipeToSelf(backingStore.load(key), (value, failure) -> new Loaded(key, value, failure));
+    }
+
+    private Behavior<Command> onLoaded(Loaded msg) {
+        List<ActorRef<Response>> waiting = loading.remove(msg.key);
+        long now = System.currentTimeMillis();
+        long weightBefore = store.weight();
+        ByteString value = store.get(msg.key, now);
+        if (msg.failure != null) {
+            getContext().getLog().warn("Loading key '{}' into entity {} failed: {}", msg.key, entityId, msg.failure.toString());
+        } else if (value == null && store.version(msg.key) == 0 && msg.value.isPresent()) {
+            // Writes and deletes that arrived during the load are newer than the origin's value
+            value = msg.value.get();
+            long expiresAt = loadedTtlMillis > 0 ? now + loadedTtlMillis : 0L;
+            store.putIfNewer(msg.key, value, expiresAt, 0L);
+            if (expiresAt != 0) {
+                scheduleExpiry();
+            }
+            getContext().getLog().debug("Loaded key '{}' with {} bytes into entity {}", msg.key, value.size(), entityId);
+        }
+        chargeBudget(weightBefore);
+        Response reply = value != null
+                ? new Found(value, store.expiresAt(msg.key), store.version(msg.key))
+                : new NotFound(store.version(msg.key));
+        if (waiting != null) {
+            for (ActorRef<Response> replyTo : waiting) {
+                replyTo.tell(reply);
             }
         }
         return this;
     }
 
     private Behavior<Command> onPut(Put msg) {
-        getContext().getLog().debug("PUT operation for key: {} -> {} (entity: {})", msg.key, msg.value, entityId);
-
-        // FIXED: Check if this entity is responsible for this key
-        if (msg.key.equals(entityId)) {
-            // This entity stores this key's value directly
-            this.value = msg.value;
-            getContext().getLog().info("Stored key '{}' with value '{}' in entity {}",
-                    msg.key, msg.value, entityId);
+        store(msg.key, msg.value, msg.ttlMillis, msg.version, System.currentTimeMillis());
+        getContext().getLog().debug("PUT '{}' stored in entity {}", msg.key, entityId);
+
+        msg.replyTo.tell(new Stored(msg.version));
+        return this;
+    }
+
+    private Behavior<Command> onDelete(Delete msg) {
+        // A versioned delete also succeeds on a missing key, leaving a tombstone
+        boolean held = store.contains(msg.key, System.currentTimeMillis());
+        boolean removed = delete(msg.key, msg.version) && held;
+        if (removed) {
+            getContext().getLog().debug("DELETE '{}' removed from entity {}", msg.key, entityId);
         } else {
-            // Fallback: store in map for compatibility
-            fallbackMap.put(msg.key, msg.value);
-            getContext().getLog().info("Stored key '{}' with value '{}' in fallback map of entity {}",
-                    msg.key, msg.value, entityId);
+            getContext().getLog().debug("DELETE '{}' missed in entity {}", msg.key, entityId);
         }
+        msg.replyTo.tell(new Removed(removed));
+        return this;
+    }
 
-        msg.replyTo.tell(new Done());
+    // False if the key held no value, or the delete lost to a newer version
+    private boolean delete(String key, long version) {
+        touch(key);
+
+        if (version != 0) {
+            // Replicated delete: keep a tombstone so that read repair cannot resurrect the value
+            long weightBefore = store.weight();
+            if (!store.removeIfNewer(key, version, System.currentTimeMillis() + tombstoneTtlMillis)) {
+                return false;
+            }
+            chargeBudget(weightBefore);
+            scheduleExpiry();
+            nearCache.publishInvalidation(key);
+            if (writeBehind) {
+                backingStore.write(key, null);
+            }
+            return true;
+        }
+
+        long weightBefore = store.weight();
+        boolean removed = store.drop(key);
+        budget.charge(store.weight() - weightBefore);
+        if (writeBehind) {
+            // Also deletes keys that are only in the origin
+            backingStore.write(key, null);
+        }
+        if (!removed) {
+            return false;
+        }
+        nearCache.publishInvalidation(key);
+        return true;
+    }
+
+    private Behavior<Command> onPutIfAbsent(PutIfAbsent msg) {
+        long now = System.currentTimeMillis();
+        if (liveValue(msg.key, now) != null) {
+            msg.replyTo.tell(new Conflict(store.version(msg.key)));
+            return this;
+        }
+        long version = versionAfter(msg.key, msg.version);
+        store(msg.key, msg.value, msg.ttlMillis, version, now);
+        msg.replyTo.tell(new Written(msg.value, store.expiresAt(msg.key), version));
         return this;
     }
 
-    private Behavior<Command> onDelete(Delete msg) {
-        getContext().getLog().debug("DELETE operation for key: {} (entity: {})", msg.key, entityId);
+    private Behavior<Command> onCompareAndSet(CompareAndSet msg) {
+        long now = System.currentTimeMillis();
+        ByteString value = liveValue(msg.key, now);
+        long current = value != null ? store.version(msg.key) : 0L;
+        if (value == null || current != msg.expectedVersion) {
+            msg.replyTo.tell(new Conflict(current));
+            return this;
+        }
+        long version = versionAfter(msg.key, msg.version);
+        store(msg.key, msg.value, msg.ttlMillis, version, now);
+        msg.replyTo.tell(new Written(msg.value, store.expiresAt(msg.key), version));
+        return this;
+    }
 
-        String removedValue = null;
+    private Behavior<Command> onIncrementBy(IncrementBy msg) {
+        long now = System.currentTimeMillis();
+        ByteString current = liveValue(msg.key, now);
+        long ttlMillis = msg.ttlMillis;
+        long sum;
+        try {
+            long base = 0L;
+            if (current != null) {
+                base = Long.parseLong(compression.decode(current).utf8String());
+                // An existing counter keeps its expiry, so a rate-limit window is not extended by its hits
+                long expiresAt = store.expiresAt(msg.key);
+                ttlMillis = expiresAt == 0 ? 0L : Math.max(1L, expiresAt - now);
+            }
+            sum = Math.addExact(base, msg.delta);
+        } catch (NumberFormatException | ArithmeticException e) {
+            msg.replyTo.tell(new Conflict(store.version(msg.key)));
+            return this;
+        }
+        ByteString value = ByteString.fromString(Long.toString(sum));
+        long version = versionAfter(msg.key, msg.version);
+        store(msg.key, value, ttlMillis, version, now);
+        msg.replyTo.tell(new Written(value, store.expiresAt(msg.key), version));
+        return this;
+    }
 
-        // FIXED: Check if this entity is responsible for this key
-        if (msg.key.equals(entityId)) {
-            // This entity stores this key's value directly
-            removedValue = this.value;
-            this.value = null;
-            if (removedValue != null) {
-                getContext().getLog().info("Deleted key '{}' (was: '{}') from entity {}",
-                        msg.key, removedValue, entityId);
+    private Behavior<Command> onGetAndDelete(GetAndDelete msg) {
+        ByteString current = liveValue(msg.key, System.currentTimeMillis());
+        if (current == null) {
+            msg.replyTo.tell(new NotFound(store.version(msg.key)));
+            return this;
+        }
+        long version = msg.version == 0 ? 0L : versionAfter(msg.key, msg.version);
+        delete(msg.key, version);
+        msg.replyTo.tell(new Taken(current, version));
+        return this;
+    }
+
+    // The key's value, or null if it has none; an expired value is dropped first
+    private ByteString liveValue(String key, long nowMillis) {
+        long weightBefore = store.weight();
+        ByteString value = store.get(key, nowMillis);
+        if (store.weight() != weightBefore) {
+            // The key had expired and was dropped on read
+            budget.charge(store.weight() - weightBefore);
+        }
+        return value;
+    }
+
+    // The requested version, or one above the stored version if that is newer (another node's clock)
+    private long versionAfter(String key, long requested) {
+        return Math.max(requested, store.version(key) + 1);
+    }
+
+    private Behavior<Command> onMultiGet(MultiGet msg) {
+        getContext().getLog().debug("MULTI-GET operation for {} keys (entity: {})", msg.keys.size(), entityId);
+
+        long now = System.currentTimeMillis();
+        long weightBefore = store.weight();
+        List<String> keys = new ArrayList<>();
+        List<ByteString> values = new ArrayList<>();
+        List<String> deferred = new ArrayList<>();
+        long replyBytes = 0;
+        int missed = 0;
+        Map<String, List<String>> foreign = null;
+        for (String key : msg.keys) {
+            String owner = foreignOwnerOf(key);
+            if (owner != null) {
+                if (foreign == null) {
+                    foreign = new HashMap<>();
+                }
+                foreign.computeIfAbsent(owner, id -> new ArrayList<>()).add(key);
+                continue;
+            }
+            ByteString value = store.get(key, now);
+            if (value == null) {
+                missed++;
+                continue;
             }
+            if (!values.isEmpty() && replyBytes + value.size() > maxMessageBytes) {
+                deferred.add(key);
+            } else {
+                keys.add(key);
+                values.add(value);
+                replyBytes += value.size();
+            }
+        }
+        if (store.weight() != weightBefore) {
+            // Some keys had expired and were dropped on read
+            budget.charge(store.weight() - weightBefore);
+        }
+        // Deferred keys are counted when they are fetched again
+        metrics.recordLookups(keys.size(), missed);
+
+        MultiFound own = new MultiFound(keys, values, deferred);
+        if (foreign == null) {
+            msg.replyTo.tell(own);
         } else {
-            // Fallback: remove from map for compatibility
-            removedValue = fallbackMap.remove(msg.key);
-            if (removedValue != null) {
-                getContext().getLog().info("Deleted key '{}' (was: '{}') from fallback map of entity {}",
-                        msg.key, removedValue, entityId);
+            ActorRef<Response> aggregator = getContext().spawnAnonymous(
+                    BatchAggregator.create(own, foreign.size(), msg.replyTo, bulkTimeout, maxMessageBytes));
+            foreign.forEach((owner, ownerKeys) -> entityRef(owner).tell(new MultiGet(ownerKeys, aggregator)));
+        }
+        return this;
+    }
+
+    private Behavior<Command> onMultiPut(MultiPut msg) {
+        getContext().getLog().debug("MULTI-PUT operation for {} entries (entity: {})", msg.entries.size(), entityId);
+
+        long now = System.currentTimeMillis();
+        Map<String, List<Entry>> foreign = null;
+        for (Entry entry : msg.entries) {
+            String owner = foreignOwnerOf(entry.key);
+            if (owner != null) {
+                if (foreign == null) {
+                    foreign = new HashMap<>();
+                }
+                foreign.computeIfAbsent(owner, id -> new ArrayList<>()).add(entry);
+                continue;
+            }
+            store(entry.key, entry.value, entry.ttlMillis, entry.version, now);
+        }
+
+        if (foreign == null) {
+            msg.replyTo.tell(new Done());
+        } else {
+            ActorRef<Response> aggregator = getContext().spawnAnonymous(
+                    BatchAggregator.create(new Done(), foreign.size(), msg.replyTo, bulkTimeout, maxMessageBytes));
+            foreign.forEach((owner, entries) -> entityRef(owner).tell(new MultiPut(entries, aggregator)));
+        }
+        return this;
+    }
+
+    private Behavior<Command> onScan(Scan msg) {
+        long now = System.currentTimeMillis();
+        // The store keeps no key order, so every page visits the whole entity and keeps the
+        // `limit` smallest matching keys after the cursor; reading them through the store's
+        // visitor rather than get() leaves the eviction policy's view of the keys untouched
+        PriorityQueue<Entry> smallest = new PriorityQueue<>(
+                Math.max(1, Math.min(msg.limit, store.size())), Comparator.comparing((Entry entry) -> entry.key).reversed());
+        int[] matching = {0};
+        // Keys are filtered before their values are read, so an off-heap value is only copied out
+        // for a key that would make it onto the page as it stands
+        store.forEachLiveEntry(now, key -> {
+            if (!key.startsWith(msg.prefix) || key.compareTo(msg.after) <= 0) {
+                return false;
+            }
+            matching[0]++;
+            return smallest.size() < msg.limit || key.compareTo(smallest.peek().key) < 0;
+        }, (key, value, expiresAtMillis, version) -> {
+            if (smallest.size() == msg.limit) {
+                smallest.poll();
+            }
+            long ttlMillis = expiresAtMillis == 0 ? 0L : expiresAtMillis - now;
+            smallest.add(new Entry(key, value, ttlMillis, version));
+        });
+        List<Entry> page = new ArrayList<>(smallest);
+        page.sort(Comparator.comparing(entry -> entry.key));
+        long pageBytes = 0;
+        for (int i = 0; i < page.size(); i++) {
+            pageBytes += page.get(i).value.size();
+            if (i > 0 && pageBytes > maxMessageBytes) {
+                page = page.subList(0, i);
+                break;
+            }
+        }
+        msg.replyTo.tell(new ScanPage(new ArrayList<>(page), matching[0] > page.size()));
+        return this;
+    }
+
+    private Behavior<Command> onDeletePrefix(DeletePrefix msg) {
+        long now = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        store.forEachKey(now, key -> {
+            if (key.startsWith(msg.prefix)) {
+                keys.add(key);
+            }
+        });
+        long weightBefore = store.weight();
+        int removed = 0;
+        for (String key : keys) {
+            touch(key);
+            // Versioned like a replicated Delete, so a replica that missed this cannot repair the keys back
+            boolean gone = msg.version != 0
+                    ? store.removeIfNewer(key, msg.version, now + tombstoneTtlMillis)
+                    : store.drop(key);
+            if (gone) {
+                removed++;
+                nearCache.publishInvalidation(key);
+                if (writeBehind) {
+                    backingStore.write(key, null);
+                }
+            }
+        }
+        chargeBudget(weightBefore);
+        if (msg.version != 0 && removed > 0) {
+            scheduleExpiry();
+        }
+        getContext().getLog().debug("DELETE prefix '{}' removed {} keys", msg.prefix, removed);
+        msg.replyTo.tell(new PrefixDeleted(removed));
+        return this;
+    }
+
+    // Entity that owns the key if it is not this one; null when the key is ours
+    private String foreignOwnerOf(String key) {
+        if (extractor == null) {
+            return null;
+        }
+        String owner = extractor.entityIdForKey(key, replica);
+        return owner.equals(entityId) ? null : owner;
+    }
+
+    private EntityRef<Command> entityRef(String id) {
+        // Siblings in the same shard live on this node, so these sends never leave the JVM
+        return ClusterSharding.get(getContext().getSystem())
+                .entityRefFor(DistributedCacheApplication.CACHE_ENTITY_KEY, id);
+    }
+
+    // False if the write was older than the stored version and dropped
+    private boolean store(String key, ByteString value, long ttlMillis, long version, long nowMillis) {
+        touch(key);
+        long weightBefore = store.weight();
+        long expiresAt = ttlMillis > 0 ? nowMillis + ttlMillis : 0L;
+        if (!store.putIfNewer(key, value, expiresAt, version)) {
+            getContext().getLog().debug("Dropped write of key '{}' at version {}: entity {} holds a newer one",
+                    key, version, entityId);
+            return false;
+        }
+        chargeBudget(weightBefore);
+        nearCache.publishInvalidation(key);
+        if (expiresAt != 0) {
+            scheduleExpiry();
+        }
+        if (writeBehind) {
+            backingStore.write(key, value);
+        }
+        return true;
+    }
+
+    private void touch(String key) {
+        if (touched != null) {
+            touched.add(key);
+        }
+    }
+
+    private void scheduleExpiry() {
+        if (activeExpiry && !timers.isTimerActive(ExpireTick.INSTANCE)) {
+            timers.startTimerWithFixedDelay(ExpireTick.INSTANCE, ExpireTick.INSTANCE, expiryTickInterval);
+        }
+    }
+
+    // Charges this write against the node budget and, if the node is now over it, evicts from this store
+    private void chargeBudget(long weightBefore) {
+        long excess = budget.charge(store.weight() - weightBefore);
+        if (excess > 0) {
+            long beforeEviction = store.weight();
+            int evicted = store.evict(excess);
+            if (evicted > 0) {
+                long freed = beforeEviction - store.weight();
+                budget.charge(-freed);
+                budget.recordEvictions(evicted, freed);
+                getContext().getLog().debug("Evicted {} entries ({} bytes) from entity {}", evicted, freed, entityId);
             }
         }
+    }
 
-        if (removedValue == null) {
-            getContext().getLog().debug("Attempted to delete non-existent key: {} from entity {}", msg.key, entityId);
+    private Behavior<Command> onExpireTick() {
+        long weightBefore = store.weight();
+        int expired = store.expire(System.currentTimeMillis());
+        if (expired > 0) {
+            budget.charge(store.weight() - weightBefore);
+            getContext().getLog().debug("Expired {} entries from entity {}", expired, entityId);
+        }
+        if (!store.hasExpiringEntries()) {
+            timers.cancel(ExpireTick.INSTANCE);
         }
+        return this;
+    }
 
+    private void loadSnapshot() {
+        long start = System.nanoTime();
+        try {
+            int loaded = snapshots.load(entityId, store, System.currentTimeMillis());
+            if (loaded == 0) {
+                return;
+            }
+            chargeBudget(0L);
+            if (store.hasExpiringEntries()) {
+                scheduleExpiry();
+            }
+            getContext().getLog().debug("Loaded {} entries into entity {} from its snapshot in {} ms",
+                    loaded, entityId, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            getContext().getLog().warn("Discarded snapshot of entity {}: {}", entityId, e.getMessage());
+        }
+    }
+
+    private Behavior<Command> onTransferOffer(TransferOffer msg) {
+        getContext().getLog().debug("Pulling handed-off entries into entity {}", entityId);
+        incomingTransfers++;
+        ActorRef<Command> self = getContext().getSelf();
+        ActorSystem<Void> system = getContext().getSystem();
+        // One chunk in flight: the next is pulled only once the entity has applied this one
+        getContext().pipeToSelf(
+                msg.chunks.getSource()
+                        .mapAsync(1, chunk -> AskPattern.<Command, Response>ask(self,
+                                replyTo -> new ApplyChunk(chunk, replyTo), bulkTimeout, system.scheduler()))
+                        .runWith(Sink.ignore(), system),
+                (done, failure) -> new TransferFinished(failure));
+        return this;
+    }
+
+    private Behavior<Command> onApplyChunk(ApplyChunk msg) {
+        long now = System.currentTimeMillis();
+        long weightBefore = store.weight();
+        int applied = 0;
+        for (Entry entry : msg.chunk.entries) {
+            // Whatever this entity was told since it started is newer than what the old owner had
+            if (touched != null && touched.contains(entry.key)) {
+                continue;
+            }
+            long expiresAt = entry.ttlMillis > 0 ? now + entry.ttlMillis : 0L;
+            if (store.putIfNewer(entry.key, entry.value, expiresAt, entry.version)) {
+                applied++;
+            }
+        }
+        // No near-cache invalidation: these are the values the keys already had
+        chargeBudget(weightBefore);
+        if (store.hasExpiringEntries()) {
+            scheduleExpiry();
+        }
+        transfers.recordReceived(applied);
         msg.replyTo.tell(new Done());
         return this;
     }
-}
\ No newline at end of file
+
+    private Behavior<Command> onTransferFinished(TransferFinished msg) {
+        incomingTransfers--;
+        transfers.recordTransferReceived(msg.failure != null);
+        if (msg.failure != null) {
+            getContext().getLog().warn("Handoff transfer into entity {} failed: {}", entityId, msg.failure.getMessage());
+        } else {
+            getContext().getLog().debug("Handoff transfer into entity {} complete, {} keys", entityId, store.size());
+        }
+        if (incomingTransfers == 0 && !timers.isTimerActive(CloseTransferWindow.INSTANCE)) {
+            touched = null;
+        }
+        return this;
+    }
+
+    private Behavior<Command> onCloseTransferWindow() {
+        if (incomingTransfers == 0) {
+            touched = null;
+        }
+        return this;
+    }
+
+    // Offers the entries to the bucket's next owner; the offer goes through sharding, whose
+    // region holds it until the coordinator has allocated the bucket's shard again. The store now
+    // belongs to the transfer, which reads it chunk by chunk as they are pulled and clears it at the end
+    private void offerEntries() {
+        if (!anotherMemberUp()) {
+            return;
+        }
+        CacheStore handedOff = store;
+        ChunkReader reader = new ChunkReader(handedOff, transferChunkSize, maxMessageBytes);
+        SourceRef<TransferChunk> chunks = transfers.offer(Source.unfold(reader, ChunkReader::next), () -> {
+            budget.charge(-handedOff.weight());
+            handedOff.clear();
+        });
+        transferring = true;
+        entityRef(entityId).tell(new TransferOffer(chunks));
+        getContext().getLog().debug("Offered the {} entries of entity {} to its next owner", handedOff.size(), entityId);
+    }
+
+    /**
+     * Cuts a stopped entity's store into transfer chunks one at a time, as the next owner pulls
+     * them, so only the chunk in flight is copied onto the heap.
+     */
+    private static final class ChunkReader implements CacheStore.EntryVisitor {
+        private final CacheStore store;
+        private final int maxEntries;
+        private final long maxBytes;
+        private int slot;
+        private long now;
+        private Entry read;
+        // Read for the previous chunk, but over its byte limit
+        private Entry carried;
+
+        ChunkReader(CacheStore store, int maxEntries, long maxBytes) {
+            this.store = store;
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        Optional<Pair<ChunkReader, TransferChunk>> next() {
+            now = System.currentTimeMillis();
+            List<Entry> entries = new ArrayList<>();
+            long bytes = 0;
+            if (carried != null) {
+                entries.add(carried);
+                bytes = carried.value.size();
+                carried = null;
+            }
+            while (slot >= 0 && entries.size() < maxEntries) {
+                read = null;
+                slot = store.visitNext(slot, now, this);
+                if (read == null) {
+                    continue;
+                }
+                if (!entries.isEmpty() && bytes + read.value.size() > maxBytes) {
+                    carried = read;
+                    break;
+                }
+                entries.add(read);
+                bytes += read.value.size();
+            }
+            return entries.isEmpty() ? Optional.empty() : Optional.of(Pair.create(this, new TransferChunk(entries)));
+        }
+
+        @Override
+        public void visit(String key, ByteString value, long expiresAtMillis, long version) {
+            if (value == null) {
+                // Tombstones stay behind; the other replicas still hold theirs
+                return;
+            }
+            long ttlMillis = expiresAtMillis == 0 ? 0L : expiresAtMillis - now;
+            read = new Entry(key, value, ttlMillis, version);
+        }
+    }
+
+    private boolean anotherMemberUp() {
+        Cluster cluster = Cluster.get(getContext().getSystem());
+        for (Member member : cluster.state().getMembers()) {
+            if (member.status() == MemberStatus.up() && !member.equals(cluster.selfMember())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Behavior<Command> onShutdown() {
+        // Only a node that is going down keeps its entries; a rebalanced bucket's entries go to its
+        // new node, and a snapshot left behind here would be stale by the time it came back
+        if (snapshots.isEnabled() && extractor != null
+                && CoordinatedShutdown.get(getContext().getSystem()).getShutdownReason().isPresent()) {
+            try {
+                int written = snapshots.write(entityId, store, System.currentTimeMillis());
+                getContext().getLog().debug("Wrote {} entries of entity {} to its snapshot", written, entityId);
+            } catch (IOException e) {
+                getContext().getLog().warn("Could not write snapshot of entity {}: {}", entityId, e.getMessage());
+            }
+        }
+        if (transferOnHandoff && store.size() > 0) {
+            offerEntries();
+        }
+        return Behaviors.stopped();
+    }
+
+    private Behavior<Command> onPostStop() {
+        localStores.unregister(entityId, store);
+        if (transferring) {
+            // The transfer gives the bytes back once the next owner has pulled them
+            return this;
+        }
+        // Stopped entities (passivation, rebalance) give their bytes back to the node
+        budget.charge(-store.weight());
+        // Hands off-heap values back to the arena; the GC cannot
+        store.clear();
+        return this;
+    }
+}
@@ -0,0 +1,810 @@
+package ai.akka.cache;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.EntityRef;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Node-local entry point to the sharded cache used by the HTTP layer.
+ *
+ * Single-key operations ask the entity that owns the key. Batch operations group their keys by
+ * shard and send one message per shard (chunked to {@code cache.bulk-operations.batch-size} and
+ * {@code cache.max-message-size}); the entity receiving it fans the keys out to its siblings on
+ * the same node, so a request for hundreds of keys costs about one round trip per shard.
+ *
+ * With {@code cache.replication-factor} above 1 every key lives in that many bucket entities.
+ * Writes go to all replicas, stamped with a version so replicas agree on the last write, and
+ * complete once the requested {@link Consistency} level has acknowledged. QUORUM and ALL reads ask
+ * every replica, answer with the newest of the first replies and repair the stale replicas once
+ * all have answered. ONE reads ask the primary and fall through to the next replica on a miss, so
+ * a primary that lost its data with its node does not turn into a wave of misses. ONE reads of a
+ * key {@link HotKeys} finds hot start at a random replica instead, spreading its load over the
+ * replicas' nodes.
+ *
+ * Atomic operations (put-if-absent, compare-and-set, increment, get-and-delete) run in the entity
+ * holding the key's first replica, which orders them with every other write of the key; their
+ * outcome is then copied to the other replicas as a versioned put or delete.
+ *
+ * Concurrent single-key reads of the same key at the same consistency level share one read
+ * ({@code cache.coalesce-reads}); a write through this node ends the sharing for reads arriving
+ * after it is acknowledged.
+ *
+ * With {@code cache.local-reads}, single-key ONE reads of a key that has a replica on this node
+ * are answered from that replica's store through {@link LocalStores}, without asking its entity;
+ * only hits are, so misses still fall through the replicas and reach a read-through loader.
+ *
+ * Every ask to an entity passes {@link AdmissionControl} first and fails with an
+ * {@link OverloadedException} without being sent when the node or its shard is at its limit; a
+ * ONE read then tries the next replica. Asks time out after {@code cache.ask-timeout}, or by the
+ * deadline of a client made with {@link #withDeadline}.
+ *
+ * Written values pass through {@link ValueCompression} here, so with {@code cache.compression}
+ * on the large ones travel and are stored compressed; replies carry values as stored.
+ *
+ * With {@code cache.near-cache.enabled}, single-key ONE reads are served from the node's
+ * {@link NearCache} when it holds a copy, and the replies of the reads that miss fill it; with
+ * {@code admission = "hot"} only hot keys are copied.
+ */
+public class CacheClient {
+
+    private final ClusterSharding sharding;
+    private final DistributedCacheApplication.CacheMessageExtractor extractor;
+    private final CacheSettings settings;
+    private final ActorSystem<?> system;
+    private final NearCache nearCache;
+    private final HotKeys hotKeys;
+    private final LocalStores localStores;
+    private final ValueCompression compression;
+    private final CacheMetrics metrics;
+    private final AdmissionControl admission;
+    private final int replicas;
+    // System.nanoTime() by which every ask of this client's requests must be answered, 0 = none;
+    // see withDeadline
+    private final long deadlineNanos;
+
+    // Hybrid timestamps: wall-clock millis in the high bits and a counter in the low 16 bits, so
+    // the versions this node hands out always increase
+    private final AtomicLong lastVersion;
+    private final LongAdder readRepairs;
+
+    // Single-key reads in flight per consistency level, joined by the reads of the same key that
+    // arrive before they complete
+    private final Map<String, CompletableFuture<CacheActor.Response>>[] inFlight;
+    private final LongAdder coalescedReads;
+
+    public CacheClient(ClusterSharding sharding,
+                       DistributedCacheApplication.CacheMessageExtractor extractor,
+                       CacheSettings settings,
+                       ActorSystem<?> system) {
+        this.sharding = sharding;
+        this.extractor = extractor;
+        this.settings = settings;
+        this.system = system;
+        this.nearCache = NearCache.get(system);
+        this.hotKeys = HotKeys.get(system);
+        this.localStores = LocalStores.get(system);
+        this.compression = ValueCompression.get(system);
+        this.metrics = CacheMetrics.get(system);
+        this.admission = AdmissionControl.get(system);
+        this.replicas = settings.replicationFactor;
+        this.deadlineNanos = 0L;
+        this.lastVersion = new AtomicLong();
+        this.readRepairs = new LongAdder();
+        this.inFlight = newFlightMaps();
+        this.coalescedReads = new LongAdder();
+    }
+
+    // A view of `base` with a deadline; it shares everything else, the version clock included
+    private CacheClient(CacheClient base, long deadlineNanos) {
+        this.sharding = base.sharding;
+        this.extractor = base.extractor;
+        this.settings = base.settings;
+        this.system = base.system;
+        this.nearCache = base.nearCache;
+        this.hotKeys = base.hotKeys;
+        this.localStores = base.localStores;
+        this.compression = base.compression;
+        this.metrics = base.metrics;
+        this.admission = base.admission;
+        this.replicas = base.replicas;
+        this.deadlineNanos = deadlineNanos;
+        this.lastVersion = base.lastVersion;
+        this.readRepairs = base.readRepairs;
+        this.inFlight = base.inFlight;
+        this.coalescedReads = base.coalescedReads;
+    }
+
+    /**
+     * This client, but with every ask of the requests made through it, replicas and retries
+     * included, timing out by {@code timeout} from now instead of after {@code cache.ask-timeout}
+     * each. Its single-key reads do not join or start coalesced reads, whose asks run on their
+     * first caller's deadline.
+     */
+    public CacheClient withDeadline(Duration timeout) {
+        return new CacheClient(this, System.nanoTime() + timeout.toNanos());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, CompletableFuture<CacheActor.Response>>[] newFlightMaps() {
+        Map<String, CompletableFuture<CacheActor.Response>>[] maps = new Map[Consistency.values().length];
+        for (int i = 0; i < maps.length; i++) {
+            maps[i] = new ConcurrentHashMap<>();
+        }
+        return maps;
+    }
+
+    public CacheSettings settings() {
+        return settings;
+    }
+
+    /**
+     * Stale replicas rewritten by replicated reads on this node.
+     */
+    public long readRepairs() {
+        return readRepairs.sum();
+    }
+
+    /**
+     * Single-key reads on this node answered by joining a read of the same key already in flight.
+     */
+    public long coalescedReads() {
+        return coalescedReads.sum();
+    }
+
+    public CompletionStage<CacheActor.Response> get(String key) {
+        return get(key, settings.defaultConsistency);
+    }
+
+    public CompletionStage<CacheActor.Response> get(String key, Consistency consistency) {
+        // A single replica answers every level alone
+        if (localStores.isEnabled() && (consistency == Consistency.ONE || replicas == 1)) {
+            CacheActor.Response local = readLocal(key);
+            if (local != null) {
+                return CompletableFuture.completedFuture(local);
+            }
+        }
+        // Only reads that leave the node count: a key served locally needs no spreading
+        boolean hot = hotKeys.recordRead(key);
+        boolean near = nearCache.isEnabled() && (!settings.nearCacheHotKeysOnly || hot);
+        // A local copy may trail the replicas by an invalidation, so only ONE reads may use it
+        if (near && consistency == Consistency.ONE) {
+            CacheActor.Found cached = nearCache.get(key, System.currentTimeMillis());
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        if (!settings.coalesceReads || deadlineNanos != 0L) {
+            return fetch(key, consistency, hot, near);
+        }
+        Map<String, CompletableFuture<CacheActor.Response>> flights = inFlight[consistency.ordinal()];
+        CompletableFuture<CacheActor.Response> flight = flights.get(key);
+        if (flight == null) {
+            CompletableFuture<CacheActor.Response> own = new CompletableFuture<>();
+            flight = flights.putIfAbsent(key, own);
+            if (flight == null) {
+                fetch(key, consistency, hot, near).whenComplete((res, failure) -> {
+                    flights.remove(key, own);
+                    if (failure == null) {
+                        own.complete(res);
+                    } else {
+                        own.completeExceptionally(failure);
+                    }
+                });
+                return own;
+            }
+        }
+        coalescedReads.increment();
+        return flight;
+    }
+
+    // The key's value, or its tombstone's NotFound, from the first replica on this node that holds
+    // either; null if none does or one could not be read now. Like readOne, a tombstone ends the
+    // read: a replica further on may have missed the delete
+    private CacheActor.Response readLocal(String key) {
+        long now = System.currentTimeMillis();
+        for (int replica = 0; replica < replicas; replica++) {
+            String entityId = extractor.entityIdForKey(key, replica);
+            CacheActor.Response res = localStores.read(entityId, key, now);
+            if (res == null) {
+                // Elsewhere, which the asks will reach, or mid-write, which leaves it to them
+                if (localStores.hosts(entityId)) {
+                    return null;
+                }
+                continue;
+            }
+            if (res != CacheStore.ABSENT) {
+                // Counted as the entity would have
+                metrics.recordLookup(res instanceof CacheActor.Found);
+                return res;
+            }
+        }
+        return null;
+    }
+
+    // One read of the key from its replicas; fills the near cache
+    private CompletionStage<CacheActor.Response> fetch(String key, Consistency consistency, boolean hot, boolean near) {
+        long stamp = near ? nearCache.stamp(key) : 0L;
+        CompletionStage<CacheActor.Response> reply = read(key, consistency, hot);
+        if (!near) {
+            return reply;
+        }
+        return reply.thenApply(res -> {
+            if (res instanceof CacheActor.Found) {
+                nearCache.put(key, (CacheActor.Found) res, stamp, System.currentTimeMillis());
+            }
+            return res;
+        });
+    }
+
+    public CompletionStage<CacheActor.Response> put(String key, ByteString value, long ttlMillis) {
+        return put(key, value, ttlMillis, settings.defaultConsistency);
+    }
+
+    public CompletionStage<CacheActor.Response> put(String key, ByteString value, long ttlMillis,
+                                                    Consistency consistency) {
+        long version = nextVersion();
+        ByteString stored = compression.encode(value);
+        return afterWrite(key, write(consistency, replica ->
+                ask(key, replica, replyTo -> new CacheActor.Put(key, stored, ttlMillis, version, replyTo))));
+    }
+
+    public CompletionStage<CacheActor.Response> delete(String key) {
+        return delete(key, settings.defaultConsistency);
+    }
+
+    public CompletionStage<CacheActor.Response> delete(String key, Consistency consistency) {
+        // Without replicas there is nobody to resurrect the value, so skip the tombstone
+        long version = replicas > 1 ? nextVersion() : 0L;
+        return afterWrite(key, write(consistency, replica ->
+                ask(key, replica, replyTo -> new CacheActor.Delete(key, version, replyTo))));
+    }
+
+    /**
+     * Stores the value only if the key holds none: {@link CacheActor.Written}, or
+     * {@link CacheActor.Conflict} with the current value's version.
+     */
+    public CompletionStage<CacheActor.Response> putIfAbsent(String key, ByteString value, long ttlMillis,
+                                                            Consistency consistency) {
+        long version = nextVersion();
+        ByteString stored = compression.encode(value);
+        return atomic(key, consistency, replyTo ->
+                new CacheActor.PutIfAbsent(key, stored, ttlMillis, version, replyTo));
+    }
+
+    /**
+     * Stores the value only if the key holds a value at {@code expectedVersion}, as read from a
+     * {@link CacheActor.Found}: {@link CacheActor.Written}, or {@link CacheActor.Conflict} with the
+     * current version (0 if the key has no value).
+     */
+    public CompletionStage<CacheActor.Response> compareAndSet(String key, ByteString value, long ttlMillis,
+                                                              long expectedVersion, Consistency consistency) {
+        long version = nextVersion();
+        ByteString stored = compression.encode(value);
+        return atomic(key, consistency, replyTo ->
+                new CacheActor.CompareAndSet(key, stored, ttlMillis, expectedVersion, version, replyTo));
+    }
+
+    /**
+     * Adds {@code delta} to the key's decimal integer value, creating it at {@code delta} with the
+     * given TTL if absent: {@link CacheActor.Written} with the sum, or {@link CacheActor.Conflict}
+     * if the value is not an integer or the sum would overflow.
+     */
+    public CompletionStage<CacheActor.Response> incrementBy(String key, long delta, long ttlMillis,
+                                                            Consistency consistency) {
+        long version = nextVersion();
+        return atomic(key, consistency, replyTo ->
+                new CacheActor.IncrementBy(key, delta, ttlMillis, version, replyTo));
+    }
+
+    /**
+     * Deletes the key and answers with the value it held: {@link CacheActor.Taken}, or
+     * {@link CacheActor.NotFound}. The value is taken from the first replica; if that one has
+     * none, the key is still deleted from every replica, as {@link #delete} would.
+     */
+    public CompletionStage<CacheActor.Response> getAndDelete(String key, Consistency consistency) {
+        long version = replicas > 1 ? nextVersion() : 0L;
+        return atomic(key, consistency, replyTo -> new CacheActor.GetAndDelete(key, version, replyTo))
+                .thenCompose(res -> {
+                    if (replicas == 1 || !(res instanceof CacheActor.NotFound)) {
+                        return CompletableFuture.completedFuture(res);
+                    }
+                    // The first replica may have lost a key the others still hold (a failed ONE
+                    // write, a lost handoff); a read would find it there and repair it back, so
+                    // the delete goes to every replica anyway
+                    return afterWrite(key, write(consistency, replica ->
+                            ask(key, replica, replyTo -> new CacheActor.Delete(key, version, replyTo))))
+                            .thenApply(done -> res);
+                });
+    }
+
+    // Runs the operation on the first replica, then copies its outcome to the others; answers with
+    // the first replica's reply once `consistency` replicas, the first one included, have the outcome
+    private CompletionStage<CacheActor.Response> atomic(
+            String key, Consistency consistency,
+            akka.japi.function.Function<ActorRef<CacheActor.Response>, CacheActor.Command> operation) {
+        return afterWrite(key, ask(key, 0, operation).thenCompose(res -> {
+            if (replicas == 1 || !(res instanceof CacheActor.Written || res instanceof CacheActor.Taken)) {
+                return CompletableFuture.completedFuture(res);
+            }
+            Replies replies = new Replies(null, consistency, false);
+            replies.onReply(0, res, null);
+            for (int replica = 1; replica < replicas; replica++) {
+                int r = replica;
+                ask(key, r, replyTo -> copyOf(key, res, replyTo))
+                        .whenComplete((ack, failure) -> replies.onReply(r, ack, failure));
+            }
+            return replies.result.thenApply(newest -> res);
+        }));
+    }
+
+    // The write that brings another replica to an atomic operation's outcome
+    private static CacheActor.Command copyOf(String key, CacheActor.Response outcome, ActorRef<CacheActor.Response> replyTo) {
+        if (outcome instanceof CacheActor.Taken) {
+            return new CacheActor.Delete(key, ((CacheActor.Taken) outcome).version, replyTo);
+        }
+        CacheActor.Written written = (CacheActor.Written) outcome;
+        long ttlMillis = 0L;
+        if (written.expiresAtMillis != 0) {
+            // Already expired: the copy expires at once, like the original
+            ttlMillis = Math.max(1L, written.expiresAtMillis - System.currentTimeMillis());
+        }
+        return new CacheActor.Put(key, written.value, ttlMillis, written.version, replyTo);
+    }
+
+    // The owner's invalidation reaches this node asynchronously; dropping our own copy, and any
+    // read in flight from before the write, as soon as it is acknowledged keeps reads through this
+    // node consistent with its own writes
+    private <T> CompletionStage<T> afterWrite(String key, CompletionStage<T> write) {
+        return write.whenComplete((res, failure) -> written(key));
+    }
+
+    private void written(String key) {
+        if (nearCache.isEnabled()) {
+            nearCache.invalidate(key);
+        }
+        if (settings.coalesceReads) {
+            for (Map<String, CompletableFuture<CacheActor.Response>> flights : inFlight) {
+                flights.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Looks up many keys at once. Emits {@link CacheActor.MultiFound}s as shard batches answer;
+     * keys absent from every element were not found. Deferred keys, whose values did not fit in a
+     * reply, are fetched again before the batch completes. A batch that fails or times out is
+     * logged and reported as misses, like any other cache miss.
+     *
+     * Batches read at consistency ONE: keys a replica does not have are asked of the next one.
+     */
+    public Source<CacheActor.MultiFound, NotUsed> multiGet(Collection<String> keys) {
+        return Source.from(shardBatches(new LinkedHashSet<>(keys), key -> key, key -> 0))
+                .flatMapMerge(settings.bulkMaxParallelism, batch -> fetch(batch, 0));
+    }
+
+    private Source<CacheActor.MultiFound, NotUsed> fetch(List<String> batch, int replica) {
+        CompletionStage<CacheActor.MultiFound> reply =
+                ask(batch.get(0), replica, replyTo -> new CacheActor.MultiGet(batch, replyTo), settings.bulkTimeout)
+                        .handle((res, failure) -> {
+                            if (res instanceof CacheActor.MultiFound) {
+                                return (CacheActor.MultiFound) res;
+                            }
+                            metrics.recordAskFailure(failure);
+                            system.log().warn("Multi-get batch of {} keys failed, reporting misses: {}",
+                                    batch.size(), failure != null ? failure.getMessage() : res);
+                            return new CacheActor.MultiFound(
+                                    Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+                        });
+        return Source.completionStage(reply).flatMapConcat(found -> {
+            Source<CacheActor.MultiFound, NotUsed> result = Source.single(found);
+            if (!found.deferred.isEmpty()) {
+                result = result.concat(Source.lazySource(() -> fetch(found.deferred, replica)));
+            }
+            if (replica + 1 < replicas) {
+                List<String> missing = missing(batch, found);
+                if (!missing.isEmpty()) {
+                    result = result.concat(Source.lazySource(() -> fetch(missing, replica + 1)));
+                }
+            }
+            return result;
+        });
+    }
+
+    private static List<String> missing(List<String> batch, CacheActor.MultiFound found) {
+        Set<String> answered = new HashSet<>(found.keys);
+        answered.addAll(found.deferred);
+        List<String> missing = new ArrayList<>();
+        for (String key : batch) {
+            if (!answered.contains(key)) {
+                missing.add(key);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Stores many entries at once at the default consistency level. Completes with the number of
+     * entries stored; the entries of a batch that fails or times out are not counted.
+     */
+    public CompletionStage<Integer> multiPut(List<CacheActor.Entry> entries) {
+        return multiPut(entries, settings.defaultConsistency);
+    }
+
+    public CompletionStage<Integer> multiPut(List<CacheActor.Entry> entries, Consistency consistency) {
+        List<CacheActor.Entry> versioned = new ArrayList<>(entries.size());
+        for (CacheActor.Entry entry : entries) {
+            versioned.add(new CacheActor.Entry(entry.key, compression.encode(entry.value), entry.ttlMillis,
+                    nextVersion()));
+        }
+        return Source.from(shardBatches(versioned, entry -> entry.key, entry -> entry.value.size()))
+                .mapAsyncUnordered(settings.bulkMaxParallelism, batch ->
+                        write(consistency, replica -> ask(batch.get(0).key, replica,
+                                replyTo -> new CacheActor.MultiPut(batch, replyTo), settings.bulkTimeout))
+                                .handle((res, failure) -> {
+                                    if (failure == null) {
+                                        return batch.size();
+                                    }
+                                    metrics.recordAskFailure(failure);
+                                    system.log().warn("Multi-put batch of {} entries failed: {}",
+                                            batch.size(), failure.getMessage());
+                                    return 0;
+                                }))
+                .runFold(0, Integer::sum, system)
+                .whenComplete((stored, failure) -> entries.forEach(entry -> written(entry.key)));
+    }
+
+    /**
+     * Streams the live entries whose keys start with {@code prefix}, in no particular order; an
+     * empty prefix streams the whole cache. Every bucket's first replica is asked for its matches
+     * one page of {@code cache.scan.page-size} entries at a time, {@code max-parallelism} buckets at
+     * once, and a bucket's next page is only asked for once downstream has taken the previous one,
+     * so a scan holds a few pages in memory however many keys match. Keys written while the scan
+     * runs may or may not be in it. Fails if a page is not answered in time, within the client's
+     * deadline if it has one, or is refused by admission control. Bucket mode only.
+     */
+    public Source<CacheActor.Entry, NotUsed> scan(String prefix) {
+        if (settings.entityMode != CacheSettings.EntityMode.BUCKET) {
+            return Source.failed(new UnsupportedOperationException("Prefix scans need entity-mode = \"bucket\""));
+        }
+        return Source.range(0, settings.numberOfBuckets - 1)
+                .flatMapMerge(settings.bulkMaxParallelism, bucket -> scanBucket(bucket, prefix));
+    }
+
+    private Source<CacheActor.Entry, NotUsed> scanBucket(int bucket, String prefix) {
+        // The cursor is the last key of the previous page; empty once the bucket has no more
+        return Source.unfoldAsync(Optional.of(""), (Optional<String> after) -> {
+            if (!after.isPresent()) {
+                return CompletableFuture.completedFuture(Optional.<Pair<Optional<String>, List<CacheActor.Entry>>>empty());
+            }
+            return askEntity(extractor.entityIdForBucket(bucket, 0),
+                            replyTo -> new CacheActor.Scan(prefix, after.get(), settings.scanPageSize, replyTo),
+                            settings.bulkTimeout)
+                    .whenComplete((res, failure) -> metrics.recordAskFailure(failure))
+                    .thenApply(res -> {
+                        List<CacheActor.Entry> entries = ((CacheActor.ScanPage) res).entries;
+                        Optional<String> next = ((CacheActor.ScanPage) res).more && !entries.isEmpty()
+                                ? Optional.of(entries.get(entries.size() - 1).key) : Optional.empty();
+                        return Optional.of(Pair.create(next, entries));
+                    });
+        }).mapConcat(entries -> entries);
+    }
+
+    /**
+     * Deletes every key that starts with {@code prefix} from every replica of every bucket, each
+     * bucket at the given consistency level. Completes with the number of keys deleted, as counted
+     * by one of the replicas of each bucket that answered. Keys written after their bucket was cleared
+     * stay. A failure may leave some buckets cleared and others not; deleting again is safe.
+     */
+    public CompletionStage<Integer> deletePrefix(String prefix, Consistency consistency) {
+        if (settings.entityMode != CacheSettings.EntityMode.BUCKET) {
+            return CompletableFuture.failedFuture(
+                    new UnsupportedOperationException("Prefix deletes need entity-mode = \"bucket\""));
+        }
+        // One version for all keys: each replica tombstones them as if deleted one by one
+        long version = replicas > 1 ? nextVersion() : 0L;
+        return Source.range(0, settings.numberOfBuckets - 1)
+                .mapAsyncUnordered(settings.bulkMaxParallelism, bucket -> write(consistency, replica ->
+                        askEntity(extractor.entityIdForBucket(bucket, replica),
+                                replyTo -> new CacheActor.DeletePrefix(prefix, version, replyTo), settings.bulkTimeout)))
+                .runFold(0, (deleted, res) -> deleted + ((CacheActor.PrefixDeleted) res).keys, system)
+                .whenComplete((deleted, failure) -> {
+                    if (nearCache.isEnabled()) {
+                        nearCache.invalidatePrefix(prefix);
+                    }
+                    if (settings.coalesceReads) {
+                        for (Map<String, CompletableFuture<CacheActor.Response>> flights : inFlight) {
+                            flights.keySet().removeIf(key -> key.startsWith(prefix));
+                        }
+                    }
+                });
+    }
+
+    private CompletionStage<CacheActor.Response> read(String key, Consistency consistency, boolean hot) {
+        if (replicas == 1) {
+            return ask(key, 0, replyTo -> new CacheActor.Get(key, replyTo));
+        }
+        if (consistency == Consistency.ONE) {
+            int first = hot ? ThreadLocalRandom.current().nextInt(replicas) : 0;
+            return readOne(key, first, 0, new ArrayList<>());
+        }
+        Replies replies = new Replies(key, consistency, true);
+        for (int replica = 0; replica < replicas; replica++) {
+            int r = replica;
+            ask(key, r, replyTo -> new CacheActor.Get(key, replyTo))
+                    .whenComplete((res, failure) -> replies.onReply(r, res, failure));
+        }
+        return replies.result;
+    }
+
+    // Asks one replica after the other, starting at `first`, until one has the key; `missed`
+    // collects the replicas that did not, and they are repaired once a value is found further on
+    private CompletionStage<CacheActor.Response> readOne(String key, int first, int attempt, List<Integer> missed) {
+        int replica = (first + attempt) % replicas;
+        return ask(key, replica, replyTo -> new CacheActor.Get(key, replyTo))
+                .handle((res, failure) -> {
+                    if (res instanceof CacheActor.Found) {
+                        for (int stale : missed) {
+                            repair(key, stale, res);
+                        }
+                        return CompletableFuture.<CacheActor.Response>completedFuture(res);
+                    }
+                    if (res instanceof CacheActor.NotFound && ((CacheActor.NotFound) res).version != 0) {
+                        // Deleted rather than lost: no older replica may answer for it
+                        return CompletableFuture.<CacheActor.Response>completedFuture(res);
+                    }
+                    if (res != null) {
+                        missed.add(replica);
+                    } else {
+                        metrics.recordAskFailure(failure);
+                    }
+                    if (attempt + 1 < replicas) {
+                        return readOne(key, first, attempt + 1, missed);
+                    }
+                    if (failure != null && missed.isEmpty()) {
+                        return CompletableFuture.<CacheActor.Response>failedFuture(failure);
+                    }
+                    return CompletableFuture.<CacheActor.Response>completedFuture(new CacheActor.NotFound());
+                })
+                .thenCompose(next -> next);
+    }
+
+    private CompletionStage<CacheActor.Response> write(Consistency consistency,
+                                                       IntFunction<CompletionStage<CacheActor.Response>> send) {
+        if (replicas == 1) {
+            return send.apply(0);
+        }
+        Replies replies = new Replies(null, consistency, false);
+        for (int replica = 0; replica < replicas; replica++) {
+            int r = replica;
+            send.apply(r).whenComplete((res, failure) -> replies.onReply(r, res, failure));
+        }
+        return replies.result;
+    }
+
+    // Brings a stale replica up to the newest reply; fire and forget, a failed repair is retried
+    // by the next replicated read of the key
+    private void repair(String key, int replica, CacheActor.Response newest) {
+        if (newest instanceof CacheActor.Found) {
+            CacheActor.Found found = (CacheActor.Found) newest;
+            long ttlMillis = 0L;
+            if (found.expiresAtMillis != 0) {
+                ttlMillis = found.expiresAtMillis - System.currentTimeMillis();
+                if (ttlMillis <= 0) {
+                    return;
+                }
+            }
+            long ttl = ttlMillis;
+            ask(key, replica, replyTo -> new CacheActor.Put(key, found.value, ttl, found.version, replyTo));
+        } else {
+            long version = versionOf(newest);
+            ask(key, replica, replyTo -> new CacheActor.Delete(key, version, replyTo));
+        }
+        readRepairs.increment();
+        system.log().debug("Read repair of key '{}' on replica {}", key, replica);
+    }
+
+    private long nextVersion() {
+        long now = System.currentTimeMillis() << 16;
+        return lastVersion.accumulateAndGet(now, (last, candidate) -> Math.max(last + 1, candidate));
+    }
+
+    private static long versionOf(CacheActor.Response res) {
+        if (res instanceof CacheActor.Found) {
+            return ((CacheActor.Found) res).version;
+        }
+        if (res instanceof CacheActor.NotFound) {
+            return ((CacheActor.NotFound) res).version;
+        }
+        if (res instanceof CacheActor.Stored) {
+            return ((CacheActor.Stored) res).version;
+        }
+        if (res instanceof CacheActor.Removed) {
+            // Ranks a removal above a miss, so a replicated delete reports one if any replica that
+            // answered made it
+            return ((CacheActor.Removed) res).removed ? 1L : 0L;
+        }
+        return 0L;
+    }
+
+    private CompletionStage<CacheActor.Response> ask(
+            String key, int replica,
+            akka.japi.function.Function<ActorRef<CacheActor.Response>, CacheActor.Command> message) {
+        return ask(key, replica, message, settings.askTimeout);
+    }
+
+    // Asks the entity holding a replica of the key (its bucket, or the key itself in per-key mode)
+    private CompletionStage<CacheActor.Response> ask(
+            String key, int replica,
+            akka.japi.function.Function<ActorRef<CacheActor.Response>, CacheActor.Command> message,
+            Duration timeout) {
+        return askEntity(extractor.entityIdForKey(key, replica), message, timeout);
+    }
+
+    // Within the deadline if there is one and if admission control lets the ask through; every ask
+    // to a cache entity goes through here, the per-bucket ones of scans and prefix deletes included
+    private CompletionStage<CacheActor.Response> askEntity(
+            String entityId,
+            akka.japi.function.Function<ActorRef<CacheActor.Response>, CacheActor.Command> message,
+            Duration timeout) {
+        if (deadlineNanos != 0L) {
+            long left = deadlineNanos - System.nanoTime();
+            if (left <= 0) {
+                return CompletableFuture.failedFuture(new TimeoutException("Request deadline passed"));
+            }
+            if (left < timeout.toNanos()) {
+                timeout = Duration.ofNanos(left);
+            }
+        }
+        EntityRef<CacheActor.Command> entity =
+                sharding.entityRefFor(DistributedCacheApplication.CACHE_ENTITY_KEY, entityId);
+        if (!admission.isEnabled()) {
+            return entity.ask(message, timeout);
+        }
+        ConcurrencyLimit shard = admission.acquire(extractor.shardId(entityId));
+        if (shard == null) {
+            return CompletableFuture.failedFuture(
+                    new OverloadedException("Too many requests in flight to shard " + extractor.shardId(entityId)));
+        }
+        long start = System.nanoTime();
+        return entity.ask(message, timeout).whenComplete((res, failure) -> admission.release(shard, start, failure));
+    }
+
+    // Groups items by the shard owning their key, preserving order, in chunks of at most batch-size
+    // items and max-message-size bytes (a single oversized item still gets a chunk of its own)
+    private <T> List<List<T>> shardBatches(Collection<T> items, Function<T, String> keyOf, ToIntFunction<T> bytesOf) {
+        Map<String, List<T>> byShard = new LinkedHashMap<>();
+        for (T item : items) {
+            String shardId = extractor.shardId(extractor.entityIdForKey(keyOf.apply(item)));
+            byShard.computeIfAbsent(shardId, id -> new ArrayList<>()).add(item);
+        }
+        List<List<T>> batches = new ArrayList<>();
+        for (List<T> shard : byShard.values()) {
+            List<T> batch = new ArrayList<>();
+            long batchBytes = 0;
+            for (T item : shard) {
+                int bytes = bytesOf.applyAsInt(item);
+                if (!batch.isEmpty() && (batch.size() == settings.bulkBatchSize
+                        || batchBytes + bytes > settings.maxMessageBytes)) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                batch.add(item);
+                batchBytes += bytes;
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Collects the replies of all replicas to one request. Completes with the newest reply once
+     * {@code required} replicas have answered, or with a {@link ConsistencyException} once too many
+     * have failed for that to happen. Reads then repair every replica that answered with an older
+     * version.
+     */
+    private final class Replies {
+        final CompletableFuture<CacheActor.Response> result = new CompletableFuture<>();
+        private final String key;
+        private final Consistency consistency;
+        private final int required;
+        private final boolean repair;
+        private final CacheActor.Response[] replies = new CacheActor.Response[replicas];
+        private int successes;
+        private int failures;
+
+        Replies(String key, Consistency consistency, boolean repair) {
+            this.key = key;
+            this.consistency = consistency;
+            this.required = consistency.required(replicas);
+            this.repair = repair;
+        }
+
+        void onReply(int replica, CacheActor.Response res, Throwable failure) {
+            CacheActor.Response complete = null;
+            boolean fail = false;
+            int failed;
+            boolean allAnswered;
+            synchronized (this) {
+                if (failure == null) {
+                    replies[replica] = res;
+                    successes++;
+                    if (successes == required) {
+                        complete = newest();
+                    }
+                } else {
+                    failures++;
+                    fail = failures == replicas - required + 1;
+                }
+                failed = failures;
+                allAnswered = successes + failures == replicas;
+            }
+            if (failure != null) {
+                metrics.recordAskFailure(failure);
+            }
+            if (complete != null) {
+                result.complete(complete);
+            } else if (fail) {
+                result.completeExceptionally(new ConsistencyException(String.format(
+                        "%d of %d replicas failed or timed out, %s needs %d", failed, replicas,
+                        consistency, required)));
+            }
+            if (repair && allAnswered) {
+                repairStale();
+            }
+        }
+
+        private CacheActor.Response newest() {
+            CacheActor.Response newest = null;
+            for (CacheActor.Response reply : replies) {
+                if (reply != null && (newest == null || versionOf(reply) > versionOf(newest))) {
+                    newest = reply;
+                }
+            }
+            return newest;
+        }
+
+        private void repairStale() {
+            CacheActor.Response newest;
+            synchronized (this) {
+                newest = newest();
+            }
+            if (newest == null || versionOf(newest) == 0) {
+                return;
+            }
+            for (int replica = 0; replica < replicas; replica++) {
+                CacheActor.Response reply = replies[replica];
+                if (reply != null && versionOf(reply) < versionOf(newest)) {
+                    repair(key, replica, newest);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ai.akka.cache;
+
+import akka.util.ByteString;
+
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Origin of the values the cache does not hold, for read-through.
+ *
+ * Configured by class name in {@code cache.read-through.loader}; the class needs a public
+ * constructor taking the {@code akka.actor.typed.ActorSystem}, or a public no-argument one. The
+ * entity holding a key's first replica asks the loader when a single-key GET misses, once however
+ * many GETs are waiting for the key, stores the value it returns and answers all of them with it.
+ * Keys with a write queued for the {@link CacheWriter} are answered from the queue instead.
+ */
+public interface CacheLoader {
+
+    /**
+     * Loads the value of a key; completes with empty if the origin has none either. Must not
+     * block the calling thread: slow origins should complete the stage on their own executor.
+     */
+    CompletionStage<Optional<ByteString>> load(String key);
+}
@@ -0,0 +1,709 @@
+package ai.akka.cache;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.ByteBufferSerializer;
+import akka.serialization.SerializerWithStringManifest;
+import akka.stream.SourceRef;
+import akka.stream.StreamRefResolver;
+import akka.util.ByteString;
+
+import java.io.NotSerializableException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary serializer for the cache protocol sent over Artery.
+ *
+ * Every message is a short manifest plus a flat payload of varint-length-prefixed UTF-8 keys,
+ * raw value bytes and fixed-width numbers. There are no class descriptors or reflection, and the
+ * {@link ByteBufferSerializer} path lets Artery write straight into its pooled buffers.
+ */
+public final class CacheMessageSerializer extends SerializerWithStringManifest implements ByteBufferSerializer {
+
+    private static final int IDENTIFIER = 74100;
+
+    private static final String GET = "G";
+    private static final String PUT = "P";
+    private static final String DELETE = "D";
+    private static final String FOUND = "F";
+    private static final String NOT_FOUND = "N";
+    private static final String DELETED = "T"; // NotFound carrying a tombstone's version
+    private static final String DONE = "K";
+    private static final String REMOVED = "R";
+    private static final String STORED = "ST";
+    private static final String MULTI_GET = "MG";
+    private static final String MULTI_PUT = "MP";
+    private static final String MULTI_FOUND = "MF";
+    private static final String INVALIDATE = "I";
+    private static final String TRANSFER_OFFER = "TO";
+    private static final String TRANSFER_CHUNK = "TC";
+    private static final String SCAN = "S";
+    private static final String SCAN_PAGE = "SP";
+    private static final String DELETE_PREFIX = "DP";
+    private static final String PREFIX_DELETED = "PD";
+    private static final String PUT_IF_ABSENT = "PA";
+    private static final String COMPARE_AND_SET = "CS";
+    private static final String INCREMENT_BY = "IB";
+    private static final String GET_AND_DELETE = "GD";
+    private static final String WRITTEN = "W";
+    private static final String TAKEN = "TK";
+    private static final String CONFLICT = "C";
+
+    private final ExtendedActorSystem system;
+    private volatile ActorRefResolver resolver;
+    private volatile StreamRefResolver streamRefResolver;
+    private volatile CacheMetrics metrics;
+
+    public CacheMessageSerializer(ExtendedActorSystem system) {
+        this.system = system;
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        if (o instanceof CacheActor.Get) {
+            return GET;
+        } else if (o instanceof CacheActor.Put) {
+            return PUT;
+        } else if (o instanceof CacheActor.Delete) {
+            return DELETE;
+        } else if (o instanceof CacheActor.Found) {
+            return FOUND;
+        } else if (o instanceof CacheActor.NotFound) {
+            return ((CacheActor.NotFound) o).version == 0 ? NOT_FOUND : DELETED;
+        } else if (o instanceof CacheActor.Done) {
+            return DONE;
+        } else if (o instanceof CacheActor.Removed) {
+            return REMOVED;
+        } else if (o instanceof CacheActor.Stored) {
+            return STORED;
+        } else if (o instanceof CacheActor.MultiGet) {
+            return MULTI_GET;
+        } else if (o instanceof CacheActor.MultiPut) {
+            return MULTI_PUT;
+        } else if (o instanceof CacheActor.MultiFound) {
+            return MULTI_FOUND;
+        } else if (o instanceof NearCacheInvalidator.Invalidate) {
+            return INVALIDATE;
+        } else if (o instanceof CacheActor.TransferOffer) {
+            return TRANSFER_OFFER;
+        } else if (o instanceof CacheActor.TransferChunk) {
+            return TRANSFER_CHUNK;
+        } else if (o instanceof CacheActor.Scan) {
+            return SCAN;
+        } else if (o instanceof CacheActor.ScanPage) {
+            return SCAN_PAGE;
+        } else if (o instanceof CacheActor.DeletePrefix) {
+            return DELETE_PREFIX;
+        } else if (o instanceof CacheActor.PrefixDeleted) {
+            return PREFIX_DELETED;
+        } else if (o instanceof CacheActor.PutIfAbsent) {
+            return PUT_IF_ABSENT;
+        } else if (o instanceof CacheActor.CompareAndSet) {
+            return COMPARE_AND_SET;
+        } else if (o instanceof CacheActor.IncrementBy) {
+            return INCREMENT_BY;
+        } else if (o instanceof CacheActor.GetAndDelete) {
+            return GET_AND_DELETE;
+        } else if (o instanceof CacheActor.Written) {
+            return WRITTEN;
+        } else if (o instanceof CacheActor.Taken) {
+            return TAKEN;
+        } else if (o instanceof CacheActor.Conflict) {
+            return CONFLICT;
+        }
+        throw new IllegalArgumentException("Can't serialize object of type " + o.getClass());
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        String replyTo = replyToOf(o);
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(o, replyTo));
+        write(o, replyTo, buffer);
+        metrics().recordSerialized(buffer.position());
+        return buffer.array();
+    }
+
+    @Override
+    public void toBinary(Object o, ByteBuffer buffer) {
+        int start = buffer.position();
+        write(o, replyToOf(o), buffer);
+        metrics().recordSerialized(buffer.position() - start);
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        return fromBinary(ByteBuffer.wrap(bytes), manifest);
+    }
+
+    @Override
+    public Object fromBinary(ByteBuffer buffer, String manifest) throws NotSerializableException {
+        metrics().recordDeserialized(buffer.remaining());
+        switch (manifest) {
+            case GET:
+                return new CacheActor.Get(readString(buffer), readRef(buffer));
+            case PUT: {
+                String key = readString(buffer);
+                ByteString value = readBytes(buffer);
+                long ttlMillis = readLong(buffer);
+                long version = readLong(buffer);
+                return new CacheActor.Put(key, value, ttlMillis, version, readRef(buffer));
+            }
+            case DELETE: {
+                String key = readString(buffer);
+                long version = readLong(buffer);
+                return new CacheActor.Delete(key, version, readRef(buffer));
+            }
+            case FOUND: {
+                ByteString value = readBytes(buffer);
+                long expiresAtMillis = readVarLong(buffer);
+                return new CacheActor.Found(value, expiresAtMillis, readLong(buffer));
+            }
+            case NOT_FOUND:
+                return new CacheActor.NotFound();
+            case DELETED:
+                return new CacheActor.NotFound(readLong(buffer));
+            case DONE:
+                return new CacheActor.Done();
+            case REMOVED:
+                return new CacheActor.Removed(buffer.get() != 0);
+            case STORED:
+                return new CacheActor.Stored(readLong(buffer));
+            case MULTI_GET: {
+                List<String> keys = readStrings(buffer);
+                return new CacheActor.MultiGet(keys, readRef(buffer));
+            }
+            case MULTI_PUT: {
+                List<CacheActor.Entry> entries = readEntries(buffer);
+                return new CacheActor.MultiPut(entries, readRef(buffer));
+            }
+            case MULTI_FOUND: {
+                List<String> keys = readStrings(buffer);
+                int count = readVarInt(buffer);
+                List<ByteString> values = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    values.add(readBytes(buffer));
+                }
+                return new CacheActor.MultiFound(keys, values, readStrings(buffer));
+            }
+            case INVALIDATE:
+                return new NearCacheInvalidator.Invalidate(readStrings(buffer));
+            case TRANSFER_OFFER:
+                return new CacheActor.TransferOffer(streamRefResolver().resolveSourceRef(readString(buffer)));
+            case TRANSFER_CHUNK:
+                return new CacheActor.TransferChunk(readEntries(buffer));
+            case SCAN: {
+                String prefix = readString(buffer);
+                String after = readString(buffer);
+                int limit = readVarInt(buffer);
+                return new CacheActor.Scan(prefix, after, limit, readRef(buffer));
+            }
+            case SCAN_PAGE: {
+                List<CacheActor.Entry> entries = readEntries(buffer);
+                return new CacheActor.ScanPage(entries, buffer.get() != 0);
+            }
+            case DELETE_PREFIX: {
+                String prefix = readString(buffer);
+                long version = readLong(buffer);
+                return new CacheActor.DeletePrefix(prefix, version, readRef(buffer));
+            }
+            case PREFIX_DELETED:
+                return new CacheActor.PrefixDeleted(readVarInt(buffer));
+            case PUT_IF_ABSENT: {
+                String key = readString(buffer);
+                ByteString value = readBytes(buffer);
+                long ttlMillis = readLong(buffer);
+                long version = readLong(buffer);
+                return new CacheActor.PutIfAbsent(key, value, ttlMillis, version, readRef(buffer));
+            }
+            case COMPARE_AND_SET: {
+                String key = readString(buffer);
+                ByteString value = readBytes(buffer);
+                long ttlMillis = readLong(buffer);
+                long expectedVersion = readLong(buffer);
+                long version = readLong(buffer);
+                return new CacheActor.CompareAndSet(key, value, ttlMillis, expectedVersion, version, readRef(buffer));
+            }
+            case INCREMENT_BY: {
+                String key = readString(buffer);
+                long delta = readLong(buffer);
+                long ttlMillis = readLong(buffer);
+                long version = readLong(buffer);
+                return new CacheActor.IncrementBy(key, delta, ttlMillis, version, readRef(buffer));
+            }
+            case GET_AND_DELETE: {
+                String key = readString(buffer);
+                long version = readLong(buffer);
+                return new CacheActor.GetAndDelete(key, version, readRef(buffer));
+            }
+            case WRITTEN: {
+                ByteString value = readBytes(buffer);
+                long expiresAtMillis = readVarLong(buffer);
+                return new CacheActor.Written(value, expiresAtMillis, readLong(buffer));
+            }
+            case TAKEN: {
+                ByteString value = readBytes(buffer);
+                return new CacheActor.Taken(value, readLong(buffer));
+            }
+            case CONFLICT:
+                return new CacheActor.Conflict(readLong(buffer));
+            default:
+                throw new NotSerializableException(
+                        "Unimplemented deserialization of message with manifest [" + manifest + "] in " + getClass().getName());
+        }
+    }
+
+    private String replyToOf(Object o) {
+        ActorRef<?> ref = null;
+        if (o instanceof CacheActor.Get) {
+            ref = ((CacheActor.Get) o).replyTo;
+        } else if (o instanceof CacheActor.Put) {
+            ref = ((CacheActor.Put) o).replyTo;
+        } else if (o instanceof CacheActor.Delete) {
+            ref = ((CacheActor.Delete) o).replyTo;
+        } else if (o instanceof CacheActor.MultiGet) {
+            ref = ((CacheActor.MultiGet) o).replyTo;
+        } else if (o instanceof CacheActor.MultiPut) {
+            ref = ((CacheActor.MultiPut) o).replyTo;
+        } else if (o instanceof CacheActor.Scan) {
+            ref = ((CacheActor.Scan) o).replyTo;
+        } else if (o instanceof CacheActor.DeletePrefix) {
+            ref = ((CacheActor.DeletePrefix) o).replyTo;
+        } else if (o instanceof CacheActor.PutIfAbsent) {
+            ref = ((CacheActor.PutIfAbsent) o).replyTo;
+        } else if (o instanceof CacheActor.CompareAndSet) {
+            ref = ((CacheActor.CompareAndSet) o).replyTo;
+        } else if (o instanceof CacheActor.IncrementBy) {
+            ref = ((CacheActor.IncrementBy) o).replyTo;
+        } else if (o instanceof CacheActor.GetAndDelete) {
+            ref = ((CacheActor.GetAndDelete) o).replyTo;
+        } else if (o instanceof CacheActor.TransferOffer) {
+            // Not a reply-to, but likewise a string that only the system can produce
+            return streamRefResolver().toSerializationFormat(((CacheActor.TransferOffer) o).chunks);
+        }
+        return ref == null ? null : resolver().toSerializationFormat(ref);
+    }
+
+    private static int sizeOf(Object o, String replyTo) {
+        if (o instanceof CacheActor.Get) {
+            return stringSize(((CacheActor.Get) o).key) + stringSize(replyTo);
+        } else if (o instanceof CacheActor.Put) {
+            CacheActor.Put put = (CacheActor.Put) o;
+            return stringSize(put.key) + bytesSize(put.value) + 2 * Long.BYTES + stringSize(replyTo);
+        } else if (o instanceof CacheActor.Delete) {
+            return stringSize(((CacheActor.Delete) o).key) + Long.BYTES + stringSize(replyTo);
+        } else if (o instanceof CacheActor.Found) {
+            CacheActor.Found found = (CacheActor.Found) o;
+            return bytesSize(found.value) + varLongSize(found.expiresAtMillis) + Long.BYTES;
+        } else if (o instanceof CacheActor.NotFound) {
+            return ((CacheActor.NotFound) o).version == 0 ? 0 : Long.BYTES;
+        } else if (o instanceof CacheActor.Done) {
+            return 0;
+        } else if (o instanceof CacheActor.Removed) {
+            return 1;
+        } else if (o instanceof CacheActor.Stored) {
+            return Long.BYTES;
+        } else if (o instanceof CacheActor.MultiGet) {
+            return stringsSize(((CacheActor.MultiGet) o).keys) + stringSize(replyTo);
+        } else if (o instanceof CacheActor.MultiPut) {
+            return entriesSize(((CacheActor.MultiPut) o).entries) + stringSize(replyTo);
+        } else if (o instanceof CacheActor.MultiFound) {
+            CacheActor.MultiFound found = (CacheActor.MultiFound) o;
+            int size = stringsSize(found.keys) + varIntSize(found.values.size()) + stringsSize(found.deferred);
+            for (ByteString value : found.values) {
+                size += bytesSize(value);
+            }
+            return size;
+        } else if (o instanceof NearCacheInvalidator.Invalidate) {
+            return stringsSize(((NearCacheInvalidator.Invalidate) o).keys);
+        } else if (o instanceof CacheActor.TransferOffer) {
+            return stringSize(replyTo);
+        } else if (o instanceof CacheActor.TransferChunk) {
+            return entriesSize(((CacheActor.TransferChunk) o).entries);
+        } else if (o instanceof CacheActor.Scan) {
+            CacheActor.Scan scan = (CacheActor.Scan) o;
+            return stringSize(scan.prefix) + stringSize(scan.after) + varIntSize(scan.limit) + stringSize(replyTo);
+        } else if (o instanceof CacheActor.ScanPage) {
+            return entriesSize(((CacheActor.ScanPage) o).entries) + 1;
+        } else if (o instanceof CacheActor.DeletePrefix) {
+            return stringSize(((CacheActor.DeletePrefix) o).prefix) + Long.BYTES + stringSize(replyTo);
+        } else if (o instanceof CacheActor.PrefixDeleted) {
+            return varIntSize(((CacheActor.PrefixDeleted) o).keys);
+        } else if (o instanceof CacheActor.PutIfAbsent) {
+            CacheActor.PutIfAbsent put = (CacheActor.PutIfAbsent) o;
+            return stringSize(put.key) + bytesSize(put.value) + 2 * Long.BYTES + stringSize(replyTo);
+        } else if (o instanceof CacheActor.CompareAndSet) {
+            CacheActor.CompareAndSet cas = (CacheActor.CompareAndSet) o;
+            return stringSize(cas.key) + bytesSize(cas.value) + 3 * Long.BYTES + stringSize(replyTo);
+        } else if (o instanceof CacheActor.IncrementBy) {
+            return stringSize(((CacheActor.IncrementBy) o).key) + 3 * Long.BYTES + stringSize(replyTo);
+        } else if (o instanceof CacheActor.GetAndDelete) {
+            return stringSize(((CacheActor.GetAndDelete) o).key) + Long.BYTES + stringSize(replyTo);
+        } else if (o instanceof CacheActor.Written) {
+            CacheActor.Written written = (CacheActor.Written) o;
+            return bytesSize(written.value) + varLongSize(written.expiresAtMillis) + Long.BYTES;
+        } else if (o instanceof CacheActor.Taken) {
+            return bytesSize(((CacheActor.Taken) o).value) + Long.BYTES;
+        } else if (o instanceof CacheActor.Conflict) {
+            return Long.BYTES;
+        }
+        throw new IllegalArgumentException("Can't serialize object of type " + o.getClass());
+    }
+
+    private static void write(Object o, String replyTo, ByteBuffer buffer) {
+        if (o instanceof CacheActor.Get) {
+            writeString(buffer, ((CacheActor.Get) o).key);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.Put) {
+            CacheActor.Put put = (CacheActor.Put) o;
+            writeString(buffer, put.key);
+            writeBytes(buffer, put.value);
+            writeLong(buffer, put.ttlMillis);
+            writeLong(buffer, put.version);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.Delete) {
+            CacheActor.Delete delete = (CacheActor.Delete) o;
+            writeString(buffer, delete.key);
+            writeLong(buffer, delete.version);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.Found) {
+            CacheActor.Found found = (CacheActor.Found) o;
+            writeBytes(buffer, found.value);
+            // Usually 0 (one byte); an epoch-millis expiry takes six
+            writeVarLong(buffer, found.expiresAtMillis);
+            writeLong(buffer, found.version);
+        } else if (o instanceof CacheActor.MultiGet) {
+            writeStrings(buffer, ((CacheActor.MultiGet) o).keys);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.MultiPut) {
+            writeEntries(buffer, ((CacheActor.MultiPut) o).entries);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.MultiFound) {
+            CacheActor.MultiFound found = (CacheActor.MultiFound) o;
+            writeStrings(buffer, found.keys);
+            writeVarInt(buffer, found.values.size());
+            for (ByteString value : found.values) {
+                writeBytes(buffer, value);
+            }
+            writeStrings(buffer, found.deferred);
+        } else if (o instanceof NearCacheInvalidator.Invalidate) {
+            writeStrings(buffer, ((NearCacheInvalidator.Invalidate) o).keys);
+        } else if (o instanceof CacheActor.TransferOffer) {
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.TransferChunk) {
+            writeEntries(buffer, ((CacheActor.TransferChunk) o).entries);
+        } else if (o instanceof CacheActor.Scan) {
+            CacheActor.Scan scan = (CacheActor.Scan) o;
+            writeString(buffer, scan.prefix);
+            writeString(buffer, scan.after);
+            writeVarInt(buffer, scan.limit);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.ScanPage) {
+            CacheActor.ScanPage page = (CacheActor.ScanPage) o;
+            writeEntries(buffer, page.entries);
+            buffer.put((byte) (page.more ? 1 : 0));
+        } else if (o instanceof CacheActor.DeletePrefix) {
+            CacheActor.DeletePrefix delete = (CacheActor.DeletePrefix) o;
+            writeString(buffer, delete.prefix);
+            writeLong(buffer, delete.version);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.PrefixDeleted) {
+            writeVarInt(buffer, ((CacheActor.PrefixDeleted) o).keys);
+        } else if (o instanceof CacheActor.PutIfAbsent) {
+            CacheActor.PutIfAbsent put = (CacheActor.PutIfAbsent) o;
+            writeString(buffer, put.key);
+            writeBytes(buffer, put.value);
+            writeLong(buffer, put.ttlMillis);
+            writeLong(buffer, put.version);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.CompareAndSet) {
+            CacheActor.CompareAndSet cas = (CacheActor.CompareAndSet) o;
+            writeString(buffer, cas.key);
+            writeBytes(buffer, cas.value);
+            writeLong(buffer, cas.ttlMillis);
+            writeLong(buffer, cas.expectedVersion);
+            writeLong(buffer, cas.version);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.IncrementBy) {
+            CacheActor.IncrementBy increment = (CacheActor.IncrementBy) o;
+            writeString(buffer, increment.key);
+            writeLong(buffer, increment.delta);
+            writeLong(buffer, increment.ttlMillis);
+            writeLong(buffer, increment.version);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.GetAndDelete) {
+            CacheActor.GetAndDelete take = (CacheActor.GetAndDelete) o;
+            writeString(buffer, take.key);
+            writeLong(buffer, take.version);
+            writeString(buffer, replyTo);
+        } else if (o instanceof CacheActor.Written) {
+            CacheActor.Written written = (CacheActor.Written) o;
+            writeBytes(buffer, written.value);
+            writeVarLong(buffer, written.expiresAtMillis);
+            writeLong(buffer, written.version);
+        } else if (o instanceof CacheActor.Taken) {
+            CacheActor.Taken taken = (CacheActor.Taken) o;
+            writeBytes(buffer, taken.value);
+            writeLong(buffer, taken.version);
+        } else if (o instanceof CacheActor.Conflict) {
+            writeLong(buffer, ((CacheActor.Conflict) o).version);
+        } else if (o instanceof CacheActor.Stored) {
+            writeLong(buffer, ((CacheActor.Stored) o).version);
+        } else if (o instanceof CacheActor.Removed) {
+            buffer.put((byte) (((CacheActor.Removed) o).removed ? 1 : 0));
+        } else if (o instanceof CacheActor.NotFound) {
+            long version = ((CacheActor.NotFound) o).version;
+            if (version != 0) {
+                writeLong(buffer, version);
+            }
+        } else if (!(o instanceof CacheActor.Done)) {
+            throw new IllegalArgumentException("Can't serialize object of type " + o.getClass());
+        }
+    }
+
+    private ActorRefResolver resolver() {
+        ActorRefResolver r = resolver;
+        if (r == null) {
+            r = ActorRefResolver.get(Adapter.toTyped(system));
+            resolver = r;
+        }
+        return r;
+    }
+
+    private StreamRefResolver streamRefResolver() {
+        StreamRefResolver r = streamRefResolver;
+        if (r == null) {
+            r = StreamRefResolver.get(system);
+            streamRefResolver = r;
+        }
+        return r;
+    }
+
+    private CacheMetrics metrics() {
+        CacheMetrics m = metrics;
+        if (m == null) {
+            m = CacheMetrics.get(Adapter.toTyped(system));
+            metrics = m;
+        }
+        return m;
+    }
+
+    private <T> ActorRef<T> readRef(ByteBuffer buffer) {
+        return resolver().resolveActorRef(readString(buffer));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        if (buffer.hasArray()) {
+            // Decode in place instead of copying into a temporary array first
+            int offset = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + length);
+            return new String(buffer.array(), offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteString readBytes(ByteBuffer buffer) {
+        // Always copied: the buffer may be one of Artery's pooled buffers that gets reused
+        byte[] bytes = new byte[readVarInt(buffer)];
+        buffer.get(bytes);
+        return ByteString.fromArrayUnsafe(bytes);
+    }
+
+    private static List<CacheActor.Entry> readEntries(ByteBuffer buffer) {
+        int count = readVarInt(buffer);
+        List<CacheActor.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String key = readString(buffer);
+            ByteString value = readBytes(buffer);
+            long ttlMillis = readLong(buffer);
+            entries.add(new CacheActor.Entry(key, value, ttlMillis, readLong(buffer)));
+        }
+        return entries;
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int count = readVarInt(buffer);
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(buffer));
+        }
+        return strings;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Big-endian regardless of the buffer's order: Artery hands out little-endian buffers, while
+    // toBinary(Object) and fromBinary(byte[]) wrap big-endian ones
+    private static long readLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (buffer.get() & 0xff);
+        }
+        return value;
+    }
+
+    private static void writeLong(ByteBuffer buffer, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer.put((byte) (value >>> shift));
+        }
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7fL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int stringSize(String s) {
+        int length = utf8Length(s);
+        return varIntSize(length) + length;
+    }
+
+    private static int bytesSize(ByteString bytes) {
+        return varIntSize(bytes.size()) + bytes.size();
+    }
+
+    private static void writeBytes(ByteBuffer buffer, ByteString bytes) {
+        writeVarInt(buffer, bytes.size());
+        bytes.copyToBuffer(buffer);
+    }
+
+    private static int stringsSize(List<String> strings) {
+        int size = varIntSize(strings.size());
+        for (String s : strings) {
+            size += stringSize(s);
+        }
+        return size;
+    }
+
+    private static void writeStrings(ByteBuffer buffer, List<String> strings) {
+        writeVarInt(buffer, strings.size());
+        for (String s : strings) {
+            writeString(buffer, s);
+        }
+    }
+
+    private static int entriesSize(List<CacheActor.Entry> entries) {
+        int size = varIntSize(entries.size());
+        for (CacheActor.Entry entry : entries) {
+            size += stringSize(entry.key) + bytesSize(entry.value) + 2 * Long.BYTES;
+        }
+        return size;
+    }
+
+    private static void writeEntries(ByteBuffer buffer, List<CacheActor.Entry> entries) {
+        writeVarInt(buffer, entries.size());
+        for (CacheActor.Entry entry : entries) {
+            writeString(buffer, entry.key);
+            writeBytes(buffer, entry.value);
+            writeLong(buffer, entry.ttlMillis);
+            writeLong(buffer, entry.version);
+        }
+    }
+
+    // Strings are written as UTF-8 directly into the target buffer, without an intermediate byte[]
+    private static void writeString(ByteBuffer buffer, String s) {
+        writeVarInt(buffer, utf8Length(s));
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xf0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (cp & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // unpaired surrogate, same replacement String.getBytes uses
+            } else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int length = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    length += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    length += 2; // four bytes for the pair, which counts as two chars
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    length += 2;
+                }
+            }
+        }
+        return length;
+    }
+}
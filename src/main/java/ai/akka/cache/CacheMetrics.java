@@ -0,0 +1,397 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.cluster.sharding.ShardRegion;
+import akka.cluster.sharding.typed.ClusterShardingQuery;
+import akka.cluster.sharding.typed.GetShardRegionState;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-node counters and latency histograms, written out in the Prometheus text format by
+ * {@code GET /admin/metrics}.
+ *
+ * Everything recorded on the request path is a {@link LongAdder} increment into a structure built
+ * up front, so recording neither allocates nor contends, and can stay on under full load. Shard
+ * and entity counts are asked of the local shard region when the metrics are scraped. With
+ * {@code cache.monitoring.metrics-collection = off} nothing is recorded.
+ *
+ * Every {@code cache.monitoring.log-summary-interval} the requests served since the last summary
+ * are logged as one INFO line, so the request path itself has nothing to log below DEBUG.
+ */
+public final class CacheMetrics implements Extension {
+
+    public static final ExtensionId<CacheMetrics> ID = new ExtensionId<CacheMetrics>() {
+        @Override
+        public CacheMetrics createExtension(ActorSystem<?> system) {
+            return new CacheMetrics(system, CacheSettings.create(system.settings().config()));
+        }
+    };
+
+    public static CacheMetrics get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    /** HTTP cache operations, timed from the route asking the cache to its answer. */
+    public enum Op {
+        GET, PUT, DELETE, INCR, MGET, MPUT, SCAN, PREFIX_DELETE;
+
+        final String label = "op=\"" + name().toLowerCase() + "\"";
+    }
+
+    enum Outcome {
+        OK, TIMEOUT, UNAVAILABLE, REJECTED, ERROR;
+
+        final String label = "outcome=\"" + name().toLowerCase() + "\"";
+    }
+
+    private static final Duration SHARD_STATE_TIMEOUT = Duration.ofSeconds(3);
+
+    private final ActorSystem<?> system;
+    private final boolean enabled;
+    private final boolean replicated;
+    private final boolean textProtocol;
+
+    private final LatencyHistogram[] latency = new LatencyHistogram[Op.values().length];
+    private final LongAdder[][] requests = new LongAdder[Op.values().length][Outcome.values().length];
+    private final LongAdder askTimeouts = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder mailboxDepth = new LongAdder();
+    private final LongAdder bytesSerialized = new LongAdder();
+    private final LongAdder messagesSerialized = new LongAdder();
+    private final LongAdder bytesDeserialized = new LongAdder();
+    private final LongAdder messagesDeserialized = new LongAdder();
+    private final LongAdder textConnections = new LongAdder();
+    private final LongAdder textConnectionsOpened = new LongAdder();
+
+    // Totals at the last summary; only touched by the summary task
+    private final long[] summarizedRequests = new long[Op.values().length];
+    private long summarizedFailures;
+    private long summarizedHits;
+    private long summarizedMisses;
+    private long summarizedAskTimeouts;
+
+    private CacheMetrics(ActorSystem<?> system, CacheSettings settings) {
+        this.system = system;
+        this.enabled = settings.metricsEnabled;
+        this.replicated = settings.replicationFactor > 1;
+        this.textProtocol = settings.textProtocolEnabled;
+        for (Op op : Op.values()) {
+            latency[op.ordinal()] = new LatencyHistogram();
+            for (Outcome outcome : Outcome.values()) {
+                requests[op.ordinal()][outcome.ordinal()] = new LongAdder();
+            }
+        }
+        Duration summaryInterval = settings.logSummaryInterval;
+        if (enabled && !summaryInterval.isZero()) {
+            system.scheduler().scheduleAtFixedRate(summaryInterval, summaryInterval,
+                    () -> logSummary(summaryInterval), system.executionContext());
+        }
+    }
+
+    private void logSummary(Duration interval) {
+        long total = 0;
+        long failures = 0;
+        StringBuilder perOp = new StringBuilder();
+        for (Op op : Op.values()) {
+            long served = 0;
+            for (Outcome outcome : Outcome.values()) {
+                long count = requests[op.ordinal()][outcome.ordinal()].sum();
+                served += count;
+                if (outcome != Outcome.OK) {
+                    failures += count;
+                }
+            }
+            long delta = served - summarizedRequests[op.ordinal()];
+            summarizedRequests[op.ordinal()] = served;
+            total += delta;
+            perOp.append(perOp.length() == 0 ? "" : ", ").append(op.name().toLowerCase()).append(' ').append(delta);
+        }
+        long failed = failures - summarizedFailures;
+        summarizedFailures = failures;
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long hitDelta = hitCount - summarizedHits;
+        long lookups = hitDelta + missCount - summarizedMisses;
+        summarizedHits = hitCount;
+        summarizedMisses = missCount;
+        long timeouts = askTimeouts.sum();
+        long timedOut = timeouts - summarizedAskTimeouts;
+        summarizedAskTimeouts = timeouts;
+
+        if (total == 0 && lookups == 0) {
+            return;
+        }
+        system.log().info(String.format("Last %ds: %d requests (%s), %d failed, hit ratio %s, %d ask timeouts",
+                interval.getSeconds(), total, perOp, failed,
+                lookups == 0 ? "n/a" : String.format("%.1f%%", 100.0 * hitDelta / lookups), timedOut));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start time to hand to {@link #recordRequest} once the operation completes.
+     */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records a completed operation; {@code failure} is null if it succeeded.
+     */
+    public void recordRequest(Op op, Throwable failure, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        latency[op.ordinal()].record(System.nanoTime() - startNanos);
+        Outcome outcome = outcomeOf(failure);
+        requests[op.ordinal()][outcome.ordinal()].increment();
+        // Without replicas a single-key request is exactly one ask; with replicas, or in batches,
+        // CacheClient counts the asks that time out as their replies come in
+        if (outcome == Outcome.TIMEOUT && !replicated && (op == Op.GET || op == Op.PUT || op == Op.DELETE)) {
+            askTimeouts.increment();
+        }
+    }
+
+    private static Outcome outcomeOf(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure == null) {
+            return Outcome.OK;
+        } else if (failure instanceof TimeoutException) {
+            return Outcome.TIMEOUT;
+        } else if (failure instanceof ConsistencyException) {
+            return Outcome.UNAVAILABLE;
+        } else if (failure instanceof OverloadedException) {
+            return Outcome.REJECTED;
+        }
+        return Outcome.ERROR;
+    }
+
+    /**
+     * Counts an ask to a cache entity if it failed by timing out.
+     */
+    public void recordAskFailure(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (enabled && failure instanceof TimeoutException) {
+            askTimeouts.increment();
+        }
+    }
+
+    public void recordLookup(boolean hit) {
+        if (enabled) {
+            (hit ? hits : misses).increment();
+        }
+    }
+
+    public void recordLookups(int hitCount, int missCount) {
+        if (enabled) {
+            hits.add(hitCount);
+            misses.add(missCount);
+        }
+    }
+
+    void recordSerialized(int bytes) {
+        if (enabled) {
+            bytesSerialized.add(bytes);
+            messagesSerialized.increment();
+        }
+    }
+
+    void recordDeserialized(int bytes) {
+        if (enabled) {
+            bytesDeserialized.add(bytes);
+            messagesDeserialized.increment();
+        }
+    }
+
+    // A memcached text protocol connection opened (+1) or closed (-1)
+    void recordTextConnection(int delta) {
+        if (enabled) {
+            textConnections.add(delta);
+            if (delta > 0) {
+                textConnectionsOpened.increment();
+            }
+        }
+    }
+
+    LongAdder mailboxDepthCounter() {
+        return mailboxDepth;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long askTimeouts() {
+        return askTimeouts.sum();
+    }
+
+    public long mailboxDepth() {
+        return mailboxDepth.sum();
+    }
+
+    /**
+     * All metrics of this node in the Prometheus text exposition format (version 0.0.4). The
+     * shard and entity gauges are left out if the shard region does not answer in time.
+     */
+    public CompletionStage<String> scrape() {
+        return AskPattern.<ClusterShardingQuery, ShardRegion.CurrentShardRegionState>ask(
+                        ClusterSharding.get(system).shardState(),
+                        replyTo -> new GetShardRegionState(DistributedCacheApplication.CACHE_ENTITY_KEY, replyTo),
+                        SHARD_STATE_TIMEOUT, system.scheduler())
+                .handle((state, failure) -> render(state));
+    }
+
+    private String render(ShardRegion.CurrentShardRegionState regionState) {
+        StringBuilder out = new StringBuilder(8192);
+
+        header(out, "cache_request_duration_seconds", "histogram",
+                "Latency of cache operations served over HTTP, from the route's ask to the cache's answer.");
+        for (Op op : Op.values()) {
+            latency[op.ordinal()].writeTo(out, "cache_request_duration_seconds", op.label);
+        }
+        header(out, "cache_requests_total", "counter",
+                "Cache operations served over HTTP by outcome; unavailable means too few replicas answered.");
+        for (Op op : Op.values()) {
+            for (Outcome outcome : Outcome.values()) {
+                out.append("cache_requests_total{").append(op.label).append(',').append(outcome.label).append("} ")
+                        .append(requests[op.ordinal()][outcome.ordinal()].sum()).append('\n');
+            }
+        }
+        counter(out, "cache_ask_timeouts_total", "Asks to cache entities that timed out.", askTimeouts.sum());
+        counter(out, "cache_hits_total", "Key lookups that found a value in an entity on this node.", hits.sum());
+        counter(out, "cache_misses_total", "Key lookups that found no value in an entity on this node.", misses.sum());
+
+        if (regionState != null) {
+            int entities = 0;
+            for (ShardRegion.ShardState shard : regionState.getShards()) {
+                entities += shard.getEntityIds().size();
+            }
+            gauge(out, "cache_shards", "Shards hosted on this node.", regionState.getShards().size());
+            gauge(out, "cache_entities", "Cache entities running on this node.", entities);
+        }
+        gauge(out, "cache_mailbox_depth", "Messages waiting in the mailboxes of this node's cache entities.",
+                mailboxDepth.sum());
+
+        header(out, "cache_serialized_bytes_total", "counter",
+                "Bytes of cache protocol messages serialized for, or deserialized from, other nodes.");
+        out.append("cache_serialized_bytes_total{direction=\"out\"} ").append(bytesSerialized.sum()).append('\n');
+        out.append("cache_serialized_bytes_total{direction=\"in\"} ").append(bytesDeserialized.sum()).append('\n');
+        header(out, "cache_serialized_messages_total", "counter",
+                "Cache protocol messages serialized for, or deserialized from, other nodes.");
+        out.append("cache_serialized_messages_total{direction=\"out\"} ").append(messagesSerialized.sum()).append('\n');
+        out.append("cache_serialized_messages_total{direction=\"in\"} ").append(messagesDeserialized.sum()).append('\n');
+
+        MemoryBudget budget = MemoryBudget.get(system);
+        gauge(out, "cache_memory_used_bytes", "Estimated bytes held by this node's cache entities.", budget.usedBytes());
+        if (budget.isBounded()) {
+            gauge(out, "cache_memory_max_bytes", "Memory budget of this node (cache.eviction.max-memory).",
+                    budget.maxBytes());
+        }
+        counter(out, "cache_evictions_total", "Entries evicted to stay within the memory budget.", budget.evictions());
+
+        BackingStore backingStore = BackingStore.get(system);
+        if (backingStore.hasLoader()) {
+            counter(out, "cache_loads_total", "Misses of this node's entities loaded through the cache loader.",
+                    backingStore.loads());
+            counter(out, "cache_load_failures_total", "Loads that failed or timed out.", backingStore.loadFailures());
+        }
+        if (backingStore.hasWriter()) {
+            counter(out, "cache_write_behind_writes_total", "Writes and deletes queued for the cache writer.",
+                    backingStore.writes());
+            counter(out, "cache_write_behind_flushed_total", "Queued writes handed to the cache writer.",
+                    backingStore.flushedWrites());
+            gauge(out, "cache_write_behind_pending", "Keys whose last write has not reached the cache writer yet.",
+                    backingStore.pendingWrites());
+        }
+
+        HotKeys hotKeys = HotKeys.get(system);
+        if (hotKeys.isEnabled()) {
+            gauge(out, "cache_hot_keys", "Keys currently hot on this node (see /admin/hot-keys).",
+                    hotKeys.hotKeys().size());
+            counter(out, "cache_hot_key_reads_total", "GETs of keys that were hot when read.",
+                    hotKeys.hotReads());
+        }
+
+        OffHeapArena arena = OffHeapArena.get(system);
+        if (arena.isEnabled()) {
+            gauge(out, "cache_off_heap_used_bytes", "Off-heap chunk bytes holding values on this node.", arena.usedBytes());
+            gauge(out, "cache_off_heap_reserved_bytes", "Direct memory taken by this node's off-heap slabs.",
+                    arena.reservedBytes());
+            gauge(out, "cache_off_heap_values", "Values kept off-heap on this node.", arena.values());
+        }
+        AdmissionControl admission = AdmissionControl.get(system);
+        if (admission.isEnabled()) {
+            gauge(out, "cache_admission_limit", "Asks this node lets in flight to cache entities at once.",
+                    admission.nodeLimit());
+            gauge(out, "cache_admission_in_flight", "Asks from this node in flight to cache entities.",
+                    admission.inFlight());
+            gauge(out, "cache_admission_min_shard_limit", "Lowest in-flight limit among the shards this node asks.",
+                    admission.minShardLimit());
+            counter(out, "cache_admission_rejected_total", "Asks not sent because the node or shard was at its limit.",
+                    admission.rejected());
+        }
+        ValueCompression compression = ValueCompression.get(system);
+        if (compression.isEnabled()) {
+            counter(out, "cache_compression_values_total", "Values written compressed through this node.",
+                    compression.compressedValues());
+            counter(out, "cache_compression_input_bytes_total", "Bytes of those values before compression.",
+                    compression.uncompressedBytes());
+            counter(out, "cache_compression_output_bytes_total", "Bytes of those values as stored.",
+                    compression.compressedBytes());
+        }
+        if (textProtocol) {
+            gauge(out, "cache_text_connections", "Memcached text protocol connections open on this node.",
+                    textConnections.sum());
+            counter(out, "cache_text_connections_total", "Memcached text protocol connections accepted by this node.",
+                    textConnectionsOpened.sum());
+        }
+        LocalStores localStores = LocalStores.get(system);
+        if (localStores.isEnabled()) {
+            counter(out, "cache_local_reads_total", "Reads answered from an entity store on this node without an ask.",
+                    localStores.hits());
+        }
+        NearCache nearCache = NearCache.get(system);
+        if (nearCache.isEnabled()) {
+            counter(out, "cache_near_cache_hits_total", "Reads served from this node's near cache.", nearCache.hits());
+            counter(out, "cache_near_cache_misses_total", "Near-cache reads that went to the owning entity.",
+                    nearCache.misses());
+            gauge(out, "cache_near_cache_entries", "Entries in this node's near cache.", nearCache.size());
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -17,14 +17,18 @@ import akka.cluster.sharding.typed.javadsl.EntityRef;
 public class CacheProxy extends AbstractBehavior<CacheActor.Command> {
 
     private final ClusterSharding sharding;
+    private final DistributedCacheApplication.CacheMessageExtractor extractor;
 
-    public static Behavior<CacheActor.Command> create(ClusterSharding sharding) {
-        return Behaviors.setup(context -> new CacheProxy(context, sharding));
+    public static Behavior<CacheActor.Command> create(ClusterSharding sharding,
+                                                      DistributedCacheApplication.CacheMessageExtractor extractor) {
+        return Behaviors.setup(context -> new CacheProxy(context, sharding, extractor));
     }
 
-    private CacheProxy(ActorContext<CacheActor.Command> context, ClusterSharding sharding) {
+    private CacheProxy(ActorContext<CacheActor.Command> context, ClusterSharding sharding,
+                       DistributedCacheApplication.CacheMessageExtractor extractor) {
         super(context);
         this.sharding = sharding;
+        this.extractor = extractor;
         getContext().getLog().info("CacheProxy started - forwarding to sharded entities");
     }
 
@@ -38,42 +42,39 @@ public class CacheProxy extends AbstractBehavior<CacheActor.Command> {
     }
 
     private Behavior<CacheActor.Command> onGet(CacheActor.Get msg) {
-        // FIXED: Use the key as entity ID, not shard ID
+        // Resolve the owning entity (bucket or key) through the extractor
+        String entityId = extractor.entityIdForKey(msg.key);
         EntityRef<CacheActor.Command> entityRef = sharding.entityRefFor(
-                DistributedCacheApplication.CACHE_ENTITY_KEY,
-                msg.key  // Use key as entity ID directly
-        );
+                DistributedCacheApplication.CACHE_ENTITY_KEY, entityId);
 
         getContext().getLog().debug("Forwarding GET for key '{}' to entity '{}'",
-                msg.key, msg.key);
+                msg.key, entityId);
 
         entityRef.tell(msg);
         return this;
     }
 
     private Behavior<CacheActor.Command> onPut(CacheActor.Put msg) {
-        // FIXED: Use the key as entity ID, not shard ID
+        // Resolve the owning entity (bucket or key) through the extractor
+        String entityId = extractor.entityIdForKey(msg.key);
         EntityRef<CacheActor.Command> entityRef = sharding.entityRefFor(
-                DistributedCacheApplication.CACHE_ENTITY_KEY,
-                msg.key  // Use key as entity ID directly
-        );
+                DistributedCacheApplication.CACHE_ENTITY_KEY, entityId);
 
         getContext().getLog().debug("Forwarding PUT for key '{}' to entity '{}'",
-                msg.key, msg.key);
+                msg.key, entityId);
 
         entityRef.tell(msg);
         return this;
     }
 
     private Behavior<CacheActor.Command> onDelete(CacheActor.Delete msg) {
-        // FIXED: Use the key as entity ID, not shard ID
+        // Resolve the owning entity (bucket or key) through the extractor
+        String entityId = extractor.entityIdForKey(msg.key);
         EntityRef<CacheActor.Command> entityRef = sharding.entityRefFor(
-                DistributedCacheApplication.CACHE_ENTITY_KEY,
-                msg.key  // Use key as entity ID directly
-        );
+                DistributedCacheApplication.CACHE_ENTITY_KEY, entityId);
 
         getContext().getLog().debug("Forwarding DELETE for key '{}' to entity '{}'",
-                msg.key, msg.key);
+                msg.key, entityId);
 
         entityRef.tell(msg);
         return this;
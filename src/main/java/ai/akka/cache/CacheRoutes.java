@@ -1,46 +1,96 @@
 package ai.akka.cache;
 
+import akka.NotUsed;
 import akka.actor.typed.ActorSystem;
-import akka.cluster.sharding.typed.javadsl.ClusterSharding;
-import akka.cluster.sharding.typed.javadsl.EntityRef;
+import akka.http.javadsl.common.EntityStreamingSupport;
 import akka.http.javadsl.marshallers.jackson.Jackson;
 import akka.http.javadsl.model.ContentTypes;
 import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.MediaRange;
+import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.Accept;
+import akka.http.javadsl.model.headers.AcceptEncoding;
+import akka.http.javadsl.model.headers.ContentEncoding;
+import akka.http.javadsl.model.headers.HttpEncodingRange;
+import akka.http.javadsl.model.headers.HttpEncodings;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.model.headers.ETag;
+import akka.http.javadsl.model.headers.EntityTag;
 import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.ExceptionHandler;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.Unmarshaller;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static akka.http.javadsl.server.PathMatchers.segment;
 
 public class CacheRoutes extends AllDirectives {
-    private final ClusterSharding sharding;
+    private final CacheClient client;
     private final ActorSystem<?> system;
+    private final CacheMetrics metrics;
+    private final ValueCompression compression;
+    private final AdmissionControl admission;
 
     // FIXED: Use ClusterSharding directly instead of proxy
-    public CacheRoutes(ClusterSharding sharding, ActorSystem<?> system) {
-        this.sharding = sharding;
+    public CacheRoutes(CacheClient client, ActorSystem<?> system) {
+        this.client = client;
         this.system = system;
+        this.metrics = CacheMetrics.get(system);
+        this.compression = ValueCompression.get(system);
+        this.admission = AdmissionControl.get(system);
     }
 
-    private static final Duration duration = Duration.ofSeconds(5);
+    // TTL header for PUT, in seconds; a "ttl" field in the JSON body takes precedence
+    static final String TTL_HEADER = "X-Cache-TTL";
+    // Longer TTLs are cut to this, some 70 million years, before they are turned into millis
+    private static final long MAX_TTL_SECONDS = Long.MAX_VALUE / 4000;
+    // Consistency level for GET, PUT, DELETE, _incr and _mput: ONE, QUORUM or ALL (default cache.default-consistency)
+    static final String CONSISTENCY_HEADER = "X-Cache-Consistency";
+    // Conditional PUT: If-None-Match: * stores only a new key, If-Match: "<ETag of a GET>" only
+    // over that version
+    static final String IF_MATCH_HEADER = "If-Match";
+    static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    // DELETE with Prefer: return=representation answers with the value it removed
+    static final String PREFER_HEADER = "Prefer";
+    // Deadline of a /cache request in milliseconds, up to cache.max-request-timeout; its asks time
+    // out by then instead of after cache.ask-timeout each
+    static final String TIMEOUT_HEADER = "X-Cache-Timeout";
 
     // JSON request class for PUT operations
     public static class CacheValue {
         private final String value;
+        private final Long ttl; // seconds, optional
 
         @JsonCreator
-        public CacheValue(@JsonProperty("value") String value) {
+        public CacheValue(@JsonProperty("value") String value, @JsonProperty("ttl") Long ttl) {
             this.value = value;
+            this.ttl = ttl;
         }
 
         public String getValue() {
             return value;
         }
+
+        public Long getTtl() {
+            return ttl;
+        }
     }
 
     // JSON response class for GET operations
@@ -56,6 +106,465 @@ public class CacheRoutes extends AllDirectives {
         }
     }
 
+    // JSON request class for POST /cache/_mget
+    public static class MultiGetRequest {
+        private final List<String> keys;
+
+        @JsonCreator
+        public MultiGetRequest(@JsonProperty("keys") List<String> keys) {
+            this.keys = keys;
+        }
+
+        public List<String> getKeys() {
+            return keys;
+        }
+    }
+
+    // JSON request class for POST /cache/_mput
+    public static class MultiPutRequest {
+        private final List<CacheEntry> entries;
+
+        @JsonCreator
+        public MultiPutRequest(@JsonProperty("entries") List<CacheEntry> entries) {
+            this.entries = entries;
+        }
+
+        public List<CacheEntry> getEntries() {
+            return entries;
+        }
+    }
+
+    // One key/value pair: an element of a _mput body and of the streamed _mget and scan responses
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class CacheEntry {
+        private final String key;
+        private final String value;
+        private final Long ttl; // seconds, optional
+
+        @JsonCreator
+        public CacheEntry(@JsonProperty("key") String key, @JsonProperty("value") String value,
+                          @JsonProperty("ttl") Long ttl) {
+            this.key = key;
+            this.value = value;
+            this.ttl = ttl;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public Long getTtl() {
+            return ttl;
+        }
+    }
+
+    // Malformed headers map to -1 so the route rejects them like any other non-positive TTL
+    private static Long parseTtl(String header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    // A positive TTL in seconds as millis, 0 for none. Capped well below overflow, also of the
+    // entity's now + ttl: a value that outlives the cap by centuries expires just the same
+    private static long ttlMillis(Long ttlSeconds) {
+        return ttlSeconds == null ? 0L : Math.min(ttlSeconds, MAX_TTL_SECONDS) * 1000;
+    }
+
+    // The version in a single strong or weak ETag, or -1 if the header is anything else
+    private static long parseETag(String header) {
+        String tag = header.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return -1L;
+        }
+        try {
+            long version = Long.parseLong(tag.substring(1, tag.length() - 1));
+            return version < 0 ? -1L : version;
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    // The entry's version, which If-Match hands back to compare-and-set
+    private static ETag etag(long version) {
+        return ETag.create(EntityTag.create(Long.toString(version), false));
+    }
+
+    private Route preconditionFailed(CacheActor.Conflict conflict, String message) {
+        if (conflict.version == 0) {
+            return complete(StatusCodes.PRECONDITION_FAILED, message);
+        }
+        return respondWithHeader(etag(conflict.version), () -> complete(StatusCodes.PRECONDITION_FAILED, message));
+    }
+
+    // True if the client explicitly asks for raw bytes; wildcards and JSON keep the JSON response
+    private static boolean acceptsOctetStream(HttpRequest request) {
+        return request.getHeader(Accept.class).map(accept -> {
+            for (MediaRange range : accept.getMediaRanges()) {
+                if (range.qValue() > 0 && range.matches(MediaTypes.APPLICATION_OCTET_STREAM)
+                        && !range.matches(MediaTypes.APPLICATION_JSON)) {
+                    return true;
+                }
+            }
+            return false;
+        }).orElse(false);
+    }
+
+    // True if the client takes a deflate-encoded body, so a compressed value can go out as stored
+    private static boolean acceptsDeflate(HttpRequest request) {
+        return request.getHeader(AcceptEncoding.class).map(accept -> {
+            for (HttpEncodingRange range : accept.getEncodings()) {
+                if (range.qValue() > 0 && range.matches(HttpEncodings.DEFLATE)) {
+                    return true;
+                }
+            }
+            return false;
+        }).orElse(false);
+    }
+
+    private Route withConsistency(Function<Consistency, Route> inner) {
+        return optionalHeaderValueByName(CONSISTENCY_HEADER, (Optional<String> header) -> {
+            if (!header.isPresent()) {
+                return inner.apply(client.settings().defaultConsistency);
+            }
+            Consistency consistency;
+            try {
+                consistency = Consistency.fromString(header.get());
+            } catch (IllegalArgumentException e) {
+                return complete(StatusCodes.BAD_REQUEST, e.getMessage());
+            }
+            return inner.apply(consistency);
+        });
+    }
+
+    private Route withDeadline(Function<CacheClient, Route> inner) {
+        return optionalHeaderValueByName(TIMEOUT_HEADER, (Optional<String> header) -> {
+            if (!header.isPresent()) {
+                return inner.apply(client);
+            }
+            long millis;
+            try {
+                millis = Long.parseLong(header.get().trim());
+            } catch (NumberFormatException e) {
+                millis = -1;
+            }
+            if (millis <= 0) {
+                return complete(StatusCodes.BAD_REQUEST, TIMEOUT_HEADER + " must be a positive number of milliseconds");
+            }
+            long maxMillis = client.settings().maxRequestTimeout.toMillis();
+            return inner.apply(client.withDeadline(Duration.ofMillis(Math.min(millis, maxMillis))));
+        });
+    }
+
+    // Requests that fan out into many asks are refused whole while the node is at its limit,
+    // rather than answered in part
+    private Route admitted(Supplier<Route> inner) {
+        if (admission.hasCapacity()) {
+            return inner.get();
+        }
+        return overloaded("Too many requests in flight on this node");
+    }
+
+    private Route overloaded(String message) {
+        long seconds = Math.max(1, (admission.retryAfter().toMillis() + 999) / 1000);
+        return respondWithHeader(RetryAfter.create(seconds), () -> complete(StatusCodes.SERVICE_UNAVAILABLE, message));
+    }
+
+    // Too few replicas answered, or the request was shed: it may be retried, so 503 rather than
+    // 500. A request that ran out of time gets 504
+    private ExceptionHandler requestFailures() {
+        return ExceptionHandler.newBuilder()
+                .match(ConsistencyException.class, this::failed)
+                .match(OverloadedException.class, this::failed)
+                .match(TimeoutException.class, this::failed)
+                .match(CompletionException.class, e -> failed(e.getCause() != null ? e.getCause() : e))
+                .build();
+    }
+
+    private Route failed(Throwable failure) {
+        if (failure instanceof ConsistencyException) {
+            return complete(StatusCodes.SERVICE_UNAVAILABLE, failure.getMessage());
+        } else if (failure instanceof OverloadedException) {
+            return overloaded(failure.getMessage());
+        } else if (failure instanceof TimeoutException) {
+            return complete(StatusCodes.GATEWAY_TIMEOUT, "Timed out: " + failure.getMessage());
+        }
+        return failWith(failure);
+    }
+
+    // onSuccess that also records the operation's latency and outcome; failures still go to the
+    // exception handlers as they would from onSuccess
+    private <T> Route timed(CacheMetrics.Op op, long start, CompletionStage<T> future, Function<T, Route> inner) {
+        return onComplete(future, result -> {
+            if (result.isSuccess()) {
+                metrics.recordRequest(op, null, start);
+                return inner.apply(result.get());
+            }
+            Throwable failure = result.failed().get();
+            metrics.recordRequest(op, failure, start);
+            return failWith(failure);
+        });
+    }
+
+    private Route putValue(CacheClient client, String key, ByteString value, Long ttlSeconds, Consistency consistency,
+                           Optional<String> ifMatch, Optional<String> ifNoneMatch) {
+        if (ttlSeconds != null && ttlSeconds <= 0) {
+            return complete(StatusCodes.BAD_REQUEST, "TTL must be a positive number of seconds");
+        }
+        if (value.size() > client.settings().maxMessageBytes) {
+            return valueTooLarge();
+        }
+        long ttlMillis = ttlMillis(ttlSeconds);
+
+        CompletionStage<CacheActor.Response> future;
+        String conflict;
+        if (ifNoneMatch.isPresent()) {
+            if (!ifNoneMatch.get().trim().equals("*")) {
+                return complete(StatusCodes.BAD_REQUEST, "Only If-None-Match: * is supported on PUT");
+            }
+            future = client.putIfAbsent(key, value, ttlMillis, consistency);
+            conflict = "Key already exists";
+        } else if (ifMatch.isPresent()) {
+            long expectedVersion = parseETag(ifMatch.get());
+            if (expectedVersion < 0) {
+                return complete(StatusCodes.BAD_REQUEST, "If-Match must be a single ETag returned by GET");
+            }
+            future = client.compareAndSet(key, value, ttlMillis, expectedVersion, consistency);
+            conflict = "Key was changed or deleted since that version";
+        } else {
+            future = client.put(key, value, ttlMillis, consistency);
+            conflict = null;
+        }
+
+        long start = metrics.startTimer();
+        return timed(CacheMetrics.Op.PUT, start, future, res -> {
+            if (res instanceof CacheActor.Written) {
+                return respondWithHeader(etag(((CacheActor.Written) res).version), () ->
+                        complete(StatusCodes.OK, "Put successful"));
+            }
+            if (res instanceof CacheActor.Stored) {
+                // Lets a plain PUT be followed by If-Match without a GET in between
+                return respondWithHeader(etag(((CacheActor.Stored) res).version), () ->
+                        complete(StatusCodes.OK, "Put successful"));
+            }
+            if (res instanceof CacheActor.Conflict) {
+                return preconditionFailed((CacheActor.Conflict) res, conflict);
+            }
+            return complete(StatusCodes.OK, "Put successful");
+        });
+    }
+
+    // Adds `by` (default 1) to a counter, creating it with the TTL header's expiry if absent
+    private Route incrementRoute(CacheClient client, String key, Optional<String> byParameter, Optional<String> ttlHeader,
+                                 Consistency consistency) {
+        long delta;
+        try {
+            delta = byParameter.map(Long::parseLong).orElse(1L);
+        } catch (NumberFormatException e) {
+            return complete(StatusCodes.BAD_REQUEST, "by must be an integer");
+        }
+        Long ttlSeconds = parseTtl(ttlHeader.orElse(null));
+        if (ttlSeconds != null && ttlSeconds <= 0) {
+            return complete(StatusCodes.BAD_REQUEST, "TTL must be a positive number of seconds");
+        }
+        long ttlMillis = ttlMillis(ttlSeconds);
+
+        long start = metrics.startTimer();
+        CompletionStage<CacheActor.Response> future = client.incrementBy(key, delta, ttlMillis, consistency);
+
+        return timed(CacheMetrics.Op.INCR, start, future, res -> {
+            if (res instanceof CacheActor.Written) {
+                CacheActor.Written written = (CacheActor.Written) res;
+                return respondWithHeader(etag(written.version), () -> complete(StatusCodes.OK,
+                        new CacheResponse(written.value.utf8String()), Jackson.marshaller()));
+            }
+            return complete(StatusCodes.CONFLICT, "Value is not an integer, or the sum would overflow a 64-bit integer");
+        });
+    }
+
+    private Route deleteValue(CacheClient client, String key, Consistency consistency, boolean returnValue) {
+        long start = metrics.startTimer();
+        if (!returnValue) {
+            return timed(CacheMetrics.Op.DELETE, start, client.delete(key, consistency), res ->
+                    complete(StatusCodes.OK, "Delete successful"));
+        }
+        return timed(CacheMetrics.Op.DELETE, start, client.getAndDelete(key, consistency), res -> {
+            if (res instanceof CacheActor.Taken) {
+                return complete(StatusCodes.OK,
+                        new CacheResponse(compression.decode(((CacheActor.Taken) res).value).utf8String()), Jackson.marshaller());
+            }
+            return complete(StatusCodes.NOT_FOUND, "Key not found");
+        });
+    }
+
+    // Matching entries streamed as a JSON array while the scan pages through the buckets; the
+    // connection's backpressure holds the scan back, and a limit cancels it once reached
+    private Route scanRoute(CacheClient client, String prefix, Optional<String> limitParameter) {
+        long limit;
+        try {
+            limit = limitParameter.map(Long::parseLong).orElse(Long.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit <= 0) {
+            return complete(StatusCodes.BAD_REQUEST, "limit must be a positive number of entries");
+        }
+        long start = metrics.startTimer();
+        Source<CacheEntry, NotUsed> entries = client.scan(prefix)
+                .take(limit)
+                .map(entry -> new CacheEntry(entry.key, compression.decode(entry.value).utf8String(),
+                        entry.ttlMillis == 0 ? null : (entry.ttlMillis + 999) / 1000))
+                .watchTermination((notUsed, done) -> {
+                    done.whenComplete((d, failure) -> metrics.recordRequest(CacheMetrics.Op.SCAN, failure, start));
+                    return notUsed;
+                });
+        return completeOKWithSource(entries, Jackson.marshaller(), EntityStreamingSupport.json());
+    }
+
+    private Route valueTooLarge() {
+        return complete(StatusCodes.PAYLOAD_TOO_LARGE,
+                "Values are limited to " + client.settings().maxMessageBytes + " bytes (cache.max-message-size)");
+    }
+
+    // Null when any entry is incomplete or has a non-positive TTL
+    private static List<CacheActor.Entry> toEntries(MultiPutRequest request) {
+        if (request.getEntries() == null) {
+            return null;
+        }
+        List<CacheActor.Entry> entries = new ArrayList<>(request.getEntries().size());
+        for (CacheEntry entry : request.getEntries()) {
+            if (entry == null || entry.getKey() == null || entry.getValue() == null
+                    || (entry.getTtl() != null && entry.getTtl() <= 0)) {
+                return null;
+            }
+            long ttlMillis = ttlMillis(entry.getTtl());
+            entries.add(new CacheActor.Entry(entry.getKey(), ByteString.fromString(entry.getValue()), ttlMillis));
+        }
+        return entries;
+    }
+
+    private static String offHeapStatus(OffHeapArena arena) {
+        if (!arena.isEnabled()) {
+            return "off";
+        }
+        return String.format("%,d values in %,d bytes, %,d / %,d bytes of slabs reserved",
+                arena.values(), arena.usedBytes(), arena.reservedBytes(), arena.maxBytes());
+    }
+
+    private static String admissionStatus(AdmissionControl admission) {
+        if (!admission.isEnabled()) {
+            return "off";
+        }
+        return String.format("%,d / %,d asks in flight, lowest shard limit %,d, %,d rejected",
+                admission.inFlight(), admission.nodeLimit(), admission.minShardLimit(), admission.rejected());
+    }
+
+    private static String compressionStatus(ValueCompression compression) {
+        if (!compression.isEnabled()) {
+            return "off";
+        }
+        long before = compression.uncompressedBytes();
+        return String.format("%,d values written compressed, %,d bytes to %,d (%.0f%%)",
+                compression.compressedValues(), before, compression.compressedBytes(),
+                before == 0 ? 100.0 : 100.0 * compression.compressedBytes() / before);
+    }
+
+    private static String localReadsStatus(LocalStores localStores) {
+        if (!localStores.isEnabled()) {
+            return "off";
+        }
+        return String.format("%,d hits from %,d local entities", localStores.hits(), localStores.size());
+    }
+
+    private static String nearCacheStatus(NearCache nearCache) {
+        if (!nearCache.isEnabled()) {
+            return "disabled";
+        }
+        long hits = nearCache.hits();
+        long lookups = hits + nearCache.misses();
+        return String.format("%,d entries (%,d bytes), %,d hits / %,d misses (%.1f%% hit ratio), "
+                        + "%,d invalidations, %,d evictions",
+                nearCache.size(), nearCache.usedBytes(), hits, nearCache.misses(),
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+                nearCache.invalidations(), nearCache.evictions());
+    }
+
+    private String readThroughStatus(BackingStore backingStore) {
+        if (!backingStore.hasLoader()) {
+            return "no loader";
+        }
+        return String.format("%s, %,d loads, %,d failed", client.settings().readThroughLoader,
+                backingStore.loads(), backingStore.loadFailures());
+    }
+
+    private String writeBehindStatus(BackingStore backingStore) {
+        if (!backingStore.hasWriter()) {
+            return "no writer";
+        }
+        return String.format("%s, %,d writes (%,d coalesced), %,d flushed, %,d pending, %,d failed batches",
+                client.settings().writeBehindWriter, backingStore.writes(), backingStore.coalescedWrites(),
+                backingStore.flushedWrites(), backingStore.pendingWrites(), backingStore.failedFlushes());
+    }
+
+    private static String hotKeysStatus(HotKeys hotKeys) {
+        if (!hotKeys.isEnabled()) {
+            return "disabled";
+        }
+        return String.format("%d hot, %,d reads of hot keys",
+                hotKeys.hotKeys().size(), hotKeys.hotReads());
+    }
+
+    private static String snapshotStatus(CacheSnapshots snapshots) {
+        if (!snapshots.isEnabled()) {
+            return "disabled";
+        }
+        return String.format("%,d keys loaded from %,d files (%,.0f keys/s), %,d stale or unreadable files skipped, "
+                        + "%,d keys written to %,d files (%s)",
+                snapshots.keysLoaded(), snapshots.filesLoaded(), snapshots.loadKeysPerSecond(),
+                snapshots.filesSkipped(), snapshots.keysWritten(), snapshots.filesWritten(), snapshots.dir());
+    }
+
+    private String handoffStatus(HandoffTransfers transfers) {
+        if (!client.settings().handoffTransfer) {
+            return "no data transfer";
+        }
+        return String.format("%,d transfers out (%,d entries), %,d in (%,d entries), %,d failed, %d in progress",
+                transfers.transfersSent(), transfers.entriesSent(), transfers.transfersReceived(),
+                transfers.entriesReceived(), transfers.transfersFailed(), transfers.activeOutgoing());
+    }
+
+    private static String lookupStatus(CacheMetrics metrics) {
+        if (!metrics.isEnabled()) {
+            return "not collected";
+        }
+        long hits = metrics.hits();
+        long lookups = hits + metrics.misses();
+        return String.format("%,d hits / %,d misses (%.1f%% hit ratio), %,d ask timeouts, %,d queued messages",
+                hits, metrics.misses(), lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+                metrics.askTimeouts(), metrics.mailboxDepth());
+    }
+
+    private String replicationStatus() {
+        CacheSettings settings = client.settings();
+        if (settings.replicationFactor == 1) {
+            return "off (1 replica)";
+        }
+        return String.format("%d replicas (default consistency %s), %,d read repairs",
+                settings.replicationFactor, settings.defaultConsistency, client.readRepairs());
+    }
+
     public Route routes() {
         return concat(
                 // Root health check endpoint
@@ -63,64 +572,155 @@ public class CacheRoutes extends AllDirectives {
                         get(() -> complete("Akka Distributed Cache - Node Online ✅"))
                 ),
 
-                // Basic cache operations - /cache/{key}
-                pathPrefix("cache", () ->
-                        path(segment(), (String key) -> concat(
-                                get(() -> {
-                                    // FIXED: Get EntityRef directly and use ask
-                                    EntityRef<CacheActor.Command> entityRef = sharding.entityRefFor(
-                                            DistributedCacheApplication.CACHE_ENTITY_KEY, key);
-
-                                    CompletionStage<CacheActor.Response> future = entityRef.ask(
-                                            replyTo -> new CacheActor.Get(key, replyTo),
-                                            duration);
-
-                                    return onSuccess(future, res -> {
-                                        if (res instanceof CacheActor.Found) {
-                                            CacheActor.Found found = (CacheActor.Found) res;
-                                            // Return JSON response as required
-                                            return complete(StatusCodes.OK,
-                                                    new CacheResponse(found.value), Jackson.marshaller());
-                                        } else {
-                                            return complete(StatusCodes.NOT_FOUND, "Key not found");
+                // Batch operations - /cache/_mget, /cache/_mput (matched before /cache/{key})
+                pathPrefix("cache", () -> handleExceptions(requestFailures(), () -> withDeadline(client -> concat(
+                        // Prefix scan and delete - /cache?prefix=...
+                        pathEnd(() -> parameter("prefix", prefix -> {
+                            if (client.settings().entityMode != CacheSettings.EntityMode.BUCKET) {
+                                return complete(StatusCodes.NOT_IMPLEMENTED,
+                                        "Prefix scans and deletes need cache.sharding.entity-mode = \"bucket\"");
+                            }
+                            return concat(
+                                    get(() -> parameterOptional("limit", limit -> admitted(() -> scanRoute(client, prefix, limit)))),
+                                    delete(() -> withConsistency(consistency -> admitted(() -> {
+                                        if (prefix.isEmpty()) {
+                                            return complete(StatusCodes.BAD_REQUEST,
+                                                    "Refusing to delete every key: prefix must not be empty");
                                         }
-                                    });
-                                }),
-                                put(() ->
-                                        // Accept JSON body with "value" field as required by assignment
-                                        entity(Jackson.unmarshaller(CacheValue.class), cacheValue -> {
-                                            // FIXED: Get EntityRef directly and use ask
-                                            EntityRef<CacheActor.Command> entityRef = sharding.entityRefFor(
-                                                    DistributedCacheApplication.CACHE_ENTITY_KEY, key);
-
-                                            CompletionStage<CacheActor.Response> future = entityRef.ask(
-                                                    replyTo -> new CacheActor.Put(key, cacheValue.getValue(), replyTo),
-                                                    duration);
-
-                                            return onSuccess(future, res ->
-                                                    complete(StatusCodes.OK, "Put successful"));
-                                        })
-                                ),
-                                delete(() -> {
-                                    // FIXED: Get EntityRef directly and use ask
-                                    EntityRef<CacheActor.Command> entityRef = sharding.entityRefFor(
-                                            DistributedCacheApplication.CACHE_ENTITY_KEY, key);
+                                        long start = metrics.startTimer();
+                                        return timed(CacheMetrics.Op.PREFIX_DELETE, start,
+                                                client.deletePrefix(prefix, consistency), deleted ->
+                                                        complete(StatusCodes.OK, "Deleted " + deleted + " keys"));
+                                    })))
+                            );
+                        })),
+                        path("_mget", () ->
+                                post(() -> admitted(() ->
+                                        entity(Jackson.unmarshaller(MultiGetRequest.class), request -> {
+                                            if (request.getKeys() == null || request.getKeys().contains(null)) {
+                                                return complete(StatusCodes.BAD_REQUEST, "Body must be {\"keys\": [...]}");
+                                            }
+                                            // Hits are streamed as a JSON array, one shard batch at a time
+                                            long start = metrics.startTimer();
+                                            Source<CacheEntry, NotUsed> hits = client.multiGet(request.getKeys())
+                                                    .mapConcat(found -> {
+                                                        List<CacheEntry> batch = new ArrayList<>(found.keys.size());
+                                                        for (int i = 0; i < found.keys.size(); i++) {
+                                                            batch.add(new CacheEntry(found.keys.get(i), compression.decode(found.values.get(i)).utf8String(), null));
+                                                        }
+                                                        return batch;
+                                                    })
+                                                    .watchTermination((notUsed, done) -> {
+                                                        done.whenComplete((d, failure) ->
+                                                                metrics.recordRequest(CacheMetrics.Op.MGET, failure, start));
+                                                        return notUsed;
+                                                    });
+                                            return completeOKWithSource(hits, Jackson.marshaller(), EntityStreamingSupport.json());
+                                        })))
+                        ),
+                        path("_mput", () ->
+                                post(() -> withConsistency(consistency -> admitted(() ->
+                                        entity(Jackson.unmarshaller(MultiPutRequest.class), request -> {
+                                            List<CacheActor.Entry> entries = toEntries(request);
+                                            if (entries == null) {
+                                                return complete(StatusCodes.BAD_REQUEST,
+                                                        "Body must be {\"entries\": [{\"key\":..., \"value\":..., \"ttl\":...}]} " +
+                                                                "with a positive ttl in seconds when given");
+                                            }
+                                            for (CacheActor.Entry entry : entries) {
+                                                if (entry.value.size() > client.settings().maxMessageBytes) {
+                                                    return valueTooLarge();
+                                                }
+                                            }
+                                            long start = metrics.startTimer();
+                                            return timed(CacheMetrics.Op.MPUT, start, client.multiPut(entries, consistency), stored ->
+                                                    stored == entries.size()
+                                                            ? complete(StatusCodes.OK, "Put successful (" + stored + " entries)")
+                                                            : complete(StatusCodes.SERVICE_UNAVAILABLE,
+                                                            "Stored " + stored + " of " + entries.size() + " entries"));
+                                        }))))
+                        ),
 
-                                    CompletionStage<CacheActor.Response> future = entityRef.ask(
-                                            replyTo -> new CacheActor.Delete(key, replyTo),
-                                            duration);
+                        // Atomic counter - /cache/{key}/_incr?by=n
+                        path(segment().slash("_incr"), (String key) ->
+                                post(() -> withConsistency(consistency ->
+                                        parameterOptional("by", by ->
+                                                optionalHeaderValueByName(TTL_HEADER, ttlHeader ->
+                                                        incrementRoute(client, key, by, ttlHeader, consistency)))))
+                        ),
 
-                                    return onSuccess(future, res ->
-                                            complete(StatusCodes.OK, "Delete successful"));
-                                })
+                        // Basic cache operations - /cache/{key}
+                        path(segment(), (String key) -> concat(
+                                get(() -> withConsistency(consistency ->
+                                        extractRequest(request -> {
+                                            boolean binary = acceptsOctetStream(request);
+                                            boolean deflate = binary && acceptsDeflate(request);
+                                            long start = metrics.startTimer();
+                                            CompletionStage<CacheActor.Response> future = client.get(key, consistency);
+
+                                            return timed(CacheMetrics.Op.GET, start, future, res -> {
+                                                if (res instanceof CacheActor.Found) {
+                                                    CacheActor.Found found = (CacheActor.Found) res;
+                                                    return respondWithHeader(etag(found.version), () -> {
+                                                        ByteString stream = deflate ? compression.deflateStream(found.value) : null;
+                                                        if (stream != null) {
+                                                            // Compressed as stored: the client inflates it, the node does not
+                                                            return respondWithHeader(ContentEncoding.create(HttpEncodings.DEFLATE), () ->
+                                                                    complete(HttpEntities.create(ContentTypes.APPLICATION_OCTET_STREAM, stream)));
+                                                        }
+                                                        ByteString value = compression.decode(found.value);
+                                                        if (binary) {
+                                                            // The stored ByteString becomes the body as-is: no copy, no JSON wrapping
+                                                            return complete(HttpEntities.create(ContentTypes.APPLICATION_OCTET_STREAM, value));
+                                                        }
+                                                        // Return JSON response as required
+                                                        return complete(StatusCodes.OK,
+                                                                new CacheResponse(value.utf8String()), Jackson.marshaller());
+                                                    });
+                                                } else {
+                                                    return complete(StatusCodes.NOT_FOUND, "Key not found");
+                                                }
+                                            });
+                                        }))
+                                ),
+                                put(() -> withConsistency(consistency ->
+                                        optionalHeaderValueByName(TTL_HEADER, ttlHeader ->
+                                        optionalHeaderValueByName(IF_MATCH_HEADER, ifMatch ->
+                                        optionalHeaderValueByName(IF_NONE_MATCH_HEADER, ifNoneMatch ->
+                                                extractRequestEntity(requestEntity -> {
+                                                    if (requestEntity.getContentType().mediaType().equals(MediaTypes.APPLICATION_OCTET_STREAM)) {
+                                                        // Raw body stored as-is; compact() drops any slack from chunked uploads
+                                                        return entity(Unmarshaller.entityToByteString(), bytes ->
+                                                                putValue(client, key, bytes.compact(), parseTtl(ttlHeader.orElse(null)), consistency,
+                                                                        ifMatch, ifNoneMatch));
+                                                    }
+                                                    // Accept JSON body with "value" field as required by assignment
+                                                    return entity(Jackson.unmarshaller(CacheValue.class), cacheValue -> {
+                                                        if (cacheValue.getValue() == null) {
+                                                            return complete(StatusCodes.BAD_REQUEST, "Body must be {\"value\": ...}");
+                                                        }
+                                                        Long ttlSeconds = cacheValue.getTtl() != null
+                                                                ? cacheValue.getTtl()
+                                                                : parseTtl(ttlHeader.orElse(null));
+                                                        return putValue(client, key, ByteString.fromString(cacheValue.getValue()), ttlSeconds, consistency,
+                                                                ifMatch, ifNoneMatch);
+                                                    });
+                                                })))))
+                                ),
+                                delete(() -> withConsistency(consistency ->
+                                        optionalHeaderValueByName(PREFER_HEADER, prefer ->
+                                                deleteValue(client, key, consistency,
+                                                        prefer.map(p -> p.contains("return=representation")).orElse(false)))))
                         ))
-                ),
+                )))),
 
                 // Admin endpoints - /admin/*
                 pathPrefix("admin", () -> concat(
                         // Status endpoint - /admin/status
                         path("status", () ->
                                 get(() -> {
+                                    MemoryBudget budget = MemoryBudget.get(system);
+                                    NearCache nearCache = NearCache.get(system);
                                     String status = String.format(
                                             "=== Cache Node Status ===\n" +
                                                     "Node: %s\n" +
@@ -128,19 +728,90 @@ public class CacheRoutes extends AllDirectives {
                                                     "Type: Akka Cluster Cache\n" +
                                                     "Timestamp: %s\n" +
                                                     "Sharding: Cluster Sharding Enabled\n" +
+                                                    "Memory: %,d / %s bytes\n" +
+                                                    "Evictions: %,d entries (%,d bytes)\n" +
+                                                    "Off-heap: %s\n" +
+                                                    "Compression: %s\n" +
+                                                    "Admission: %s\n" +
+                                                    "Lookups: %s\n" +
+                                                    "Coalesced reads: %s\n" +
+                                                    "Local reads: %s\n" +
+                                                    "Read-through: %s\n" +
+                                                    "Write-behind: %s\n" +
+                                                    "Near cache: %s\n" +
+                                                    "Hot keys: %s\n" +
+                                                    "Replication: %s\n" +
+                                                    "Snapshots: %s\n" +
+                                                    "Handoff: %s\n" +
                                                     "HTTP Endpoints:\n" +
-                                                    "  PUT /cache/{key} - Store value (JSON: {\"value\":\"data\"})\n" +
-                                                    "  GET /cache/{key} - Retrieve value (returns JSON)\n" +
-                                                    "  DELETE /cache/{key} - Remove value\n" +
+                                                    "  PUT /cache/{key} - Store value (JSON: {\"value\":\"data\", \"ttl\":60}, or raw application/octet-stream)\n" +
+                                                    "  GET /cache/{key} - Retrieve value (JSON, or raw bytes with Accept: application/octet-stream)\n" +
+                                                    "  DELETE /cache/{key} - Remove value (Prefer: return=representation returns it)\n" +
+                                                    "  POST /cache/{key}/_incr?by={n} - Add n to an integer value atomically\n" +
+                                                    "  POST /cache/_mget - Retrieve many values (JSON: {\"keys\":[...]})\n" +
+                                                    "  POST /cache/_mput - Store many values (JSON: {\"entries\":[{\"key\":..., \"value\":...}]})\n" +
+                                                    "  GET /cache?prefix={prefix} - Stream the entries whose keys start with prefix (optional limit)\n" +
+                                                    "  DELETE /cache?prefix={prefix} - Remove every key that starts with prefix\n" +
                                                     "  GET /admin/status - This status page\n" +
+                                                    "  GET /admin/metrics - Prometheus metrics\n" +
+                                                    "  GET /admin/hot-keys - Keys read most on this node\n" +
                                                     "  GET /admin/health - Simple health check\n",
                                             system.name(),
-                                            java.time.Instant.now()
+                                            java.time.Instant.now(),
+                                            budget.usedBytes(),
+                                            budget.isBounded() ? String.format("%,d", budget.maxBytes()) : "unbounded",
+                                            budget.evictions(),
+                                            budget.evictedBytes(),
+                                            offHeapStatus(OffHeapArena.get(system)),
+                                            compressionStatus(compression),
+                                            admissionStatus(admission),
+                                            lookupStatus(metrics),
+                                            client.settings().coalesceReads
+                                                    ? String.format("%,d", client.coalescedReads()) : "off",
+                                            localReadsStatus(LocalStores.get(system)),
+                                            readThroughStatus(BackingStore.get(system)),
+                                            writeBehindStatus(BackingStore.get(system)),
+                                            nearCacheStatus(nearCache),
+                                            hotKeysStatus(HotKeys.get(system)),
+                                            replicationStatus(),
+                                            snapshotStatus(CacheSnapshots.get(system)),
+                                            handoffStatus(HandoffTransfers.get(system))
                                     );
                                     return complete(HttpEntities.create(ContentTypes.TEXT_PLAIN_UTF8, status));
                                 })
                         ),
 
+                        // Prometheus scrape endpoint - /admin/metrics
+                        path("metrics", () ->
+                                get(() -> {
+                                    if (!metrics.isEnabled()) {
+                                        return complete(StatusCodes.NOT_FOUND,
+                                                "Metrics collection is disabled (cache.monitoring.metrics-collection)");
+                                    }
+                                    return onSuccess(metrics.scrape(), text ->
+                                            complete(HttpEntities.create(ContentTypes.TEXT_PLAIN_UTF8, text)));
+                                })
+                        ),
+
+                        // Hot keys of this node, most read first - /admin/hot-keys
+                        path("hot-keys", () ->
+                                get(() -> {
+                                    HotKeys hotKeys = HotKeys.get(system);
+                                    if (!hotKeys.isEnabled()) {
+                                        return complete(StatusCodes.NOT_FOUND,
+                                                "Hot-key detection is off (cache.hot-keys.enabled, or nothing to spread hot reads over)");
+                                    }
+                                    CacheSettings settings = client.settings();
+                                    StringBuilder text = new StringBuilder(String.format(
+                                            "=== Hot Keys ===\nThreshold: %,d reads per %s window on this node\n",
+                                            settings.hotKeysThreshold, settings.hotKeysWindow));
+                                    for (Map.Entry<String, Integer> hot : hotKeys.hotKeys()) {
+                                        text.append(String.format("%,12d  %s%n", hot.getValue(), hot.getKey()));
+                                    }
+                                    return complete(HttpEntities.create(ContentTypes.TEXT_PLAIN_UTF8, text.toString()));
+                                })
+                        ),
+
                         // Simple health check - /admin/health
                         path("health", () ->
                                 get(() -> complete("OK"))
@@ -148,7 +819,7 @@ public class CacheRoutes extends AllDirectives {
 
                         // Admin root - /admin
                         pathEndOrSingleSlash(() ->
-                                get(() -> complete("Admin Interface - Available endpoints: /admin/status, /admin/health"))
+                                get(() -> complete("Admin Interface - Available endpoints: /admin/status, /admin/metrics, /admin/hot-keys, /admin/health"))
                         )
                 )),
 
@@ -158,11 +829,33 @@ public class CacheRoutes extends AllDirectives {
                             String apiDocs =
                                     "=== Akka Distributed Cache API ===\n\n" +
                                             "Cache Operations (JSON Format):\n" +
-                                            "  PUT /cache/{key}    - Store a value with JSON body\n" +
+                                            "  PUT /cache/{key}    - Store a value with JSON body (optional \"ttl\" in seconds\n" +
+                                            "                        or X-Cache-TTL header)\n" +
                                             "  GET /cache/{key}    - Retrieve a value (returns JSON)\n" +
-                                            "  DELETE /cache/{key} - Remove a value\n\n" +
+                                            "  PUT/GET with Content-Type / Accept: application/octet-stream store and\n" +
+                                            "                        return the raw bytes instead of JSON\n" +
+                                            "  DELETE /cache/{key} - Remove a value; with Prefer: return=representation,\n" +
+                                            "                        answers with the value removed (404 if none)\n" +
+                                            "  GET returns an ETag with the value's version. PUT with If-Match: <ETag>\n" +
+                                            "                        stores only over that version, with If-None-Match: *\n" +
+                                            "                        only if the key is absent (412 otherwise)\n" +
+                                            "  POST /cache/{key}/_incr?by=n - Add n (default 1) to an integer value,\n" +
+                                            "                        starting from 0 (TTL from X-Cache-TTL); returns the sum\n" +
+                                            "  POST /cache/_mget   - Retrieve many values; body {\"keys\": [...]}, streams\n" +
+                                            "                        [{\"key\":..., \"value\":...}] for the keys found\n" +
+                                            "  POST /cache/_mput   - Store many values; body {\"entries\": [{\"key\":...,\n" +
+                                            "                        \"value\":..., \"ttl\":...}]}\n" +
+                                            "  GET /cache?prefix=p - Stream [{\"key\":..., \"value\":..., \"ttl\":...}] for every\n" +
+                                            "                        key starting with p, in no particular order; &limit=n\n" +
+                                            "                        stops after n entries\n" +
+                                            "  DELETE /cache?prefix=p - Remove every key starting with p; answers with the\n" +
+                                            "                        number of keys removed\n" +
+                                            "  X-Cache-Consistency: ONE | QUORUM | ALL on GET, PUT, DELETE, _incr and _mput\n" +
+                                            "                        sets how many replicas must answer (503 if too few do)\n\n" +
                                             "Admin Operations:\n" +
                                             "  GET /admin/status   - Detailed node status\n" +
+                                            "  GET /admin/metrics  - Prometheus metrics (latency, hits, shards, ...)\n" +
+                                            "  GET /admin/hot-keys - Keys read most on this node, with reads per window\n" +
                                             "  GET /admin/health   - Simple health check\n" +
                                             "  GET /              - Root health check\n" +
                                             "  GET /api           - This API documentation\n\n" +
@@ -172,6 +865,7 @@ public class CacheRoutes extends AllDirectives {
                                             "       -d '{\"value\":\"myvalue\"}'\n" +
                                             "  curl http://localhost:8080/cache/mykey\n" +
                                             "  curl -X DELETE http://localhost:8080/cache/mykey\n" +
+                                            "  curl -X POST 'http://localhost:8080/cache/hits/_incr?by=5'\n" +
                                             "  curl http://localhost:8080/admin/status\n";
                             return complete(HttpEntities.create(ContentTypes.TEXT_PLAIN_UTF8, apiDocs));
                         })
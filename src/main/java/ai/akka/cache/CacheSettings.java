@@ -0,0 +1,325 @@
+package ai.akka.cache;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/**
+ * Typed view of the custom {@code cache { }} block in application.conf.
+ * Read once at startup and shared by the sharding extractor, the entities and the HTTP layer.
+ */
+public final class CacheSettings {
+
+    /**
+     * How cache keys are laid out over sharded entities.
+     */
+    public enum EntityMode {
+        /** Keys are hashed into a bounded set of bucket entities, each owning many keys. */
+        BUCKET,
+        /** Legacy layout: every key is its own CacheActor entity. */
+        PER_KEY
+    }
+
+    public final int numberOfShards;
+    public final EntityMode entityMode;
+    public final int numberOfBuckets;
+    public final int rebalanceAbsoluteLimit;
+    public final double rebalanceRelativeLimit;
+
+    public final int replicationFactor;
+    public final Consistency defaultConsistency;
+    public final Duration tombstoneTtl;
+
+    public final long maxMemoryBytes;
+    public final EvictionPolicy.Kind evictionPolicy;
+
+    public final boolean offHeapEnabled;
+    public final long offHeapMaxMemoryBytes;
+    public final int offHeapSlabBytes;
+    public final int offHeapMinValueBytes;
+
+    public final boolean compressionEnabled;
+    public final int compressionThresholdBytes;
+    public final int compressionLevel;
+    public final double compressionMinSavings;
+    public final String compressionDictionary;
+
+    public final Duration expiryTickInterval;
+
+    public final long maxMessageBytes;
+
+    public final Duration askTimeout;
+    public final Duration maxRequestTimeout;
+
+    public final boolean admissionEnabled;
+    public final Duration admissionRetryAfter;
+    public final int admissionNodeInitialLimit;
+    public final int admissionNodeMinLimit;
+    public final int admissionNodeMaxLimit;
+    public final int admissionShardInitialLimit;
+    public final int admissionShardMinLimit;
+    public final int admissionShardMaxLimit;
+    public final double admissionBackoff;
+    public final double admissionLatencyTolerance;
+    public final Duration admissionMinLatency;
+
+    public final boolean textProtocolEnabled;
+    public final int textProtocolPort;
+    public final int textProtocolPipelining;
+    public final int textProtocolMaxLineBytes;
+    public final Duration textProtocolIdleTimeout;
+
+    public final int bulkBatchSize;
+    public final int bulkMaxParallelism;
+    public final Duration bulkTimeout;
+
+    public final int scanPageSize;
+
+    public final boolean nearCacheEnabled;
+    public final long nearCacheMaxMemoryBytes;
+    public final Duration nearCacheTtl;
+    public final Duration nearCacheFlushInterval;
+    public final boolean nearCacheHotKeysOnly;
+
+    public final boolean coalesceReads;
+    public final boolean localReads;
+    public final String readThroughLoader;
+    public final Duration readThroughTtl;
+    public final Duration readThroughTimeout;
+    public final String writeBehindWriter;
+    public final Duration writeBehindFlushInterval;
+    public final int writeBehindBatchSize;
+
+    public final boolean hotKeysEnabled;
+    public final int hotKeysThreshold;
+    public final int hotKeysSampleRate;
+    public final Duration hotKeysWindow;
+    public final int hotKeysMaxKeys;
+
+    public final boolean handoffTransfer;
+    public final int handoffChunkSize;
+    public final Duration handoffTransferWindow;
+
+    public final boolean snapshotEnabled;
+    public final String snapshotDir;
+    public final Duration snapshotMaxAge;
+
+    public final boolean metricsEnabled;
+    public final Duration logSummaryInterval;
+
+    private CacheSettings(Config cache) {
+        Config sharding = cache.getConfig("sharding");
+        this.numberOfShards = sharding.getInt("number-of-shards");
+        this.entityMode = parseEntityMode(sharding.getString("entity-mode"));
+        this.numberOfBuckets = sharding.getInt("number-of-buckets");
+        this.rebalanceAbsoluteLimit = sharding.getInt("rebalance-absolute-limit");
+        this.rebalanceRelativeLimit = sharding.getDouble("rebalance-relative-limit");
+
+        this.replicationFactor = cache.getInt("replication-factor");
+        this.defaultConsistency = Consistency.fromString(cache.getString("default-consistency"));
+        this.tombstoneTtl = cache.getDuration("tombstone-ttl");
+
+        Config eviction = cache.getConfig("eviction");
+        this.maxMemoryBytes = eviction.getBytes("max-memory");
+        // Without a budget there is nothing to evict for, so skip the policy bookkeeping
+        this.evictionPolicy = maxMemoryBytes > 0
+                ? EvictionPolicy.Kind.fromConfig(eviction.getString("policy"))
+                : EvictionPolicy.Kind.NONE;
+
+        Config offHeap = cache.getConfig("off-heap");
+        this.offHeapEnabled = offHeap.getBoolean("enabled");
+        this.offHeapMaxMemoryBytes = offHeap.getBytes("max-memory");
+        this.offHeapSlabBytes = (int) Math.min(Integer.MAX_VALUE, offHeap.getBytes("slab-size"));
+        this.offHeapMinValueBytes = (int) Math.min(Integer.MAX_VALUE, offHeap.getBytes("min-value-size"));
+
+        Config compression = cache.getConfig("compression");
+        this.compressionEnabled = compression.getBoolean("enabled");
+        this.compressionThresholdBytes = (int) Math.min(Integer.MAX_VALUE, compression.getBytes("threshold"));
+        this.compressionLevel = compression.getInt("level");
+        this.compressionMinSavings = compression.getDouble("min-savings");
+        this.compressionDictionary = compression.getString("dictionary");
+
+        this.expiryTickInterval = cache.getDuration("expiry.tick-interval");
+
+        this.maxMessageBytes = cache.getBytes("max-message-size");
+
+        this.askTimeout = cache.getDuration("ask-timeout");
+        this.maxRequestTimeout = cache.getDuration("max-request-timeout");
+
+        Config admission = cache.getConfig("admission");
+        this.admissionEnabled = admission.getBoolean("enabled");
+        this.admissionRetryAfter = admission.getDuration("retry-after");
+        this.admissionNodeInitialLimit = admission.getInt("node.initial-limit");
+        this.admissionNodeMinLimit = admission.getInt("node.min-limit");
+        this.admissionNodeMaxLimit = admission.getInt("node.max-limit");
+        this.admissionShardInitialLimit = admission.getInt("shard.initial-limit");
+        this.admissionShardMinLimit = admission.getInt("shard.min-limit");
+        this.admissionShardMaxLimit = admission.getInt("shard.max-limit");
+        this.admissionBackoff = admission.getDouble("backoff");
+        this.admissionLatencyTolerance = admission.getDouble("latency-tolerance");
+        this.admissionMinLatency = admission.getDuration("min-latency");
+
+        Config textProtocol = cache.getConfig("text-protocol");
+        this.textProtocolEnabled = textProtocol.getBoolean("enabled");
+        this.textProtocolPort = textProtocol.getInt("port");
+        this.textProtocolPipelining = textProtocol.getInt("pipelining");
+        this.textProtocolMaxLineBytes = (int) Math.min(Integer.MAX_VALUE, textProtocol.getBytes("max-line-length"));
+        this.textProtocolIdleTimeout = textProtocol.getDuration("idle-timeout");
+
+        Config bulk = cache.getConfig("bulk-operations");
+        this.bulkBatchSize = bulk.getInt("batch-size");
+        this.bulkMaxParallelism = bulk.getInt("max-parallelism");
+        this.bulkTimeout = bulk.getDuration("timeout");
+
+        this.scanPageSize = cache.getInt("scan.page-size");
+
+        Config nearCache = cache.getConfig("near-cache");
+        this.nearCacheEnabled = nearCache.getBoolean("enabled");
+        this.nearCacheMaxMemoryBytes = nearCache.getBytes("max-memory");
+        this.nearCacheTtl = nearCache.getDuration("ttl");
+        this.nearCacheFlushInterval = nearCache.getDuration("flush-interval");
+        this.nearCacheHotKeysOnly = parseNearCacheAdmission(nearCache.getString("admission"));
+
+        this.coalesceReads = cache.getBoolean("coalesce-reads");
+        this.localReads = cache.getBoolean("local-reads");
+        Config readThrough = cache.getConfig("read-through");
+        this.readThroughLoader = readThrough.getString("loader");
+        this.readThroughTtl = readThrough.getDuration("ttl");
+        this.readThroughTimeout = readThrough.getDuration("timeout");
+        Config writeBehind = cache.getConfig("write-behind");
+        this.writeBehindWriter = writeBehind.getString("writer");
+        this.writeBehindFlushInterval = writeBehind.getDuration("flush-interval");
+        this.writeBehindBatchSize = writeBehind.getInt("batch-size");
+
+        Config hotKeys = cache.getConfig("hot-keys");
+        this.hotKeysEnabled = hotKeys.getBoolean("enabled");
+        this.hotKeysThreshold = hotKeys.getInt("threshold");
+        this.hotKeysSampleRate = hotKeys.getInt("sample-rate");
+        this.hotKeysWindow = hotKeys.getDuration("window");
+        this.hotKeysMaxKeys = hotKeys.getInt("max-keys");
+
+        Config handoff = cache.getConfig("handoff");
+        this.handoffTransfer = handoff.getBoolean("transfer");
+        this.handoffChunkSize = handoff.getInt("chunk-size");
+        this.handoffTransferWindow = handoff.getDuration("transfer-window");
+
+        Config snapshot = cache.getConfig("snapshot");
+        this.snapshotEnabled = snapshot.getBoolean("enabled");
+        this.snapshotDir = snapshot.getString("dir");
+        this.snapshotMaxAge = snapshot.getDuration("max-age");
+
+        this.metricsEnabled = cache.getBoolean("monitoring.metrics-collection");
+        this.logSummaryInterval = cache.getDuration("monitoring.log-summary-interval");
+
+        if (numberOfShards <= 0) {
+            throw new IllegalArgumentException("cache.sharding.number-of-shards must be > 0");
+        }
+        if (numberOfBuckets <= 0) {
+            throw new IllegalArgumentException("cache.sharding.number-of-buckets must be > 0");
+        }
+        if (entityMode == EntityMode.BUCKET && numberOfShards > numberOfBuckets) {
+            throw new IllegalArgumentException("cache.sharding.number-of-shards must not exceed number-of-buckets");
+        }
+        if (rebalanceAbsoluteLimit <= 0 || rebalanceRelativeLimit <= 0) {
+            throw new IllegalArgumentException("cache.sharding.rebalance-absolute-limit and rebalance-relative-limit must be > 0");
+        }
+        if (replicationFactor <= 0) {
+            throw new IllegalArgumentException("cache.replication-factor must be > 0");
+        }
+        if (replicationFactor > 1 && entityMode != EntityMode.BUCKET) {
+            throw new IllegalArgumentException("cache.replication-factor > 1 requires cache.sharding.entity-mode = \"bucket\"");
+        }
+        if (tombstoneTtl.toMillis() <= 0) {
+            throw new IllegalArgumentException("cache.tombstone-ttl must be at least 1ms");
+        }
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("cache.eviction.max-memory must be >= 0");
+        }
+        if (offHeapEnabled && (offHeapSlabBytes < 64 * 1024 || offHeapMaxMemoryBytes < offHeapSlabBytes)) {
+            throw new IllegalArgumentException("cache.off-heap.slab-size must be at least 64 KiB and max-memory at least one slab");
+        }
+        if (compressionLevel < 1 || compressionLevel > 9 || compressionMinSavings < 0 || compressionMinSavings >= 1) {
+            throw new IllegalArgumentException("cache.compression.level must be 1..9 and min-savings in [0, 1)");
+        }
+        if (expiryTickInterval.toMillis() <= 0) {
+            throw new IllegalArgumentException("cache.expiry.tick-interval must be at least 1ms");
+        }
+        if (maxMessageBytes <= 0) {
+            throw new IllegalArgumentException("cache.max-message-size must be > 0");
+        }
+        if (askTimeout.toMillis() <= 0 || maxRequestTimeout.toMillis() <= 0) {
+            throw new IllegalArgumentException("cache.ask-timeout and max-request-timeout must be at least 1ms");
+        }
+        if (admissionNodeMinLimit <= 0 || admissionNodeInitialLimit < admissionNodeMinLimit
+                || admissionNodeMaxLimit < admissionNodeInitialLimit
+                || admissionShardMinLimit <= 0 || admissionShardInitialLimit < admissionShardMinLimit
+                || admissionShardMaxLimit < admissionShardInitialLimit) {
+            throw new IllegalArgumentException("cache.admission limits must satisfy 0 < min-limit <= initial-limit <= max-limit");
+        }
+        if (admissionBackoff <= 0 || admissionBackoff >= 1 || admissionLatencyTolerance < 1) {
+            throw new IllegalArgumentException("cache.admission.backoff must be in (0, 1) and latency-tolerance at least 1");
+        }
+        if (textProtocolPipelining <= 0 || textProtocolMaxLineBytes < 256) {
+            throw new IllegalArgumentException("cache.text-protocol.pipelining must be > 0 and max-line-length at least 256 B");
+        }
+        if (bulkBatchSize <= 0) {
+            throw new IllegalArgumentException("cache.bulk-operations.batch-size must be > 0");
+        }
+        if (bulkMaxParallelism <= 0) {
+            throw new IllegalArgumentException("cache.bulk-operations.max-parallelism must be > 0");
+        }
+        if (scanPageSize <= 0) {
+            throw new IllegalArgumentException("cache.scan.page-size must be > 0");
+        }
+        if (nearCacheEnabled && (nearCacheMaxMemoryBytes <= 0 || nearCacheTtl.toMillis() <= 0)) {
+            throw new IllegalArgumentException("cache.near-cache.max-memory and ttl must be > 0 when enabled");
+        }
+        if (readThroughTtl.isNegative() || readThroughTimeout.toMillis() <= 0) {
+            throw new IllegalArgumentException("cache.read-through.ttl must be >= 0 and timeout at least 1ms");
+        }
+        if (!writeBehindWriter.isEmpty() && (writeBehindFlushInterval.toMillis() <= 0 || writeBehindBatchSize <= 0)) {
+            throw new IllegalArgumentException("cache.write-behind.flush-interval and batch-size must be > 0");
+        }
+        if (hotKeysEnabled && (hotKeysThreshold <= 0 || hotKeysSampleRate <= 0 || hotKeysWindow.toMillis() <= 0
+                || hotKeysMaxKeys <= 0)) {
+            throw new IllegalArgumentException("cache.hot-keys.threshold, sample-rate, window and max-keys must be > 0 when enabled");
+        }
+        if (nearCacheHotKeysOnly && !hotKeysEnabled) {
+            throw new IllegalArgumentException("cache.near-cache.admission = \"hot\" requires cache.hot-keys.enabled");
+        }
+        if (handoffTransfer && handoffChunkSize <= 0) {
+            throw new IllegalArgumentException("cache.handoff.chunk-size must be > 0");
+        }
+        if (snapshotEnabled && entityMode != EntityMode.BUCKET) {
+            throw new IllegalArgumentException("cache.snapshot.enabled requires cache.sharding.entity-mode = \"bucket\"");
+        }
+    }
+
+    public static CacheSettings create(Config config) {
+        return new CacheSettings(config.getConfig("cache"));
+    }
+
+    private static boolean parseNearCacheAdmission(String admission) {
+        switch (admission) {
+            case "all":
+                return false;
+            case "hot":
+                return true;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown cache.near-cache.admission '" + admission + "' (expected 'all' or 'hot')");
+        }
+    }
+
+    private static EntityMode parseEntityMode(String mode) {
+        switch (mode) {
+            case "bucket":
+                return EntityMode.BUCKET;
+            case "per-key":
+                return EntityMode.PER_KEY;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown cache.sharding.entity-mode '" + mode + "' (expected 'bucket' or 'per-key')");
+        }
+    }
+}
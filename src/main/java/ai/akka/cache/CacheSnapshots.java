@@ -0,0 +1,286 @@
+package ai.akka.cache;
+
+import akka.actor.Address;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.util.ByteString;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Warm-restart snapshots of bucket stores, one file per bucket entity under
+ * {@code cache.snapshot.dir/<host>-<port>/}.
+ *
+ * A bucket writes its file when it is stopped by a graceful shutdown of this node and reads it
+ * back the next time it starts here, so a restarted node does not come back empty. Files are
+ * written to a temporary name and renamed into place, read through a memory mapping, and deleted
+ * once loaded. Files older than {@code cache.snapshot.max-age} are ignored.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * magic "ACS" + format 2 | writtenAtMillis long | entry count int
+ * per entry: key length varint, key UTF-8 | flags byte (1 = tombstone)
+ *            | value length varint, value bytes (not for tombstones) | expiresAtMillis long | version long
+ * </pre>
+ */
+public final class CacheSnapshots implements Extension {
+
+    public static final ExtensionId<CacheSnapshots> ID = new ExtensionId<CacheSnapshots>() {
+        @Override
+        public CacheSnapshots createExtension(ActorSystem<?> system) {
+            return new CacheSnapshots(CacheSettings.create(system.settings().config()), system.address());
+        }
+    };
+
+    public static CacheSnapshots get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    // Format 2: keys are bucketed by Murmur3; format 1 files hold String.hashCode buckets and are skipped
+    private static final int MAGIC = ('A' << 24) | ('C' << 16) | ('S' << 8) | 2;
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int COUNT_OFFSET = Integer.BYTES + Long.BYTES;
+    private static final byte TOMBSTONE = 1;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final String SUFFIX = ".snapshot";
+
+    private final boolean enabled;
+    private final Path dir;
+    private final long maxAgeMillis;
+
+    private final LongAdder filesLoaded = new LongAdder();
+    private final LongAdder keysLoaded = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder filesWritten = new LongAdder();
+    private final LongAdder keysWritten = new LongAdder();
+    private final LongAdder filesSkipped = new LongAdder();
+
+    private CacheSnapshots(CacheSettings settings, Address address) {
+        this.enabled = settings.snapshotEnabled;
+        // Nodes sharing a host (as with start-cluster.sh) must not read each other's files
+        this.dir = Paths.get(settings.snapshotDir,
+                address.host().getOrElse(() -> "local") + "-" + address.port().getOrElse(() -> 0));
+        this.maxAgeMillis = settings.snapshotMaxAge.toMillis();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /**
+     * Writes every live entry and tombstone of the store to the entity's snapshot file,
+     * replacing any previous one.
+     *
+     * @return the number of entries written
+     */
+    public int write(String entityId, CacheStore store, long nowMillis) throws IOException {
+        Files.createDirectories(dir);
+        Path file = fileFor(entityId);
+        Path tmp = dir.resolve(entityId + SUFFIX + ".tmp");
+        int[] count = {0};
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+            buffer.putInt(MAGIC).putLong(nowMillis).putInt(0);
+            IOException[] failure = {null};
+            store.forEachEntry(nowMillis, (key, value, expiresAtMillis, version) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    writeEntry(channel, buffer, key, value, expiresAtMillis, version);
+                    count[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            drain(channel, buffer);
+            ByteBuffer countBytes = ByteBuffer.allocate(Integer.BYTES).putInt(0, count[0]);
+            channel.write(countBytes, COUNT_OFFSET);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        filesWritten.increment();
+        keysWritten.add(count[0]);
+        return count[0];
+    }
+
+    /**
+     * Loads the entity's snapshot file into the store, if there is a recent enough one, and deletes it.
+     * Entries that expired while the node was down are skipped.
+     *
+     * @return the number of entries loaded, or 0 if there was no usable file
+     */
+    public int load(String entityId, CacheStore store, long nowMillis) throws IOException {
+        Path file = fileFor(entityId);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int loaded = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                filesSkipped.increment();
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            long writtenAt = buffer.getLong();
+            int count = buffer.getInt();
+            if (nowMillis - writtenAt > maxAgeMillis) {
+                filesSkipped.increment();
+                return 0;
+            }
+            for (int i = 0; i < count; i++) {
+                String key = new String(readBytes(buffer), StandardCharsets.UTF_8);
+                boolean tombstone = buffer.get() == TOMBSTONE;
+                // Copied out of the mapping, which goes away with the file
+                ByteString value = tombstone ? null : ByteString.fromArrayUnsafe(readBytes(buffer));
+                long expiresAtMillis = buffer.getLong();
+                long version = buffer.getLong();
+                if (expiresAtMillis != 0 && expiresAtMillis <= nowMillis) {
+                    continue;
+                }
+                if (tombstone) {
+                    store.removeIfNewer(key, version, expiresAtMillis);
+                } else {
+                    store.putIfNewer(key, value, expiresAtMillis, version);
+                }
+                loaded++;
+            }
+        } catch (BufferUnderflowException e) {
+            filesSkipped.increment();
+            throw new IOException("Truncated cache snapshot: " + file, e);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        filesLoaded.increment();
+        keysLoaded.add(loaded);
+        loadNanos.add(System.nanoTime() - start);
+        return loaded;
+    }
+
+    public long filesLoaded() {
+        return filesLoaded.sum();
+    }
+
+    public long keysLoaded() {
+        return keysLoaded.sum();
+    }
+
+    /**
+     * Keys loaded per second of time spent reading snapshot files, or 0 before the first load.
+     */
+    public double loadKeysPerSecond() {
+        long nanos = loadNanos.sum();
+        return nanos == 0 ? 0.0 : keysLoaded.sum() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    public long filesWritten() {
+        return filesWritten.sum();
+    }
+
+    public long keysWritten() {
+        return keysWritten.sum();
+    }
+
+    /**
+     * Files ignored because they were too old, or deleted because they were unreadable.
+     */
+    public long filesSkipped() {
+        return filesSkipped.sum();
+    }
+
+    private Path fileFor(String entityId) {
+        return dir.resolve(entityId + SUFFIX);
+    }
+
+    private static void writeEntry(FileChannel channel, ByteBuffer buffer, String key, ByteString value,
+                                   long expiresAtMillis, long version) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ensureRoom(channel, buffer, 5);
+        writeVarInt(buffer, keyBytes.length);
+        writeChunk(channel, buffer, ByteBuffer.wrap(keyBytes));
+        ensureRoom(channel, buffer, 1 + 5);
+        buffer.put(value == null ? TOMBSTONE : 0);
+        if (value != null) {
+            writeVarInt(buffer, value.size());
+            for (ByteBuffer part : value.getByteBuffers()) {
+                writeChunk(channel, buffer, part);
+            }
+        }
+        ensureRoom(channel, buffer, 2 * Long.BYTES);
+        buffer.putLong(expiresAtMillis).putLong(version);
+    }
+
+    // Copies small chunks into the buffer; ones larger than the whole buffer go to the channel directly
+    private static void writeChunk(FileChannel channel, ByteBuffer buffer, ByteBuffer chunk) throws IOException {
+        ensureRoom(channel, buffer, chunk.remaining());
+        if (chunk.remaining() <= buffer.remaining()) {
+            buffer.put(chunk);
+            return;
+        }
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[readVarInt(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,755 @@
+package ai.akka.cache;
+
+import akka.util.ByteString;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Compact key/value store owned by a single cache entity.
+ *
+ * Entries live in parallel arrays indexed by a stable slot number, and lookups go through an
+ * open-addressing (linear probing) table of slot references. There is no per-entry node object,
+ * so the footprint per key is close to the key and value themselves plus a few ints. Values are
+ * immutable {@link ByteString}s, stored and handed out as-is without copying.
+ *
+ * Each entry carries an estimated weight in bytes; {@link #weight()} is what the store charges
+ * against the node's {@link MemoryBudget}, and {@link #evict(long)} asks the configured
+ * {@link EvictionPolicy} for victims.
+ *
+ * Entries may carry an absolute expiry time. Expired entries are dropped lazily when read and
+ * actively by {@link #expire(long)}, which advances a {@link TimingWheel}. The expiry column and
+ * the wheel are only allocated once the first expiring entry is written.
+ *
+ * Replicated writes carry a version and are applied last-write-wins through
+ * {@link #putIfNewer} and {@link #removeIfNewer}; a versioned delete leaves an expiring tombstone
+ * so an older value cannot come back from a lagging replica. Tombstones read as absent. The
+ * version column is likewise only allocated once the first versioned entry is written.
+ *
+ * With an {@link OffHeapArena}, values the arena accepts are copied into it and the store keeps
+ * only their handles; reads copy such a value back into a fresh {@link ByteString}. The store
+ * frees its chunks when it drops their entries, including in {@link #clear()}, which an owner
+ * that goes away must therefore call.
+ *
+ * Not thread-safe: only the owning actor may touch it, with one exception. {@link #peek} may be
+ * called from any thread: it reads optimistically and gives up, rather than waits, when the owner
+ * changed the store meanwhile. The owner takes a {@link StampedLock}'s write lock around each
+ * mutation to invalidate such reads; it never contends, since readers take no lock. Reads made
+ * through {@code peek} reach the eviction policy through a small lossy buffer that the owner
+ * drains before evicting.
+ */
+public final class CacheStore implements EvictionPolicy.Slots {
+
+    private static final int MIN_CAPACITY = 2;
+
+    // Key String and value ByteString headers with their backing arrays, plus this entry's share
+    // of the columns and index
+    static final int ENTRY_OVERHEAD = 96;
+
+    // Value of a deleted key whose version must be remembered; compared by identity
+    private static final ByteString TOMBSTONE = ByteString.fromArrayUnsafe(new byte[0]);
+    // Value kept in the arena, at handles[slot]; compared by identity
+    private static final ByteString OFF_HEAP = ByteString.fromArrayUnsafe(new byte[0]);
+
+    /**
+     * What {@link #peek} answers for a key the store holds neither a value nor a tombstone for.
+     */
+    public static final CacheActor.NotFound ABSENT = new CacheActor.NotFound();
+
+    // Reads through peek() recorded for the policy; beyond this many undrained ones they are dropped
+    private static final int READ_BUFFER_SIZE = 128;
+
+    // Open-addressing table; 0 means empty, otherwise slot + 1
+    private int[] table;
+    private int mask;
+
+    // Entry columns indexed by slot. A free slot has a null key and
+    // hashes[slot] holds the next free slot (or -1).
+    private int[] hashes;
+    private String[] keys;
+    private ByteString[] values;
+    private int[] weights;
+    private long[] expiresAt; // epoch millis, 0 = never; null until the first expiring put
+    private long[] versions; // 0 = unversioned; null until the first versioned put
+    private long[] handles; // arena chunk of OFF_HEAP values; null until the first one
+    private TimingWheel wheel;
+    private final OffHeapArena arena; // null = every value on the heap
+
+    private final EvictionPolicy policy;
+    private final long expiryTickMillis;
+    private long weight;
+    private int size;
+    private int slotsInUse; // high-water mark of slots ever handed out
+    private int freeHead = -1;
+
+    // Invalidates concurrent peeks; only the owner ever writes under it
+    private final StampedLock lock = new StampedLock();
+    // Slot and hash of peeked entries, encoded by readEntry(); 0 = empty. Null without a policy
+    private final AtomicLongArray readBuffer;
+    private final AtomicInteger readsRecorded = new AtomicInteger();
+    private volatile int readsDrained;
+
+    public CacheStore() {
+        this(MIN_CAPACITY, EvictionPolicy.Kind.NONE, 1000);
+    }
+
+    public CacheStore(int expectedEntries, EvictionPolicy.Kind evictionPolicy, long expiryTickMillis) {
+        this(expectedEntries, evictionPolicy, expiryTickMillis, null);
+    }
+
+    public CacheStore(int expectedEntries, EvictionPolicy.Kind evictionPolicy, long expiryTickMillis,
+                      OffHeapArena arena) {
+        this.expiryTickMillis = expiryTickMillis;
+        this.arena = arena != null && arena.isEnabled() ? arena : null;
+        int capacity = Math.max(MIN_CAPACITY, expectedEntries);
+        this.hashes = new int[capacity];
+        this.keys = new String[capacity];
+        this.values = new ByteString[capacity];
+        this.weights = new int[capacity];
+        this.policy = evictionPolicy.create(this);
+        this.policy.ensureCapacity(capacity);
+        this.readBuffer = evictionPolicy == EvictionPolicy.Kind.NONE ? null : new AtomicLongArray(READ_BUFFER_SIZE);
+        int tableSize = tableSizeFor(capacity);
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Estimated heap bytes held by all entries.
+     */
+    public long weight() {
+        return weight;
+    }
+
+    /**
+     * True if some entries carry an expiry time and {@link #expire(long)} has work to do.
+     */
+    public boolean hasExpiringEntries() {
+        return wheel != null && !wheel.isEmpty();
+    }
+
+    /**
+     * Returns the live value for the key, dropping it first if it expired before {@code nowMillis}.
+     */
+    public ByteString get(String key, long nowMillis) {
+        int h = hash(key);
+        int slot = findSlot(key, h);
+        if (slot < 0) {
+            return null;
+        }
+        if (isExpired(slot, nowMillis)) {
+            long stamp = lock.writeLock();
+            removeSlot(slot);
+            lock.unlockWrite(stamp);
+            return null;
+        }
+        if (values[slot] == TOMBSTONE) {
+            return null;
+        }
+        policy.onAccess(slot, h);
+        return valueAt(slot);
+    }
+
+    /**
+     * Returns the live entry for the key as a {@link CacheActor.Found}, a {@link CacheActor.NotFound}
+     * with the delete's version for a tombstone, {@link #ABSENT} if the key has neither, or null if
+     * the owner changed the store during the read. Safe to call from any thread; never blocks,
+     * allocates only the reply and leaves expired entries to the owner.
+     */
+    public CacheActor.Response peek(String key, long nowMillis) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0) {
+            return null;
+        }
+        int h = hash(key);
+        try {
+            // Each column is read once: the owner may swap in larger arrays at any time
+            int[] table = this.table;
+            int[] hashes = this.hashes;
+            String[] keys = this.keys;
+            int pos = h & (table.length - 1);
+            // Bounded, since a torn table might have no empty position left to stop at
+            for (int probes = 0; probes < table.length; probes++) {
+                int ref = table[pos];
+                if (ref == 0) {
+                    return lock.validate(stamp) ? ABSENT : null;
+                }
+                int slot = ref - 1;
+                if (hashes[slot] == h && key.equals(keys[slot])) {
+                    ByteString value = values[slot];
+                    long[] expiries = expiresAt;
+                    long[] versionColumn = versions;
+                    long expiry = expiries == null ? 0L : expiries[slot];
+                    long version = versionColumn == null ? 0L : versionColumn[slot];
+                    if (value == OFF_HEAP) {
+                        // Copied out before validating: the chunk may be freed and reused meanwhile
+                        value = arena.read(handles[slot]);
+                    }
+                    if (!lock.validate(stamp) || value == null) {
+                        return null;
+                    }
+                    if (expiry != 0 && expiry <= nowMillis) {
+                        return ABSENT;
+                    }
+                    if (value == TOMBSTONE) {
+                        return new CacheActor.NotFound(version);
+                    }
+                    recordRead(slot, h);
+                    return new CacheActor.Found(value, expiry, version);
+                }
+                pos = (pos + 1) & (table.length - 1);
+            }
+            return null;
+        } catch (RuntimeException e) {
+            // A read torn by a concurrent resize; validation would have failed
+            return null;
+        }
+    }
+
+    private void recordRead(int slot, int h) {
+        if (readBuffer == null) {
+            return;
+        }
+        int index = readsRecorded.get();
+        if (index - readsDrained >= READ_BUFFER_SIZE || !readsRecorded.compareAndSet(index, index + 1)) {
+            // Full, or another reader took the position: like the policy's sketch, an estimate
+            return;
+        }
+        readBuffer.lazySet(index & (READ_BUFFER_SIZE - 1), readEntry(slot, h));
+    }
+
+    private static long readEntry(int slot, int h) {
+        return ((long) (slot + 1) << 32) | (h & 0xFFFFFFFFL);
+    }
+
+    // Owner only: hands the reads recorded by peek() to the policy, skipping slots reused since
+    private void drainReads() {
+        if (readBuffer == null) {
+            return;
+        }
+        int end = readsRecorded.get();
+        for (int index = readsDrained; index != end; index++) {
+            long entry = readBuffer.getAndSet(index & (READ_BUFFER_SIZE - 1), 0L);
+            if (entry == 0) {
+                continue;
+            }
+            int slot = (int) (entry >>> 32) - 1;
+            int h = (int) entry;
+            if (slot < slotsInUse && keys[slot] != null && hashes[slot] == h) {
+                policy.onAccess(slot, h);
+            }
+        }
+        readsDrained = end;
+    }
+
+    public ByteString get(String key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns when the key expires in epoch millis, or 0 if it never expires or is absent.
+     */
+    public long expiresAt(String key) {
+        int slot = findSlot(key, hash(key));
+        return slot < 0 || expiresAt == null ? 0L : expiresAt[slot];
+    }
+
+    /**
+     * Returns the version of the key's value or tombstone, or 0 if it is unversioned or absent.
+     */
+    public long version(String key) {
+        int slot = findSlot(key, hash(key));
+        return slot < 0 || versions == null ? 0L : versions[slot];
+    }
+
+    /**
+     * True if the key holds a value, not a tombstone, that has not expired by {@code nowMillis};
+     * unlike {@link #get(String, long)}, reads no value and leaves an expired entry in place.
+     */
+    public boolean contains(String key, long nowMillis) {
+        int slot = findSlot(key, hash(key));
+        return slot >= 0 && values[slot] != TOMBSTONE && !isExpired(slot, nowMillis);
+    }
+
+    /**
+     * Stores a value that never expires and returns the previous one, or null if the key was absent.
+     */
+    public ByteString put(String key, ByteString value) {
+        return put(key, value, 0L);
+    }
+
+    /**
+     * Stores the value and returns the previous one, or null if the key was absent.
+     *
+     * @param expiresAtMillis absolute expiry time in epoch millis, or 0 for no expiry
+     */
+    public ByteString put(String key, ByteString value, long expiresAtMillis) {
+        int h = hash(key);
+        int slot = findSlot(key, h);
+        ByteString previous = slot < 0 || values[slot] == TOMBSTONE ? null : valueAt(slot);
+        long stamp = lock.writeLock();
+        write(slot, key, h, value, expiresAtMillis, 0L);
+        lock.unlockWrite(stamp);
+        return previous;
+    }
+
+    /**
+     * Stores the value unless the key already holds a newer version. Version 0 is unversioned and
+     * always applied.
+     *
+     * @return false if the write lost to a newer version and was dropped
+     */
+    public boolean putIfNewer(String key, ByteString value, long expiresAtMillis, long version) {
+        int h = hash(key);
+        int slot = findSlot(key, h);
+        if (slot >= 0 && supersedes(slot, version)) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        write(slot, key, h, value, expiresAtMillis, version);
+        lock.unlockWrite(stamp);
+        return true;
+    }
+
+    /**
+     * Replaces the value with a tombstone carrying the delete's version, unless the key already
+     * holds a newer version. The tombstone is dropped at {@code tombstoneExpiresAtMillis}.
+     *
+     * @return false if the delete lost to a newer version and was dropped
+     */
+    public boolean removeIfNewer(String key, long version, long tombstoneExpiresAtMillis) {
+        return putIfNewer(key, TOMBSTONE, tombstoneExpiresAtMillis, version);
+    }
+
+    private void write(int slot, String key, int h, ByteString value, long expiresAtMillis, long version) {
+        if (slot >= 0) {
+            int oldWeight = weights[slot];
+            setValue(slot, value);
+            weights[slot] = weigh(key, value);
+            weight += weights[slot] - oldWeight;
+            setExpiry(slot, expiresAtMillis);
+            setVersion(slot, version);
+            policy.onUpdate(slot, h, oldWeight);
+            return;
+        }
+
+        slot = allocateSlot();
+        hashes[slot] = h;
+        keys[slot] = key;
+        setValue(slot, value);
+        weights[slot] = weigh(key, value);
+        weight += weights[slot];
+        size++;
+
+        if (size * 2 > table.length) {
+            rehash(table.length << 1);
+        } else {
+            insertIntoTable(slot, h);
+        }
+        setExpiry(slot, expiresAtMillis);
+        setVersion(slot, version);
+        policy.onInsert(slot, h);
+    }
+
+    /**
+     * Removes the key and returns its value, or null if the key was absent.
+     */
+    public ByteString remove(String key) {
+        int h = hash(key);
+        int pos = h & mask;
+        while (true) {
+            int ref = table[pos];
+            if (ref == 0) {
+                return null;
+            }
+            int slot = ref - 1;
+            if (hashes[slot] == h && keys[slot].equals(key)) {
+                ByteString previous = valueAt(slot);
+                long stamp = lock.writeLock();
+                deleteFromTable(pos);
+                releaseSlot(slot);
+                lock.unlockWrite(stamp);
+                return previous == TOMBSTONE ? null : previous;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the key like {@link #remove}, but without reading its value, which for an off-heap
+     * value would mean copying it out.
+     *
+     * @return true if the key held a value
+     */
+    public boolean drop(String key) {
+        int slot = findSlot(key, hash(key));
+        if (slot < 0) {
+            return false;
+        }
+        boolean live = values[slot] != TOMBSTONE;
+        long stamp = lock.writeLock();
+        removeSlot(slot);
+        lock.unlockWrite(stamp);
+        return live;
+    }
+
+    /**
+     * Drops every entry whose expiry time has passed by {@code nowMillis}.
+     *
+     * @return the number of expired entries
+     */
+    public int expire(long nowMillis) {
+        if (wheel == null) {
+            return 0;
+        }
+        int before = size;
+        long stamp = lock.writeLock();
+        try {
+            wheel.advance(nowMillis, this::removeSlot);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return before - size;
+    }
+
+    /**
+     * Evicts entries chosen by the policy until at least {@code bytesToFree} bytes are released.
+     * The last remaining entry is never evicted, so a freshly written key always survives its own put.
+     *
+     * @return the number of evicted entries
+     */
+    public int evict(long bytesToFree) {
+        drainReads();
+        long target = weight - bytesToFree;
+        int evicted = 0;
+        long stamp = lock.writeLock();
+        try {
+            while (weight > target && size > 1) {
+                int slot = policy.victim();
+                if (slot < 0) {
+                    break;
+                }
+                removeSlot(slot);
+                evicted++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return evicted;
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        for (int slot = 0; slot < slotsInUse; slot++) {
+            if (keys[slot] != null) {
+                policy.onRemove(slot);
+                if (wheel != null) {
+                    wheel.cancel(slot);
+                }
+                if (values[slot] == OFF_HEAP) {
+                    arena.free(handles[slot]);
+                }
+            }
+        }
+        Arrays.fill(table, 0);
+        Arrays.fill(keys, 0, slotsInUse, null);
+        Arrays.fill(values, 0, slotsInUse, null);
+        if (expiresAt != null) {
+            Arrays.fill(expiresAt, 0, slotsInUse, 0L);
+        }
+        if (versions != null) {
+            Arrays.fill(versions, 0, slotsInUse, 0L);
+        }
+        weight = 0;
+        size = 0;
+        slotsInUse = 0;
+        freeHead = -1;
+        lock.unlockWrite(stamp);
+    }
+
+    public void forEach(BiConsumer<String, ByteString> action) {
+        for (int slot = 0; slot < slotsInUse; slot++) {
+            if (keys[slot] != null && values[slot] != TOMBSTONE) {
+                action.accept(keys[slot], valueAt(slot));
+            }
+        }
+    }
+
+    /**
+     * Receives every entry with its expiry and version; {@code value} is null for a tombstone.
+     */
+    public interface EntryVisitor {
+        void visit(String key, ByteString value, long expiresAtMillis, long version);
+    }
+
+    /**
+     * Visits every entry, tombstones included, that has not expired by {@code nowMillis}.
+     */
+    public void forEachEntry(long nowMillis, EntryVisitor visitor) {
+        for (int slot = 0; slot < slotsInUse; slot++) {
+            if (keys[slot] != null && !isExpired(slot, nowMillis)) {
+                visitor.visit(keys[slot], values[slot] == TOMBSTONE ? null : valueAt(slot),
+                        expiresAt == null ? 0L : expiresAt[slot],
+                        versions == null ? 0L : versions[slot]);
+            }
+        }
+    }
+
+    /**
+     * Visits the live entries, tombstones excluded, whose key passes {@code filter}. The filter sees
+     * each key before its value is read, so the off-heap values of the keys it turns down are never
+     * copied; it may change its answer as the visitor sees entries.
+     */
+    public void forEachLiveEntry(long nowMillis, Predicate<String> filter, EntryVisitor visitor) {
+        for (int slot = 0; slot < slotsInUse; slot++) {
+            if (keys[slot] != null && values[slot] != TOMBSTONE && !isExpired(slot, nowMillis)
+                    && filter.test(keys[slot])) {
+                visitor.visit(keys[slot], valueAt(slot),
+                        expiresAt == null ? 0L : expiresAt[slot],
+                        versions == null ? 0L : versions[slot]);
+            }
+        }
+    }
+
+    /**
+     * Hands every live key, not expired by {@code nowMillis} and not a tombstone, to {@code action}
+     * without reading its value.
+     */
+    public void forEachKey(long nowMillis, Consumer<String> action) {
+        for (int slot = 0; slot < slotsInUse; slot++) {
+            if (keys[slot] != null && values[slot] != TOMBSTONE && !isExpired(slot, nowMillis)) {
+                action.accept(keys[slot]);
+            }
+        }
+    }
+
+    /**
+     * Visits the first entry at or after slot {@code from}, as {@link #forEachEntry} would, and
+     * returns the slot to continue from; -1 once no entries are left. Lets a reader walk the store a
+     * step at a time instead of copying it out whole.
+     */
+    public int visitNext(int from, long nowMillis, EntryVisitor visitor) {
+        for (int slot = from; slot < slotsInUse; slot++) {
+            if (keys[slot] != null && !isExpired(slot, nowMillis)) {
+                visitor.visit(keys[slot], values[slot] == TOMBSTONE ? null : valueAt(slot),
+                        expiresAt == null ? 0L : expiresAt[slot],
+                        versions == null ? 0L : versions[slot]);
+                return slot + 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int weightOf(int slot) {
+        return weights[slot];
+    }
+
+    @Override
+    public int hashOf(int slot) {
+        return hashes[slot];
+    }
+
+    private ByteString valueAt(int slot) {
+        ByteString value = values[slot];
+        return value == OFF_HEAP ? arena.read(handles[slot]) : value;
+    }
+
+    // Frees the slot's previous chunk, if any, and keeps the value in the arena if it takes it
+    private void setValue(int slot, ByteString value) {
+        if (values[slot] == OFF_HEAP) {
+            arena.free(handles[slot]);
+        }
+        if (arena != null && value != TOMBSTONE && arena.accepts(value.size())) {
+            long handle = arena.allocate(value);
+            if (handle >= 0) {
+                if (handles == null) {
+                    handles = new long[keys.length];
+                }
+                handles[slot] = handle;
+                values[slot] = OFF_HEAP;
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    private boolean isExpired(int slot, long nowMillis) {
+        return expiresAt != null && expiresAt[slot] != 0 && expiresAt[slot] <= nowMillis;
+    }
+
+    private void setExpiry(int slot, long expiresAtMillis) {
+        if (expiresAtMillis == 0) {
+            if (expiresAt != null && expiresAt[slot] != 0) {
+                expiresAt[slot] = 0;
+                wheel.cancel(slot);
+            }
+            return;
+        }
+        if (expiresAt == null) {
+            expiresAt = new long[keys.length];
+            wheel = new TimingWheel(expiryTickMillis, System.currentTimeMillis(), s -> expiresAt[s]);
+            wheel.ensureCapacity(keys.length);
+        }
+        expiresAt[slot] = expiresAtMillis;
+        wheel.schedule(slot);
+    }
+
+    private boolean supersedes(int slot, long version) {
+        return version != 0 && versions != null && versions[slot] > version;
+    }
+
+    private void setVersion(int slot, long version) {
+        if (version == 0) {
+            if (versions != null) {
+                versions[slot] = 0;
+            }
+            return;
+        }
+        if (versions == null) {
+            versions = new long[keys.length];
+        }
+        versions[slot] = version;
+    }
+
+    private void removeSlot(int slot) {
+        deleteFromTable(positionOf(slot));
+        releaseSlot(slot);
+    }
+
+    private int findSlot(String key, int h) {
+        int pos = h & mask;
+        while (true) {
+            int ref = table[pos];
+            if (ref == 0) {
+                return -1;
+            }
+            int slot = ref - 1;
+            if (hashes[slot] == h && keys[slot].equals(key)) {
+                return slot;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeHead >= 0) {
+            int slot = freeHead;
+            freeHead = hashes[slot];
+            return slot;
+        }
+        if (slotsInUse == keys.length) {
+            int newCapacity = keys.length + (keys.length >> 1) + 1;
+            hashes = Arrays.copyOf(hashes, newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            weights = Arrays.copyOf(weights, newCapacity);
+            policy.ensureCapacity(newCapacity);
+            if (expiresAt != null) {
+                expiresAt = Arrays.copyOf(expiresAt, newCapacity);
+                wheel.ensureCapacity(newCapacity);
+            }
+            if (versions != null) {
+                versions = Arrays.copyOf(versions, newCapacity);
+            }
+            if (handles != null) {
+                handles = Arrays.copyOf(handles, newCapacity);
+            }
+        }
+        return slotsInUse++;
+    }
+
+    private void releaseSlot(int slot) {
+        policy.onRemove(slot);
+        if (expiresAt != null && expiresAt[slot] != 0) {
+            expiresAt[slot] = 0;
+            wheel.cancel(slot);
+        }
+        if (versions != null) {
+            versions[slot] = 0;
+        }
+        weight -= weights[slot];
+        size--;
+        if (values[slot] == OFF_HEAP) {
+            arena.free(handles[slot]);
+        }
+        keys[slot] = null;
+        values[slot] = null;
+        weights[slot] = 0;
+        hashes[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    private int positionOf(int slot) {
+        int pos = hashes[slot] & mask;
+        while (table[pos] != slot + 1) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    private void insertIntoTable(int slot, int h) {
+        int pos = h & mask;
+        while (table[pos] != 0) {
+            pos = (pos + 1) & mask;
+        }
+        table[pos] = slot + 1;
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private void deleteFromTable(int pos) {
+        int gap = pos;
+        int next = (gap + 1) & mask;
+        while (table[next] != 0) {
+            int home = hashes[table[next] - 1] & mask;
+            // Move the entry into the gap unless its home lies cyclically in (gap, next]
+            boolean homeBetween = gap <= next
+                    ? (home > gap && home <= next)
+                    : (home > gap || home <= next);
+            if (!homeBetween) {
+                table[gap] = table[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap] = 0;
+    }
+
+    private void rehash(int newTableSize) {
+        table = new int[newTableSize];
+        mask = newTableSize - 1;
+        for (int slot = 0; slot < slotsInUse; slot++) {
+            if (keys[slot] != null) {
+                insertIntoTable(slot, hashes[slot]);
+            }
+        }
+    }
+
+    private static int tableSizeFor(int entries) {
+        int n = Integer.highestOneBit(Math.max(1, entries * 2 - 1)) << 1;
+        return Math.max(4, n);
+    }
+
+    // Conservative for keys: assumes two bytes per char even though compact strings often need one
+    static int weigh(String key, ByteString value) {
+        return ENTRY_OVERHEAD + 2 * key.length() + value.size();
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,27 @@
+package ai.akka.cache;
+
+import akka.Done;
+import akka.util.ByteString;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Backing store that the cache writes behind to.
+ *
+ * Configured by class name in {@code cache.write-behind.writer}, with the same constructors as a
+ * {@link CacheLoader}; naming the loader's class shares one instance for both. The entity holding
+ * the first replica of a key queues each write and delete it takes, and every node hands its queue
+ * to the writer in batches: repeated writes of a key between two batches reach the writer once,
+ * as the last of them, and a node has at most one batch in flight, so batches arrive in order.
+ */
+public interface CacheWriter {
+
+    /**
+     * Writes a batch to the backing store: a present value stores the key, an empty one deletes
+     * it. A failed stage has the batch retried, merged with the writes queued since. Must not block
+     * the calling thread.
+     */
+    CompletionStage<Done> writeAll(Map<String, Optional<ByteString>> writes);
+}
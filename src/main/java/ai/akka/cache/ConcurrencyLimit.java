@@ -0,0 +1,109 @@
+package ai.akka.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An adaptive bound on the asks in flight to one target, the whole node or one shard.
+ *
+ * The limit moves by AIMD on the latency gradient: every ask that answers within
+ * {@code tolerance} times the baseline latency, while the limit is at least half in use, raises it
+ * by 1/limit (about one per limit's worth of asks); an ask that times out or answers slower than
+ * that cuts it by {@code backoff}, at most once per such latency, so one burst of slow answers
+ * counts once. The baseline is the fastest answer of the last ten seconds, so it follows the
+ * workload; answers under {@code min-latency} are never slow, so scheduling noise on an idle node
+ * does not shrink the limit.
+ */
+final class ConcurrencyLimit {
+
+    private static final long BASELINE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoff;
+    private final double tolerance;
+    private final long minLatencyNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Guarded by this
+    private double estimate;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private long windowStart = System.nanoTime();
+    private long lastDecrease = System.nanoTime();
+
+    ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoff, double tolerance,
+                     long minLatencyNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoff = backoff;
+        this.tolerance = tolerance;
+        this.minLatencyNanos = minLatencyNanos;
+        this.estimate = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Takes a slot if fewer than the limit are in flight.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives a slot back without a sample, for an ask that was never sent.
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Gives a slot back with the ask's latency, and whether it timed out.
+     */
+    void release(long latencyNanos, boolean timedOut) {
+        int busy = inFlight.getAndDecrement();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (!timedOut) {
+                windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+            }
+            if (now - windowStart >= BASELINE_WINDOW_NANOS) {
+                if (windowMinNanos != Long.MAX_VALUE) {
+                    baselineNanos = windowMinNanos;
+                }
+                windowMinNanos = Long.MAX_VALUE;
+                windowStart = now;
+            }
+            long baseline = Math.min(baselineNanos, windowMinNanos);
+            boolean slow = timedOut || latencyNanos > Math.max(minLatencyNanos, (long) (baseline * tolerance));
+            if (slow) {
+                // Asks sent before the last cut answer within about their own latency of it
+                if (now - lastDecrease >= latencyNanos) {
+                    estimate = Math.max(minLimit, estimate * backoff);
+                    lastDecrease = now;
+                }
+            } else if (busy * 2 >= estimate) {
+                estimate = Math.min(maxLimit, estimate + 1.0 / estimate);
+            }
+            limit = (int) estimate;
+        }
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,35 @@
+package ai.akka.cache;
+
+import java.util.Locale;
+
+/**
+ * How many of a key's replicas must answer before a read or write completes.
+ */
+public enum Consistency {
+    ONE,
+    QUORUM,
+    ALL;
+
+    /**
+     * Replies needed out of {@code replicationFactor} replicas.
+     */
+    public int required(int replicationFactor) {
+        switch (this) {
+            case ONE:
+                return 1;
+            case QUORUM:
+                return replicationFactor / 2 + 1;
+            default:
+                return replicationFactor;
+        }
+    }
+
+    public static Consistency fromString(String level) {
+        try {
+            return valueOf(level.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "Unknown consistency level '" + level + "' (expected ONE, QUORUM or ALL)");
+        }
+    }
+}
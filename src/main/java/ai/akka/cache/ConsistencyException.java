@@ -0,0 +1,12 @@
+package ai.akka.cache;
+
+/**
+ * Too few replicas answered a read or write for its {@link Consistency} level. The write may
+ * still have reached some replicas.
+ */
+public class ConsistencyException extends RuntimeException {
+
+    public ConsistencyException(String message) {
+        super(message);
+    }
+}
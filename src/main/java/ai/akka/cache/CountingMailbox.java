@@ -0,0 +1,59 @@
+package ai.akka.cache;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.typed.javadsl.Adapter;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMailbox;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The default unbounded mailbox, plus a node-wide count of the messages waiting in every mailbox
+ * of this type, reported by {@link CacheMetrics} as the cache entities' mailbox depth.
+ *
+ * Typed actors offer no way to read a mailbox's size, so the queue counts its own enqueues and
+ * dequeues: one LongAdder increment each, shared by all entities of the node.
+ */
+public final class CountingMailbox implements MailboxType, ProducesMessageQueue<CountingMailbox.CountingQueue> {
+
+    public CountingMailbox(ActorSystem.Settings settings, Config config) {
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        LongAdder depth = system.isDefined()
+                ? CacheMetrics.get(Adapter.toTyped(system.get())).mailboxDepthCounter()
+                : new LongAdder();
+        return new CountingQueue(depth);
+    }
+
+    public static final class CountingQueue extends UnboundedMailbox.MessageQueue {
+        private final LongAdder depth;
+
+        CountingQueue(LongAdder depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            depth.increment();
+            super.enqueue(receiver, handle);
+        }
+
+        // Also drains the queue into dead letters when the actor stops, so the count returns to 0
+        @Override
+        public Envelope dequeue() {
+            Envelope envelope = super.dequeue();
+            if (envelope != null) {
+                depth.decrement();
+            }
+            return envelope;
+        }
+    }
+}
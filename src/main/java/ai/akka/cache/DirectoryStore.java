@@ -0,0 +1,100 @@
+package ai.akka.cache;
+
+import akka.Done;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.util.ByteString;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Stand-in origin for trying out read-through and write-behind without a database: one file per
+ * key under {@code cache.directory-store.dir}, holding the value's bytes. Files are read and
+ * written on Akka's blocking dispatcher, and replaced atomically.
+ *
+ * Not meant for production: every key is a file, and nodes only share it on a shared file system.
+ */
+public final class DirectoryStore implements CacheLoader, CacheWriter {
+
+    // Keys whose encoded names would exceed common file-name limits are named by their SHA-256
+    private static final int MAX_NAME_LENGTH = 200;
+
+    private final Path dir;
+    private final Executor blocking;
+
+    public DirectoryStore(ActorSystem<?> system) {
+        this.dir = Paths.get(system.settings().config().getString("cache.directory-store.dir"));
+        this.blocking = system.dispatchers().lookup(DispatcherSelector.blocking());
+    }
+
+    @Override
+    public CompletionStage<Optional<ByteString>> load(String key) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return Optional.of(ByteString.fromArrayUnsafe(Files.readAllBytes(fileOf(key))));
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, blocking);
+    }
+
+    @Override
+    public CompletionStage<Done> writeAll(Map<String, Optional<ByteString>> writes) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Files.createDirectories(dir);
+                for (Map.Entry<String, Optional<ByteString>> write : writes.entrySet()) {
+                    Path file = fileOf(write.getKey());
+                    if (write.getValue().isPresent()) {
+                        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                        Files.write(tmp, write.getValue().get().toArray());
+                        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                return Done.getInstance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, blocking);
+    }
+
+    private Path fileOf(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        String name = "k" + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = "h" + sha256(bytes);
+        }
+        return dir.resolve(name);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
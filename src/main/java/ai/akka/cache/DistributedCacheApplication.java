@@ -1,6 +1,8 @@
 package ai.akka.cache;
 
 import akka.actor.typed.ActorSystem;
+import akka.actor.typed.MailboxSelector;
+import akka.cluster.sharding.typed.ClusterShardingSettings;
 import akka.cluster.sharding.typed.javadsl.ClusterSharding;
 import akka.cluster.sharding.typed.javadsl.Entity;
 import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
@@ -13,6 +15,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class DistributedCacheApplication {
 
@@ -39,19 +42,37 @@ public class DistributedCacheApplication {
 
                     // Initialize Cluster Sharding with proper message extractor
                     ClusterSharding sharding = ClusterSharding.get(context.getSystem());
+                    CacheSettings settings = CacheSettings.create(context.getSystem().settings().config());
+                    CacheMessageExtractor extractor = new CacheMessageExtractor(settings);
 
                     // FIXED: Initialize the sharded cache entity with proper extractor
-                    sharding.init(
+                    Entity<CacheActor.Command, CacheActor.Command> entity =
                             Entity.of(CACHE_ENTITY_KEY, entityContext -> {
                                 // Pass entity context to actor for proper entity ID handling
-                                return CacheActor.create(entityContext);
-                            }).withMessageExtractor(new CacheMessageExtractor())
-                    );
+                                return CacheActor.create(entityContext, settings);
+                            }).withMessageExtractor(extractor)
+                                    // Lets buckets write their snapshot and offer their entries to their next owner when handed off
+                                    .withStopMessage(CacheActor.Shutdown.INSTANCE);
+                    if (settings.entityMode == CacheSettings.EntityMode.BUCKET) {
+                        // Buckets are bounded by the memory budget; idle passivation would only drop data
+                        entity = entity.withSettings(
+                                ClusterShardingSettings.create(context.getSystem()).withNoPassivationStrategy());
+                    }
+                    // Least-loaded allocation and bounded rebalance rounds; also keeps replicas apart
+                    entity = entity.withAllocationStrategy(new ReplicaAllocationStrategy(
+                            settings.rebalanceAbsoluteLimit, settings.rebalanceRelativeLimit));
+                    if (settings.metricsEnabled) {
+                        // Counts queued messages for the mailbox depth in /admin/metrics
+                        entity = entity.withEntityProps(MailboxSelector.fromConfig("cache.monitoring.mailbox"));
+                    }
+                    sharding.init(entity);
 
-                    context.getSystem().log().info("Cluster sharding initialized with message extractor");
+                    context.getSystem().log().info("Cluster sharding initialized with message extractor ({} mode, {} buckets, {} replicas)",
+                            settings.entityMode, settings.numberOfBuckets, settings.replicationFactor);
 
                     // FIXED: Use ClusterSharding directly in routes (no proxy needed)
-                    CacheRoutes routes = new CacheRoutes(sharding, context.getSystem());
+                    CacheClient client = new CacheClient(sharding, extractor, settings, context.getSystem());
+                    CacheRoutes routes = new CacheRoutes(client, context.getSystem());
                     Http http = Http.get(context.getSystem());
 
                     CompletionStage<ServerBinding> binding = http
@@ -74,6 +95,22 @@ public class DistributedCacheApplication {
                         }
                     });
 
+                    if (settings.textProtocolEnabled) {
+                        // Memcached text protocol for clients that want less per request than HTTP
+                        int textPort = args.length > 2 ? Integer.parseInt(args[2]) : settings.textProtocolPort;
+                        new TextProtocolServer(client, context.getSystem())
+                                .bind("0.0.0.0", textPort)
+                                .whenComplete((bind, failure) -> {
+                                    if (bind != null) {
+                                        System.out.printf("   Text protocol (memcached) on port %d ✅%n",
+                                                bind.localAddress().getPort());
+                                    } else {
+                                        System.err.println("❌ Failed to bind text protocol endpoint: " + failure);
+                                        context.getSystem().terminate();
+                                    }
+                                });
+                    }
+
                     return akka.actor.typed.javadsl.Behaviors.empty();
                 }),
                 "ClusterSystem",
@@ -110,6 +147,12 @@ public class DistributedCacheApplication {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n⏹️  Shutdown signal received, stopping cache node...");
             system.terminate();
+            // Wait for coordinated shutdown: shards hand off (and write their snapshots) before the JVM exits
+            try {
+                system.getWhenTerminated().toCompletableFuture().get(2, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                System.err.println("Cache node did not stop cleanly: " + e);
+            }
             shutdownLatch.countDown();
         }));
 
@@ -139,29 +182,93 @@ public class DistributedCacheApplication {
     // FIXED: Add proper message extractor for sharding
     public static class CacheMessageExtractor extends akka.cluster.sharding.typed.ShardingMessageExtractor<CacheActor.Command, CacheActor.Command> {
 
+        private final CacheSettings.EntityMode entityMode;
+        private final int numberOfBuckets;
+        private final int numberOfShards;
+        private final int replicationFactor;
+
+        public CacheMessageExtractor(CacheSettings settings) {
+            this.entityMode = settings.entityMode;
+            this.numberOfBuckets = settings.numberOfBuckets;
+            this.numberOfShards = settings.numberOfShards;
+            this.replicationFactor = settings.replicationFactor;
+        }
+
+        public int replicationFactor() {
+            return replicationFactor;
+        }
+
         @Override
         public String entityId(CacheActor.Command message) {
             // Extract entity ID from the message
-            if (message instanceof CacheActor.Get) {
-                return ((CacheActor.Get) message).key;
-            } else if (message instanceof CacheActor.Put) {
-                return ((CacheActor.Put) message).key;
-            } else if (message instanceof CacheActor.Delete) {
-                return ((CacheActor.Delete) message).key;
+            return entityIdForKey(keyOf(message));
+        }
+
+        /**
+         * Entity that owns the given cache key: the key itself in per-key mode,
+         * otherwise the bucket the key hashes into.
+         */
+        public String entityIdForKey(String key) {
+            if (entityMode == CacheSettings.EntityMode.PER_KEY) {
+                return key;
             }
-            throw new IllegalArgumentException("Unknown message type: " + message.getClass());
+            return String.valueOf(bucketOf(key));
+        }
+
+        /**
+         * Entity holding the given replica of the key: the primary entity for replica 0,
+         * otherwise "{bucket}-{replica}" (replication is only supported in bucket mode).
+         */
+        public String entityIdForKey(String key, int replica) {
+            if (replica == 0) {
+                return entityIdForKey(key);
+            }
+            return entityIdForBucket(bucketOf(key), replica);
+        }
+
+        /**
+         * Entity holding the given replica of a bucket, in bucket mode.
+         */
+        public String entityIdForBucket(int bucket, int replica) {
+            return replica == 0 ? String.valueOf(bucket) : bucket + "-" + replica;
+        }
+
+        /**
+         * Replica index held by the entity; 0 for primaries and in per-key mode.
+         */
+        public int replicaOf(String entityId) {
+            if (entityMode == CacheSettings.EntityMode.PER_KEY) {
+                return 0;
+            }
+            int dash = entityId.indexOf('-');
+            return dash < 0 ? 0 : Integer.parseInt(entityId.substring(dash + 1));
+        }
+
+        public int bucketOf(String key) {
+            // Murmur3 rather than String.hashCode: sequential keys spread evenly, and the keys of a
+            // bucket no longer share the low bits of the hashCode that CacheStore indexes them by
+            return Math.floorMod(Murmur3.hash(key), numberOfBuckets);
         }
 
         public String shardId(CacheActor.Command message) {
             // Calculate shard ID from entity ID using hash
-            String entityId = entityId(message);
-            return String.valueOf(Math.abs(entityId.hashCode()) % 10); // 10 shards
+            return shardId(entityId(message));
         }
 
         @Override
         public String shardId(String entityId) {
-            // Required method - calculate shard ID from entity ID
-            return String.valueOf(Math.abs(entityId.hashCode()) % 10); // 10 shards
+            // Buckets are spread round-robin so every shard gets the same number of them. Replica r
+            // of shard s is shard "s-r", which ReplicaAllocationStrategy keeps off the nodes
+            // hosting the other replicas of s
+            if (entityMode == CacheSettings.EntityMode.BUCKET) {
+                int dash = entityId.indexOf('-');
+                if (dash < 0) {
+                    return String.valueOf(Integer.parseInt(entityId) % numberOfShards);
+                }
+                int bucket = Integer.parseInt(entityId.substring(0, dash));
+                return (bucket % numberOfShards) + entityId.substring(dash);
+            }
+            return String.valueOf(Math.floorMod(Murmur3.hash(entityId), numberOfShards));
         }
 
         @Override
@@ -169,5 +276,21 @@ public class DistributedCacheApplication {
             // No unwrapping needed as we're not using envelopes
             return message;
         }
+
+        private static String keyOf(CacheActor.Command message) {
+            if (message instanceof CacheActor.Get) {
+                return ((CacheActor.Get) message).key;
+            } else if (message instanceof CacheActor.Put) {
+                return ((CacheActor.Put) message).key;
+            } else if (message instanceof CacheActor.Delete) {
+                return ((CacheActor.Delete) message).key;
+            } else if (message instanceof CacheActor.MultiGet) {
+                // A batch is addressed to the entity of its first key, which fans out the rest
+                return ((CacheActor.MultiGet) message).keys.get(0);
+            } else if (message instanceof CacheActor.MultiPut) {
+                return ((CacheActor.MultiPut) message).entries.get(0).key;
+            }
+            throw new IllegalArgumentException("Unknown message type: " + message.getClass());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package ai.akka.cache;
+
+/**
+ * Decides which entry of a {@link CacheStore} to drop when the node is over its memory budget.
+ *
+ * Policies track entries by the store's stable slot numbers in their own primitive arrays,
+ * so they add a few bytes per entry and allocate nothing per operation.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Read-only view of the owning store's per-slot columns.
+     */
+    interface Slots {
+        /** Estimated bytes held by the entry in this slot. */
+        int weightOf(int slot);
+
+        int hashOf(int slot);
+    }
+
+    enum Kind {
+        /** No eviction: the store grows until entries are deleted. */
+        NONE,
+        /** Least recently used. */
+        LRU,
+        /** Window TinyLFU: small LRU window plus a frequency-gated segmented LRU main area. */
+        W_TINYLFU;
+
+        public static Kind fromConfig(String name) {
+            switch (name) {
+                case "none":
+                    return NONE;
+                case "lru":
+                    return LRU;
+                case "w-tinylfu":
+                    return W_TINYLFU;
+                default:
+                    throw new IllegalArgumentException(
+                            "Unknown cache.eviction.policy '" + name + "' (expected 'lru', 'w-tinylfu' or 'none')");
+            }
+        }
+
+        EvictionPolicy create(Slots slots) {
+            switch (this) {
+                case LRU:
+                    return new LruPolicy();
+                case W_TINYLFU:
+                    return new WindowTinyLfuPolicy(slots);
+                default:
+                    return NoEviction.INSTANCE;
+            }
+        }
+    }
+
+    /** Makes room for slot numbers below {@code slots}. */
+    void ensureCapacity(int slots);
+
+    void onInsert(int slot, int hash);
+
+    void onAccess(int slot, int hash);
+
+    /** The value in the slot was replaced; its weight changed from {@code oldWeight}. */
+    void onUpdate(int slot, int hash, int oldWeight);
+
+    void onRemove(int slot);
+
+    /**
+     * The slot that should be evicted next, or -1 if the policy has nothing to offer.
+     */
+    int victim();
+
+    final class NoEviction implements EvictionPolicy {
+        static final NoEviction INSTANCE = new NoEviction();
+
+        private NoEviction() {
+        }
+
+        @Override
+        public void ensureCapacity(int slots) {
+        }
+
+        @Override
+        public void onInsert(int slot, int hash) {
+        }
+
+        @Override
+        public void onAccess(int slot, int hash) {
+        }
+
+        @Override
+        public void onUpdate(int slot, int hash, int oldWeight) {
+        }
+
+        @Override
+        public void onRemove(int slot) {
+        }
+
+        @Override
+        public int victim() {
+            return -1;
+        }
+    }
+}
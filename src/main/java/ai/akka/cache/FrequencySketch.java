@@ -0,0 +1,90 @@
+package ai.akka.cache;
+
+/**
+ * Count-min sketch with 4-bit counters used by TinyLFU to estimate how often a key was seen.
+ *
+ * Each long holds sixteen counters; a key maps to four counters in four different longs.
+ * Once the number of increments reaches ten times the table size every counter is halved,
+ * so the estimate follows the recent popularity of keys rather than all-time counts.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private long[] table = new long[0];
+    private int tableMask;
+    private int sampleSize;
+    private int additions;
+
+    /**
+     * Sizes the sketch for roughly {@code expectedEntries} distinct keys. Growing clears the counts.
+     */
+    void ensureCapacity(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(8, expectedEntries) - 1) << 1;
+        if (table.length >= size) {
+            return;
+        }
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = 10 * size;
+        additions = 0;
+    }
+
+    int frequency(int hash) {
+        if (table.length == 0) {
+            return 0;
+        }
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        if (table.length == 0) {
+            return;
+        }
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    // Halves every counter; odd counters lose their remainder, which is subtracted from additions
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+}
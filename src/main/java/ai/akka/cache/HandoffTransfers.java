@@ -0,0 +1,139 @@
+package ai.akka.cache;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.CoordinatedShutdown;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.stream.SourceRef;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.StreamRefs;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Data transfer for bucket handoff.
+ *
+ * When sharding stops a bucket to move it elsewhere, the bucket hands its entries to this
+ * extension as a {@link SourceRef} of chunks and sends the ref to the bucket's next owner, which
+ * pulls the chunks with backpressure. Each transfer runs outside the stopped entity, so the
+ * handoff itself is not held up; a leaving node instead waits for its outgoing transfers in the
+ * {@code cache-handoff-transfers} phase of coordinated shutdown, before it leaves the cluster.
+ *
+ * Chunks are read from the stopped entity's store only as the next owner asks for them, so a
+ * handoff never holds more than the chunks in flight on the heap besides the store itself, which
+ * the transfer keeps until it ends. A transfer nobody pulls ends after
+ * {@code akka.stream.materializer.stream-ref.subscription-timeout}.
+ */
+public final class HandoffTransfers implements Extension {
+
+    public static final ExtensionId<HandoffTransfers> ID = new ExtensionId<HandoffTransfers>() {
+        @Override
+        public HandoffTransfers createExtension(ActorSystem<?> system) {
+            return new HandoffTransfers(system);
+        }
+    };
+
+    public static HandoffTransfers get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    public static final String SHUTDOWN_PHASE = "cache-handoff-transfers";
+
+    private final ActorSystem<?> system;
+    private final Set<CompletionStage<Done>> outgoing = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder transfersSent = new LongAdder();
+    private final LongAdder entriesSent = new LongAdder();
+    private final LongAdder transfersReceived = new LongAdder();
+    private final LongAdder entriesReceived = new LongAdder();
+    private final LongAdder transfersFailed = new LongAdder();
+
+    private HandoffTransfers(ActorSystem<?> system) {
+        this.system = system;
+        CoordinatedShutdown.get(system).addTask(SHUTDOWN_PHASE, "await-outgoing-transfers", this::awaitOutgoing);
+    }
+
+    /**
+     * Puts the chunks behind a {@link SourceRef} for the next owner to pull. Chunks are produced
+     * only as they are pulled; {@code onFinished} runs once the transfer has completed, failed or
+     * timed out, and releases whatever the chunks are read from.
+     */
+    public SourceRef<CacheActor.TransferChunk> offer(Source<CacheActor.TransferChunk, NotUsed> chunks,
+                                                     Runnable onFinished) {
+        AtomicInteger entries = new AtomicInteger();
+        return chunks
+                .map(chunk -> {
+                    entries.addAndGet(chunk.entries.size());
+                    return chunk;
+                })
+                .watchTermination((notUsed, done) -> {
+                    outgoing.add(done);
+                    done.whenComplete((d, failure) -> {
+                        onFinished.run();
+                        outgoing.remove(done);
+                        if (failure != null) {
+                            transfersFailed.increment();
+                        } else {
+                            transfersSent.increment();
+                            entriesSent.add(entries.get());
+                        }
+                    });
+                    return notUsed;
+                })
+                .runWith(StreamRefs.sourceRef(), system);
+    }
+
+    void recordReceived(int entries) {
+        entriesReceived.add(entries);
+    }
+
+    void recordTransferReceived(boolean failed) {
+        if (failed) {
+            transfersFailed.increment();
+        } else {
+            transfersReceived.increment();
+        }
+    }
+
+    public int activeOutgoing() {
+        return outgoing.size();
+    }
+
+    public long transfersSent() {
+        return transfersSent.sum();
+    }
+
+    public long entriesSent() {
+        return entriesSent.sum();
+    }
+
+    public long transfersReceived() {
+        return transfersReceived.sum();
+    }
+
+    public long entriesReceived() {
+        return entriesReceived.sum();
+    }
+
+    /**
+     * Transfers that failed or timed out, on either end.
+     */
+    public long transfersFailed() {
+        return transfersFailed.sum();
+    }
+
+    // Regions have stopped by this phase, so every bucket that will offer its entries already has
+    private CompletionStage<Done> awaitOutgoing() {
+        CompletableFuture<?>[] pending = outgoing.stream()
+                .map(done -> done.toCompletableFuture().exceptionally(failure -> Done.getInstance()))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(pending).thenApply(v -> Done.getInstance());
+    }
+}
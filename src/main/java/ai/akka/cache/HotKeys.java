@@ -0,0 +1,182 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the keys this node's clients read most, so that {@link CacheClient} can spread their reads
+ * instead of sending every one of them to the same entity on the same node.
+ *
+ * One in {@code cache.hot-keys.sample-rate} single-key GETs that leave the node increments the
+ * key's counters in a count-min sketch that is cleared every {@code cache.hot-keys.window}; counts
+ * are scaled back up by the rate. A key whose estimate reaches {@code threshold} within a window is
+ * hot from that read on, and stays hot through the following window; it cools down once a whole
+ * window passes below the threshold. At most {@code max-keys} keys are hot at once.
+ *
+ * The sketch is a table of atomic ints shared by all request threads. A sampled read costs a
+ * hash, four reads and up to four compare-and-sets; every other read only looks the key up in the
+ * hot-key maps, which are written once per key and window. Since a hot key always lands on the
+ * same four counters, sampling is what keeps them from becoming the node's most contended memory
+ * exactly for the keys being detected. Windows are rolled over by the first sampled read (or
+ * {@link #hotKeys} call) after one ends, so no timer is needed.
+ *
+ * Detection only runs where a hot key is treated differently: with more than one replica to spread
+ * its reads over, or with a near cache that admits only hot keys. Otherwise it stays off, whatever
+ * {@code enabled} says.
+ */
+public final class HotKeys implements Extension {
+
+    public static final ExtensionId<HotKeys> ID = new ExtensionId<HotKeys>() {
+        @Override
+        public HotKeys createExtension(ActorSystem<?> system) {
+            return new HotKeys(CacheSettings.create(system.settings().config()));
+        }
+    };
+
+    public static HotKeys get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH_BITS = 12;
+    private static final int WIDTH = 1 << WIDTH_BITS;
+    private static final int[] SEEDS = {0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f};
+
+    private final boolean enabled;
+    private final int sampleRate;
+    // Sampled reads that make a key hot
+    private final int sampledThreshold;
+    private final int maxKeys;
+    private final long windowNanos;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(DEPTH * WIDTH);
+    private final AtomicLong windowEnd;
+    // Keys that reached the threshold in the current window
+    private final Map<String, Boolean> rising = new ConcurrentHashMap<>();
+    // Keys hot in the previous window, with their estimated reads in it
+    private volatile Map<String, Integer> cooling = Collections.emptyMap();
+    private final LongAdder hotReads = new LongAdder();
+
+    private HotKeys(CacheSettings settings) {
+        this.enabled = settings.hotKeysEnabled
+                && (settings.replicationFactor > 1 || (settings.nearCacheEnabled && settings.nearCacheHotKeysOnly));
+        this.sampleRate = settings.hotKeysSampleRate;
+        this.sampledThreshold = Math.max(1, (settings.hotKeysThreshold + sampleRate - 1) / sampleRate);
+        this.maxKeys = settings.hotKeysMaxKeys;
+        this.windowNanos = settings.hotKeysWindow.toNanos();
+        this.windowEnd = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts a read of the key, if it is sampled, and tells whether the key is hot.
+     */
+    public boolean recordRead(String key) {
+        if (!enabled) {
+            return false;
+        }
+        boolean hot;
+        if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            hot = count(key);
+        } else {
+            hot = rising.containsKey(key) || cooling.containsKey(key);
+        }
+        if (hot) {
+            hotReads.increment();
+        }
+        return hot;
+    }
+
+    private boolean count(String key) {
+        rollIfDue(System.nanoTime());
+        int hash = Murmur3.hash(key);
+        int estimate = estimate(hash);
+        // Conservative update: only the counters at the minimum grow, so the keys sharing a
+        // counter with a hot key are not all lifted to its count. A lost race loses one count
+        for (int i = 0; i < DEPTH; i++) {
+            counts.compareAndSet(indexOf(hash, i), estimate, estimate + 1);
+        }
+        estimate++;
+        if (estimate < sampledThreshold) {
+            return cooling.containsKey(key);
+        } else if (rising.containsKey(key)) {
+            return true;
+        } else if (cooling.containsKey(key) || rising.size() + cooling.size() < maxKeys) {
+            // Keys still hot from the previous window always stay; new ones only while there is room
+            rising.put(key, Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The hot keys with their estimated reads per window, most read first. Keys that became hot
+     * in the current window are counted so far; the others by the previous window.
+     */
+    public List<Map.Entry<String, Integer>> hotKeys() {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        rollIfDue(System.nanoTime());
+        Map<String, Integer> all = new HashMap<>(cooling);
+        for (String key : rising.keySet()) {
+            all.merge(key, estimate(Murmur3.hash(key)) * sampleRate, Math::max);
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(all.entrySet());
+        sorted.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        return sorted;
+    }
+
+    /**
+     * Reads of keys that were hot when they were made.
+     */
+    public long hotReads() {
+        return hotReads.sum();
+    }
+
+    private void rollIfDue(long now) {
+        long end = windowEnd.get();
+        if (now - end < 0 || !windowEnd.compareAndSet(end, now + windowNanos)) {
+            return;
+        }
+        // Reads racing with the reset land in either window, which only blurs their counts
+        Map<String, Integer> previous = new HashMap<>();
+        for (String key : rising.keySet()) {
+            previous.put(key, estimate(Murmur3.hash(key)) * sampleRate);
+        }
+        rising.clear();
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        cooling = previous;
+    }
+
+    private int estimate(int hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, counts.get(indexOf(hash, i)));
+        }
+        return estimate;
+    }
+
+    // Counter of the key in row i: the top bits of the hash times a per-row odd multiplier, which
+    // depend on all bits of the hash, so keys colliding in one row rarely collide in the others
+    private static int indexOf(int hash, int i) {
+        return i * WIDTH + ((hash * SEEDS[i]) >>> (32 - WIDTH_BITS));
+    }
+}
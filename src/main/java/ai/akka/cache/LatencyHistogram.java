@@ -0,0 +1,64 @@
+package ai.akka.cache;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets, for Prometheus exposition.
+ *
+ * Every bucket is a {@link LongAdder}, so concurrent recorders contend on striped cells rather
+ * than on one counter, and recording allocates nothing. Counts are kept per bucket and only
+ * made cumulative when written out, as Prometheus' {@code le} buckets expect.
+ */
+final class LatencyHistogram {
+
+    // Upper bounds in microseconds, 100µs to 10s
+    private static final long[] BOUNDS_MICROS = {
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000
+    };
+    private static final String[] BOUNDS_SECONDS = new String[BOUNDS_MICROS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            BOUNDS_SECONDS[i] = BigDecimal.valueOf(BOUNDS_MICROS[i], 6).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    // One more than the bounds: the last counts everything above 10s
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+    private final LongAdder sumMicros = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        long micros = nanos / 1000;
+        int i = 0;
+        while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sumMicros.add(micros);
+    }
+
+    /**
+     * Appends the {@code _bucket}, {@code _sum} and {@code _count} samples of this histogram.
+     * {@code labels} is the inside of the label braces, e.g. {@code op="get"}.
+     */
+    void writeTo(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(BOUNDS_SECONDS[i])
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[BOUNDS_MICROS.length].sum();
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(sumMicros.sum() / 1e6).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,97 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The stores of the cache entities running on this node, by entity id.
+ *
+ * With {@code cache.local-reads} on, every sharded entity registers its {@link CacheStore} here
+ * when it starts and removes it when it stops, so {@link CacheClient} can answer a ONE read of a
+ * key whose replica lives on this node with {@link CacheStore#peek}, without an ask, a temporary
+ * actor or a trip through the shard region. Writes still go through the entity: a store is only
+ * ever read here. An entity that sharding is about to stop may still be registered for a moment;
+ * it can only answer with what it held when it stopped, which a ONE read may see anyway.
+ */
+public final class LocalStores implements Extension {
+
+    public static final ExtensionId<LocalStores> ID = new ExtensionId<LocalStores>() {
+        @Override
+        public LocalStores createExtension(ActorSystem<?> system) {
+            return new LocalStores(CacheSettings.create(system.settings().config()));
+        }
+    };
+
+    public static LocalStores get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private final boolean enabled;
+    private final Map<String, CacheStore> stores = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+
+    private LocalStores(CacheSettings settings) {
+        this.enabled = settings.localReads;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void register(String entityId, CacheStore store) {
+        if (enabled) {
+            stores.put(entityId, store);
+        }
+    }
+
+    void unregister(String entityId, CacheStore store) {
+        if (enabled) {
+            // A restarted entity may already have registered its new store
+            stores.remove(entityId, store);
+        }
+    }
+
+    /**
+     * Reads the key from the entity's store if the entity runs on this node, as
+     * {@link CacheStore#peek} does: a {@link CacheActor.Found}, a versioned {@link CacheActor.NotFound}
+     * for a deleted key, or {@link CacheStore#ABSENT}. Null if the entity does not run here or was
+     * writing.
+     */
+    public CacheActor.Response read(String entityId, String key, long nowMillis) {
+        CacheStore store = stores.get(entityId);
+        if (store == null) {
+            return null;
+        }
+        CacheActor.Response res = store.peek(key, nowMillis);
+        if (res != null && res != CacheStore.ABSENT) {
+            hits.increment();
+        }
+        return res;
+    }
+
+    /**
+     * True if the entity runs on this node and its store is readable here.
+     */
+    public boolean hosts(String entityId) {
+        return stores.containsKey(entityId);
+    }
+
+    /**
+     * Entities whose stores are readable here.
+     */
+    public int size() {
+        return stores.size();
+    }
+
+    /**
+     * Reads answered from a local store, with a value or a tombstone, without asking its entity.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+}
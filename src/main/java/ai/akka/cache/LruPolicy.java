@@ -0,0 +1,42 @@
+package ai.akka.cache;
+
+/**
+ * Classic least-recently-used eviction: reads and writes move an entry to the head,
+ * the tail is evicted first.
+ */
+final class LruPolicy implements EvictionPolicy {
+
+    private static final int QUEUE = 0;
+
+    private final SlotQueues queues = new SlotQueues(1);
+
+    @Override
+    public void ensureCapacity(int slots) {
+        queues.ensureCapacity(slots);
+    }
+
+    @Override
+    public void onInsert(int slot, int hash) {
+        queues.pushHead(QUEUE, slot);
+    }
+
+    @Override
+    public void onAccess(int slot, int hash) {
+        queues.moveToHead(QUEUE, slot);
+    }
+
+    @Override
+    public void onUpdate(int slot, int hash, int oldWeight) {
+        queues.moveToHead(QUEUE, slot);
+    }
+
+    @Override
+    public void onRemove(int slot) {
+        queues.unlink(slot);
+    }
+
+    @Override
+    public int victim() {
+        return queues.tail(QUEUE);
+    }
+}
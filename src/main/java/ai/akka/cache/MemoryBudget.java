@@ -0,0 +1,76 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-node memory budget shared by every cache entity hosted on this node.
+ *
+ * Entities charge the estimated weight of their stores here. When a write pushes the node over
+ * {@code cache.eviction.max-memory}, the writing entity evicts from its own store until the excess
+ * is paid back. Keys hash uniformly over buckets, so local eviction approximates a node-wide policy
+ * without any cross-actor coordination.
+ */
+public final class MemoryBudget implements Extension {
+
+    public static final ExtensionId<MemoryBudget> ID = new ExtensionId<MemoryBudget>() {
+        @Override
+        public MemoryBudget createExtension(ActorSystem<?> system) {
+            return new MemoryBudget(CacheSettings.create(system.settings().config()).maxMemoryBytes);
+        }
+    };
+
+    public static MemoryBudget get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+
+    private MemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return true if a byte budget is configured
+     */
+    public boolean isBounded() {
+        return maxBytes > 0;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Adds (or with a negative delta releases) bytes and returns how far the node is over budget,
+     * or 0 if it is within budget.
+     */
+    public long charge(long deltaBytes) {
+        long used = deltaBytes == 0 ? usedBytes.get() : usedBytes.addAndGet(deltaBytes);
+        return isBounded() ? Math.max(0, used - maxBytes) : 0;
+    }
+
+    public void recordEvictions(int entries, long bytes) {
+        evictions.add(entries);
+        evictedBytes.add(bytes);
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long evictedBytes() {
+        return evictedBytes.sum();
+    }
+}
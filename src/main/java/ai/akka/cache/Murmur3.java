@@ -0,0 +1,51 @@
+package ai.akka.cache;
+
+/**
+ * MurmurHash3 (x86, 32-bit) of a string's UTF-16 code units, two per 32-bit block.
+ *
+ * Used to place keys in buckets and shards: unlike {@link String#hashCode()}, every input bit
+ * affects every output bit, so keys that differ only in a trailing counter ("user:1", "user:2",
+ * ...) still spread evenly over any modulus. The seed is fixed so every node, and every version
+ * of the cache, maps a key to the same place. Nothing is allocated.
+ */
+final class Murmur3 {
+
+    private static final int SEED = 0x9747b28c;
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private Murmur3() {
+    }
+
+    static int hash(CharSequence s) {
+        int h = SEED;
+        int length = s.length();
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            int k = s.charAt(i) | (s.charAt(i + 1) << 16);
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        if (i < length) {
+            h ^= mixK(s.charAt(i));
+        }
+        h ^= length * 2;
+        return fmix(h);
+    }
+
+    private static int mixK(int k) {
+        k *= C1;
+        k = Integer.rotateLeft(k, 15);
+        return k * C2;
+    }
+
+    private static int fmix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
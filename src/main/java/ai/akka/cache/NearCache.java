@@ -0,0 +1,257 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.actor.typed.Props;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional node-local copy of recently read values, consulted by {@link CacheClient#get} before
+ * asking the owning entity.
+ *
+ * The cache is split into independently locked LRU stripes bounded by
+ * {@code cache.near-cache.max-memory}. Owning entities publish the keys they write or delete and
+ * every node drops its copies when the batch arrives (see {@link NearCacheInvalidator}). Pub/sub
+ * delivery is at-most-once, so copies are also never served for longer than
+ * {@code cache.near-cache.ttl}, nor past the entry's own expiry.
+ *
+ * An invalidation can overtake the reply of a read that was already in flight. Invalidations
+ * are therefore counted in a table of fences indexed by key hash: readers take a {@link #stamp}
+ * before asking and the reply is only cached if no invalidation hit its fence in between.
+ */
+public final class NearCache implements Extension {
+
+    public static final ExtensionId<NearCache> ID = new ExtensionId<NearCache>() {
+        @Override
+        public NearCache createExtension(ActorSystem<?> system) {
+            return new NearCache(system, CacheSettings.create(system.settings().config()));
+        }
+    };
+
+    public static NearCache get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final int STRIPES = 16;
+    // A multiple of STRIPES, so each fence is guarded by exactly one stripe's lock
+    private static final int FENCES = 4096;
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final Stripe[] stripes;
+    private final AtomicLongArray fences = new AtomicLongArray(FENCES);
+    // Null when the near cache is disabled
+    private final ActorRef<NearCacheInvalidator.Command> invalidator;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private NearCache(ActorSystem<?> system, CacheSettings settings) {
+        this.enabled = settings.nearCacheEnabled;
+        this.ttlMillis = settings.nearCacheTtl.toMillis();
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(settings.nearCacheMaxMemoryBytes / STRIPES);
+        }
+        this.invalidator = enabled
+                ? system.systemActorOf(NearCacheInvalidator.create(this, settings.nearCacheFlushInterval),
+                "nearCacheInvalidator", Props.empty())
+                : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the owner's reply the copy was made from, or null on a miss or when the copy has
+     * expired.
+     */
+    public CacheActor.Found get(String key, long nowMillis) {
+        Stripe stripe = stripeFor(key);
+        Cached cached;
+        synchronized (stripe) {
+            cached = stripe.entries.get(key);
+            if (cached != null && cached.expiresAtMillis <= nowMillis) {
+                stripe.remove(key);
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached.found;
+    }
+
+    /**
+     * Invalidation count of the key's fence; pass it back to {@link #put} with the reply.
+     */
+    public long stamp(String key) {
+        return fences.get(spread(key) & (FENCES - 1));
+    }
+
+    /**
+     * Caches a value read from its owner, unless an invalidation for its fence arrived since
+     * {@code stamp} was taken or the value is too big for a stripe.
+     */
+    public void put(String key, CacheActor.Found found, long stamp, long nowMillis) {
+        long expiresAt = nowMillis + ttlMillis;
+        if (found.expiresAtMillis != 0) {
+            expiresAt = Math.min(expiresAt, found.expiresAtMillis);
+        }
+        if (expiresAt <= nowMillis) {
+            return;
+        }
+        int h = spread(key);
+        Stripe stripe = stripes[h & (STRIPES - 1)];
+        int weight = CacheStore.weigh(key, found.value);
+        synchronized (stripe) {
+            if (fences.get(h & (FENCES - 1)) != stamp || weight > stripe.maxBytes) {
+                return;
+            }
+            stripe.remove(key);
+            stripe.entries.put(key, new Cached(found, expiresAt, weight));
+            stripe.bytes += weight;
+            Iterator<Cached> lru = stripe.entries.values().iterator();
+            while (stripe.bytes > stripe.maxBytes) {
+                stripe.bytes -= lru.next().weight;
+                lru.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the local copy of the key, if any, and fences off replies already in flight for it.
+     */
+    public void invalidate(String key) {
+        int h = spread(key);
+        Stripe stripe = stripes[h & (STRIPES - 1)];
+        synchronized (stripe) {
+            fences.incrementAndGet(h & (FENCES - 1));
+            if (stripe.remove(key)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the local copies of every key that starts with {@code prefix}. Replies in flight for
+     * keys not cached here are not fenced off; the owners' invalidations of those keys follow.
+     */
+    public void invalidatePrefix(String prefix) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Map.Entry<String, Cached>> entries = stripe.entries.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<String, Cached> entry = entries.next();
+                    if (entry.getKey().startsWith(prefix)) {
+                        fences.incrementAndGet(spread(entry.getKey()) & (FENCES - 1));
+                        stripe.bytes -= entry.getValue().weight;
+                        entries.remove();
+                        invalidations.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Announces that the owning entity changed the key, so that every node drops its copy.
+     * Called by entities; a no-op when the near cache is disabled.
+     */
+    public void publishInvalidation(String key) {
+        if (invalidator != null) {
+            invalidator.tell(new NearCacheInvalidator.Written(key));
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public long usedBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private Stripe stripeFor(String key) {
+        return stripes[spread(key) & (STRIPES - 1)];
+    }
+
+    private static int spread(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Stripe {
+        final long maxBytes;
+        // Access order, so iteration starts at the least recently used entry
+        final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(64, 0.75f, true);
+        long bytes;
+
+        Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        boolean remove(String key) {
+            Cached removed = entries.remove(key);
+            if (removed == null) {
+                return false;
+            }
+            bytes -= removed.weight;
+            return true;
+        }
+    }
+
+    private static final class Cached {
+        // Kept whole, so that hits answer with the owner's version and expiry
+        final CacheActor.Found found;
+        final long expiresAtMillis; // of the copy
+        final int weight;
+
+        Cached(CacheActor.Found found, long expiresAtMillis, int weight) {
+            this.found = found;
+            this.expiresAtMillis = expiresAtMillis;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ai.akka.cache;
+
+import akka.actor.NoSerializationVerificationNeeded;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.pubsub.Topic;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One per node when the near cache is enabled. It collects the keys written by the entities on
+ * this node and publishes them to every node's {@link NearCache} on the {@code near-cache} topic.
+ *
+ * Keys are buffered for {@code cache.near-cache.flush-interval} and published as one message, so
+ * a burst of writes costs one pub/sub message per node rather than one per key (up to
+ * 1000 keys per message).
+ */
+final class NearCacheInvalidator extends AbstractBehavior<NearCacheInvalidator.Command> {
+
+    interface Command {
+    }
+
+    // Published to all nodes: drop these keys from the near cache
+    public static final class Invalidate implements Command {
+        public final List<String> keys;
+
+        public Invalidate(List<String> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public String toString() {
+            return "Invalidate{" + "keys=" + keys.size() + '}';
+        }
+    }
+
+    // Local: an entity on this node changed the key
+    static final class Written implements Command, NoSerializationVerificationNeeded {
+        final String key;
+
+        Written(String key) {
+            this.key = key;
+        }
+    }
+
+    private enum Flush implements Command {
+        INSTANCE
+    }
+
+    private static final String TOPIC = "near-cache";
+    // Keeps a write storm from building one huge message
+    private static final int MAX_BATCH_KEYS = 1000;
+
+    static Behavior<Command> create(NearCache nearCache, Duration flushInterval) {
+        return Behaviors.setup(ctx -> Behaviors.withTimers(timers ->
+                new NearCacheInvalidator(ctx, timers, nearCache, flushInterval)));
+    }
+
+    private final TimerScheduler<Command> timers;
+    private final NearCache nearCache;
+    private final Duration flushInterval;
+    private final ActorRef<Topic.Command<Invalidate>> topic;
+    private Set<String> pending = new LinkedHashSet<>();
+
+    private NearCacheInvalidator(ActorContext<Command> ctx, TimerScheduler<Command> timers,
+                                 NearCache nearCache, Duration flushInterval) {
+        super(ctx);
+        this.timers = timers;
+        this.nearCache = nearCache;
+        this.flushInterval = flushInterval;
+        this.topic = ctx.spawn(Topic.create(Invalidate.class, TOPIC), "topic");
+        topic.tell(Topic.subscribe(ctx.getSelf().narrow()));
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Written.class, this::onWritten)
+                .onMessage(Flush.class, flush -> onFlush())
+                .onMessage(Invalidate.class, this::onInvalidate)
+                .build();
+    }
+
+    private Behavior<Command> onWritten(Written msg) {
+        // Drop the local copy right away; other nodes hear about it on the next flush
+        nearCache.invalidate(msg.key);
+        if (pending.add(msg.key)) {
+            if (pending.size() >= MAX_BATCH_KEYS) {
+                timers.cancel(Flush.INSTANCE);
+                return onFlush();
+            }
+            if (pending.size() == 1) {
+                timers.startSingleTimer(Flush.INSTANCE, flushInterval);
+            }
+        }
+        return this;
+    }
+
+    private Behavior<Command> onFlush() {
+        if (pending.isEmpty()) {
+            return this;
+        }
+        // Our own subscription gets the batch too; invalidating twice is harmless
+        topic.tell(Topic.publish(new Invalidate(new ArrayList<>(pending))));
+        pending = new LinkedHashSet<>();
+        return this;
+    }
+
+    private Behavior<Command> onInvalidate(Invalidate msg) {
+        for (String key : msg.keys) {
+            nearCache.invalidate(key);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,277 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.util.ByteString;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Node-wide slab allocator for cache values outside the Java heap.
+ *
+ * With {@code cache.off-heap.enabled}, a {@link CacheStore} keeps each value of at least
+ * {@code min-value-size} bytes here and only an 8-byte handle in its own columns, so the values
+ * of a large cache neither fill the old generation nor get copied or scanned by the collector.
+ * Memory comes in slabs of {@code slab-size} direct bytes, allocated on demand up to
+ * {@code max-memory} and never given back to the OS. A slab is carved into equal chunks of one
+ * size class; classes grow by a quarter from 64 bytes, so a value wastes at most about 20% of its
+ * chunk. Each chunk starts with the value's length.
+ *
+ * Instead of moving live values, which would mean rewriting handles held by many entities, memory
+ * is kept compact by placement: each class fills its lowest-numbered slab with a free chunk first,
+ * so frees drain the higher slabs, and a slab whose last chunk is freed goes back to a shared pool
+ * from which any class can take it; a class keeps its only slab. A workload whose value sizes
+ * shift therefore reuses the memory of the classes it stopped using. When the arena is full,
+ * values stay on the heap.
+ *
+ * Allocation and freeing lock the value's size class; reads take no lock. A chunk is only freed by
+ * the store that holds its handle, which keeps its own readers from seeing the chunk reused.
+ */
+public final class OffHeapArena implements Extension {
+
+    public static final ExtensionId<OffHeapArena> ID = new ExtensionId<OffHeapArena>() {
+        @Override
+        public OffHeapArena createExtension(ActorSystem<?> system) {
+            CacheSettings settings = CacheSettings.create(system.settings().config());
+            return new OffHeapArena(settings.offHeapEnabled, settings.offHeapMaxMemoryBytes,
+                    settings.offHeapSlabBytes, settings.offHeapMinValueBytes);
+        }
+    };
+
+    public static OffHeapArena get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final int HEADER = Integer.BYTES;
+    private static final int MIN_CHUNK = 64;
+
+    private final boolean enabled;
+    private final int slabBytes;
+    private final int maxSlabs;
+    private final int minValueBytes;
+    private final int[] chunkSizes;
+    private final SizeClass[] classes;
+    private final AtomicReferenceArray<Slab> slabs;
+
+    // Slabs allocated and currently unassigned, and the number allocated so far; guarded by itself
+    private final ArrayDeque<Slab> pool = new ArrayDeque<>();
+    private int allocatedSlabs;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong values = new AtomicLong();
+
+    public OffHeapArena(boolean enabled, long maxBytes, int slabBytes, int minValueBytes) {
+        this.enabled = enabled;
+        this.slabBytes = slabBytes;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, maxBytes / slabBytes);
+        this.minValueBytes = minValueBytes;
+        int classCount = 0;
+        int[] sizes = new int[64];
+        for (int size = MIN_CHUNK; size <= slabBytes && classCount < sizes.length; size += Math.max(8, size >> 2)) {
+            // 8-byte aligned, so that chunks never straddle a cache line needlessly
+            sizes[classCount++] = (size + 7) & ~7;
+        }
+        this.chunkSizes = Arrays.copyOf(sizes, classCount);
+        this.classes = new SizeClass[classCount];
+        for (int c = 0; c < classCount; c++) {
+            classes[c] = new SizeClass(chunkSizes[c]);
+        }
+        this.slabs = new AtomicReferenceArray<>(Math.max(1, maxSlabs));
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxSlabs > 0;
+    }
+
+    /**
+     * True if a value of this many bytes should be kept here rather than on the heap.
+     */
+    public boolean accepts(int valueBytes) {
+        return isEnabled() && valueBytes >= minValueBytes && valueBytes + HEADER <= chunkSizes[chunkSizes.length - 1];
+    }
+
+    /**
+     * Copies the value into a chunk and returns the chunk's handle, or -1 if the arena is full.
+     */
+    public long allocate(ByteString value) {
+        int needed = value.size() + HEADER;
+        int c = classFor(needed);
+        SizeClass sizeClass = classes[c];
+        Slab slab;
+        int offset;
+        synchronized (sizeClass) {
+            int slabId = sizeClass.withFree.nextSetBit(0);
+            if (slabId < 0) {
+                Slab fresh = takeSlab(c);
+                if (fresh == null) {
+                    return -1L;
+                }
+                slabId = fresh.id;
+                sizeClass.withFree.set(slabId);
+                sizeClass.slabs++;
+            }
+            slab = slabs.get(slabId);
+            offset = slab.freeChunks[--slab.freeCount] * slab.chunkSize;
+            if (slab.freeCount == 0) {
+                sizeClass.withFree.clear(slabId);
+            }
+        }
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(offset);
+        buffer.putInt(value.size());
+        value.copyToBuffer(buffer);
+        usedBytes.addAndGet(slab.chunkSize);
+        values.incrementAndGet();
+        return ((long) slab.id << 32) | offset;
+    }
+
+    /**
+     * Copies the value out of the chunk; the chunk stays allocated.
+     */
+    public ByteString read(long handle) {
+        Slab slab = slabs.get((int) (handle >>> 32));
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position((int) handle);
+        int length = buffer.getInt();
+        if (length < 0 || length > slab.chunkSize - HEADER) {
+            // Only a CacheStore.peek racing the owning store's writes can see this, and gives up
+            throw new IllegalStateException("Corrupt off-heap chunk header at " + Long.toHexString(handle));
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return ByteString.fromArrayUnsafe(bytes);
+    }
+
+    /**
+     * Releases the chunk; its handle must not be used again.
+     */
+    public void free(long handle) {
+        Slab slab = slabs.get((int) (handle >>> 32));
+        // Read before the slab may be pooled and carved for another class
+        int chunkSize = slab.chunkSize;
+        int chunk = (int) handle / chunkSize;
+        SizeClass sizeClass = classes[slab.sizeClass];
+        boolean empty;
+        synchronized (sizeClass) {
+            slab.freeChunks[slab.freeCount++] = chunk;
+            empty = slab.freeCount == slab.chunks && sizeClass.slabs > 1;
+            if (empty) {
+                sizeClass.withFree.clear(slab.id);
+                sizeClass.slabs--;
+            } else {
+                sizeClass.withFree.set(slab.id);
+            }
+        }
+        usedBytes.addAndGet(-chunkSize);
+        values.decrementAndGet();
+        if (empty) {
+            synchronized (pool) {
+                pool.push(slab);
+            }
+        }
+    }
+
+    // An unassigned slab carved for the class, or null if max-memory is reached; class lock held
+    private Slab takeSlab(int sizeClass) {
+        Slab slab;
+        synchronized (pool) {
+            slab = pool.poll();
+            if (slab == null) {
+                if (allocatedSlabs == maxSlabs) {
+                    return null;
+                }
+                slab = new Slab(allocatedSlabs, ByteBuffer.allocateDirect(slabBytes));
+                slabs.set(slab.id, slab);
+                allocatedSlabs++;
+            }
+        }
+        slab.carve(sizeClass, chunkSizes[sizeClass], slabBytes);
+        return slab;
+    }
+
+    private int classFor(int bytes) {
+        int low = 0;
+        int high = chunkSizes.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunkSizes[mid] < bytes) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Direct bytes taken by the slabs allocated so far, in use or not.
+     */
+    public long reservedBytes() {
+        synchronized (pool) {
+            return (long) allocatedSlabs * slabBytes;
+        }
+    }
+
+    /**
+     * Bytes of the chunks holding values, headers and rounding included.
+     */
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    public long maxBytes() {
+        return (long) maxSlabs * slabBytes;
+    }
+
+    /**
+     * Values currently held.
+     */
+    public long values() {
+        return values.get();
+    }
+
+    private static final class SizeClass {
+        final int chunkSize;
+        // Ids of this class's slabs with a free chunk
+        final BitSet withFree = new BitSet();
+        int slabs;
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    private static final class Slab {
+        final int id;
+        final ByteBuffer buffer;
+        // Assigned by carve() under the class lock; read without it only for chunks a reader holds
+        volatile int sizeClass;
+        volatile int chunkSize;
+        int chunks;
+        int[] freeChunks;
+        int freeCount;
+
+        Slab(int id, ByteBuffer buffer) {
+            this.id = id;
+            this.buffer = buffer;
+        }
+
+        void carve(int sizeClass, int chunkSize, int slabBytes) {
+            this.sizeClass = sizeClass;
+            this.chunkSize = chunkSize;
+            this.chunks = slabBytes / chunkSize;
+            this.freeChunks = new int[chunks];
+            // Handed out from the end of the stack, so from the start of the slab
+            for (int i = 0; i < chunks; i++) {
+                freeChunks[i] = chunks - 1 - i;
+            }
+            this.freeCount = chunks;
+        }
+    }
+}
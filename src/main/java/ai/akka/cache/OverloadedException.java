@@ -0,0 +1,13 @@
+package ai.akka.cache;
+
+/**
+ * The node or a shard already had as many asks in flight as its adaptive limit allows, so an ask
+ * was turned away without being sent. A request that fails with it read or wrote nothing.
+ */
+public class OverloadedException extends RuntimeException {
+
+    public OverloadedException(String message) {
+        // No stack trace: shedding must stay cheap when it happens most
+        super(message, null, false, false);
+    }
+}
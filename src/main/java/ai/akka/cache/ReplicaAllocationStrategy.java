@@ -0,0 +1,205 @@
+package ai.akka.cache;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Address;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.ShardCoordinator;
+import akka.dispatch.Futures;
+import scala.collection.immutable.IndexedSeq;
+import scala.concurrent.Future;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shard allocation for the cache entities: new shards go to the least loaded node, and each
+ * rebalance round moves shards from the most to the least loaded nodes until they are within one
+ * shard of each other, at most {@code min(absoluteLimit, relativeLimit * shards)} per round.
+ * Every shard holds the same number of buckets, and Murmur3 spreads keys evenly over buckets, so
+ * the shard count of a node is its share of the keys and requests.
+ *
+ * With replication the replicas of shard {@code s} are the shards {@code s}, {@code s-1}, ...
+ * {@code s-(n-1)}, and each of them goes to a node that does not host another replica of
+ * {@code s} yet. With fewer nodes than replicas the extra replicas share nodes, and rebalancing
+ * spreads them out again as nodes join. Without replication every shard is its own group.
+ *
+ * Regions on nodes that are leaving the cluster are not given new shards. Neither are regions that
+ * held shards and now hold none: the coordinator only tells allocateShard, not rebalance, which
+ * regions are shutting down, and a node's region hands all its shards off, then lingers empty,
+ * before the node leaves.
+ */
+public final class ReplicaAllocationStrategy extends ShardCoordinator.AbstractShardAllocationStrategy
+        implements ShardCoordinator.ActorSystemDependentAllocationStrategy {
+
+    // Shards handed off per rebalance round; each move briefly buffers the shard's messages
+    private final int absoluteLimit;
+    private final double relativeLimit;
+
+    private volatile Cluster cluster;
+    // Regions seen holding shards; one of them without shards is draining for shutdown
+    private final Set<ActorRef> hadShards = ConcurrentHashMap.newKeySet();
+
+    public ReplicaAllocationStrategy(int absoluteLimit, double relativeLimit) {
+        this.absoluteLimit = absoluteLimit;
+        this.relativeLimit = relativeLimit;
+    }
+
+    @Override
+    public void start(ActorSystem system) {
+        this.cluster = Cluster.get(system);
+    }
+
+    @Override
+    public Future<ActorRef> allocateShard(ActorRef requester, String shardId,
+                                          Map<ActorRef, IndexedSeq<String>> currentShardAllocations) {
+        String group = groupOf(shardId);
+        ActorRef best = null;
+        boolean bestFree = false;
+        int bestLoad = Integer.MAX_VALUE;
+        for (Map.Entry<ActorRef, List<String>> region : regions(currentShardAllocations).entrySet()) {
+            boolean free = !hostsGroup(region.getValue(), group);
+            int load = region.getValue().size();
+            if (best == null || (free && !bestFree) || (free == bestFree && load < bestLoad)) {
+                best = region.getKey();
+                bestFree = free;
+                bestLoad = load;
+            }
+        }
+        return Futures.successful(best != null ? best : requester);
+    }
+
+    @Override
+    public Future<Set<String>> rebalance(Map<ActorRef, IndexedSeq<String>> currentShardAllocations,
+                                         Set<String> rebalanceInProgress) {
+        Map<ActorRef, List<String>> regions = regions(currentShardAllocations);
+        if (!rebalanceInProgress.isEmpty() || regions.size() < 2) {
+            return Futures.successful(Collections.emptySet());
+        }
+
+        int total = 0;
+        for (List<String> shards : regions.values()) {
+            total += shards.size();
+        }
+        int maxMoves = Math.max(1, Math.min(absoluteLimit, (int) (relativeLimit * total)));
+
+        // First separate replicas that share a node, if some other node has room for them
+        Set<String> moves = new LinkedHashSet<>();
+        for (List<String> shards : regions.values()) {
+            Set<String> groups = new HashSet<>();
+            for (String shard : shards) {
+                String group = groupOf(shard);
+                if (!groups.add(group) && someRegionLacks(regions, group)) {
+                    moves.add(shard);
+                    if (moves.size() == maxMoves) {
+                        return Futures.successful(moves);
+                    }
+                }
+            }
+        }
+        if (!moves.isEmpty()) {
+            return Futures.successful(moves);
+        }
+
+        // Then even out the load: plan moves from the most to the least loaded node on the lists
+        // (which are copies) until they are within one shard, or the round's limit is reached.
+        // The coordinator then allocates each moved shard through allocateShard, which picks the
+        // least loaded node again
+        while (moves.size() < maxMoves) {
+            List<String> most = null;
+            List<String> least = null;
+            for (List<String> shards : regions.values()) {
+                if (most == null || shards.size() > most.size()) {
+                    most = shards;
+                }
+                if (least == null || shards.size() < least.size()) {
+                    least = shards;
+                }
+            }
+            if (most.size() - least.size() <= 1) {
+                break;
+            }
+            String move = null;
+            for (String shard : most) {
+                if (!hostsGroup(least, groupOf(shard))) {
+                    move = shard;
+                    break;
+                }
+            }
+            if (move == null) {
+                break;
+            }
+            most.remove(move);
+            least.add(move);
+            moves.add(move);
+        }
+        return Futures.successful(moves);
+    }
+
+    // Regions that may take shards, with their shards as Java lists
+    private Map<ActorRef, List<String>> regions(Map<ActorRef, IndexedSeq<String>> allocations) {
+        hadShards.retainAll(allocations.keySet());
+        Map<ActorRef, List<String>> all = new LinkedHashMap<>();
+        Map<ActorRef, List<String>> up = new LinkedHashMap<>();
+        for (Map.Entry<ActorRef, IndexedSeq<String>> entry : allocations.entrySet()) {
+            List<String> shards = new ArrayList<>(CollectionConverters.asJava(entry.getValue()));
+            all.put(entry.getKey(), shards);
+            boolean draining = shards.isEmpty() && hadShards.contains(entry.getKey());
+            if (!shards.isEmpty()) {
+                hadShards.add(entry.getKey());
+            }
+            if (isUp(entry.getKey()) && !draining) {
+                up.put(entry.getKey(), shards);
+            }
+        }
+        return up.isEmpty() ? all : up;
+    }
+
+    private boolean isUp(ActorRef region) {
+        Cluster c = cluster;
+        if (c == null) {
+            return true;
+        }
+        Address address = region.path().address().hasGlobalScope() ? region.path().address() : c.selfAddress();
+        for (Member member : c.state().getMembers()) {
+            if (member.address().equals(address)) {
+                return member.status() == MemberStatus.up() || member.status() == MemberStatus.weaklyUp();
+            }
+        }
+        return false;
+    }
+
+    private static boolean someRegionLacks(Map<ActorRef, List<String>> regions, String group) {
+        for (List<String> shards : regions.values()) {
+            if (!hostsGroup(shards, group)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hostsGroup(List<String> shards, String group) {
+        for (String shard : shards) {
+            if (groupOf(shard).equals(group)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "7-2" -> "7"
+    private static String groupOf(String shardId) {
+        int dash = shardId.indexOf('-');
+        return dash < 0 ? shardId : shardId.substring(0, dash);
+    }
+}
@@ -0,0 +1,102 @@
+package ai.akka.cache;
+
+import java.util.Arrays;
+
+/**
+ * A fixed number of intrusive doubly-linked queues over store slot numbers.
+ *
+ * Every slot belongs to at most one queue. Links are kept in shared int arrays, so moving
+ * an entry between queues or to the head of its queue never allocates.
+ */
+final class SlotQueues {
+
+    static final short NONE = -1;
+
+    private int[] prev = new int[0];
+    private int[] next = new int[0];
+    private short[] queueOf = new short[0];
+
+    private final int[] head;
+    private final int[] tail;
+    private final int[] count;
+
+    SlotQueues(int queues) {
+        this.head = new int[queues];
+        this.tail = new int[queues];
+        this.count = new int[queues];
+        Arrays.fill(head, -1);
+        Arrays.fill(tail, -1);
+    }
+
+    void ensureCapacity(int slots) {
+        if (slots <= prev.length) {
+            return;
+        }
+        int oldLength = prev.length;
+        prev = Arrays.copyOf(prev, slots);
+        next = Arrays.copyOf(next, slots);
+        queueOf = Arrays.copyOf(queueOf, slots);
+        Arrays.fill(queueOf, oldLength, slots, NONE);
+    }
+
+    short queueOf(int slot) {
+        return queueOf[slot];
+    }
+
+    int head(int queue) {
+        return head[queue];
+    }
+
+    int tail(int queue) {
+        return tail[queue];
+    }
+
+    int count(int queue) {
+        return count[queue];
+    }
+
+    /** Links the slot at the head (most recent end) of the queue. */
+    void pushHead(int queue, int slot) {
+        int oldHead = head[queue];
+        prev[slot] = -1;
+        next[slot] = oldHead;
+        if (oldHead >= 0) {
+            prev[oldHead] = slot;
+        } else {
+            tail[queue] = slot;
+        }
+        head[queue] = slot;
+        queueOf[slot] = (short) queue;
+        count[queue]++;
+    }
+
+    /** Unlinks the slot from whatever queue it is in; returns that queue or {@link #NONE}. */
+    short unlink(int slot) {
+        short queue = queueOf[slot];
+        if (queue == NONE) {
+            return NONE;
+        }
+        int p = prev[slot];
+        int n = next[slot];
+        if (p >= 0) {
+            next[p] = n;
+        } else {
+            head[queue] = n;
+        }
+        if (n >= 0) {
+            prev[n] = p;
+        } else {
+            tail[queue] = p;
+        }
+        queueOf[slot] = NONE;
+        count[queue]--;
+        return queue;
+    }
+
+    void moveToHead(int queue, int slot) {
+        if (head[queue] != slot) {
+            unlink(slot);
+            pushHead(queue, slot);
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package ai.akka.cache;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.io.Inet;
+import akka.io.TcpSO;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.Tcp;
+import akka.util.ByteString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Memcached text protocol over plain TCP, served next to the HTTP routes.
+ *
+ * With {@code cache.text-protocol.enabled}, {@link DistributedCacheApplication} binds a second
+ * listener that speaks the subset of the memcached text protocol the cache can answer through
+ * {@link CacheClient}: {@code get}/{@code gets} of one or many keys, {@code set}, {@code add},
+ * {@code cas}, {@code delete}, {@code incr}/{@code decr}, {@code version} and {@code quit}. A
+ * command costs a line of ASCII and its value's bytes, with no headers, JSON or base64, and
+ * clients may pipeline: up to {@code pipelining} commands of a connection are in flight at once,
+ * and the answers go back in command order. Values go out as written, decompressed if need be.
+ *
+ * Differences from memcached: flags are not stored (values come back with flags 0), the CAS
+ * unique of {@code gets} is the value's version, {@code incr}/{@code decr} on a missing key create
+ * it at the delta rather than answer NOT_FOUND, {@code decr} can go below zero, and
+ * {@code replace}, {@code append} and {@code prepend} answer SERVER_ERROR. Every command runs at
+ * {@code cache.default-consistency}.
+ */
+public final class TextProtocolServer {
+
+    private static final int BACKLOG = 100;
+    // memcached's limits: keys of up to 250 bytes, and exptime up to 30 days is relative
+    private static final int MAX_KEY_LENGTH = 250;
+    private static final long MAX_RELATIVE_EXPTIME = 60L * 60 * 24 * 30;
+
+    private static final ByteString CRLF = ByteString.fromString("\r\n");
+    private static final ByteString END = ByteString.fromString("END\r\n");
+    private static final ByteString STORED = ByteString.fromString("STORED\r\n");
+    private static final ByteString NOT_STORED = ByteString.fromString("NOT_STORED\r\n");
+    private static final ByteString EXISTS = ByteString.fromString("EXISTS\r\n");
+    private static final ByteString NOT_FOUND = ByteString.fromString("NOT_FOUND\r\n");
+    private static final ByteString DELETED = ByteString.fromString("DELETED\r\n");
+    private static final ByteString VERSION = ByteString.fromString("VERSION akka-distributed-cache\r\n");
+
+    private final CacheClient client;
+    private final ActorSystem<?> system;
+    private final CacheSettings settings;
+    private final CacheMetrics metrics;
+    private final ValueCompression compression;
+    private final Materializer materializer;
+
+    public TextProtocolServer(CacheClient client, ActorSystem<?> system) {
+        this.client = client;
+        this.system = system;
+        this.settings = client.settings();
+        this.metrics = CacheMetrics.get(system);
+        this.compression = ValueCompression.get(system);
+        this.materializer = Materializer.matFromSystem(system);
+    }
+
+    /**
+     * Accepts connections on the interface and port until the system terminates.
+     */
+    public CompletionStage<Tcp.ServerBinding> bind(String host, int port) {
+        List<Inet.SocketOption> options = Collections.singletonList(TcpSO.tcpNoDelay(true));
+        // Half-close: a client that shuts down its side after its last command still gets the answers
+        return Tcp.get(system)
+                .bind(host, port, BACKLOG, options, true, Optional.of(settings.textProtocolIdleTimeout))
+                .to(Sink.foreach(connection -> {
+                    metrics.recordTextConnection(1);
+                    connection.handleWith(protocol().watchTermination((notUsed, done) -> {
+                        done.whenComplete((d, failure) -> metrics.recordTextConnection(-1));
+                        return notUsed;
+                    }), materializer);
+                }))
+                .run(materializer);
+    }
+
+    // Bytes in, answers out: commands are cut from the byte stream, run `pipelining` at a time and
+    // answered in order. A quit or a command the stream cannot continue after ends the connection
+    Flow<ByteString, ByteString, NotUsed> protocol() {
+        int maxLine = settings.textProtocolMaxLineBytes;
+        long maxValue = settings.maxMessageBytes;
+        return Flow.of(ByteString.class)
+                .statefulMapConcat(() -> new Parser(maxLine, maxValue)::feed)
+                .takeWhile(request -> !request.closes(), true)
+                .mapAsync(settings.textProtocolPipelining, this::answer)
+                .filter(answer -> !answer.isEmpty());
+    }
+
+    private CompletionStage<ByteString> answer(Request request) {
+        CompletionStage<ByteString> answer;
+        if (request instanceof Retrieve) {
+            answer = retrieve((Retrieve) request);
+        } else if (request instanceof Store) {
+            answer = store((Store) request);
+        } else if (request instanceof Remove) {
+            answer = remove((Remove) request);
+        } else if (request instanceof Increment) {
+            answer = increment((Increment) request);
+        } else if (request instanceof Invalid) {
+            answer = CompletableFuture.completedFuture(ByteString.fromString(((Invalid) request).line + "\r\n"));
+        } else if (request == Version.INSTANCE) {
+            answer = CompletableFuture.completedFuture(VERSION);
+        } else {
+            answer = CompletableFuture.completedFuture(ByteString.emptyByteString());
+        }
+        // Errors of the cluster are answered like memcached's own, and the connection stays usable
+        return answer.exceptionally(failure -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            return ByteString.fromString("SERVER_ERROR " + singleLine(cause.getMessage()) + "\r\n");
+        });
+    }
+
+    private CompletionStage<ByteString> retrieve(Retrieve request) {
+        long start = metrics.startTimer();
+        CompletionStage<ByteString> answer;
+        if (request.keys.size() == 1) {
+            String key = request.keys.get(0);
+            answer = client.get(key).thenApply(res -> res instanceof CacheActor.Found
+                    ? value(key, (CacheActor.Found) res, request.withCas).concat(END) : END);
+        } else if (request.withCas) {
+            // Batches carry no versions, so gets asks for each key; the answers keep the key order
+            answer = Source.from(request.keys)
+                    .mapAsync(settings.bulkMaxParallelism, key -> client.get(key).thenApply(res ->
+                            res instanceof CacheActor.Found ? value(key, (CacheActor.Found) res, true)
+                                    : ByteString.emptyByteString()))
+                    .runFold(ByteString.emptyByteString(), ByteString::concat, materializer)
+                    .thenApply(values -> values.concat(END));
+        } else {
+            answer = client.multiGet(request.keys)
+                    .runFold(ByteString.emptyByteString(), (values, found) -> {
+                        for (int i = 0; i < found.keys.size(); i++) {
+                            values = values.concat(value(found.keys.get(i), found.values.get(i), 0L, false));
+                        }
+                        return values;
+                    }, materializer)
+                    .thenApply(values -> values.concat(END));
+        }
+        CacheMetrics.Op op = request.keys.size() == 1 ? CacheMetrics.Op.GET : CacheMetrics.Op.MGET;
+        return answer.whenComplete((values, failure) -> metrics.recordRequest(op, failure, start));
+    }
+
+    private ByteString value(String key, CacheActor.Found found, boolean withCas) {
+        return value(key, found.value, found.version, withCas);
+    }
+
+    // VALUE <key> 0 <bytes> [<cas unique>]\r\n<data>\r\n
+    private ByteString value(String key, ByteString stored, long version, boolean withCas) {
+        ByteString data = compression.decode(stored);
+        String header = "VALUE " + key + " 0 " + data.size() + (withCas ? " " + version : "") + "\r\n";
+        return ByteString.fromString(header).concat(data).concat(CRLF);
+    }
+
+    private CompletionStage<ByteString> store(Store request) {
+        long ttlMillis = ttlMillis(request.exptime);
+        if (ttlMillis < 0) {
+            // An exptime in the past stores a value that is gone at once
+            long start = metrics.startTimer();
+            return client.delete(request.key, settings.defaultConsistency)
+                    .whenComplete((res, failure) -> metrics.recordRequest(CacheMetrics.Op.DELETE, failure, start))
+                    .thenApply(res -> reply(request.noreply, STORED));
+        }
+        long start = metrics.startTimer();
+        CompletionStage<ByteString> answer;
+        switch (request.command) {
+            case "set":
+                answer = client.put(request.key, request.data, ttlMillis, settings.defaultConsistency)
+                        .thenApply(res -> STORED);
+                break;
+            case "add":
+                answer = client.putIfAbsent(request.key, request.data, ttlMillis, settings.defaultConsistency)
+                        .thenApply(res -> res instanceof CacheActor.Written ? STORED : NOT_STORED);
+                break;
+            case "cas":
+                answer = client.compareAndSet(request.key, request.data, ttlMillis, request.cas,
+                                settings.defaultConsistency)
+                        .thenApply(res -> {
+                            if (res instanceof CacheActor.Written) {
+                                return STORED;
+                            }
+                            return ((CacheActor.Conflict) res).version == 0 ? NOT_FOUND : EXISTS;
+                        });
+                break;
+            default:
+                return CompletableFuture.completedFuture(
+                        ByteString.fromString("SERVER_ERROR " + request.command + " is not supported\r\n"));
+        }
+        return answer.whenComplete((res, failure) -> metrics.recordRequest(CacheMetrics.Op.PUT, failure, start))
+                .thenApply(res -> reply(request.noreply, res));
+    }
+
+    private static long ttlMillis(long exptime) {
+        return ttlMillis(exptime, System.currentTimeMillis());
+    }
+
+    // memcached's exptime: 0 never expires, up to 30 days is relative, beyond that a Unix time;
+    // negative if the value would already have expired
+    static long ttlMillis(long exptime, long nowMillis) {
+        if (exptime == 0) {
+            return 0L;
+        }
+        if (exptime <= MAX_RELATIVE_EXPTIME) {
+            return exptime > 0 ? exptime * 1000 : -1L;
+        }
+        long ttlMillis = Math.min(exptime, Long.MAX_VALUE / 1000) * 1000 - nowMillis;
+        return ttlMillis > 0 ? ttlMillis : -1L;
+    }
+
+    private CompletionStage<ByteString> remove(Remove request) {
+        long start = metrics.startTimer();
+        return client.delete(request.key, settings.defaultConsistency)
+                .whenComplete((res, failure) -> metrics.recordRequest(CacheMetrics.Op.DELETE, failure, start))
+                .thenApply(res -> reply(request.noreply, ((CacheActor.Removed) res).removed ? DELETED : NOT_FOUND));
+    }
+
+    private CompletionStage<ByteString> increment(Increment request) {
+        long start = metrics.startTimer();
+        return client.incrementBy(request.key, request.delta, 0L, settings.defaultConsistency)
+                .whenComplete((res, failure) -> metrics.recordRequest(CacheMetrics.Op.INCR, failure, start))
+                .thenApply(res -> reply(request.noreply, res instanceof CacheActor.Written
+                        ? compression.decode(((CacheActor.Written) res).value).concat(CRLF)
+                        : ByteString.fromString("CLIENT_ERROR cannot increment or decrement non-numeric value\r\n")));
+    }
+
+    private static ByteString reply(boolean noreply, ByteString answer) {
+        return noreply ? ByteString.emptyByteString() : answer;
+    }
+
+    private static String singleLine(String message) {
+        return message == null ? "internal error" : message.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    // Cuts commands out of a connection's bytes: a line, and for storage commands the data block of
+    // the length the line declares. Stops at the first error it cannot resynchronise after
+    static final class Parser {
+        private final int maxLine;
+        private final long maxValue;
+        private ByteString buffer = ByteString.emptyByteString();
+        // Bytes of the buffer already searched for the end of the line
+        private int scanned;
+        // A storage command whose data block has not fully arrived
+        private Store pending;
+        private boolean failed;
+
+        Parser(int maxLine, long maxValue) {
+            this.maxLine = maxLine;
+            this.maxValue = maxValue;
+        }
+
+        List<Request> feed(ByteString bytes) {
+            if (failed) {
+                return Collections.emptyList();
+            }
+            buffer = buffer.concat(bytes);
+            List<Request> requests = new ArrayList<>();
+            while (true) {
+                if (pending != null) {
+                    int length = pending.length;
+                    if (buffer.size() < length + 2) {
+                        break;
+                    }
+                    if (buffer.apply(length) != '\r' || buffer.apply(length + 1) != '\n') {
+                        requests.add(fail("CLIENT_ERROR bad data chunk"));
+                        break;
+                    }
+                    // Compacted, so that the stored value does not hold on to the network buffers
+                    requests.add(pending.withData(buffer.take(length).compact()));
+                    buffer = buffer.drop(length + 2);
+                    pending = null;
+                    continue;
+                }
+                int end = endOfLine();
+                if (end < 0) {
+                    if (buffer.size() > maxLine) {
+                        requests.add(fail("CLIENT_ERROR line too long"));
+                    }
+                    break;
+                }
+                int length = end > 0 && buffer.apply(end - 1) == '\r' ? end - 1 : end;
+                String line = buffer.take(length).utf8String();
+                buffer = buffer.drop(end + 1);
+                scanned = 0;
+                Request request = parse(line);
+                if (request != null) {
+                    requests.add(request);
+                    if (request.closes()) {
+                        failed = true;
+                        break;
+                    }
+                }
+            }
+            return requests;
+        }
+
+        private int endOfLine() {
+            int limit = Math.min(buffer.size(), maxLine + 1);
+            for (int i = scanned; i < limit; i++) {
+                if (buffer.apply(i) == '\n') {
+                    return i;
+                }
+            }
+            scanned = limit;
+            return -1;
+        }
+
+        private Invalid fail(String line) {
+            failed = true;
+            buffer = ByteString.emptyByteString();
+            return new Invalid(line, true);
+        }
+
+        // The command on the line, or null for a storage command, which waits for its data block
+        private Request parse(String line) {
+            String[] tokens = tokens(line);
+            if (tokens.length == 0) {
+                return new Invalid("ERROR", false);
+            }
+            String command = tokens[0];
+            switch (command) {
+                case "get":
+                case "gets":
+                    if (tokens.length < 2) {
+                        return new Invalid("ERROR", false);
+                    }
+                    List<String> keys = new ArrayList<>(tokens.length - 1);
+                    for (int i = 1; i < tokens.length; i++) {
+                        if (tokens[i].length() > MAX_KEY_LENGTH) {
+                            return new Invalid("CLIENT_ERROR bad command line format", false);
+                        }
+                        keys.add(tokens[i]);
+                    }
+                    return new Retrieve(keys, command.equals("gets"));
+                case "set":
+                case "add":
+                case "replace":
+                case "append":
+                case "prepend":
+                case "cas":
+                    return storage(command, tokens);
+                case "delete":
+                    if (tokens.length < 2 || tokens.length > 3 || invalidKey(tokens[1])) {
+                        return new Invalid("CLIENT_ERROR bad command line format", false);
+                    }
+                    return new Remove(tokens[1], noreply(tokens, 2));
+                case "incr":
+                case "decr":
+                    if (tokens.length < 3 || tokens.length > 4 || invalidKey(tokens[1])) {
+                        return new Invalid("CLIENT_ERROR bad command line format", false);
+                    }
+                    long delta = parseLong(tokens[2]);
+                    if (delta < 0) {
+                        return new Invalid("CLIENT_ERROR invalid numeric delta argument", false);
+                    }
+                    return new Increment(tokens[1], command.equals("incr") ? delta : -delta, noreply(tokens, 3));
+                case "version":
+                    return Version.INSTANCE;
+                case "quit":
+                    return Quit.INSTANCE;
+                default:
+                    return new Invalid("ERROR", false);
+            }
+        }
+
+        // <command> <key> <flags> <exptime> <bytes> [<cas unique>] [noreply]; the data block cannot
+        // be found again after a malformed line, so that ends the connection
+        private Request storage(String command, String[] tokens) {
+            int fields = command.equals("cas") ? 6 : 5;
+            if (tokens.length < fields || tokens.length > fields + 1 || invalidKey(tokens[1])
+                    || parseLong(tokens[2]) < 0) {
+                return fail("CLIENT_ERROR bad command line format");
+            }
+            long exptime;
+            try {
+                exptime = Long.parseLong(tokens[3]);
+            } catch (NumberFormatException e) {
+                return fail("CLIENT_ERROR bad command line format");
+            }
+            long length = parseLong(tokens[4]);
+            long cas = fields == 6 ? parseLong(tokens[5]) : 0L;
+            if (length < 0 || cas < 0) {
+                return fail("CLIENT_ERROR bad command line format");
+            }
+            if (length > maxValue) {
+                return fail("SERVER_ERROR object too large for cache");
+            }
+            pending = new Store(command, tokens[1], exptime, (int) length, cas, noreply(tokens, fields), null);
+            return null;
+        }
+
+        private static boolean invalidKey(String key) {
+            return key.length() > MAX_KEY_LENGTH;
+        }
+
+        private static boolean noreply(String[] tokens, int index) {
+            return tokens.length > index && tokens[index].equals("noreply");
+        }
+
+        // A non-negative decimal, or -1
+        private static long parseLong(String token) {
+            try {
+                long value = Long.parseLong(token);
+                return value < 0 ? -1L : value;
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }
+
+        private static String[] tokens(String line) {
+            List<String> tokens = new ArrayList<>();
+            int start = -1;
+            for (int i = 0; i <= line.length(); i++) {
+                boolean space = i == line.length() || line.charAt(i) == ' ';
+                if (space && start >= 0) {
+                    tokens.add(line.substring(start, i));
+                    start = -1;
+                } else if (!space && start < 0) {
+                    start = i;
+                }
+            }
+            return tokens.toArray(new String[0]);
+        }
+    }
+
+    abstract static class Request {
+        // True if the connection ends once this command is answered
+        boolean closes() {
+            return false;
+        }
+    }
+
+    static final class Retrieve extends Request {
+        final List<String> keys;
+        final boolean withCas;
+
+        Retrieve(List<String> keys, boolean withCas) {
+            this.keys = keys;
+            this.withCas = withCas;
+        }
+    }
+
+    static final class Store extends Request {
+        final String command;
+        final String key;
+        final long exptime;
+        final int length;
+        final long cas;
+        final boolean noreply;
+        final ByteString data;
+
+        Store(String command, String key, long exptime, int length, long cas, boolean noreply, ByteString data) {
+            this.command = command;
+            this.key = key;
+            this.exptime = exptime;
+            this.length = length;
+            this.cas = cas;
+            this.noreply = noreply;
+            this.data = data;
+        }
+
+        Store withData(ByteString data) {
+            return new Store(command, key, exptime, length, cas, noreply, data);
+        }
+    }
+
+    static final class Remove extends Request {
+        final String key;
+        final boolean noreply;
+
+        Remove(String key, boolean noreply) {
+            this.key = key;
+            this.noreply = noreply;
+        }
+    }
+
+    static final class Increment extends Request {
+        final String key;
+        final long delta;
+        final boolean noreply;
+
+        Increment(String key, long delta, boolean noreply) {
+            this.key = key;
+            this.delta = delta;
+            this.noreply = noreply;
+        }
+    }
+
+    static final class Invalid extends Request {
+        final String line;
+        final boolean fatal;
+
+        Invalid(String line, boolean fatal) {
+            this.line = line;
+            this.fatal = fatal;
+        }
+
+        @Override
+        boolean closes() {
+            return fatal;
+        }
+    }
+
+    static final class Version extends Request {
+        static final Version INSTANCE = new Version();
+    }
+
+    static final class Quit extends Request {
+        static final Quit INSTANCE = new Quit();
+
+        @Override
+        boolean closes() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ai.akka.cache;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Hierarchical timing wheel that tracks expiring store slots.
+ *
+ * Four levels of 64 buckets each cover 64, 64^2, 64^3 and 64^4 ticks. A slot is filed under the
+ * coarsest level its remaining time needs, and is cascaded to a finer level when the wheel reaches
+ * its bucket, so each entry is touched at most once per level. Buckets are intrusive linked lists
+ * over slot numbers: scheduling allocates nothing and the whole wheel is driven by a single
+ * periodic tick of the owning actor.
+ */
+final class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int BUCKETS = 1 << BITS;
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (BITS * LEVELS);
+
+    private final long tickMillis;
+    private final IntToLongFunction expiresAt;
+    private final SlotQueues buckets = new SlotQueues(LEVELS * BUCKETS);
+
+    private long currentTick; // every tick up to and including this one has been processed
+    private int scheduled;
+
+    /**
+     * @param expiresAt absolute expiry time in epoch millis of a slot
+     */
+    TimingWheel(long tickMillis, long nowMillis, IntToLongFunction expiresAt) {
+        this.tickMillis = tickMillis;
+        this.expiresAt = expiresAt;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    void ensureCapacity(int slots) {
+        buckets.ensureCapacity(slots);
+    }
+
+    boolean isEmpty() {
+        return scheduled == 0;
+    }
+
+    void schedule(int slot) {
+        cancel(slot);
+        place(slot, deadlineTick(slot));
+        scheduled++;
+    }
+
+    void cancel(int slot) {
+        if (buckets.unlink(slot) != SlotQueues.NONE) {
+            scheduled--;
+        }
+    }
+
+    /**
+     * Processes every tick up to {@code nowMillis} and hands each expired slot to {@code onExpired}.
+     * The slot is already unscheduled when the callback runs.
+     */
+    void advance(long nowMillis, IntConsumer onExpired) {
+        long targetTick = nowMillis / tickMillis;
+        if (scheduled == 0) {
+            currentTick = Math.max(currentTick, targetTick);
+            return;
+        }
+        while (currentTick < targetTick && scheduled > 0) {
+            currentTick++;
+            cascade(onExpired);
+            drain(bucketIndex(0, currentTick), onExpired);
+        }
+        currentTick = Math.max(currentTick, targetTick);
+    }
+
+    // When a level wraps, the next bucket of the level above is redistributed to finer levels
+    private void cascade(IntConsumer onExpired) {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (BITS * level)) - 1)) != 0) {
+                return;
+            }
+            drain(bucketIndex(level, currentTick), onExpired);
+        }
+    }
+
+    private void drain(int bucket, IntConsumer onExpired) {
+        int slot;
+        while ((slot = buckets.head(bucket)) >= 0) {
+            buckets.unlink(slot);
+            long deadline = deadlineTick(slot);
+            if (deadline <= currentTick) {
+                scheduled--;
+                onExpired.accept(slot);
+            } else {
+                place(slot, deadline);
+            }
+        }
+    }
+
+    private void place(int slot, long deadline) {
+        long delta = deadline - currentTick;
+        if (delta <= 0) {
+            // Already due: pick it up on the next tick
+            buckets.pushHead(bucketIndex(0, currentTick + 1), slot);
+            return;
+        }
+        if (delta >= MAX_SPAN) {
+            // Beyond the wheel's range: park it in the top level and re-file it when that bucket comes round
+            deadline = currentTick + MAX_SPAN - 1;
+            delta = MAX_SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        buckets.pushHead(bucketIndex(level, deadline), slot);
+    }
+
+    private long deadlineTick(int slot) {
+        // Round up so an entry never fires before its expiry time
+        return (expiresAt.applyAsLong(slot) + tickMillis - 1) / tickMillis;
+    }
+
+    private static int bucketIndex(int level, long tick) {
+        return level * BUCKETS + (int) ((tick >>> (BITS * level)) & BUCKET_MASK);
+    }
+}
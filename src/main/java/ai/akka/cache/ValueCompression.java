@@ -0,0 +1,225 @@
+package ai.akka.cache;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+import akka.util.ByteString;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-entry compression of cache values.
+ *
+ * With {@code cache.compression.enabled}, {@link CacheClient} compresses each written value of at
+ * least {@code threshold} bytes with zlib before it leaves the node, and keeps the result if it
+ * saves at least {@code min-savings}. Entities, replicas, near caches, snapshots and handoffs then
+ * hold and ship the compressed form; only the HTTP layer, an {@code _incr} and the write-behind
+ * writer decode it, and a GET whose client accepts {@code Content-Encoding: deflate} gets the
+ * stored bytes as they are.
+ *
+ * A compressed value is framed as {@code FF 5A 43}, a method byte and the original length (4
+ * bytes), followed by a zlib stream. 0xFF never starts UTF-8 text, and a value that does start
+ * with the magic is framed with method "stored" however small, so every value decodes
+ * unambiguously, whichever node wrote it and whether or not compression was on there. Decoding
+ * works with compression off, so it can be switched off without losing stored values; a value
+ * compressed with a dictionary needs the same {@code dictionary} file on every node.
+ */
+public final class ValueCompression implements Extension {
+
+    public static final ExtensionId<ValueCompression> ID = new ExtensionId<ValueCompression>() {
+        @Override
+        public ValueCompression createExtension(ActorSystem<?> system) {
+            CacheSettings settings = CacheSettings.create(system.settings().config());
+            return new ValueCompression(settings.compressionEnabled, settings.compressionThresholdBytes,
+                    settings.compressionLevel, settings.compressionMinSavings,
+                    readDictionary(settings.compressionDictionary));
+        }
+    };
+
+    public static ValueCompression get(ActorSystem<?> system) {
+        return ID.apply(system);
+    }
+
+    private static final byte[] MAGIC = {(byte) 0xFF, 0x5A, 0x43};
+    private static final int HEADER = MAGIC.length + 1 + Integer.BYTES;
+    private static final byte STORED = 0;
+    private static final byte ZLIB = 1;
+
+    private final boolean enabled;
+    private final int thresholdBytes;
+    private final double minSavings;
+    private final byte[] dictionary; // null = none
+
+    // Deflater and Inflater hold native buffers that are costly to set up; one pair per thread
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    public ValueCompression(boolean enabled, int thresholdBytes, int level, double minSavings, byte[] dictionary) {
+        this.enabled = enabled;
+        this.thresholdBytes = thresholdBytes;
+        this.minSavings = minSavings;
+        this.dictionary = dictionary;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    private static byte[] readDictionary(String path) {
+        if (path.isEmpty()) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read cache.compression.dictionary " + path, e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The value to store for {@code value}: compressed if that is worth it, framed as stored if it
+     * would otherwise look compressed, and otherwise {@code value} itself.
+     */
+    public ByteString encode(ByteString value) {
+        if (enabled && value.size() >= thresholdBytes) {
+            ByteString packed = deflate(value);
+            if (packed.size() <= value.size() * (1.0 - minSavings)) {
+                compressed.increment();
+                bytesIn.add(value.size());
+                bytesOut.add(packed.size());
+                return packed;
+            }
+        }
+        return startsWithMagic(value) ? frame(STORED, value.size()).concat(value) : value;
+    }
+
+    /**
+     * The value as written, from what {@link #encode} stored.
+     */
+    public ByteString decode(ByteString stored) {
+        if (!startsWithMagic(stored) || stored.size() < HEADER) {
+            return stored;
+        }
+        if (stored.apply(MAGIC.length) == STORED) {
+            return stored.drop(HEADER);
+        }
+        return inflate(stored);
+    }
+
+    /**
+     * The zlib stream of a stored value, which an HTTP client can decode itself as
+     * {@code Content-Encoding: deflate}, or null if it is not compressed or used the dictionary.
+     */
+    public ByteString deflateStream(ByteString stored) {
+        if (!startsWithMagic(stored) || stored.size() < HEADER + 2 || stored.apply(MAGIC.length) != ZLIB) {
+            return null;
+        }
+        // FDICT, bit 5 of the zlib header's second byte: the client does not have our dictionary
+        if ((stored.apply(HEADER + 1) & 0x20) != 0) {
+            return null;
+        }
+        return stored.drop(HEADER);
+    }
+
+    private ByteString deflate(ByteString value) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(value.toArrayUnsafe());
+        deflater.finish();
+        // A value that does not shrink is not kept, so its own size bounds the useful output
+        byte[] out = new byte[HEADER + value.size()];
+        int length = HEADER;
+        while (!deflater.finished() && length < out.length) {
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        if (!deflater.finished()) {
+            return value;
+        }
+        writeFrame(out, ZLIB, value.size());
+        return ByteString.fromArrayUnsafe(out, 0, length);
+    }
+
+    private ByteString inflate(ByteString stored) {
+        byte[] in = stored.toArrayUnsafe();
+        int length = ((in[4] & 0xFF) << 24) | ((in[5] & 0xFF) << 16) | ((in[6] & 0xFF) << 8) | (in[7] & 0xFF);
+        byte[] out = new byte[length];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(in, HEADER, in.length - HEADER);
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int read = inflater.inflate(out, n, length - n);
+                if (read == 0 && inflater.needsDictionary()) {
+                    if (dictionary == null) {
+                        throw new IllegalStateException(
+                                "Value was compressed with a dictionary; set cache.compression.dictionary");
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (read == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated compressed value");
+                }
+                n += read;
+            }
+            if (n != length) {
+                throw new IllegalStateException("Compressed value is shorter than its header says");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed value: " + e.getMessage(), e);
+        }
+        return ByteString.fromArrayUnsafe(out);
+    }
+
+    private static boolean startsWithMagic(ByteString value) {
+        return value.size() >= MAGIC.length
+                && value.apply(0) == MAGIC[0] && value.apply(1) == MAGIC[1] && value.apply(2) == MAGIC[2];
+    }
+
+    private static ByteString frame(byte method, int length) {
+        byte[] header = new byte[HEADER];
+        writeFrame(header, method, length);
+        return ByteString.fromArrayUnsafe(header);
+    }
+
+    private static void writeFrame(byte[] out, byte method, int length) {
+        System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+        out[3] = method;
+        out[4] = (byte) (length >>> 24);
+        out[5] = (byte) (length >>> 16);
+        out[6] = (byte) (length >>> 8);
+        out[7] = (byte) length;
+    }
+
+    /**
+     * Values written compressed through this node.
+     */
+    public long compressedValues() {
+        return compressed.sum();
+    }
+
+    /**
+     * Bytes of the values compressed through this node, before and after.
+     */
+    public long uncompressedBytes() {
+        return bytesIn.sum();
+    }
+
+    public long compressedBytes() {
+        return bytesOut.sum();
+    }
+}
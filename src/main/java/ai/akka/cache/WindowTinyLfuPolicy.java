@@ -0,0 +1,123 @@
+package ai.akka.cache;
+
+/**
+ * Window TinyLFU eviction.
+ *
+ * New entries enter a small LRU window (1% of the store's weight). Entries pushed out of the
+ * window become candidates at the head of the probation segment of a segmented LRU; a second
+ * hit promotes them to the protected segment (80% of the main area). When something has to go,
+ * the newest probation candidate is compared with the oldest probation entry using a frequency
+ * sketch and the less popular of the two is evicted, so one-hit wonders and scans cannot flush
+ * a frequently read working set.
+ */
+final class WindowTinyLfuPolicy implements EvictionPolicy {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Slots slots;
+    private final SlotQueues queues = new SlotQueues(3);
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final long[] queueWeight = new long[3];
+
+    WindowTinyLfuPolicy(Slots slots) {
+        this.slots = slots;
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        queues.ensureCapacity(capacity);
+        sketch.ensureCapacity(capacity);
+    }
+
+    @Override
+    public void onInsert(int slot, int hash) {
+        sketch.increment(hash);
+        push(WINDOW, slot);
+        drainWindow();
+    }
+
+    @Override
+    public void onAccess(int slot, int hash) {
+        sketch.increment(hash);
+        short queue = queues.queueOf(slot);
+        if (queue == WINDOW || queue == PROTECTED) {
+            queues.moveToHead(queue, slot);
+        } else if (queue == PROBATION) {
+            unlink(slot);
+            push(PROTECTED, slot);
+            drainProtected();
+        }
+    }
+
+    @Override
+    public void onUpdate(int slot, int hash, int oldWeight) {
+        short queue = queues.queueOf(slot);
+        if (queue != SlotQueues.NONE) {
+            queueWeight[queue] += slots.weightOf(slot) - oldWeight;
+        }
+        onAccess(slot, hash);
+    }
+
+    @Override
+    public void onRemove(int slot) {
+        unlink(slot);
+    }
+
+    @Override
+    public int victim() {
+        if (queues.count(PROBATION) > 0) {
+            int victim = queues.tail(PROBATION);
+            int candidate = queues.head(PROBATION);
+            if (candidate == victim) {
+                return victim;
+            }
+            // TinyLFU admission: the candidate only displaces the victim if it is seen more often
+            return sketch.frequency(slots.hashOf(candidate)) > sketch.frequency(slots.hashOf(victim))
+                    ? victim
+                    : candidate;
+        }
+        if (queues.count(PROTECTED) > 0) {
+            return queues.tail(PROTECTED);
+        }
+        return queues.tail(WINDOW);
+    }
+
+    private void drainWindow() {
+        long windowMax = totalWeight() * WINDOW_PERCENT / 100;
+        while (queues.count(WINDOW) > 1 && queueWeight[WINDOW] > windowMax) {
+            int slot = queues.tail(WINDOW);
+            unlink(slot);
+            push(PROBATION, slot);
+        }
+    }
+
+    private void drainProtected() {
+        long protectedMax = (queueWeight[PROBATION] + queueWeight[PROTECTED]) * PROTECTED_PERCENT / 100;
+        while (queues.count(PROTECTED) > 1 && queueWeight[PROTECTED] > protectedMax) {
+            int slot = queues.tail(PROTECTED);
+            unlink(slot);
+            push(PROBATION, slot);
+        }
+    }
+
+    private void push(int queue, int slot) {
+        queues.pushHead(queue, slot);
+        queueWeight[queue] += slots.weightOf(slot);
+    }
+
+    private void unlink(int slot) {
+        short queue = queues.unlink(slot);
+        if (queue != SlotQueues.NONE) {
+            queueWeight[queue] -= slots.weightOf(slot);
+        }
+    }
+
+    private long totalWeight() {
+        return queueWeight[WINDOW] + queueWeight[PROBATION] + queueWeight[PROTECTED];
+    }
+}
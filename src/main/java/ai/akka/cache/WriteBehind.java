@@ -0,0 +1,197 @@
+package ai.akka.cache;
+
+import akka.Done;
+import akka.actor.NoSerializationVerificationNeeded;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.util.ByteString;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * One per node when a {@link CacheWriter} is configured. It hands the writes queued in
+ * {@link BackingStore} to the writer in batches of at most {@code cache.write-behind.batch-size}
+ * keys, {@code flush-interval} after the first write of a batch, or as soon as a batch is full.
+ *
+ * Only the keys are queued here; their values are read from the backing store's unflushed map
+ * when the batch is cut, so a key written many times goes out once with its last value. One
+ * batch is in flight at a time. A failed batch stays queued and is retried after
+ * {@code flush-interval}.
+ */
+final class WriteBehind extends AbstractBehavior<WriteBehind.Command> {
+
+    interface Command {
+    }
+
+    // Local: an entity queued a write of the key
+    static final class Dirty implements Command, NoSerializationVerificationNeeded {
+        final String key;
+
+        Dirty(String key) {
+            this.key = key;
+        }
+    }
+
+    // Local: write out everything queued, then answer; sent by coordinated shutdown
+    static final class Drain implements Command, NoSerializationVerificationNeeded {
+        final ActorRef<Done> replyTo;
+
+        Drain(ActorRef<Done> replyTo) {
+            this.replyTo = replyTo;
+        }
+    }
+
+    private enum Flush implements Command {
+        INSTANCE
+    }
+
+    private static final class Flushed implements Command, NoSerializationVerificationNeeded {
+        final Map<String, Optional<ByteString>> batch;
+        final Throwable failure;
+
+        Flushed(Map<String, Optional<ByteString>> batch, Throwable failure) {
+            this.batch = batch;
+            this.failure = failure;
+        }
+    }
+
+    static Behavior<Command> create(BackingStore backingStore, CacheWriter writer, Duration flushInterval, int batchSize) {
+        return Behaviors.setup(ctx -> Behaviors.withTimers(timers ->
+                new WriteBehind(ctx, timers, backingStore, writer, flushInterval, batchSize)));
+    }
+
+    private final TimerScheduler<Command> timers;
+    private final BackingStore backingStore;
+    private final CacheWriter writer;
+    private final Duration flushInterval;
+    private final int batchSize;
+    private final Set<String> dirty = new LinkedHashSet<>();
+    private final List<ActorRef<Done>> drainers = new ArrayList<>();
+    private boolean flushing;
+
+    private WriteBehind(ActorContext<Command> ctx, TimerScheduler<Command> timers, BackingStore backingStore,
+                        CacheWriter writer, Duration flushInterval, int batchSize) {
+        super(ctx);
+        this.timers = timers;
+        this.backingStore = backingStore;
+        this.writer = writer;
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Dirty.class, this::onDirty)
+                .onMessage(Flush.class, flush -> onFlush())
+                .onMessage(Flushed.class, this::onFlushed)
+                .onMessage(Drain.class, this::onDrain)
+                .build();
+    }
+
+    private Behavior<Command> onDirty(Dirty msg) {
+        dirty.add(msg.key);
+        if (flushing) {
+            return this;
+        }
+        if (dirty.size() >= batchSize) {
+            timers.cancel(Flush.INSTANCE);
+            flush();
+        } else if (!timers.isTimerActive(Flush.INSTANCE)) {
+            timers.startSingleTimer(Flush.INSTANCE, flushInterval);
+        }
+        return this;
+    }
+
+    private Behavior<Command> onFlush() {
+        if (!flushing) {
+            flush();
+        }
+        return this;
+    }
+
+    private void flush() {
+        Map<String, Optional<ByteString>> batch = new LinkedHashMap<>();
+        Iterator<String> keys = dirty.iterator();
+        while (keys.hasNext() && batch.size() < batchSize) {
+            String key = keys.next();
+            keys.remove();
+            Optional<ByteString> value = backingStore.unflushed(key);
+            if (value != null) {
+                batch.put(key, value);
+            }
+        }
+        if (batch.isEmpty()) {
+            drained();
+            return;
+        }
+        flushing = true;
+        Map<String, Optional<ByteString>> values = new LinkedHashMap<>();
+        batch.forEach((key, value) -> values.put(key, value.map(backingStore::decode)));
+        CompletionStage<Done> written;
+        try {
+            written = writer.writeAll(values);
+        } catch (RuntimeException e) {
+            written = CompletableFuture.failedFuture(e);
+        }
+        getContext().pipeToSelf(written, (done, failure) -> new Flushed(batch, failure));
+    }
+
+    private Behavior<Command> onFlushed(Flushed msg) {
+        flushing = false;
+        if (msg.failure != null) {
+            backingStore.recordFlushFailed();
+            // Still in the unflushed map, possibly with newer values by now
+            dirty.addAll(msg.batch.keySet());
+            if (!drainers.isEmpty()) {
+                getContext().getLog().warn("Write-behind batch of {} keys failed while shutting down, {} writes lost: {}",
+                        msg.batch.size(), dirty.size(), msg.failure.getMessage());
+                drained();
+                return this;
+            }
+            getContext().getLog().warn("Write-behind batch of {} keys failed, retrying in {}: {}",
+                    msg.batch.size(), flushInterval, msg.failure.getMessage());
+            timers.startSingleTimer(Flush.INSTANCE, flushInterval);
+            return this;
+        }
+        backingStore.recordFlushed(msg.batch);
+        if (dirty.size() >= batchSize || !drainers.isEmpty()) {
+            timers.cancel(Flush.INSTANCE);
+            flush();
+        } else if (!dirty.isEmpty() && !timers.isTimerActive(Flush.INSTANCE)) {
+            timers.startSingleTimer(Flush.INSTANCE, flushInterval);
+        }
+        return this;
+    }
+
+    private Behavior<Command> onDrain(Drain msg) {
+        drainers.add(msg.replyTo);
+        if (!flushing) {
+            timers.cancel(Flush.INSTANCE);
+            flush();
+        }
+        return this;
+    }
+
+    private void drained() {
+        for (ActorRef<Done> drainer : drainers) {
+            drainer.tell(Done.getInstance());
+        }
+        drainers.clear();
+    }
+}
@@ -0,0 +1,121 @@
+package ai.akka.cache;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.util.ByteString;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Round trips through both of the serializer's paths. Artery serializes into and deserializes from
+ * pooled little-endian buffers, while {@code toBinary(Object)} and {@code fromBinary(byte[])} use
+ * big-endian ones; a message written by one path must read back the same through the other.
+ */
+class CacheMessageSerializerTest {
+
+    private static ActorSystem<Void> system;
+    private static CacheMessageSerializer serializer;
+    private static ActorRef<CacheActor.Response> replyTo;
+
+    @BeforeAll
+    static void start() {
+        system = ActorSystem.create(Behaviors.empty(), "CacheMessageSerializerTest", ConfigFactory.parseString(
+                "akka.actor.provider = local\n" +
+                "akka.loglevel = WARNING\n"
+        ).withFallback(ConfigFactory.load()));
+        serializer = new CacheMessageSerializer((ExtendedActorSystem) Adapter.toClassic(system));
+        replyTo = system.systemActorOf(Behaviors.ignore(), "replyTo", Props.empty());
+    }
+
+    @AfterAll
+    static void stop() {
+        system.terminate();
+    }
+
+    @Test
+    void putFromArrayReadsBackFromLittleEndianBuffer() throws Exception {
+        CacheActor.Put put = new CacheActor.Put("user:1", ByteString.fromString("value"), 60_000L, 0x0102030405060708L, replyTo);
+
+        CacheActor.Put read = (CacheActor.Put) fromLittleEndian(serializer.toBinary(put), serializer.manifest(put));
+
+        assertEquals("user:1", read.key);
+        assertEquals(ByteString.fromString("value"), read.value);
+        assertEquals(60_000L, read.ttlMillis);
+        assertEquals(0x0102030405060708L, read.version);
+        assertEquals(replyTo, read.replyTo);
+    }
+
+    @Test
+    void putToLittleEndianBufferReadsBackFromArray() throws Exception {
+        CacheActor.Put put = new CacheActor.Put("user:1", ByteString.fromString("value"), 60_000L, 42L, replyTo);
+
+        CacheActor.Put read = (CacheActor.Put) serializer.fromBinary(toLittleEndian(put), serializer.manifest(put));
+
+        assertEquals(60_000L, read.ttlMillis);
+        assertEquals(42L, read.version);
+    }
+
+    @Test
+    void longFieldsSurviveBothDirections() throws Exception {
+        CacheActor.MultiPut multiPut = new CacheActor.MultiPut(List.of(
+                new CacheActor.Entry("a", ByteString.fromString("1"), 1_000L, 7L),
+                new CacheActor.Entry("b", ByteString.fromString("2"), 0L, Long.MAX_VALUE)), replyTo);
+        CacheActor.MultiPut read = (CacheActor.MultiPut) roundTrips(multiPut);
+        assertEquals(1_000L, read.entries.get(0).ttlMillis);
+        assertEquals(7L, read.entries.get(0).version);
+        assertEquals(Long.MAX_VALUE, read.entries.get(1).version);
+
+        CacheActor.IncrementBy increment = new CacheActor.IncrementBy("counter", -5L, 30_000L, 9L, replyTo);
+        CacheActor.IncrementBy readIncrement = (CacheActor.IncrementBy) roundTrips(increment);
+        assertEquals(-5L, readIncrement.delta);
+        assertEquals(30_000L, readIncrement.ttlMillis);
+        assertEquals(9L, readIncrement.version);
+
+        CacheActor.Found found = new CacheActor.Found(ByteString.fromString("v"), 1_700_000_000_000L, 123_456L);
+        CacheActor.Found readFound = (CacheActor.Found) roundTrips(found);
+        assertEquals(1_700_000_000_000L, readFound.expiresAtMillis);
+        assertEquals(123_456L, readFound.version);
+
+        assertEquals(77L, ((CacheActor.NotFound) roundTrips(new CacheActor.NotFound(77L))).version);
+        assertEquals(-1L, ((CacheActor.Conflict) roundTrips(new CacheActor.Conflict(-1L))).version);
+    }
+
+    // Writes through each path and reads through the other; both must give back the same bytes
+    private static Object roundTrips(Object message) throws Exception {
+        String manifest = serializer.manifest(message);
+        byte[] expected = serializer.toBinary(message);
+        Object viaArray = fromLittleEndian(expected, manifest);
+        Object viaBuffer = serializer.fromBinary(toLittleEndian(message), manifest);
+        assertArrayEquals(expected, serializer.toBinary(viaArray));
+        assertArrayEquals(expected, serializer.toBinary(viaBuffer));
+        return viaArray;
+    }
+
+    private static Object fromLittleEndian(byte[] bytes, String manifest) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(bytes).flip();
+        return serializer.fromBinary(buffer, manifest);
+    }
+
+    private static byte[] toLittleEndian(Object message) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        serializer.toBinary(message, buffer);
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
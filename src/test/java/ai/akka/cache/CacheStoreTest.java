@@ -0,0 +1,199 @@
+package ai.akka.cache;
+
+import akka.util.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The open-addressing store: probe chains must survive removals and resizes, tombstones must read
+ * as absent without losing their version, and expired entries must go whichever way they are found.
+ */
+class CacheStoreTest {
+
+    @Test
+    void putGetAndRemove() {
+        CacheStore store = new CacheStore();
+        ByteString one = ByteString.fromString("one");
+
+        assertNull(store.put("a", one));
+        assertEquals(one, store.put("a", ByteString.fromString("uno")));
+        store.put("b", ByteString.fromString("two"));
+
+        assertEquals(ByteString.fromString("uno"), store.get("a"));
+        assertEquals(2, store.size());
+        assertEquals(CacheStore.weigh("a", ByteString.fromString("uno")) + CacheStore.weigh("b", ByteString.fromString("two")),
+                store.weight());
+
+        assertEquals(ByteString.fromString("uno"), store.remove("a"));
+        assertNull(store.get("a"));
+        assertNull(store.remove("a"));
+        assertEquals(ByteString.fromString("two"), store.get("b"));
+        assertEquals(1, store.size());
+        assertEquals(CacheStore.weigh("b", ByteString.fromString("two")), store.weight());
+    }
+
+    @Test
+    void versionedDeleteLeavesATombstoneThatReadsAsAbsent() {
+        CacheStore store = new CacheStore();
+        long now = System.currentTimeMillis();
+        assertTrue(store.putIfNewer("k", ByteString.fromString("v"), 0L, 5L));
+
+        assertTrue(store.removeIfNewer("k", 6L, now + 60_000));
+
+        assertNull(store.get("k", now));
+        assertFalse(store.contains("k", now));
+        assertEquals(6L, store.version("k"));
+        CacheActor.NotFound tombstone = (CacheActor.NotFound) store.peek("k", now);
+        assertEquals(6L, tombstone.version);
+        List<String> keys = new ArrayList<>();
+        store.forEachKey(now, keys::add);
+        assertTrue(keys.isEmpty());
+        assertFalse(store.drop("k"), "a tombstone holds no value");
+    }
+
+    @Test
+    void tombstoneTurnsAwayOlderWritesButNotNewerOnes() {
+        CacheStore store = new CacheStore();
+        long now = System.currentTimeMillis();
+        store.putIfNewer("k", ByteString.fromString("v"), 0L, 5L);
+        store.removeIfNewer("k", 6L, now + 60_000);
+
+        assertFalse(store.putIfNewer("k", ByteString.fromString("late"), 0L, 4L));
+        assertNull(store.get("k", now));
+        assertFalse(store.removeIfNewer("k", 5L, now + 60_000));
+        assertEquals(6L, store.version("k"));
+
+        assertTrue(store.putIfNewer("k", ByteString.fromString("new"), 0L, 7L));
+        assertEquals(ByteString.fromString("new"), store.get("k", now));
+        assertEquals(7L, store.version("k"));
+    }
+
+    @Test
+    void peekTellsAValueFromATombstoneFromNothing() {
+        CacheStore store = new CacheStore();
+        long now = System.currentTimeMillis();
+        store.putIfNewer("live", ByteString.fromString("v"), now + 60_000, 3L);
+        store.removeIfNewer("gone", 4L, now + 60_000);
+
+        CacheActor.Found found = (CacheActor.Found) store.peek("live", now);
+        assertEquals(ByteString.fromString("v"), found.value);
+        assertEquals(now + 60_000, found.expiresAtMillis);
+        assertEquals(3L, found.version);
+        assertEquals(4L, ((CacheActor.NotFound) store.peek("gone", now)).version);
+        assertSame(CacheStore.ABSENT, store.peek("missing", now));
+        assertSame(CacheStore.ABSENT, store.peek("live", now + 60_000), "expired by then");
+    }
+
+    @Test
+    void expiredEntriesReadAsAbsentAndExpireDropsTheRest() {
+        CacheStore store = new CacheStore(16, EvictionPolicy.Kind.NONE, 100);
+        long now = System.currentTimeMillis();
+        store.put("read", ByteString.fromString("1"), now + 1_000);
+        store.put("swept", ByteString.fromString("2"), now + 2_000);
+        store.put("later", ByteString.fromString("3"), now + 60_000);
+        store.put("never", ByteString.fromString("4"));
+        assertTrue(store.hasExpiringEntries());
+
+        assertNull(store.get("read", now + 1_000), "due at its expiry time");
+        assertEquals(3, store.size(), "dropped on read");
+
+        assertEquals(1, store.expire(now + 5_000));
+        assertFalse(store.contains("swept", now + 5_000));
+        assertEquals(ByteString.fromString("3"), store.get("later", now + 5_000));
+        assertEquals(ByteString.fromString("4"), store.get("never", now + 5_000));
+
+        // Rewritten without an expiry, so the wheel must forget it
+        store.put("later", ByteString.fromString("3"));
+        assertFalse(store.hasExpiringEntries());
+        assertEquals(0, store.expire(now + 120_000));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void keepsEveryKeyThroughResizesAndRemovals() {
+        CacheStore store = new CacheStore();
+        int count = 5_000;
+        for (int i = 0; i < count; i++) {
+            store.put("key-" + i, ByteString.fromString("value-" + i));
+        }
+        for (int i = 0; i < count; i += 3) {
+            assertEquals(ByteString.fromString("value-" + i), store.remove("key-" + i));
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            if (i % 3 == 0) {
+                assertNull(store.get("key-" + i), "key-" + i);
+                assertSame(CacheStore.ABSENT, store.peek("key-" + i, now));
+            } else {
+                assertEquals(ByteString.fromString("value-" + i), store.get("key-" + i), "key-" + i);
+                assertInstanceOf(CacheActor.Found.class, store.peek("key-" + i, now));
+            }
+        }
+        assertEquals(count - (count + 2) / 3, store.size());
+
+        // Freed slots are handed out again and the probe chains still lead to them
+        for (int i = 0; i < count; i += 3) {
+            store.put("again-" + i, ByteString.fromString("v"));
+        }
+        assertEquals(count, store.size());
+        assertEquals(ByteString.fromString("v"), store.get("again-0"));
+        assertEquals(ByteString.fromString("value-1"), store.get("key-1"));
+    }
+
+    @Test
+    void keepsLargeValuesOffHeapAndFreesThemWithTheirEntries() {
+        OffHeapArena arena = new OffHeapArena(true, 64 * 1024, 16 * 1024, 256);
+        CacheStore store = new CacheStore(16, EvictionPolicy.Kind.NONE, 1000, arena);
+        ByteString large = ByteString.fromArray(new byte[1_000]);
+        ByteString small = ByteString.fromString("small");
+
+        store.put("large", large);
+        store.put("small", small);
+        assertEquals(1, arena.values());
+        assertEquals(large, store.get("large"));
+        assertEquals(large, ((CacheActor.Found) store.peek("large", System.currentTimeMillis())).value);
+
+        store.put("large", ByteString.fromArray(new byte[2_000]));
+        assertEquals(1, arena.values(), "the old chunk is freed on overwrite");
+        assertTrue(store.drop("large"));
+        assertEquals(0, arena.values());
+
+        store.put("again", large);
+        store.clear();
+        assertEquals(0, arena.values());
+        assertEquals(0, arena.usedBytes());
+        assertTrue(store.isEmpty());
+    }
+
+    @Test
+    void tinyLfuKeepsAFrequentEntryThroughAScan() {
+        // Sized up front: growing the frequency sketch would clear its counts
+        CacheStore store = new CacheStore(1024, EvictionPolicy.Kind.W_TINYLFU, 1000);
+        ByteString value = ByteString.fromArray(new byte[100]);
+        store.put("hot", value);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(store.get("hot"));
+        }
+        long budget = 20L * CacheStore.weigh("cold-000", value);
+
+        for (int i = 0; i < 500; i++) {
+            store.put(String.format("cold-%03d", i), value);
+            if (store.weight() > budget) {
+                store.evict(store.weight() - budget);
+            }
+        }
+
+        assertTrue(store.weight() <= budget);
+        assertEquals(value, store.get("hot"), "one-hit keys must not displace a frequently read one");
+    }
+}
@@ -0,0 +1,106 @@
+package ai.akka.cache;
+
+import akka.util.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Slab allocation: freed chunks are handed out again, emptied slabs move between size classes, and
+ * a stale handle into a reused slab is caught by the chunk header check instead of reading garbage.
+ */
+class OffHeapArenaTest {
+
+    private static final int SLAB = 1024;
+
+    @Test
+    void readsBackWhatWasAllocated() {
+        OffHeapArena arena = new OffHeapArena(true, 4 * SLAB, SLAB, 16);
+        ByteString value = bytes(100, 42);
+
+        long handle = arena.allocate(value);
+
+        assertEquals(value, arena.read(handle));
+        assertEquals(1, arena.values());
+        assertEquals(SLAB, arena.reservedBytes());
+    }
+
+    @Test
+    void freedChunkIsHandedOutAgain() {
+        OffHeapArena arena = new OffHeapArena(true, 4 * SLAB, SLAB, 16);
+        long first = arena.allocate(bytes(40, 1));
+        long usedByOne = arena.usedBytes();
+
+        arena.free(first);
+        assertEquals(0, arena.values());
+        assertEquals(0, arena.usedBytes());
+        long second = arena.allocate(bytes(40, 2));
+
+        assertEquals(first, second);
+        assertEquals(bytes(40, 2), arena.read(second));
+        assertEquals(usedByOne, arena.usedBytes());
+        assertEquals(SLAB, arena.reservedBytes(), "no second slab for a reused chunk");
+    }
+
+    @Test
+    void fullArenaTurnsValuesAwayUntilAChunkIsFreed() {
+        OffHeapArena arena = new OffHeapArena(true, SLAB, SLAB, 16);
+        long[] handles = new long[SLAB / 64];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = arena.allocate(bytes(40, i));
+            assertTrue(handles[i] >= 0);
+        }
+
+        assertEquals(-1L, arena.allocate(bytes(40, 99)));
+
+        arena.free(handles[3]);
+        long handle = arena.allocate(bytes(40, 99));
+        assertEquals(handles[3], handle);
+        assertEquals(bytes(40, 7), arena.read(handles[7]), "neighbouring chunks untouched");
+    }
+
+    @Test
+    void emptiedSlabIsReusedByAnotherSizeClass() {
+        OffHeapArena arena = new OffHeapArena(true, 2 * SLAB, SLAB, 16);
+        // One slab of 64-byte chunks, plus two chunks of a second slab
+        for (int i = 0; i < SLAB / 64; i++) {
+            arena.allocate(bytes(40, i));
+        }
+        long spilled = arena.allocate(bytes(40, 100));
+        long stale = arena.allocate(bytes(40, 101));
+        assertEquals(2 * SLAB, arena.reservedBytes());
+        arena.free(spilled);
+        arena.free(stale);
+
+        // The arena has no third slab to give, so this only fits in the emptied one
+        long large = arena.allocate(bytes(500, 0x7F));
+
+        assertTrue(large >= 0);
+        assertEquals(spilled >>> 32, large >>> 32, "same slab, carved for the larger class");
+        assertEquals(bytes(500, 0x7F), arena.read(large));
+        assertEquals(2 * SLAB, arena.reservedBytes());
+        // The stale handle now points into the middle of the large value: its "header" is value bytes
+        assertThrows(IllegalStateException.class, () -> arena.read(stale));
+    }
+
+    @Test
+    void acceptsOnlyValuesBetweenTheMinimumAndTheLargestChunk() {
+        OffHeapArena arena = new OffHeapArena(true, 4 * SLAB, SLAB, 16);
+
+        assertFalse(arena.accepts(15));
+        assertTrue(arena.accepts(16));
+        assertFalse(arena.accepts(SLAB));
+        assertFalse(new OffHeapArena(false, 4 * SLAB, SLAB, 16).accepts(100));
+    }
+
+    private static ByteString bytes(int length, int fill) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) fill);
+        return ByteString.fromArrayUnsafe(bytes);
+    }
+}
@@ -0,0 +1,209 @@
+package ai.akka.cache;
+
+import akka.util.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The text protocol's command parser and exptime conversion. Whether a connection stays in step
+ * with its client depends on how the parser handles commands cut across reads and malformed input.
+ */
+class TextProtocolServerTest {
+
+    private static final int MAX_LINE = 64;
+    private static final long MAX_VALUE = 1024;
+
+    @Test
+    void parsesPipelinedCommandsInOrder() {
+        List<TextProtocolServer.Request> requests = feed(new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE),
+                "get a b\r\ngets c\r\ndelete d\r\nincr e 5\r\ndecr f 2\r\nversion\r\n");
+
+        assertEquals(6, requests.size());
+        TextProtocolServer.Retrieve get = (TextProtocolServer.Retrieve) requests.get(0);
+        assertEquals(List.of("a", "b"), get.keys);
+        assertFalse(get.withCas);
+        assertTrue(((TextProtocolServer.Retrieve) requests.get(1)).withCas);
+        assertEquals("d", ((TextProtocolServer.Remove) requests.get(2)).key);
+        assertEquals(5L, ((TextProtocolServer.Increment) requests.get(3)).delta);
+        assertEquals(-2L, ((TextProtocolServer.Increment) requests.get(4)).delta);
+        assertEquals(TextProtocolServer.Version.INSTANCE, requests.get(5));
+    }
+
+    @Test
+    void acceptsLinesEndingInBareNewline() {
+        List<TextProtocolServer.Request> requests = feed(new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE), "get a\n");
+
+        assertEquals(List.of("a"), ((TextProtocolServer.Retrieve) requests.get(0)).keys);
+    }
+
+    @Test
+    void joinsLineAndDataBlockSplitAcrossReads() {
+        TextProtocolServer.Parser parser = new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE);
+
+        List<TextProtocolServer.Request> requests = new ArrayList<>();
+        for (String part : new String[]{"se", "t key 0 60 1", "1\r", "\nhello ", "world", "\r", "\nget key\r\n"}) {
+            requests.addAll(feed(parser, part));
+        }
+
+        assertEquals(2, requests.size());
+        TextProtocolServer.Store set = (TextProtocolServer.Store) requests.get(0);
+        assertEquals("set", set.command);
+        assertEquals("key", set.key);
+        assertEquals(60L, set.exptime);
+        assertEquals("hello world", set.data.utf8String());
+        assertFalse(set.noreply);
+        assertInstanceOf(TextProtocolServer.Retrieve.class, requests.get(1));
+    }
+
+    @Test
+    void keepsDataBlockBytesThatLookLikeCommands() {
+        List<TextProtocolServer.Request> requests = feed(new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE),
+                "set k 0 0 6\r\nquit\r\n\r\nget k\r\n");
+
+        assertEquals(2, requests.size());
+        assertEquals("quit\r\n", ((TextProtocolServer.Store) requests.get(0)).data.utf8String());
+        assertInstanceOf(TextProtocolServer.Retrieve.class, requests.get(1));
+    }
+
+    @Test
+    void parsesCasAndNoreply() {
+        List<TextProtocolServer.Request> requests = feed(new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE),
+                "cas k 0 0 1 42 noreply\r\nx\r\nset k 0 0 1 noreply\r\ny\r\ndelete k noreply\r\nincr n 1 noreply\r\n");
+
+        assertEquals(4, requests.size());
+        TextProtocolServer.Store cas = (TextProtocolServer.Store) requests.get(0);
+        assertEquals(42L, cas.cas);
+        assertTrue(cas.noreply);
+        assertTrue(((TextProtocolServer.Store) requests.get(1)).noreply);
+        assertTrue(((TextProtocolServer.Remove) requests.get(2)).noreply);
+        assertTrue(((TextProtocolServer.Increment) requests.get(3)).noreply);
+    }
+
+    @Test
+    void badDataChunkTerminatorEndsTheConnection() {
+        TextProtocolServer.Parser parser = new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE);
+
+        List<TextProtocolServer.Request> requests = feed(parser, "set k 0 0 3\r\nabcXYget k\r\n");
+
+        assertEquals(1, requests.size());
+        assertFatal(requests.get(0), "CLIENT_ERROR bad data chunk");
+        assertTrue(feed(parser, "get k\r\n").isEmpty());
+    }
+
+    @Test
+    void overlongLineEndsTheConnection() {
+        TextProtocolServer.Parser parser = new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE);
+
+        // Without a newline yet, so the parser cannot wait for the rest of the line forever
+        List<TextProtocolServer.Request> requests = feed(parser, "get " + "k".repeat(MAX_LINE));
+
+        assertEquals(1, requests.size());
+        assertFatal(requests.get(0), "CLIENT_ERROR line too long");
+        assertTrue(feed(parser, "\r\nget k\r\n").isEmpty());
+    }
+
+    @Test
+    void lineOfExactlyTheLimitIsAccepted() {
+        String line = "get " + "k".repeat(MAX_LINE - 4);
+
+        List<TextProtocolServer.Request> requests = feed(new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE), line + "\n");
+
+        assertEquals(1, requests.size());
+        assertInstanceOf(TextProtocolServer.Retrieve.class, requests.get(0));
+    }
+
+    @Test
+    void oversizedValueEndsTheConnection() {
+        List<TextProtocolServer.Request> requests = feed(new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE),
+                "set k 0 0 " + (MAX_VALUE + 1) + "\r\n");
+
+        assertFatal(requests.get(0), "SERVER_ERROR object too large for cache");
+    }
+
+    @Test
+    void malformedStorageLineEndsTheConnection() {
+        TextProtocolServer.Parser parser = new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE);
+
+        List<TextProtocolServer.Request> requests = feed(parser, "set k 0 soon 1\r\nx\r\n");
+
+        assertEquals(1, requests.size());
+        assertFatal(requests.get(0), "CLIENT_ERROR bad command line format");
+    }
+
+    @Test
+    void otherErrorsKeepTheConnection() {
+        List<TextProtocolServer.Request> requests = feed(new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE),
+                "bogus\r\n\r\nget\r\nincr n -1\r\ndelete\r\nget k\r\n");
+
+        assertEquals(6, requests.size());
+        for (int i = 0; i < 5; i++) {
+            TextProtocolServer.Invalid invalid = (TextProtocolServer.Invalid) requests.get(i);
+            assertFalse(invalid.closes(), invalid.line);
+        }
+        assertEquals("ERROR", ((TextProtocolServer.Invalid) requests.get(0)).line);
+        assertEquals("CLIENT_ERROR invalid numeric delta argument", ((TextProtocolServer.Invalid) requests.get(3)).line);
+        assertInstanceOf(TextProtocolServer.Retrieve.class, requests.get(5));
+    }
+
+    @Test
+    void quitInAPipelineDropsTheCommandsAfterIt() {
+        TextProtocolServer.Parser parser = new TextProtocolServer.Parser(MAX_LINE, MAX_VALUE);
+
+        List<TextProtocolServer.Request> requests = feed(parser, "get a\r\nquit\r\nget b\r\n");
+
+        assertEquals(2, requests.size());
+        assertInstanceOf(TextProtocolServer.Retrieve.class, requests.get(0));
+        assertEquals(TextProtocolServer.Quit.INSTANCE, requests.get(1));
+        assertTrue(requests.get(1).closes());
+        assertTrue(feed(parser, "get c\r\n").isEmpty());
+    }
+
+    @Test
+    void exptimeZeroNeverExpires() {
+        assertEquals(0L, TextProtocolServer.ttlMillis(0, 1_700_000_000_000L));
+    }
+
+    @Test
+    void exptimeUpToThirtyDaysIsRelative() {
+        long thirtyDays = 60L * 60 * 24 * 30;
+        assertEquals(1_000L, TextProtocolServer.ttlMillis(1, 1_700_000_000_000L));
+        assertEquals(thirtyDays * 1000, TextProtocolServer.ttlMillis(thirtyDays, 1_700_000_000_000L));
+    }
+
+    @Test
+    void negativeExptimeHasAlreadyExpired() {
+        assertTrue(TextProtocolServer.ttlMillis(-1, 1_700_000_000_000L) < 0);
+    }
+
+    @Test
+    void exptimeBeyondThirtyDaysIsAUnixTime() {
+        long now = 1_700_000_000_000L;
+        assertEquals(90_000L, TextProtocolServer.ttlMillis(now / 1000 + 90, now));
+        assertTrue(TextProtocolServer.ttlMillis(now / 1000 - 1, now) < 0);
+        assertTrue(TextProtocolServer.ttlMillis(now / 1000, now) < 0);
+        // Past 30 days but long ago as a Unix time
+        assertTrue(TextProtocolServer.ttlMillis(60L * 60 * 24 * 30 + 1, now) < 0);
+    }
+
+    @Test
+    void hugeExptimeDoesNotOverflow() {
+        assertTrue(TextProtocolServer.ttlMillis(Long.MAX_VALUE, 1_700_000_000_000L) > 0);
+    }
+
+    private static List<TextProtocolServer.Request> feed(TextProtocolServer.Parser parser, String bytes) {
+        return parser.feed(ByteString.fromString(bytes));
+    }
+
+    private static void assertFatal(TextProtocolServer.Request request, String line) {
+        TextProtocolServer.Invalid invalid = (TextProtocolServer.Invalid) request;
+        assertEquals(line, invalid.line);
+        assertTrue(invalid.closes());
+    }
+}
@@ -0,0 +1,117 @@
+package ai.akka.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Expiry through the wheel's levels: a slot filed under a coarse level must be cascaded down and
+ * fire on its own tick, neither early nor late, however far off its deadline was when scheduled.
+ */
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private final long[] expiresAt = new long[8];
+    private final List<Integer> expired = new ArrayList<>();
+
+    private TimingWheel wheel(long nowMillis) {
+        TimingWheel wheel = new TimingWheel(TICK, nowMillis, slot -> expiresAt[slot]);
+        wheel.ensureCapacity(expiresAt.length);
+        return wheel;
+    }
+
+    private void schedule(TimingWheel wheel, int slot, long expiresAtMillis) {
+        expiresAt[slot] = expiresAtMillis;
+        wheel.schedule(slot);
+    }
+
+    @Test
+    void firesWithinTheFirstLevel() {
+        TimingWheel wheel = wheel(0);
+        schedule(wheel, 0, 50 * TICK);
+
+        wheel.advance(49 * TICK, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(50 * TICK, expired::add);
+
+        assertEquals(List.of(0), expired);
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void cascadesADeadlineBeyondTheFirstLevel() {
+        TimingWheel wheel = wheel(0);
+        // Filed under level 1, whose bucket comes round at tick 192
+        schedule(wheel, 0, 197 * TICK);
+
+        wheel.advance(192 * TICK, expired::add);
+        assertTrue(expired.isEmpty(), "cascaded to level 0, not fired");
+        wheel.advance(196 * TICK, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(197 * TICK, expired::add);
+
+        assertEquals(List.of(0), expired);
+    }
+
+    @Test
+    void cascadesThroughTwoLevels() {
+        // Starts mid-way so that the level buckets do not line up with the deadlines
+        TimingWheel wheel = wheel(1_000 * TICK);
+        schedule(wheel, 0, (1_000 + 2 * 64 * 64 + 7) * TICK);
+        schedule(wheel, 1, (1_000 + 70) * TICK);
+
+        wheel.advance((1_000 + 70) * TICK, expired::add);
+        assertEquals(List.of(1), expired);
+        wheel.advance((1_000 + 2 * 64 * 64 + 6) * TICK, expired::add);
+        assertEquals(List.of(1), expired);
+        wheel.advance((1_000 + 2 * 64 * 64 + 7) * TICK, expired::add);
+
+        assertEquals(List.of(1, 0), expired);
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void roundsAnExpiryBetweenTicksUp() {
+        TimingWheel wheel = wheel(0);
+        schedule(wheel, 0, 100 * TICK + 1);
+
+        wheel.advance(100 * TICK, expired::add);
+        assertTrue(expired.isEmpty(), "never before its expiry time");
+        wheel.advance(101 * TICK, expired::add);
+
+        assertEquals(List.of(0), expired);
+    }
+
+    @Test
+    void catchesUpWithADeadlineAlreadyPassed() {
+        TimingWheel wheel = wheel(500 * TICK);
+        schedule(wheel, 0, 100 * TICK);
+
+        wheel.advance(501 * TICK, expired::add);
+
+        assertEquals(List.of(0), expired);
+    }
+
+    @Test
+    void cancelledAndRescheduledSlotsFireOnlyAtTheirLastDeadline() {
+        TimingWheel wheel = wheel(0);
+        schedule(wheel, 0, 100 * TICK);
+        schedule(wheel, 1, 100 * TICK);
+        wheel.cancel(0);
+        schedule(wheel, 1, 300 * TICK);
+
+        wheel.advance(299 * TICK, expired::add);
+        assertTrue(expired.isEmpty());
+        assertFalse(wheel.isEmpty());
+        wheel.advance(300 * TICK, expired::add);
+
+        assertEquals(List.of(1), expired);
+        assertTrue(wheel.isEmpty());
+    }
+}